@@ -0,0 +1,47 @@
+/**
+ * Copyright (c) 2009 - 2020 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.common.exceptions;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.ws.rs.core.Response.Status;
+
+
+
+/**
+ * Represents a Too Many Requests (HTTP 429) error, telling the client how many seconds to wait
+ * before retrying its request.
+ */
+public class TooManyRequestsException extends CandlepinException {
+    private final int retryAfter;
+
+    public TooManyRequestsException(String message, int retryAfter) {
+        // Requests are shed in bulk while overloaded; logging each of them would only add to the load
+        super(Status.TOO_MANY_REQUESTS, message, false);
+        this.retryAfter = retryAfter;
+    }
+
+    public int getRetryAfter() {
+        return this.retryAfter;
+    }
+
+    @Override
+    public Map<String, String> headers() {
+        HashMap<String, String> headers = new HashMap<>();
+        headers.put("Retry-After", String.valueOf(this.retryAfter));
+        return headers;
+    }
+}
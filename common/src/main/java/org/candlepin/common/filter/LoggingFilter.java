@@ -51,10 +51,21 @@ public class LoggingFilter implements Filter {
     private static final Pattern CSID_REGEX = Pattern.compile("^([a-zA-Z0-9-]){1,}$");
 
     private String customHeaderName;
+    private int bodyCaptureLimit = ServletLogger.DEFAULT_BODY_CAPTURE_LIMIT;
 
     @Override
     public void init(FilterConfig filterConfig) throws ServletException {
         customHeaderName = filterConfig.getInitParameter("header.name");
+
+        String limit = filterConfig.getInitParameter("body.capture_limit");
+        if (limit != null) {
+            try {
+                bodyCaptureLimit = Integer.parseInt(limit);
+            }
+            catch (NumberFormatException e) {
+                throw new ServletException("Invalid body capture limit: " + limit, e);
+            }
+        }
     }
 
     @Override
@@ -68,10 +79,16 @@ public class LoggingFilter implements Filter {
         FilterChain chain) throws IOException, ServletException {
 
         long startTime = System.currentTimeMillis();
-        TeeHttpServletRequest req = new TeeHttpServletRequest(
-            (HttpServletRequest) request);
+
+        // Bodies are only teed when they're going to be logged. Otherwise the request is passed
+        // through untouched, and the response is only wrapped to track its status and headers.
+        boolean logBodies = log.isDebugEnabled();
+
+        HttpServletRequest req = logBodies ?
+            new TeeHttpServletRequest((HttpServletRequest) request, bodyCaptureLimit) :
+            (HttpServletRequest) request;
         TeeHttpServletResponse resp = new TeeHttpServletResponse(
-            (HttpServletResponse) response);
+            (HttpServletResponse) response, logBodies ? bodyCaptureLimit : 0);
 
         try {
             // Generate a UUID for this request and store in the thread local MDC.
@@ -113,8 +130,8 @@ public class LoggingFilter implements Filter {
             // Not sure this is useful yet.
             resp.setHeader(customHeaderName, requestUUID);
 
-            if (log.isDebugEnabled()) {
-                log.debug("{}", ServletLogger.logRequest(req));
+            if (logBodies) {
+                log.debug("{}", ServletLogger.logRequest((TeeHttpServletRequest) req));
             }
             else {
                 log.info("{}", ServletLogger.logBasicRequestInfo(req));
@@ -122,7 +139,7 @@ public class LoggingFilter implements Filter {
 
             chain.doFilter(req, resp);
 
-            if (log.isDebugEnabled()) {
+            if (logBodies) {
                 log.debug("{}", ServletLogger.logResponse(resp, startTime));
             }
             else {
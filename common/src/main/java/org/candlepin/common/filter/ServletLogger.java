@@ -14,6 +14,8 @@
  */
 package org.candlepin.common.filter;
 
+import org.candlepin.common.util.Util;
+
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectWriter;
 
@@ -32,6 +34,9 @@ import javax.ws.rs.core.Response;
  * ServletLogger
  */
 public class ServletLogger {
+    /** The default number of bytes of a request or response body captured for logging */
+    public static final int DEFAULT_BODY_CAPTURE_LIMIT = 64 * 1024;
+
     private static ObjectMapper mapper;
     private static ObjectWriter writer;
 
@@ -117,6 +122,42 @@ public class ServletLogger {
         return builder;
     }
 
+    /**
+     * Formats a captured body for logging. Text bodies are logged as-is, while anything else is
+     * logged as abbreviated base64. If the body was truncated, a note is appended indicating as
+     * much, along with the full size of the body when it is known.
+     *
+     * @param body
+     *  the captured portion of the body
+     *
+     * @param contentType
+     *  the content type of the body
+     *
+     * @param truncated
+     *  whether or not the captured portion is smaller than the full body
+     *
+     * @param totalBytes
+     *  the full size of the body in bytes, or a negative value if the size is not known
+     *
+     * @return
+     *  the formatted body
+     */
+    public static String formatBody(byte[] body, String contentType, boolean truncated,
+        long totalBytes) {
+
+        String content = showAsText(contentType) ?
+            new String(body) :
+            StringUtils.abbreviate(Util.toBase64(body), 100);
+
+        if (truncated) {
+            content += totalBytes >= 0 ?
+                String.format("\n... [truncated; %d of %d bytes captured]", body.length, totalBytes) :
+                String.format("\n... [truncated; first %d bytes captured]", body.length);
+        }
+
+        return content;
+    }
+
     public static StringBuilder logBasicRequestInfo(HttpServletRequest req) {
         StringBuilder requestBuilder = new StringBuilder()
             .append("Request: verb=")
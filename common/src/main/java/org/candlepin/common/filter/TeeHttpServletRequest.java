@@ -14,13 +14,8 @@
  */
 package org.candlepin.common.filter;
 
-import org.candlepin.common.util.Util;
-
-import org.apache.commons.io.IOUtils;
-import org.apache.commons.lang.StringUtils;
-
 import java.io.BufferedReader;
-import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -30,45 +25,142 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletRequestWrapper;
 
 /**
- * This class gives us a new ServletInputStream every time we call getInputStream()
- * so we can read a request body more than once.
+ * This class captures the head of a request body so it can be logged before the request is
+ * processed, without buffering the entire body in memory.
+ *
+ * Up to captureLimit bytes are read from the wrapped request when the wrapper is created. The
+ * stream returned by getInputStream() replays those bytes and then continues reading from the
+ * wrapped request, so the body is still consumed exactly once by the application.
  */
 public class TeeHttpServletRequest extends HttpServletRequestWrapper implements BodyLogger {
     private final byte[] body;
+    private final boolean truncated;
+    private final InputStream remainder;
+
+    private ServletInputStream servletInputStream;
+    private BufferedReader reader;
 
     public TeeHttpServletRequest(HttpServletRequest request) throws IOException {
+        this(request, ServletLogger.DEFAULT_BODY_CAPTURE_LIMIT);
+    }
+
+    /**
+     * Creates a new request wrapper which captures at most the specified number of bytes of the
+     * request body for logging.
+     *
+     * @param request
+     *  the request to wrap
+     *
+     * @param captureLimit
+     *  the maximum number of bytes of the body to capture
+     *
+     * @throws IOException
+     *  if the head of the request body cannot be read
+     */
+    public TeeHttpServletRequest(HttpServletRequest request, int captureLimit) throws IOException {
         super(request);
         InputStream inputStream = request.getInputStream();
         if (inputStream != null) {
-            body = IOUtils.toByteArray(inputStream);
+            ByteArrayOutputStream head = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int limit = Math.max(0, captureLimit);
+            int read = 0;
+
+            while (head.size() < limit &&
+                (read = inputStream.read(buffer, 0, Math.min(buffer.length, limit - head.size()))) != -1) {
+
+                head.write(buffer, 0, read);
+            }
+
+            // Peek a single byte to determine whether or not we've captured the entire body
+            int next = read != -1 ? inputStream.read() : -1;
+            if (next != -1) {
+                head.write(next);
+            }
+
+            this.body = head.toByteArray();
+            this.truncated = next != -1;
+            this.remainder = next != -1 ? inputStream : null;
         }
         else {
-            body = new byte[0];
+            this.body = new byte[0];
+            this.truncated = false;
+            this.remainder = null;
         }
     }
 
     @Override
     public ServletInputStream getInputStream() throws IOException {
-        final ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(body);
-        ServletInputStream servletInputStream = new ServletInputStream() {
-            @Override
-            public int read() throws IOException {
-                return byteArrayInputStream.read();
-            }
-        };
-        return servletInputStream;
+        if (this.servletInputStream == null) {
+            this.servletInputStream = new ServletInputStream() {
+                private int offset = 0;
+
+                @Override
+                public int read() throws IOException {
+                    if (offset < body.length) {
+                        return body[offset++] & 0xFF;
+                    }
+
+                    return remainder != null ? remainder.read() : -1;
+                }
+
+                @Override
+                public int read(byte[] buffer, int off, int len) throws IOException {
+                    if (len == 0) {
+                        return 0;
+                    }
+
+                    if (offset < body.length) {
+                        int count = Math.min(len, body.length - offset);
+                        System.arraycopy(body, offset, buffer, off, count);
+                        offset += count;
+
+                        return count;
+                    }
+
+                    return remainder != null ? remainder.read(buffer, off, len) : -1;
+                }
+
+                @Override
+                public int available() throws IOException {
+                    if (offset < body.length) {
+                        return body.length - offset;
+                    }
+
+                    return remainder != null ? remainder.available() : 0;
+                }
+            };
+        }
+
+        return this.servletInputStream;
     }
 
     @Override
     public BufferedReader getReader() throws IOException {
-        return new BufferedReader(new InputStreamReader(this.getInputStream()));
+        if (this.reader == null) {
+            this.reader = new BufferedReader(new InputStreamReader(this.getInputStream()));
+        }
+
+        return this.reader;
+    }
+
+    /**
+     * @return
+     *  true if the request body is larger than the portion captured for logging; false otherwise
+     */
+    public boolean isTruncated() {
+        return this.truncated;
     }
 
     @Override
     public String getBody() {
-        if (ServletLogger.showAsText(getContentType())) {
-            return new String(body);
+        // When truncated, the captured head includes the single byte peeked past the limit
+        byte[] logged = this.body;
+        if (this.truncated) {
+            logged = new byte[this.body.length - 1];
+            System.arraycopy(this.body, 0, logged, 0, logged.length);
         }
-        return StringUtils.abbreviate(Util.toBase64(body), 100);
+
+        return ServletLogger.formatBody(logged, getContentType(), this.truncated, -1);
     }
 }
@@ -14,10 +14,6 @@
  */
 package org.candlepin.common.filter;
 
-import org.candlepin.common.util.Util;
-
-import org.apache.commons.lang.StringUtils;
-
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
@@ -32,6 +28,10 @@ import javax.servlet.http.HttpServletResponseWrapper;
 
 /**
  * Heavily borrowed from the logback-access package.
+ *
+ * The status and headers of the response are always tracked, but the body is only teed when a
+ * non-zero capture limit is provided. With a limit of zero, the output stream and writer of the
+ * wrapped response are handed out as-is.
  */
 public class TeeHttpServletResponse extends HttpServletResponseWrapper
     implements BodyLogger {
@@ -40,22 +40,46 @@ public class TeeHttpServletResponse extends HttpServletResponseWrapper
     protected PrintWriter teeWriter;
     protected Map<String, List<String>> headers = new HashMap<>();
     protected int status;
+    protected final int captureLimit;
 
     public TeeHttpServletResponse(HttpServletResponse httpServletResponse) {
+        this(httpServletResponse, ServletLogger.DEFAULT_BODY_CAPTURE_LIMIT);
+    }
+
+    /**
+     * Creates a new response wrapper which captures at most the specified number of bytes of the
+     * response body for logging.
+     *
+     * @param httpServletResponse
+     *  the response to wrap
+     *
+     * @param captureLimit
+     *  the maximum number of bytes of the body to capture; if zero, the body will not be teed
+     */
+    public TeeHttpServletResponse(HttpServletResponse httpServletResponse, int captureLimit) {
         super(httpServletResponse);
+        this.captureLimit = Math.max(0, captureLimit);
     }
 
     @Override
     public ServletOutputStream getOutputStream() throws IOException {
+        if (this.captureLimit == 0) {
+            return super.getOutputStream();
+        }
+
         if (teeServletOutputStream == null) {
             teeServletOutputStream = new TeeServletOutputStream(
-                this.getResponse());
+                this.getResponse(), this.captureLimit);
         }
         return teeServletOutputStream;
     }
 
     @Override
     public PrintWriter getWriter() throws IOException {
+        if (this.captureLimit == 0) {
+            return super.getWriter();
+        }
+
         if (this.teeWriter == null) {
             this.teeWriter = new PrintWriter(new OutputStreamWriter(
                 getOutputStream()), true);
@@ -64,8 +88,11 @@ public class TeeHttpServletResponse extends HttpServletResponseWrapper
     }
 
     @Override
-    public void flushBuffer() {
-        if (this.teeWriter != null) {
+    public void flushBuffer() throws IOException {
+        if (this.captureLimit == 0) {
+            super.flushBuffer();
+        }
+        else if (this.teeWriter != null) {
             this.teeWriter.flush();
         }
     }
@@ -95,10 +122,8 @@ public class TeeHttpServletResponse extends HttpServletResponseWrapper
         byte[] buff = getOutputBuffer();
 
         if (buff != null) {
-            if (ServletLogger.showAsText(getContentType())) {
-                return new String(buff);
-            }
-            return StringUtils.abbreviate(Util.toBase64(buff), 100);
+            return ServletLogger.formatBody(buff, getContentType(),
+                teeServletOutputStream.isTruncated(), teeServletOutputStream.getByteCount());
         }
 
         return "";
@@ -22,26 +22,55 @@ import javax.servlet.ServletResponse;
 
 /**
  * Heavily borrowed from the logback-access package.
+ *
+ * Only the first captureLimit bytes written are copied for logging; anything beyond that is passed
+ * through to the underlying stream and counted, so the memory used per response does not grow with
+ * the size of the payload.
  */
 public class TeeServletOutputStream extends ServletOutputStream {
 
     protected final ServletOutputStream underlyingStream;
     protected final ByteArrayOutputStream baosCopy;
+    protected final int captureLimit;
+    protected long byteCount;
 
-    TeeServletOutputStream(ServletResponse httpServletResponse) throws IOException {
+    TeeServletOutputStream(ServletResponse httpServletResponse, int captureLimit) throws IOException {
         this.underlyingStream = httpServletResponse.getOutputStream();
-        baosCopy = new ByteArrayOutputStream();
+        this.baosCopy = new ByteArrayOutputStream();
+        this.captureLimit = Math.max(0, captureLimit);
+        this.byteCount = 0;
     }
 
     byte[] getOutputStreamAsByteArray() {
         return baosCopy.toByteArray();
     }
 
+    /**
+     * @return
+     *  the total number of bytes written to this stream, including those which were not captured
+     */
+    long getByteCount() {
+        return this.byteCount;
+    }
+
+    /**
+     * @return
+     *  true if more bytes were written to this stream than were captured; false otherwise
+     */
+    boolean isTruncated() {
+        return this.byteCount > baosCopy.size();
+    }
+
     @Override
     public void write(int val) throws IOException {
         if (underlyingStream != null) {
             underlyingStream.write(val);
-            baosCopy.write(val);
+
+            if (baosCopy.size() < captureLimit) {
+                baosCopy.write(val);
+            }
+
+            ++byteCount;
         }
     }
 
@@ -60,7 +89,13 @@ public class TeeServletOutputStream extends ServletOutputStream {
         }
 
         underlyingStream.write(byteArray, offset, length);
-        baosCopy.write(byteArray, offset, length);
+
+        int remaining = captureLimit - baosCopy.size();
+        if (remaining > 0) {
+            baosCopy.write(byteArray, offset, Math.min(remaining, length));
+        }
+
+        byteCount += length;
     }
 
     @Override
@@ -77,6 +112,5 @@ public class TeeServletOutputStream extends ServletOutputStream {
             return;
         }
         underlyingStream.flush();
-        baosCopy.flush();
     }
 }
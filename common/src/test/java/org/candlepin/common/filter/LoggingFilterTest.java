@@ -15,6 +15,8 @@
 package org.candlepin.common.filter;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.mockito.Mockito.anyString;
 import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.mock;
@@ -44,6 +46,8 @@ import java.util.Enumeration;
 import javax.servlet.FilterChain;
 import javax.servlet.FilterConfig;
 import javax.servlet.ServletInputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
@@ -103,6 +107,24 @@ public class LoggingFilterTest {
         verify(mockapp, never()).doAppend(null);
     }
 
+    @Test
+    public void testBodiesNotTeedWithDebugOff() throws Exception {
+        filterlogger.setLevel(Level.INFO);
+
+        filter.doFilter(request, response, chain);
+
+        ArgumentCaptor<ServletRequest> req = ArgumentCaptor.forClass(ServletRequest.class);
+        ArgumentCaptor<ServletResponse> resp = ArgumentCaptor.forClass(ServletResponse.class);
+        verify(chain).doFilter(req.capture(), resp.capture());
+
+        assertSame(request, req.getValue());
+        verify(request, never()).getInputStream();
+
+        resp.getValue().getOutputStream();
+        verify(response).getOutputStream();
+        assertNull(((TeeHttpServletResponse) resp.getValue()).getOutputBuffer());
+    }
+
     @Test
     public void testWithHeaders() throws Exception {
         ArgumentCaptor<LoggingEvent> message = ArgumentCaptor.forClass(LoggingEvent.class);
@@ -15,7 +15,9 @@
 package org.candlepin.common.filter;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.when;
 
 import org.candlepin.common.util.Util;
@@ -64,9 +66,37 @@ public class TeeHttpServletRequestTest {
         assertNotNull(tee);
         assertNotNull(tee.getInputStream());
         assertEquals("this is my body", readData(tee.getInputStream()));
+        assertFalse(tee.isTruncated());
+    }
+
+    @Test
+    public void testReader() throws IOException {
+        TeeHttpServletRequest tee = new TeeHttpServletRequest(request);
         assertEquals("this is my body", readData(tee.getReader()));
     }
 
+    @Test
+    public void testBodyCaptureIsBounded() throws IOException {
+        when(request.getContentType()).thenReturn(MediaType.TEXT_PLAIN);
+        TeeHttpServletRequest tee = new TeeHttpServletRequest(request, 7);
+
+        assertTrue(tee.isTruncated());
+        assertTrue(tee.getBody().startsWith("this is\n... [truncated"));
+
+        // The application must still see the entire body
+        assertEquals("this is my body", readData(tee.getInputStream()));
+    }
+
+    @Test
+    public void testBodyCaptureAtExactLimit() throws IOException {
+        when(request.getContentType()).thenReturn(MediaType.TEXT_PLAIN);
+        TeeHttpServletRequest tee = new TeeHttpServletRequest(request, 15);
+
+        assertFalse(tee.isTruncated());
+        assertEquals("this is my body", tee.getBody());
+        assertEquals("this is my body", readData(tee.getInputStream()));
+    }
+
     @Test
     public void getBodyTest() throws IOException {
         TeeHttpServletRequest tee = new TeeHttpServletRequest(request);
@@ -15,6 +15,8 @@
 package org.candlepin.common.filter;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.mockito.Mockito.when;
 
 import org.candlepin.common.util.Util;
@@ -43,9 +45,11 @@ public class TeeHttpServletResponseTest {
 
     @Mock private HttpServletResponse resp;
 
+    private StringWriter sw;
+
     @BeforeEach
     public void setUp() throws IOException {
-        final StringWriter sw = new StringWriter();
+        sw = new StringWriter();
         when(resp.getOutputStream()).thenReturn(new ServletOutputStream() {
             public void write(int b) throws IOException {
                 sw.write(b);
@@ -81,4 +85,27 @@ public class TeeHttpServletResponseTest {
             }
         }
     }
+
+    @Test
+    public void testBodyCaptureIsBounded() throws IOException {
+        when(resp.getContentType()).thenReturn(MediaType.TEXT_PLAIN);
+        TeeHttpServletResponse tee = new TeeHttpServletResponse(resp, 7);
+        tee.getOutputStream().write("this is ".getBytes());
+        tee.getOutputStream().write("my body".getBytes());
+
+        assertEquals("this is my body", sw.toString());
+        assertEquals("this is\n... [truncated; 7 of 15 bytes captured]", tee.getBody());
+    }
+
+    @Test
+    public void testBodyNotTeedWithoutCaptureLimit() throws IOException {
+        TeeHttpServletResponse tee = new TeeHttpServletResponse(resp, 0);
+        ServletOutputStream os = tee.getOutputStream();
+        os.write("this is my body".getBytes());
+
+        assertSame(resp.getOutputStream(), os);
+        assertEquals("this is my body", sw.toString());
+        assertNull(tee.getOutputBuffer());
+        assertEquals("", tee.getBody());
+    }
 }
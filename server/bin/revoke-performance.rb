@@ -0,0 +1,147 @@
+#!/usr/bin/env ruby
+#
+# Script to create an owner with a large number of entitlements spread over a
+# number of consumers, and then time their revocation. The entitlements of a
+# third of the consumers are revoked, another third of the consumers are
+# unregistered, and the owner is finally deleted along with its remaining
+# consumers. The time required for each step is printed to stdout.
+#
+# Usage: revoke-performance.rb [ent_count] [consumer_count] [thread_count]
+#
+# Can be run and re-run against a typical dev deployment without any arguments,
+# in which case an owner with 100,000 entitlements is created. Creating the
+# entitlements takes considerably longer than revoking them.
+
+require  "../client/ruby/candlepin_api"
+require  "../client/ruby/hostedtest_api"
+
+require 'benchmark'
+
+include HostedTest
+
+ADMIN_USERNAME = "admin"
+ADMIN_PASSWORD = "admin"
+HOST = "localhost"
+PORT = 8443
+
+POOL_COUNT = 100
+
+def random_string(prefix=nil)
+  prefix ||= "rand"
+  return "#{prefix}-#{rand(100000)}"
+end
+
+# from http://burgestrand.se/articles/quick-and-simple-ruby-thread-pool.html
+class Pool
+  def initialize(size)
+    @size = size
+    @jobs = Queue.new
+    @pool = Array.new(@size) do |i|
+      Thread.new do
+        Thread.current[:id] = i
+        catch(:exit) do
+          loop do
+            job, args = @jobs.pop
+            job.call(*args)
+          end
+        end
+      end
+    end
+  end
+
+  def schedule(*args, &block)
+    @jobs << [block, args]
+  end
+
+  def shutdown
+    @size.times do
+      schedule { throw :exit }
+    end
+
+    @pool.map(&:join)
+  end
+end
+
+ent_count = ARGV.shift.to_i
+consumer_count = ARGV.shift.to_i
+thread_count = ARGV.shift.to_i
+ent_count = 100000 if ent_count == 0
+consumer_count = 1000 if consumer_count == 0
+thread_count = 10 if thread_count == 0
+
+ents_per_consumer = (ent_count.to_f / consumer_count).ceil
+
+puts "running tests with ent_count: #{ent_count}, consumer_count: #{consumer_count} " +
+  "and thread_count: #{thread_count}"
+
+@cp = Candlepin.new(ADMIN_USERNAME, ADMIN_PASSWORD, nil, nil, HOST, PORT)
+
+owner = @cp.create_owner random_string("revoketest")
+puts "Created owner: #{owner['key']}"
+
+product = @cp.create_product(owner['key'], random_string(), random_string(),
+  {:attributes => {'multi-entitlement' => "yes", 'stacking_id' => random_string("stack")}})
+
+provided_products = Array.new(10) { |idx| random_string }
+provided_products.each do |pid|
+  @cp.create_product(owner['key'], pid, pid, {})
+end
+
+consumers = []
+Benchmark.bm (30) do |x|
+  x.report("Creating #{POOL_COUNT} pools:") {
+    POOL_COUNT.times do
+      create_pool_and_subscription(owner['key'], product['id'], ent_count, provided_products.sample(5),
+        '', '12345', nil, nil, nil, true)
+    end
+    @cp.refresh_pools(owner['key'])
+  }
+
+  x.report("Registering #{consumer_count} consumers:") {
+    thread_pool = Pool.new(thread_count)
+    lock = Mutex.new
+    consumer_count.times do
+      thread_pool.schedule do
+        consumer = @cp.register(random_string('revokeconsumer'), :system, nil, {}, nil, owner['key'])
+        lock.synchronize { consumers << consumer }
+      end
+    end
+    thread_pool.shutdown
+  }
+end
+
+pools = @cp.list_owner_pools(owner['key'])
+
+Benchmark.bm (30) do |x|
+  x.report("Binding #{ents_per_consumer * consumer_count} entitlements:") {
+    thread_pool = Pool.new(thread_count)
+    consumers.each do |consumer|
+      thread_pool.schedule do
+        ents_per_consumer.times do |i|
+          @cp.consume_pool(pools[i % pools.length]['id'], {:uuid => consumer['uuid']})
+        end
+      end
+    end
+    thread_pool.shutdown
+  }
+end
+
+revoked, unregistered = consumers.each_slice((consumers.length / 3.0).ceil).to_a
+
+Benchmark.bm (30) do |x|
+  x.report("Revoking entitlements of #{revoked.length} consumers:") {
+    revoked.each do |consumer|
+      @cp.revoke_all_entitlements(consumer['uuid'])
+    end
+  }
+
+  x.report("Unregistering #{unregistered.length} consumers:") {
+    unregistered.each do |consumer|
+      @cp.unregister(consumer['uuid'])
+    end
+  }
+
+  x.report("Deleting owner:") {
+    @cp.delete_owner(owner['key'])
+  }
+end
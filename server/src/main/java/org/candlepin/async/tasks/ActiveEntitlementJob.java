@@ -17,55 +17,111 @@ package org.candlepin.async.tasks;
 import org.candlepin.async.AsyncJob;
 import org.candlepin.async.JobExecutionContext;
 import org.candlepin.async.JobExecutionException;
+import org.candlepin.model.AsyncJobStatusCurator;
 import org.candlepin.model.Consumer;
 import org.candlepin.model.ConsumerCurator;
 import org.candlepin.policy.SystemPurposeComplianceRules;
 import org.candlepin.policy.js.compliance.ComplianceRules;
 
+import com.google.common.collect.Iterables;
 import com.google.inject.Inject;
+import com.google.inject.persist.Transactional;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Date;
 import java.util.List;
 
 
 
 /**
- * Job to recalculate compliance for consumers when entitlements become active
+ * Job to recalculate compliance for consumers when entitlements become active or expire.
+ * <p></p>
+ * Rather than recomputing the status of every consumer with started entitlements, each run only
+ * processes the consumers with status transitions (entitlement start and end dates) falling
+ * between the start of the last successful run, as recorded in the job status table, and now. The
+ * window is thus shared by every node of a cluster, and transitions due while runs failed are
+ * picked up by the next successful run. The job runs every few minutes, so statuses change shortly
+ * after the instant they become due.
  */
 public class ActiveEntitlementJob implements AsyncJob {
+    private static Logger log = LoggerFactory.getLogger(ActiveEntitlementJob.class);
 
     public static final String JOB_KEY = "ActiveEntitlementJob";
     public static final String JOB_NAME = "Active Entitlement";
-    public static final String DEFAULT_SCHEDULE = "0 0 0/1 * * ?"; // Every hour
+    public static final String DEFAULT_SCHEDULE = "0 0/5 * * * ?"; // Every five minutes
+
+    /** The number of consumers whose status is recomputed in a single transaction */
+    private static final int BATCH_SIZE = 100;
+
+    /**
+     * How far back transitions are looked for when the job has no record of a successful run,
+     * matching the hourly schedule the job previously ran on
+     */
+    private static final long INITIAL_LOOKBACK = 60 * 60 * 1000;
 
     private ConsumerCurator consumerCurator;
     private ComplianceRules complianceRules;
     private SystemPurposeComplianceRules systemPurposeComplianceRules;
+    private AsyncJobStatusCurator jobCurator;
 
     @Inject
     public ActiveEntitlementJob(ConsumerCurator consumerCurator, ComplianceRules complianceRules,
-        SystemPurposeComplianceRules systemPurposeComplianceRules) {
+        SystemPurposeComplianceRules systemPurposeComplianceRules, AsyncJobStatusCurator jobCurator) {
 
         this.consumerCurator = consumerCurator;
         this.complianceRules = complianceRules;
         this.systemPurposeComplianceRules = systemPurposeComplianceRules;
+        this.jobCurator = jobCurator;
     }
 
     @Override
     public void execute(JobExecutionContext context) throws JobExecutionException {
-        List<String> ids = consumerCurator.getConsumerIdsWithStartedEnts();
+        Date until = new Date();
+        Date since = this.jobCurator.getLastSuccessfulRun(JOB_KEY);
+
+        if (since == null) {
+            since = new Date(until.getTime() - INITIAL_LOOKBACK);
+        }
+
+        List<String> ids = consumerCurator.getConsumerIdsWithStatusTransitions(since, until);
+        int updated = 0;
 
-        if (ids != null && !ids.isEmpty()) {
-            for (String id : ids) {
-                Consumer c = consumerCurator.get(id);
-                complianceRules.getStatus(c);
-                systemPurposeComplianceRules.getStatus(c, c.getEntitlements(), null, true);
-            }
+        for (List<String> batch : Iterables.partition(ids, BATCH_SIZE)) {
+            updated += this.updateStatus(batch);
+        }
+
+        if (updated > 0) {
+            String outcome = String.format("Entitlement status updated for %d consumers", updated);
+            log.debug("{} with status transitions between {} and {}", outcome, since, until);
 
-            context.setJobResult("Entitlement status updated for consumers: %s", ids);
+            context.setJobResult(outcome);
         }
         else {
-            context.setJobResult("No consumers with entitlements pending activation found");
+            context.setJobResult("No consumers with entitlement status transitions found");
+        }
+    }
+
+    /**
+     * Recomputes the compliance and system purpose status of a batch of consumers.
+     *
+     * @param consumerIds
+     *  the IDs of the consumers to update
+     *
+     * @return
+     *  the number of consumers updated
+     */
+    @Transactional
+    protected int updateStatus(List<String> consumerIds) {
+        int updated = 0;
+
+        for (Consumer consumer : this.consumerCurator.getConsumers(consumerIds)) {
+            complianceRules.getStatus(consumer);
+            systemPurposeComplianceRules.getStatus(consumer, consumer.getEntitlements(), null, true);
+            ++updated;
         }
 
+        return updated;
     }
 }
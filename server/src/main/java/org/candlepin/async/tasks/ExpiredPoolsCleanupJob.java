@@ -17,9 +17,32 @@ package org.candlepin.async.tasks;
 import org.candlepin.async.AsyncJob;
 import org.candlepin.async.JobExecutionContext;
 import org.candlepin.async.JobExecutionException;
+import org.candlepin.audit.EventSink;
+import org.candlepin.auth.Principal;
+import org.candlepin.common.config.Configuration;
+import org.candlepin.config.ConfigProperties;
+import org.candlepin.controller.ExpiredPoolsCleanupResult;
 import org.candlepin.controller.PoolManager;
+import org.candlepin.guice.CandlepinRequestScope;
+import org.candlepin.guice.PrincipalProvider;
+import org.candlepin.model.PoolCurator;
 
 import com.google.inject.Inject;
+import com.google.inject.Injector;
+import com.google.inject.persist.UnitOfWork;
+
+import org.jboss.resteasy.core.ResteasyContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 
 
@@ -30,22 +53,71 @@ import com.google.inject.Inject;
  * If found we clean up the subscription, pool, and it's entitlements. This is primarily
  * done on a scheduled basis to make sure we re-source derived pools if the stack has
  * other still valid entitlements.
+ *
+ * Expired pools are partitioned by owner, and the owners are cleaned up concurrently by a bounded
+ * number of threads. Each thread works in its own unit of work and injection scope, so that the
+ * pools of each owner are deleted by a dedicated pool manager, in its own transactions.
  */
 public class ExpiredPoolsCleanupJob implements AsyncJob {
+    private static Logger log = LoggerFactory.getLogger(ExpiredPoolsCleanupJob.class);
+
     public static final String JOB_KEY = "ExpiredPoolsCleanupJob";
     public static final String JOB_NAME = "Expired Pools Cleanup";
 
     public static final String DEFAULT_SCHEDULE = "0 0 0/1 * * ?"; // Every hour
 
+    // The maximum number of owners whose expired pools are cleaned up concurrently
+    public static final String CFG_THREADS = "threads";
+    public static final int DEFAULT_THREADS = 4;
+
     private PoolManager poolManager;
+    private PoolCurator poolCurator;
+    private Configuration config;
+    private Injector injector;
+    private CandlepinRequestScope requestScope;
+    private UnitOfWork unitOfWork;
+    private PrincipalProvider principalProvider;
 
     @Inject
-    public ExpiredPoolsCleanupJob(PoolManager poolManager) {
+    public ExpiredPoolsCleanupJob(PoolManager poolManager, PoolCurator poolCurator, Configuration config,
+        Injector injector, CandlepinRequestScope requestScope, UnitOfWork unitOfWork,
+        PrincipalProvider principalProvider) {
+
         if (poolManager == null) {
             throw new IllegalArgumentException("poolManager is null");
         }
 
+        if (poolCurator == null) {
+            throw new IllegalArgumentException("poolCurator is null");
+        }
+
+        if (config == null) {
+            throw new IllegalArgumentException("config is null");
+        }
+
+        if (injector == null) {
+            throw new IllegalArgumentException("injector is null");
+        }
+
+        if (requestScope == null) {
+            throw new IllegalArgumentException("requestScope is null");
+        }
+
+        if (unitOfWork == null) {
+            throw new IllegalArgumentException("unitOfWork is null");
+        }
+
+        if (principalProvider == null) {
+            throw new IllegalArgumentException("principalProvider is null");
+        }
+
         this.poolManager = poolManager;
+        this.poolCurator = poolCurator;
+        this.config = config;
+        this.injector = injector;
+        this.requestScope = requestScope;
+        this.unitOfWork = unitOfWork;
+        this.principalProvider = principalProvider;
     }
 
     /**
@@ -53,7 +125,120 @@ public class ExpiredPoolsCleanupJob implements AsyncJob {
      */
     @Override
     public void execute(JobExecutionContext context) throws JobExecutionException {
-        this.poolManager.cleanupExpiredPools();
-        context.setJobResult("Expired pools cleanup completed successfully");
+        int threads = this.config.getInt(ConfigProperties.jobConfig(JOB_KEY, CFG_THREADS), DEFAULT_THREADS);
+        if (threads < 1) {
+            String errmsg = String.format("Invalid number of threads, must be a positive integer: %s",
+                threads);
+
+            log.error(errmsg);
+            throw new JobExecutionException(errmsg, true);
+        }
+
+        long start = System.currentTimeMillis();
+        ExpiredPoolsCleanupResult result = new ExpiredPoolsCleanupResult();
+
+        List<String> ownerIds = this.poolCurator.getExpiredPoolOwnerIds();
+        if (threads < 2 || ownerIds.size() < 2) {
+            EventSink sink = this.injector.getInstance(EventSink.class);
+
+            for (String ownerId : ownerIds) {
+                this.cleanupOwner(this.poolManager, sink, ownerId, result);
+            }
+        }
+        else {
+            this.cleanupConcurrently(ownerIds, Math.min(threads, ownerIds.size()), result);
+        }
+
+        long elapsed = System.currentTimeMillis() - start;
+        log.info("Expired pools cleanup finished in {}ms; {}", elapsed, result);
+
+        if (result.getOwnersFailed() > 0) {
+            throw new JobExecutionException(String.format(
+                "Expired pools cleanup failed for %d owner(s); %s", result.getOwnersFailed(), result));
+        }
+
+        context.setJobResult("Expired pools cleanup completed successfully in %dms; %s", elapsed, result);
+    }
+
+    /**
+     * Cleans up the expired pools of the given owners using the specified number of threads. A
+     * failure to clean up one owner is logged and counted, but does not stop the cleanup of the
+     * others.
+     */
+    private void cleanupConcurrently(List<String> ownerIds, int threads, ExpiredPoolsCleanupResult result) {
+        Principal principal = this.principalProvider.get();
+        Map<String, String> mdc = MDC.getCopyOfContextMap();
+
+        log.info("Cleaning up expired pools of {} owners using {} threads", ownerIds.size(), threads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        try {
+            List<Future<?>> futures = new ArrayList<>(ownerIds.size());
+            for (String ownerId : ownerIds) {
+                futures.add(executor.submit(
+                    () -> this.cleanupOwnerInWorker(ownerId, result, principal, mdc)));
+            }
+
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while cleaning up expired pools", e);
+        }
+        catch (ExecutionException e) {
+            throw new RuntimeException("Unable to clean up expired pools", e.getCause());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Cleans up the expired pools of a single owner on the current (worker) thread, in an
+     * environment set up the same way as that of the job itself.
+     */
+    private void cleanupOwnerInWorker(String ownerId, ExpiredPoolsCleanupResult result,
+        Principal principal, Map<String, String> mdc) {
+
+        if (mdc != null) {
+            MDC.setContextMap(mdc);
+        }
+
+        ResteasyContext.pushContext(Principal.class, principal);
+        this.requestScope.enter();
+        this.unitOfWork.begin();
+
+        try {
+            this.cleanupOwner(this.injector.getInstance(PoolManager.class),
+                this.injector.getInstance(EventSink.class), ownerId, result);
+        }
+        finally {
+            this.unitOfWork.end();
+            this.requestScope.exit();
+            ResteasyContext.popContextData(Principal.class);
+            MDC.clear();
+        }
+    }
+
+    /**
+     * Cleans up the expired pools of a single owner, sending the events of the cleanup once it
+     * completes. A failure is logged and counted in the result, and the events of the owner are
+     * discarded, but the exception is not propagated so the remaining owners are still cleaned up.
+     */
+    private void cleanupOwner(PoolManager manager, EventSink sink, String ownerId,
+        ExpiredPoolsCleanupResult result) {
+
+        try {
+            manager.cleanupExpiredPools(ownerId, result);
+            sink.sendEvents();
+        }
+        catch (RuntimeException e) {
+            sink.rollback();
+            result.incrementOwnersFailed();
+
+            log.error("Unable to clean up expired pools for owner: {}", ownerId, e);
+        }
     }
 }
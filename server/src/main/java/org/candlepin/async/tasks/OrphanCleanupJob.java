@@ -17,27 +17,27 @@ package org.candlepin.async.tasks;
 import org.candlepin.async.AsyncJob;
 import org.candlepin.async.JobExecutionContext;
 import org.candlepin.async.JobExecutionException;
-import org.candlepin.model.CandlepinQuery;
-import org.candlepin.model.Content;
 import org.candlepin.model.ContentCurator;
 import org.candlepin.model.OwnerContentCurator;
 import org.candlepin.model.OwnerProductCurator;
-import org.candlepin.model.Product;
 import org.candlepin.model.ProductCurator;
 
+import com.google.common.collect.Iterables;
 import com.google.inject.Inject;
 import com.google.inject.persist.Transactional;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.persistence.LockModeType;
+import java.util.List;
+import java.util.function.Function;
 
 
 
 /**
  * The OrphanCleanupJob searches for orphaned entities (products and content and the time of
- * writing) and removes them.
+ * writing) and removes them. Orphans are deleted in bounded batches, each in its own short
+ * transaction, so that the job never holds locks on a large number of rows at once.
  */
 public class OrphanCleanupJob implements AsyncJob  {
     private static Logger log = LoggerFactory.getLogger(OrphanCleanupJob.class);
@@ -48,6 +48,9 @@ public class OrphanCleanupJob implements AsyncJob  {
     // Every Sunday at 3:00am
     public static final String DEFAULT_SCHEDULE = "0 0 3 ? * 1";
 
+    // The maximum number of entities deleted in a single transaction
+    private static final int BATCH_SIZE = 500;
+
     private ContentCurator contentCurator;
     private OwnerContentCurator ownerContentCurator;
     private ProductCurator productCurator;
@@ -64,49 +67,56 @@ public class OrphanCleanupJob implements AsyncJob  {
     }
 
     @Override
-    @Transactional
     public void execute(JobExecutionContext context) throws JobExecutionException {
         log.debug("Deleting orphaned entities");
 
-        int orphanedContent = this.deleteOrphanedContent();
-        int orphanedProducts = this.deleteOrphanedProducts();
+        StringBuilder result = new StringBuilder("Orphan cleanup completed;");
+
+        int orphanedContent = this.deleteInBatches(this.ownerContentCurator.getOrphanedContentUuids(),
+            this::deleteContentBatch, "content", result);
+
+        int orphanedProducts = this.deleteInBatches(this.ownerProductCurator.getOrphanedProductUuids(),
+            this::deleteProductBatch, "product", result);
 
-        String format = "Orphan cleanup completed;" +
-            "\n  %d orphaned content deleted" +
-            "\n  %d orphaned products deleted";
+        result.append(String.format("\n  %d orphaned content deleted", orphanedContent))
+            .append(String.format("\n  %d orphaned products deleted", orphanedProducts));
 
-        context.setJobResult(format, orphanedContent, orphanedProducts);
+        context.setJobResult(result.toString());
     }
 
-    private int deleteOrphanedContent() {
+    /**
+     * Deletes the entities with the given UUIDs in batches of a bounded size, each in its own
+     * transaction, appending the number of entities deleted by each batch and its duration to the
+     * given result.
+     */
+    private int deleteInBatches(List<String> uuids, Function<List<String>, Integer> deleter,
+        String type, StringBuilder result) {
+
         int count = 0;
-        CandlepinQuery<Content> contentQuery = this.ownerContentCurator.getOrphanedContent()
-            .setLockMode(LockModeType.PESSIMISTIC_WRITE);
+        int batch = 0;
 
-        for (Content content : contentQuery) {
-            this.contentCurator.delete(content);
-            ++count;
-        }
+        for (List<String> block : Iterables.partition(uuids, BATCH_SIZE)) {
+            long start = System.currentTimeMillis();
+            int deleted = deleter.apply(block);
+            long elapsed = System.currentTimeMillis() - start;
 
-        this.productCurator.flush();
-        log.debug("{} orphaned product entities deleted", count);
+            result.append(String.format("\n  %s batch %d: %d of %d deleted in %dms", type, ++batch,
+                deleted, block.size(), elapsed));
+
+            count += deleted;
+        }
 
+        log.debug("{} orphaned {} entities deleted in {} batch(es)", count, type, batch);
         return count;
     }
 
-    private int deleteOrphanedProducts() {
-        int count = 0;
-        CandlepinQuery<Product> productQuery = this.ownerProductCurator.getOrphanedProducts()
-            .setLockMode(LockModeType.PESSIMISTIC_WRITE);
-
-        for (Product product : productQuery) {
-            this.productCurator.delete(product);
-            ++count;
-        }
-
-        this.contentCurator.flush();
-        log.debug("{} orphaned content entities deleted", count);
+    @Transactional
+    protected int deleteContentBatch(List<String> uuids) {
+        return this.contentCurator.deleteOrphanedContent(uuids);
+    }
 
-        return count;
+    @Transactional
+    protected int deleteProductBatch(List<String> uuids) {
+        return this.productCurator.deleteOrphanedProducts(uuids);
     }
 }
@@ -0,0 +1,82 @@
+/**
+ * Copyright (c) 2009 - 2020 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.async.tasks;
+
+import org.candlepin.async.AsyncJob;
+import org.candlepin.async.JobExecutionContext;
+import org.candlepin.async.JobExecutionException;
+import org.candlepin.controller.PoolQuantityEscrow;
+
+import com.google.inject.Inject;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+
+/**
+ * PoolQuantityReconcileJob: Runs periodically to release the escrow slices of all pools, returning
+ * the quantity held in escrow but not consumed by binds to the pools' available quantity. Each pool
+ * is reconciled in its own transaction, so that no more than one pool is locked at a time.
+ */
+public class PoolQuantityReconcileJob implements AsyncJob {
+    private static Logger log = LoggerFactory.getLogger(PoolQuantityReconcileJob.class);
+
+    public static final String JOB_KEY = "PoolQuantityReconcileJob";
+    public static final String JOB_NAME = "Pool Quantity Reconcile";
+
+    public static final String DEFAULT_SCHEDULE = "0 0/5 * * * ?"; // Every five minutes
+
+    private PoolQuantityEscrow escrow;
+
+    @Inject
+    public PoolQuantityReconcileJob(PoolQuantityEscrow escrow) {
+        if (escrow == null) {
+            throw new IllegalArgumentException("escrow is null");
+        }
+
+        this.escrow = escrow;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void execute(JobExecutionContext context) throws JobExecutionException {
+        int reconciled = 0;
+        int failed = 0;
+
+        // Slices are reconciled even while escrow is disabled, so that disabling it returns any
+        // quantity still held in escrow
+        for (String poolId : this.escrow.getEscrowedPoolIds()) {
+            try {
+                if (this.escrow.reconcile(poolId)) {
+                    ++reconciled;
+                }
+            }
+            catch (RuntimeException e) {
+                // Leave the slices as-is; they'll be released on a later run
+                log.warn("Unable to reconcile escrow quantity of pool: {}", poolId, e);
+                ++failed;
+            }
+        }
+
+        String outcome = String.format("Reconciled escrow quantity of %d pools; %d failed", reconciled,
+            failed);
+        log.debug(outcome);
+
+        context.setJobResult(outcome);
+    }
+}
@@ -23,6 +23,7 @@ import org.candlepin.async.JobConstraints;
 import org.candlepin.async.JobExecutionContext;
 import org.candlepin.async.JobExecutionException;
 import org.candlepin.controller.PoolManager;
+import org.candlepin.controller.RefreshResult;
 import org.candlepin.controller.Refresher;
 import org.candlepin.model.Owner;
 import org.candlepin.model.OwnerCurator;
@@ -132,7 +133,8 @@ public class RefreshPoolsJob implements AsyncJob {
     /**
      * {@inheritDoc}
      *
-     * Executes {@link Refresher#run()} for all products of a specific Owner as a job.
+     * Executes {@link Refresher#run()} for all products of a specific Owner as a job. The
+     * statistics and per-phase timings of the refresh are included in the job result.
      *
      * @param context the job's execution context
      */
@@ -146,9 +148,11 @@ public class RefreshPoolsJob implements AsyncJob {
             throw new JobExecutionException("Nothing to do; owner no longer exists: " + ownerKey, true);
         }
 
+        RefreshResult result;
+
         try {
             // Assume that we verified the request in the resource layer:
-            poolManager.getRefresher(this.subAdapter, lazy)
+            result = poolManager.getRefresher(this.subAdapter, lazy)
                 .add(owner)
                 .run();
         }
@@ -156,7 +160,7 @@ public class RefreshPoolsJob implements AsyncJob {
             throw new JobExecutionException(e.getMessage(), e, false);
         }
 
-        context.setJobResult("Pools refreshed for owner: %s", owner.getDisplayName());
+        context.setJobResult("Pools refreshed for owner: %s; %s", owner.getDisplayName(), result);
     }
 
     /**
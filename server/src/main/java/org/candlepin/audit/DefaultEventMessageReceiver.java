@@ -19,7 +19,6 @@ import org.candlepin.async.impl.ActiveMQSessionFactory;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import org.apache.activemq.artemis.api.core.ActiveMQException;
-import org.apache.activemq.artemis.api.core.SimpleString;
 import org.apache.activemq.artemis.api.core.client.ClientMessage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -49,19 +48,12 @@ public class DefaultEventMessageReceiver extends EventMessageReceiver {
             log.debug("ActiveMQ message {} acknowledged for listener: {}", msg.getMessageID(), listener);
 
             // Process the message via our EventListener framework.
-            if (msg.getType() == ClientMessage.TEXT_TYPE) {
-                SimpleString sstr = msg.getBodyBuffer().readNullableSimpleString();
-                if (sstr != null) {
-                    body = sstr.toString();
-                }
-            }
-            else {
-                body = msg.getBodyBuffer().readString();
-            }
+            body = this.readBody(msg);
 
             log.debug("Got event: {}", body);
-            Event event = mapper.readValue(body, Event.class);
-            listener.onEvent(event);
+            for (Event event : this.readEvents(msg, body)) {
+                listener.onEvent(event);
+            }
 
             log.debug("Message listener {} processed message: {}: SUCCESS", listener, msg.getMessageID());
             // Finally commit the session so that the message is taken out of the queue.
@@ -18,6 +18,13 @@ import org.candlepin.async.impl.ActiveMQSessionFactory;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import org.apache.activemq.artemis.api.core.SimpleString;
+import org.apache.activemq.artemis.api.core.client.ClientMessage;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 
 /**
@@ -41,6 +48,52 @@ public abstract class EventMessageReceiver extends MessageReceiver {
         return this.listener.requiresQpid();
     }
 
+    /**
+     * Reads the body of the given event message.
+     *
+     * @param msg
+     *  the message to read
+     *
+     * @return
+     *  the body of the message, or an empty string if the message has no body
+     */
+    protected String readBody(ClientMessage msg) {
+        if (msg.getType() == ClientMessage.TEXT_TYPE) {
+            SimpleString sstr = msg.getBodyBuffer().readNullableSimpleString();
+            return sstr != null ? sstr.toString() : "";
+        }
+
+        return msg.getBodyBuffer().readString();
+    }
+
+    /**
+     * Deserializes the events carried by an event message. Messages flagged with the
+     * {@link EventSinkImpl#EVENT_BATCH_SIZE_KEY} property hold a JSON array of events; all others
+     * hold a single event.
+     * <p></p>
+     * As the events of a batch are acknowledged together, a batch which fails partway through will
+     * be redelivered in full, and listeners will see the events preceding the failure again.
+     *
+     * @param msg
+     *  the message carrying the events
+     *
+     * @param body
+     *  the body of the message, as returned by {@link #readBody(ClientMessage)}
+     *
+     * @throws IOException
+     *  if the body cannot be deserialized
+     *
+     * @return
+     *  a list of the events carried by the message, in the order they were queued
+     */
+    protected List<Event> readEvents(ClientMessage msg, String body) throws IOException {
+        if (msg.containsProperty(EventSinkImpl.EVENT_BATCH_SIZE_KEY)) {
+            return Arrays.asList(mapper.readValue(body, Event[].class));
+        }
+
+        return Collections.singletonList(mapper.readValue(body, Event.class));
+    }
+
     @Override
     protected void initialize() throws Exception {
         session = this.sessionFactory.getIngressSession(false);
@@ -16,6 +16,7 @@ package org.candlepin.audit;
 
 import org.candlepin.async.impl.ActiveMQSessionFactory;
 import org.candlepin.common.config.Configuration;
+import org.candlepin.config.ConfigProperties;
 import org.candlepin.controller.mode.CandlepinModeManager;
 import org.candlepin.controller.mode.CandlepinModeManager.Mode;
 import org.candlepin.dto.manifest.v1.SubscriptionDTO;
@@ -38,8 +39,10 @@ import org.apache.activemq.artemis.api.core.client.ClientSession;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Objects;
 
 import javax.inject.Inject;
 
@@ -48,6 +51,11 @@ import javax.inject.Inject;
  * sending of events on successful job or API request, as well as rollback if either fails.
  *
  * An single instance of this object will be created per request/job.
+ *
+ * Queued events are packed into batches, each sent as a single message holding a JSON array of
+ * events, and flagged with the {@link #EVENT_BATCH_SIZE_KEY} property. A batch holding a single
+ * event is sent as a plain event message. Message receivers unpack batches through
+ * {@link EventMessageReceiver#readEvents(ClientMessage, String)}.
  */
 @CandlepinRequestScoped
 public class EventSinkImpl implements EventSink {
@@ -55,12 +63,15 @@ public class EventSinkImpl implements EventSink {
 
     public static final String EVENT_TYPE_KEY = "EVENT_TYPE";
     public static final String EVENT_TARGET_KEY = "EVENT_TARGET";
+    public static final String EVENT_BATCH_SIZE_KEY = "EVENT_BATCH_SIZE";
 
     private EventFactory eventFactory;
     private ObjectMapper mapper;
     private EventFilter eventFilter;
     private CandlepinModeManager modeManager;
     private Configuration config;
+    private int maxBatchEvents;
+    private int maxBatchBytes;
 
     private ActiveMQSessionFactory sessionFactory;
     private EventMessageSender messageSender;
@@ -76,6 +87,9 @@ public class EventSinkImpl implements EventSink {
         this.modeManager = modeManager;
         this.config = config;
         this.sessionFactory = sessionFactory;
+
+        this.maxBatchEvents = Math.max(1, config.getInt(ConfigProperties.AUDIT_BATCH_MAX_EVENTS));
+        this.maxBatchBytes = config.getInt(ConfigProperties.AUDIT_BATCH_MAX_BYTES);
     }
 
     // FIXME This method really does not belong here. It should probably be moved
@@ -239,6 +253,12 @@ public class EventSinkImpl implements EventSink {
         private ClientSession session;
         private ClientProducer producer;
 
+        // The serialized events waiting to be packed into the next message
+        private List<String> batch;
+        private int batchBytes;
+        private Event.Type batchType;
+        private Event.Target batchTarget;
+
         public EventMessageSender(ActiveMQSessionFactory sessionFactory) {
             try {
                 /*
@@ -254,11 +274,48 @@ public class EventSinkImpl implements EventSink {
             catch (Exception e) {
                 throw new RuntimeException(e);
             }
+
+            this.batch = new ArrayList<>();
             log.debug("Created new message sender.");
         }
 
         public void queueMessage(String eventString, Event.Type type, Event.Target target)
             throws ActiveMQException {
+
+            // SimpleString bodies are encoded with two bytes per character
+            int size = eventString.length() * 2;
+
+            if (!this.batch.isEmpty() && this.batchBytes + size > maxBatchBytes) {
+                this.flush();
+            }
+
+            if (this.batch.isEmpty()) {
+                this.batchType = type;
+                this.batchTarget = target;
+            }
+            else {
+                // Only keep the type and target properties if every event in the batch shares them
+                this.batchType = Objects.equals(this.batchType, type) ? type : null;
+                this.batchTarget = Objects.equals(this.batchTarget, target) ? target : null;
+            }
+
+            this.batch.add(eventString);
+            this.batchBytes += size;
+
+            if (this.batch.size() >= maxBatchEvents) {
+                this.flush();
+            }
+        }
+
+        /**
+         * Packs the pending batch of events into a single message and sends it on the transacted
+         * session. The message is not delivered until the session is committed.
+         */
+        private void flush() throws ActiveMQException {
+            if (this.batch.isEmpty()) {
+                return;
+            }
+
             if (session.isClosed()) {
                 try {
                     session = sessionFactory.getEgressSession(true);
@@ -270,18 +327,33 @@ public class EventSinkImpl implements EventSink {
                 }
             }
 
+            String body;
             ClientMessage message = session.createMessage(ClientMessage.TEXT_TYPE, true);
-            message.getBodyBuffer().writeNullableSimpleString(SimpleString.toSimpleString(eventString));
+
+            if (this.batch.size() == 1) {
+                body = this.batch.get(0);
+            }
+            else {
+                body = "[" + String.join(",", this.batch) + "]";
+                message.putIntProperty(EVENT_BATCH_SIZE_KEY, this.batch.size());
+            }
+
+            message.getBodyBuffer().writeNullableSimpleString(SimpleString.toSimpleString(body));
 
             // Set the event type and target if provided
-            if (type != null) {
-                message.putStringProperty(EVENT_TYPE_KEY, type.name());
+            if (this.batchType != null) {
+                message.putStringProperty(EVENT_TYPE_KEY, this.batchType.name());
             }
 
-            if (target != null) {
-                message.putStringProperty(EVENT_TARGET_KEY, target.name());
+            if (this.batchTarget != null) {
+                message.putStringProperty(EVENT_TARGET_KEY, this.batchTarget.name());
             }
 
+            log.debug("Sending message with {} event(s)", this.batch.size());
+
+            this.batch.clear();
+            this.batchBytes = 0;
+
             // NOTE: not actually sent until we commit the session.
             producer.send(message);
         }
@@ -290,6 +362,9 @@ public class EventSinkImpl implements EventSink {
             log.debug("Committing ActiveMQ transaction.");
             if (!session.isClosed()) {
                 try (ClientSession toClose = session) {
+                    // If the last batch can't be sent, the session is closed without committing
+                    // and none of the events go out
+                    this.flush();
                     toClose.commit();
                 }
                 catch (Exception e) {
@@ -302,6 +377,9 @@ public class EventSinkImpl implements EventSink {
 
         public void cancelMessages() {
             log.warn("Rolling back ActiveMQ transaction.");
+            this.batch.clear();
+            this.batchBytes = 0;
+
             if (!session.isClosed()) {
                 try (ClientSession toClose = session) {
                     toClose.rollback();
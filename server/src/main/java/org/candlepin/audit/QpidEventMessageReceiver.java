@@ -19,7 +19,6 @@ import org.candlepin.async.impl.ActiveMQSessionFactory;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import org.apache.activemq.artemis.api.core.ActiveMQException;
-import org.apache.activemq.artemis.api.core.SimpleString;
 import org.apache.activemq.artemis.api.core.client.ClientMessage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -60,19 +59,12 @@ public class QpidEventMessageReceiver extends EventMessageReceiver {
             }
 
             // Process the message via our EventListener framework.
-            if (msg.getType() == ClientMessage.TEXT_TYPE) {
-                SimpleString sstr = msg.getBodyBuffer().readNullableSimpleString();
-                if (sstr != null) {
-                    body = sstr.toString();
-                }
-            }
-            else {
-                body = msg.getBodyBuffer().readString();
-            }
+            body = this.readBody(msg);
 
             log.debug("Got event: {}", body);
-            Event event = mapper.readValue(body, Event.class);
-            listener.onEvent(event);
+            for (Event event : this.readEvents(msg, body)) {
+                listener.onEvent(event);
+            }
             log.debug("Message listener {} processed message: {} [{}]: SUCCESS", listener, msgId, origMsgId);
 
             // Acknowledge the message so that the server knows that it was received.
@@ -14,6 +14,7 @@
  */
 package org.candlepin.bind;
 
+import org.candlepin.controller.PoolQuantityEscrow;
 import org.candlepin.model.Consumer;
 import org.candlepin.model.ConsumerCurator;
 import org.candlepin.model.ConsumerType;
@@ -33,9 +34,14 @@ import com.google.inject.assistedinject.Assisted;
 import org.xnap.commons.i18n.I18n;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
 
 /**
  * - Container class for holding bind information.
@@ -53,6 +59,7 @@ public class BindContext {
     private Map<String, PoolQuantity> poolQuantities;
     private Map<String, Entitlement> entitlementMap;
     private Map<String, Integer> quantities;
+    private Set<String> escrowedPoolIds = new HashSet<>();
     private boolean quantityRequested = false;
     //change to generic type in future if needed
     private EntitlementRefusedException exception;
@@ -60,6 +67,7 @@ public class BindContext {
     private ConsumerCurator consumerCurator;
     private ConsumerTypeCurator consumerTypeCurator;
     private OwnerCurator ownerCurator;
+    private PoolQuantityEscrow escrow;
     private I18n i18n;
 
     @Inject
@@ -67,6 +75,7 @@ public class BindContext {
         ConsumerCurator consumerCurator,
         ConsumerTypeCurator consumerTypeCurator,
         OwnerCurator ownerCurator,
+        PoolQuantityEscrow escrow,
         I18n i18n,
         @Assisted Consumer consumer,
         @Assisted Map<String, Integer> quantities) {
@@ -75,6 +84,7 @@ public class BindContext {
         this.consumerCurator = consumerCurator;
         this.consumerTypeCurator = consumerTypeCurator;
         this.ownerCurator = ownerCurator;
+        this.escrow = escrow;
         this.i18n = i18n;
         this.consumer = consumer;
         this.quantities = quantities;
@@ -117,21 +127,87 @@ public class BindContext {
                 throw new IllegalArgumentException(i18n.tr("Subscription pool(s) {0} do not exist.",
                     quantities.keySet()));
             }
+
+            if (this.escrow.isEnabled()) {
+                // Let the rules count the quantity held in escrow as available
+                this.escrow.annotate(poolQuantities.values().stream()
+                    .map(PoolQuantity::getPool)
+                    .collect(Collectors.toList()));
+            }
         }
         return poolQuantities;
     }
 
     /**
      * locks the pools and replaces the existing entities in poolQuantities.
+     * When escrow is enabled, the requested quantity is instead reserved from an escrow slice
+     * of each eligible pool, and the pool is only locked if no slice has enough quantity left.
      */
     public void lockPools() {
-        Collection<Pool> pools = poolCurator.lockAndLoad(poolQuantities.keySet());
-        this.poolCurator.refresh(pools);
-        for (Pool pool: pools) {
-            poolQuantities.get(pool.getId()).setPool(pool);
+        if (!this.escrow.isEnabled()) {
+            Collection<Pool> pools = poolCurator.lockAndLoad(poolQuantities.keySet());
+            this.poolCurator.refresh(pools);
+            for (Pool pool: pools) {
+                poolQuantities.get(pool.getId()).setPool(pool);
+            }
+
+            return;
+        }
+
+        ConsumerType ctype = this.getConsumerType();
+
+        // Pools are processed in ID order so that slice and pool locks are always taken in the
+        // same order as the batched pool locks taken elsewhere
+        for (String poolId : new TreeSet<>(poolQuantities.keySet())) {
+            PoolQuantity poolQuantity = poolQuantities.get(poolId);
+            boolean eligible = this.escrow.isEligible(poolQuantity.getPool(), ctype);
+
+            if (eligible && this.escrow.reserve(poolQuantity.getPool(), poolQuantity.getQuantity())) {
+                this.escrowedPoolIds.add(poolId);
+                continue;
+            }
+
+            Pool pool = this.poolCurator.lockAndLoad(poolId);
+            if (pool == null) {
+                continue;
+            }
+
+            this.poolCurator.refresh(pool);
+            poolQuantity.setPool(pool);
+
+            // Another bind may have carved new slices while we waited on the lock
+            if (eligible && this.escrow.reserve(pool, poolQuantity.getQuantity())) {
+                this.escrowedPoolIds.add(poolId);
+                continue;
+            }
+
+            // Slices held by in-flight binds can't be released; their quantity stays counted as
+            // consumed, so the rules can't hand it out a second time through the locked pool
+            this.escrow.release(Collections.singleton(pool));
+
+            if (eligible && this.escrow.carve(pool) &&
+                this.escrow.reserve(pool, poolQuantity.getQuantity())) {
+
+                this.escrowedPoolIds.add(poolId);
+            }
         }
     }
 
+    /**
+     * Checks whether the quantity requested from the specified pool was reserved from one of its
+     * escrow slices, in which case the pool was not locked, and its consumed count must not be
+     * updated.
+     *
+     * @param poolId
+     *  the ID of the pool to check
+     *
+     * @return
+     *  true if the requested quantity was reserved from escrow; false otherwise
+     */
+    public boolean isEscrowed(String poolId) {
+        return this.escrowedPoolIds.contains(poolId);
+    }
+
     public Consumer getLockedConsumer() {
         if (lockedConsumer == null) {
             lockedConsumer = consumerCurator.lock(consumer);
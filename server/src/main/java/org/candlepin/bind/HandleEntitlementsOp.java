@@ -82,14 +82,21 @@ public class HandleEntitlementsOp implements BindOperation {
             ent.setConsumer(consumer);
             ent.setOwner(pool.getOwner());
 
+            consumer.addEntitlement(ent);
+            consumer.setEntitlementCount(consumer.getEntitlementCount() + quantity);
+
+            // Quantity reserved from escrow is already counted as consumed on the pool, which
+            // isn't locked and must be left untouched
+            if (context.isEscrowed(entry.getKey())) {
+                continue;
+            }
+
             pool.setConsumed(pool.getConsumed() + quantity);
 
             if (ctype.isManifest()) {
                 pool.setExported(pool.getExported() + quantity);
             }
 
-            consumer.addEntitlement(ent);
-            consumer.setEntitlementCount(consumer.getEntitlementCount() + quantity);
             poolsToSave.add(pool);
         }
 
@@ -74,7 +74,9 @@ public class PreEntitlementRulesCheckOp implements BindOperation {
 
     /**
      * The pool's quantity might have changed since we last fetched it,
-     * so ensure that the pool still has enough quantity left.
+     * so ensure that the pool still has enough quantity left. Quantity reserved
+     * from escrow has already been taken out of the pool, so only the rest of
+     * the pool's rules are checked for those pools.
      * @param context
      */
     @Override
@@ -82,8 +84,9 @@ public class PreEntitlementRulesCheckOp implements BindOperation {
         if (context.isQuantityRequested()) {
             for (PoolQuantity poolQuantity : context.getPoolQuantities().values()) {
                 Pool pool = poolQuantity.getPool();
-                enforcer.finishValidation(results.get(pool.getId()),
-                    pool, context.getPoolQuantities().get(pool.getId()).getQuantity());
+                int quantity = context.isEscrowed(pool.getId()) ? 0 : poolQuantity.getQuantity();
+
+                enforcer.finishValidation(results.get(pool.getId()), pool, quantity);
             }
 
             EntitlementRefusedException exception = checkResults();
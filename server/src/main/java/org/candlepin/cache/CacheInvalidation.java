@@ -0,0 +1,217 @@
+/**
+ * Copyright (c) 2009 - 2020 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.cache;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+
+
+/**
+ * The CacheInvalidation class describes the cached data one node of a cluster has changed, and
+ * which the other nodes must evict from their own caches. It is sent between nodes by a
+ * {@link CacheInvalidationTransport}.
+ * <p></p>
+ * Entities and collections are identified by entity name or collection role, mapped to the
+ * identifiers of the changed entities or collection owners. An empty set of identifiers indicates
+ * every cached instance must be evicted, which is used where an identifier cannot be represented
+ * as a string. Node-local caches registered with the {@link ClusterCacheInvalidator} are identified
+ * by name, mapped to the keys of their invalidated entries in the same way.
+ */
+public class CacheInvalidation {
+
+    private String origin;
+    private Map<String, Set<String>> entities;
+    private Map<String, Set<String>> collections;
+    private Set<String> regions;
+    private Map<String, Set<String>> caches;
+
+    /**
+     * Creates a new, empty cache invalidation
+     */
+    public CacheInvalidation() {
+        this.entities = new HashMap<>();
+        this.collections = new HashMap<>();
+        this.regions = new HashSet<>();
+        this.caches = new HashMap<>();
+    }
+
+    /**
+     * Creates a new, empty cache invalidation sent by the given node
+     *
+     * @param origin
+     *  the ID of the node sending the invalidation
+     */
+    public CacheInvalidation(String origin) {
+        this();
+        this.origin = origin;
+    }
+
+    public String getOrigin() {
+        return this.origin;
+    }
+
+    public CacheInvalidation setOrigin(String origin) {
+        this.origin = origin;
+        return this;
+    }
+
+    public Map<String, Set<String>> getEntities() {
+        return this.entities;
+    }
+
+    public CacheInvalidation setEntities(Map<String, Set<String>> entities) {
+        this.entities = entities != null ? entities : new HashMap<>();
+        return this;
+    }
+
+    public Map<String, Set<String>> getCollections() {
+        return this.collections;
+    }
+
+    public CacheInvalidation setCollections(Map<String, Set<String>> collections) {
+        this.collections = collections != null ? collections : new HashMap<>();
+        return this;
+    }
+
+    public Set<String> getRegions() {
+        return this.regions;
+    }
+
+    public CacheInvalidation setRegions(Set<String> regions) {
+        this.regions = regions != null ? regions : new HashSet<>();
+        return this;
+    }
+
+    public Map<String, Set<String>> getCaches() {
+        return this.caches;
+    }
+
+    public CacheInvalidation setCaches(Map<String, Set<String>> caches) {
+        this.caches = caches != null ? caches : new HashMap<>();
+        return this;
+    }
+
+    /**
+     * Adds a changed entity to this invalidation.
+     *
+     * @param entityName
+     *  the name of the changed entity
+     *
+     * @param id
+     *  the identifier of the changed entity, or null if every instance of the entity must be
+     *  evicted
+     *
+     * @return
+     *  a reference to this invalidation
+     */
+    public CacheInvalidation addEntity(String entityName, String id) {
+        add(this.entities, entityName, id);
+        return this;
+    }
+
+    /**
+     * Adds a changed collection to this invalidation.
+     *
+     * @param role
+     *  the role of the changed collection
+     *
+     * @param ownerId
+     *  the identifier of the entity owning the changed collection, or null if the collection must
+     *  be evicted for every owner
+     *
+     * @return
+     *  a reference to this invalidation
+     */
+    public CacheInvalidation addCollection(String role, String ownerId) {
+        add(this.collections, role, ownerId);
+        return this;
+    }
+
+    /**
+     * Adds a cache region to be cleared in its entirety to this invalidation.
+     *
+     * @param region
+     *  the name of the region to clear
+     *
+     * @return
+     *  a reference to this invalidation
+     */
+    public CacheInvalidation addRegion(String region) {
+        this.regions.add(region);
+        return this;
+    }
+
+    /**
+     * Adds an invalidated entry of a node-local cache to this invalidation.
+     *
+     * @param cache
+     *  the name of the node-local cache
+     *
+     * @param key
+     *  the key of the invalidated entry, or null if every entry of the cache must be evicted
+     *
+     * @return
+     *  a reference to this invalidation
+     */
+    public CacheInvalidation addCacheEntry(String cache, String key) {
+        add(this.caches, cache, key);
+        return this;
+    }
+
+    /**
+     * Checks whether or not this invalidation requires anything to be evicted.
+     *
+     * @return
+     *  true if this invalidation is empty; false otherwise
+     */
+    @JsonIgnore
+    public boolean isEmpty() {
+        return this.entities.isEmpty() && this.collections.isEmpty() && this.regions.isEmpty() &&
+            this.caches.isEmpty();
+    }
+
+    private static void add(Map<String, Set<String>> target, String key, String id) {
+        Set<String> ids = target.get(key);
+
+        if (id == null) {
+            // Evicting everything supersedes any individual identifiers
+            ids = new HashSet<>();
+            target.put(key, ids);
+        }
+        else if (ids == null) {
+            ids = new HashSet<>();
+            ids.add(id);
+            target.put(key, ids);
+        }
+        else if (!ids.isEmpty()) {
+            ids.add(id);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return String.format("CacheInvalidation [origin: %s, entities: %s, collections: %s, regions: %s, " +
+            "caches: %s]", this.origin, this.entities, this.collections, this.regions, this.caches);
+    }
+
+}
@@ -0,0 +1,61 @@
+/**
+ * Copyright (c) 2009 - 2020 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.cache;
+
+import org.candlepin.messaging.CPMException;
+
+import java.util.function.Consumer;
+
+
+
+/**
+ * The CacheInvalidationTransport interface defines the means by which the nodes of a cluster
+ * exchange cache invalidations. Every invalidation published by any node is delivered to every
+ * subscriber, including those of the publishing node.
+ */
+public interface CacheInvalidationTransport {
+
+    /**
+     * Sends the given invalidation to every subscriber.
+     *
+     * @param invalidation
+     *  the invalidation to send
+     *
+     * @throws CPMException
+     *  if the invalidation cannot be sent
+     */
+    void publish(CacheInvalidation invalidation) throws CPMException;
+
+    /**
+     * Subscribes the given receiver to the invalidations published from this point on. The
+     * receiver may be called from any thread.
+     *
+     * @param receiver
+     *  the receiver to call for each invalidation received
+     *
+     * @throws CPMException
+     *  if the subscription cannot be created
+     */
+    void subscribe(Consumer<CacheInvalidation> receiver) throws CPMException;
+
+    /**
+     * Closes any subscriptions and connections held by this transport.
+     *
+     * @throws CPMException
+     *  if the transport cannot be closed
+     */
+    void close() throws CPMException;
+
+}
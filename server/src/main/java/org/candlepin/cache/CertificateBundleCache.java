@@ -0,0 +1,335 @@
+/**
+ * Copyright (c) 2009 - 2020 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.cache;
+
+import org.candlepin.common.config.Configuration;
+import org.candlepin.config.ConfigProperties;
+import org.candlepin.model.Certificate;
+import org.candlepin.model.EntitlementCertificate;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.inject.Inject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import javax.inject.Singleton;
+
+
+
+/**
+ * The CertificateBundleCache holds the compressed certificate bundles most recently served to
+ * consumers, so that a consumer whose certificates have not changed can be served its bundle
+ * without rebuilding it.
+ * <p></p>
+ * Bundles are content-addressed: each is identified by an entity tag computed from the serials of
+ * the certificates it contains, which callers compute from the consumer's current serials before
+ * looking the bundle up. A cached bundle is only returned if its tag matches, so a bundle is never
+ * served once the consumer's certificates have changed, and no explicit invalidation is needed.
+ * <p></p>
+ * The cache evicts the least recently used bundles once either the configured number of consumers
+ * or the configured total size of the bundles is exceeded.
+ */
+@Singleton
+public class CertificateBundleCache {
+
+    /** The directory in which entitlement certificates are stored within a bundle */
+    public static final String ENTITLEMENT_CERT_DIR = "entitlement_certificates/";
+
+    /** The directory in which content access certificates are stored within a bundle */
+    public static final String CONTENT_ACCESS_CERT_DIR = "content_access_certificates/";
+
+    /**
+     * An immutable, compressed archive of a consumer's certificates
+     */
+    public static class Bundle {
+        private final String etag;
+        private final byte[] data;
+        private final int certificates;
+
+        public Bundle(String etag, byte[] data, int certificates) {
+            if (etag == null) {
+                throw new IllegalArgumentException("etag is null");
+            }
+
+            if (data == null) {
+                throw new IllegalArgumentException("data is null");
+            }
+
+            this.etag = etag;
+            this.data = data;
+            this.certificates = certificates;
+        }
+
+        /**
+         * @return the entity tag identifying the contents of this bundle, without quotes
+         */
+        public String getETag() {
+            return this.etag;
+        }
+
+        /**
+         * @return the compressed archive; must not be modified
+         */
+        public byte[] getData() {
+            return this.data;
+        }
+
+        /**
+         * @return the size of the compressed archive, in bytes
+         */
+        public int getLength() {
+            return this.data.length;
+        }
+
+        /**
+         * @return the number of certificates in this bundle
+         */
+        public int getCertificateCount() {
+            return this.certificates;
+        }
+    }
+
+    private final int maxConsumers;
+    private final long maxBytes;
+    private final Map<String, Bundle> bundles;
+    private long footprint;
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+
+    @Inject
+    public CertificateBundleCache(Configuration config) {
+        if (config == null) {
+            throw new IllegalArgumentException("config is null");
+        }
+
+        this.maxConsumers = config.getInt(ConfigProperties.CERT_BUNDLE_CACHE_MAX_CONSUMERS);
+        this.maxBytes = config.getLong(ConfigProperties.CERT_BUNDLE_CACHE_MAX_BYTES);
+
+        // Access-ordered, so the least recently used bundles are evicted first
+        this.bundles = new LinkedHashMap<>(16, 0.75f, true);
+        this.hits = new AtomicLong();
+        this.misses = new AtomicLong();
+    }
+
+    /**
+     * Computes the entity tag of the bundle of the given certificates. The tag does not depend on
+     * the order of the serials. Content access certificates may change without receiving a new
+     * serial, so the content of such a certificate is included in its tag as well.
+     *
+     * @param serials
+     *  the serials of the entitlement certificates in the bundle
+     *
+     * @param contentAccessCert
+     *  the content access certificate in the bundle, or null if it has none
+     *
+     * @return
+     *  the entity tag of the bundle, without quotes
+     */
+    public static String computeETag(Collection<Long> serials, Certificate contentAccessCert) {
+        Hasher hasher = Hashing.sha256().newHasher();
+
+        if (serials != null) {
+            for (Long serial : new TreeSet<>(serials)) {
+                hasher.putLong(serial);
+            }
+        }
+
+        if (contentAccessCert != null) {
+            hasher.putBoolean(true)
+                .putLong(contentAccessCert.getSerial().getId())
+                .putString(contentAccessCert.getCert(), StandardCharsets.UTF_8);
+        }
+        else {
+            hasher.putBoolean(false);
+        }
+
+        return hasher.hash().toString();
+    }
+
+    /**
+     * Builds a bundle of the given certificates. Each certificate is stored in the archive as a
+     * PEM file named after its serial, containing both the certificate and its key, laid out in
+     * the same way as the entitlement certificate archive of the consumer export.
+     *
+     * @param etag
+     *  the entity tag of the bundle, as computed by {@link #computeETag}
+     *
+     * @param certificates
+     *  the certificates to add to the bundle
+     *
+     * @throws IOException
+     *  if the archive cannot be written
+     *
+     * @return
+     *  a new bundle of the given certificates
+     */
+    public static Bundle createBundle(String etag, Collection<? extends Certificate> certificates)
+        throws IOException {
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        int count = 0;
+
+        // Rebuilt bundles are served under the same tag, so they must be identical byte for byte;
+        // certificates are therefore added in serial order, with fixed timestamps
+        List<Certificate> sorted = new ArrayList<>(certificates);
+        sorted.sort(Comparator.comparing(cert -> cert.getSerial().getId()));
+
+        try (ZipOutputStream out = new ZipOutputStream(buffer)) {
+            out.setLevel(Deflater.BEST_COMPRESSION);
+
+            for (Certificate cert : sorted) {
+                String dir = cert instanceof EntitlementCertificate ?
+                    ENTITLEMENT_CERT_DIR :
+                    CONTENT_ACCESS_CERT_DIR;
+
+                ZipEntry entry = new ZipEntry(dir + cert.getSerial().getId() + ".pem");
+                entry.setTime(0);
+
+                out.putNextEntry(entry);
+                out.write(cert.getCert().getBytes(StandardCharsets.UTF_8));
+                out.write(cert.getKey().getBytes(StandardCharsets.UTF_8));
+                out.closeEntry();
+
+                ++count;
+            }
+        }
+
+        return new Bundle(etag, buffer.toByteArray(), count);
+    }
+
+    /**
+     * Checks whether or not bundles are being cached at all.
+     *
+     * @return
+     *  true if this cache is enabled; false otherwise
+     */
+    public boolean isEnabled() {
+        return this.maxConsumers > 0;
+    }
+
+    /**
+     * Fetches the cached bundle of the specified consumer, provided it has the given entity tag.
+     *
+     * @param consumerUuid
+     *  the UUID of the consumer for which to fetch a bundle
+     *
+     * @param etag
+     *  the entity tag of the consumer's current certificates
+     *
+     * @return
+     *  the cached bundle of the consumer, or null if it is not cached or has a different tag
+     */
+    public Bundle get(String consumerUuid, String etag) {
+        if (!this.isEnabled() || consumerUuid == null || etag == null) {
+            return null;
+        }
+
+        Bundle bundle;
+        synchronized (this.bundles) {
+            bundle = this.bundles.get(consumerUuid);
+        }
+
+        if (bundle != null && etag.equals(bundle.getETag())) {
+            this.hits.incrementAndGet();
+            return bundle;
+        }
+
+        this.misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Caches the bundle of the specified consumer, replacing any bundle already cached for it.
+     * Bundles larger than the configured size limit of the entire cache are not cached.
+     *
+     * @param consumerUuid
+     *  the UUID of the consumer for which to cache a bundle
+     *
+     * @param bundle
+     *  the bundle to cache
+     */
+    public void put(String consumerUuid, Bundle bundle) {
+        if (!this.isEnabled() || consumerUuid == null || bundle == null ||
+            bundle.getLength() > this.maxBytes) {
+
+            return;
+        }
+
+        synchronized (this.bundles) {
+            Bundle previous = this.bundles.put(consumerUuid, bundle);
+            this.footprint += bundle.getLength() - (previous != null ? previous.getLength() : 0);
+
+            Iterator<Bundle> iterator = this.bundles.values().iterator();
+            while (iterator.hasNext() &&
+                (this.bundles.size() > this.maxConsumers || this.footprint > this.maxBytes)) {
+
+                this.footprint -= iterator.next().getLength();
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Discards the cached bundle of the specified consumer, if any.
+     *
+     * @param consumerUuid
+     *  the UUID of the consumer for which to discard the bundle
+     */
+    public void evict(String consumerUuid) {
+        if (consumerUuid != null) {
+            synchronized (this.bundles) {
+                Bundle previous = this.bundles.remove(consumerUuid);
+                if (previous != null) {
+                    this.footprint -= previous.getLength();
+                }
+            }
+        }
+    }
+
+    public int size() {
+        synchronized (this.bundles) {
+            return this.bundles.size();
+        }
+    }
+
+    public long getFootprint() {
+        synchronized (this.bundles) {
+            return this.footprint;
+        }
+    }
+
+    public long getHits() {
+        return this.hits.get();
+    }
+
+    public long getMisses() {
+        return this.misses.get();
+    }
+}
@@ -0,0 +1,484 @@
+/**
+ * Copyright (c) 2009 - 2020 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.cache;
+
+import org.candlepin.common.config.Configuration;
+import org.candlepin.config.ConfigProperties;
+
+import com.google.inject.Inject;
+
+import org.hibernate.Cache;
+import org.hibernate.Transaction;
+import org.hibernate.collection.spi.PersistentCollection;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.AbstractCollectionEvent;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostCollectionRecreateEvent;
+import org.hibernate.event.spi.PostCollectionRecreateEventListener;
+import org.hibernate.event.spi.PostCollectionRemoveEvent;
+import org.hibernate.event.spi.PostCollectionRemoveEventListener;
+import org.hibernate.event.spi.PostCollectionUpdateEvent;
+import org.hibernate.event.spi.PostCollectionUpdateEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.persister.collection.CollectionPersister;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.resource.transaction.spi.TransactionStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
+
+import javax.inject.Singleton;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+
+
+
+/**
+ * The ClusterCacheInvalidator keeps the caches of the nodes of a cluster coherent, by broadcasting
+ * the cached data each node changes to the other nodes, which then evict their own copies.
+ * <p></p>
+ * Changes to entities and collections stored in the Hibernate second-level cache are collected
+ * from Hibernate events for the duration of a transaction, and published in a single
+ * {@link CacheInvalidation} once it commits; rolled back changes are never published. Named cache
+ * regions, such as those listed in {@link CandlepinCacheRegions}, may be cleared cluster-wide
+ * through {@link #invalidateRegion(String)}. As query results may depend on any changed entity, receiving
+ * entity or collection changes also evicts the cached query results. Node-local caches, such as
+ * the per-owner indexes, register themselves through {@link #registerNodeCache(String, Consumer)}
+ * and publish the entries they invalidate through {@link #invalidateNodeCache(String, String)}.
+ * <p></p>
+ * Invalidation is asynchronous: another node may serve a cached copy for as long as it takes the
+ * invalidation to reach it, and invalidations lost while a node is disconnected are only made
+ * good by the expiration of the node's caches. Nothing is broadcast unless cluster invalidation is
+ * enabled in the configuration.
+ */
+@Singleton
+public class ClusterCacheInvalidator {
+    private static Logger log = LoggerFactory.getLogger(ClusterCacheInvalidator.class);
+
+    /** The states in which a transaction will still notify registered synchronizations */
+    private static final TransactionStatus[] ACTIVE_STATES = {
+        TransactionStatus.ACTIVE, TransactionStatus.MARKED_ROLLBACK
+    };
+
+    /**
+     * The changes made by a single transaction, published once it commits
+     */
+    private class PendingChanges implements Synchronization {
+        private final CacheInvalidation invalidation = new CacheInvalidation(nodeId);
+
+        @Override
+        public void beforeCompletion() {
+            // Intentionally left empty
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            if (pending.get() == this) {
+                pending.remove();
+            }
+
+            if (status == Status.STATUS_COMMITTED) {
+                publish(this.invalidation);
+            }
+        }
+    }
+
+    /**
+     * Hibernate event listener collecting changes to cached entities and collections
+     */
+    private class CacheListener implements PostInsertEventListener, PostUpdateEventListener,
+        PostDeleteEventListener, PostCollectionRecreateEventListener, PostCollectionUpdateEventListener,
+        PostCollectionRemoveEventListener {
+
+        @Override
+        public void onPostInsert(PostInsertEvent event) {
+            this.onEntityChange(event.getSession(), event.getPersister(), event.getId());
+        }
+
+        @Override
+        public void onPostUpdate(PostUpdateEvent event) {
+            this.onEntityChange(event.getSession(), event.getPersister(), event.getId());
+        }
+
+        @Override
+        public void onPostDelete(PostDeleteEvent event) {
+            this.onEntityChange(event.getSession(), event.getPersister(), event.getId());
+        }
+
+        @Override
+        public void onPostRecreateCollection(PostCollectionRecreateEvent event) {
+            this.onCollectionChange(event);
+        }
+
+        @Override
+        public void onPostUpdateCollection(PostCollectionUpdateEvent event) {
+            this.onCollectionChange(event);
+        }
+
+        @Override
+        public void onPostRemoveCollection(PostCollectionRemoveEvent event) {
+            this.onCollectionChange(event);
+        }
+
+        @Override
+        public boolean requiresPostCommitHanding(EntityPersister persister) {
+            return false;
+        }
+
+        private void onEntityChange(EventSource session, EntityPersister persister, Serializable id) {
+            if (persister != null && persister.hasCache()) {
+                CacheInvalidation invalidation = getPendingInvalidation(session);
+                invalidation.addEntity(persister.getEntityName(), toKey(id));
+
+                if (pending.get() == null) {
+                    publish(invalidation);
+                }
+            }
+        }
+
+        private void onCollectionChange(AbstractCollectionEvent event) {
+            PersistentCollection collection = event.getCollection();
+            String role = collection != null ? collection.getRole() : null;
+            EventSource session = event.getSession();
+
+            if (role == null || session == null) {
+                return;
+            }
+
+            CollectionPersister persister = session.getFactory().getMetamodel().collectionPersister(role);
+            if (persister != null && persister.hasCache()) {
+                CacheInvalidation invalidation = getPendingInvalidation(session);
+                invalidation.addCollection(role, toKey(event.getAffectedOwnerIdOrNull()));
+
+                if (pending.get() == null) {
+                    publish(invalidation);
+                }
+            }
+        }
+    }
+
+    private final boolean enabled;
+    private final String nodeId;
+    private final CacheInvalidationTransport transport;
+    private final ThreadLocal<PendingChanges> pending;
+    private final ConcurrentMap<String, Consumer<String>> nodeCaches;
+    private volatile Cache hibernateCache;
+    private volatile boolean started;
+
+    @Inject
+    public ClusterCacheInvalidator(Configuration config, CacheInvalidationTransport transport) {
+        if (config == null) {
+            throw new IllegalArgumentException("config is null");
+        }
+
+        if (transport == null) {
+            throw new IllegalArgumentException("transport is null");
+        }
+
+        this.enabled = config.getBoolean(ConfigProperties.CACHE_CLUSTER_INVALIDATION_ENABLED);
+        this.nodeId = UUID.randomUUID().toString();
+        this.transport = transport;
+        this.pending = new ThreadLocal<>();
+        this.nodeCaches = new ConcurrentHashMap<>();
+        this.started = false;
+    }
+
+    /**
+     * Registers the listeners which collect changes to cached entities with the given Hibernate
+     * event listener registry, and sets the second-level cache from which the changes received from
+     * other nodes are evicted. If cluster invalidation is disabled, no listeners are registered.
+     *
+     * @param registry
+     *  the event listener registry of the session factory
+     *
+     * @param hibernateCache
+     *  the second-level cache of the session factory
+     */
+    public void registerListeners(EventListenerRegistry registry, Cache hibernateCache) {
+        if (registry == null) {
+            throw new IllegalArgumentException("registry is null");
+        }
+
+        if (hibernateCache == null) {
+            throw new IllegalArgumentException("hibernateCache is null");
+        }
+
+        this.hibernateCache = hibernateCache;
+
+        if (!this.enabled) {
+            return;
+        }
+
+        CacheListener listener = new CacheListener();
+        registry.getEventListenerGroup(EventType.POST_INSERT).appendListener(listener);
+        registry.getEventListenerGroup(EventType.POST_UPDATE).appendListener(listener);
+        registry.getEventListenerGroup(EventType.POST_DELETE).appendListener(listener);
+        registry.getEventListenerGroup(EventType.POST_COLLECTION_RECREATE).appendListener(listener);
+        registry.getEventListenerGroup(EventType.POST_COLLECTION_UPDATE).appendListener(listener);
+        registry.getEventListenerGroup(EventType.POST_COLLECTION_REMOVE).appendListener(listener);
+    }
+
+    /**
+     * Subscribes to the invalidations published by the other nodes of the cluster. If cluster
+     * invalidation is disabled, this method does nothing. If the subscription cannot be created, an
+     * error is logged, and this node's caches will not be invalidated by other nodes.
+     */
+    public synchronized void start() {
+        if (!this.enabled || this.started) {
+            return;
+        }
+
+        try {
+            this.transport.subscribe(this::receive);
+            this.started = true;
+
+            log.info("Cluster cache invalidation started for node: {}", this.nodeId);
+        }
+        catch (Exception e) {
+            log.error("Unable to subscribe to cluster cache invalidations; caches of this node " +
+                "will not be invalidated by changes made on other nodes", e);
+        }
+    }
+
+    /**
+     * Stops receiving invalidations from other nodes, and closes the transport.
+     */
+    public synchronized void shutdown() {
+        if (!this.started) {
+            return;
+        }
+
+        try {
+            this.transport.close();
+        }
+        catch (Exception e) {
+            log.warn("Unable to close cluster cache invalidation transport", e);
+        }
+
+        this.started = false;
+    }
+
+    /**
+     * Clears the named cache region on this node and, if cluster invalidation is enabled, on every
+     * other node of the cluster. If the current transaction has already changed cached entities,
+     * the other nodes are notified along with those changes once it commits; otherwise they are
+     * notified immediately.
+     *
+     * @param region
+     *  the name of the cache region to clear
+     */
+    public void invalidateRegion(String region) {
+        if (region == null) {
+            throw new IllegalArgumentException("region is null");
+        }
+
+        this.clearRegion(region);
+
+        if (this.enabled) {
+            PendingChanges changes = this.pending.get();
+
+            if (changes != null) {
+                changes.invalidation.addRegion(region);
+            }
+            else {
+                this.publish(new CacheInvalidation(this.nodeId).addRegion(region));
+            }
+        }
+    }
+
+    /**
+     * Registers a node-local cache, whose entries are evicted whenever another node of the cluster
+     * invalidates them through {@link #invalidateNodeCache(String, String)}.
+     *
+     * @param cache
+     *  the name identifying the cache on every node of the cluster
+     *
+     * @param evictor
+     *  the callback evicting the entry with the given key from the cache of this node, or every
+     *  entry of the cache if the key is null
+     */
+    public void registerNodeCache(String cache, Consumer<String> evictor) {
+        if (cache == null) {
+            throw new IllegalArgumentException("cache is null");
+        }
+
+        if (evictor == null) {
+            throw new IllegalArgumentException("evictor is null");
+        }
+
+        this.nodeCaches.put(cache, evictor);
+    }
+
+    /**
+     * Publishes the invalidation of an entry of a node-local cache to the other nodes of the
+     * cluster. The cache of this node is not affected, and the invalidation is published
+     * immediately, so this should only be called once the change which invalidated the entry has
+     * been committed. If cluster invalidation is disabled, this method does nothing.
+     *
+     * @param cache
+     *  the name of the node-local cache
+     *
+     * @param key
+     *  the key of the invalidated entry, or null to invalidate every entry of the cache
+     */
+    public void invalidateNodeCache(String cache, String key) {
+        if (cache == null) {
+            throw new IllegalArgumentException("cache is null");
+        }
+
+        if (this.enabled) {
+            this.publish(new CacheInvalidation(this.nodeId).addCacheEntry(cache, key));
+        }
+    }
+
+    /**
+     * Fetches the invalidation collecting the changes of the session's current transaction, or a
+     * new invalidation to be published immediately if there is no active transaction.
+     */
+    private CacheInvalidation getPendingInvalidation(EventSource session) {
+        PendingChanges changes = this.pending.get();
+
+        if (changes == null) {
+            Transaction transaction = session != null ? session.getTransaction() : null;
+
+            if (transaction == null || !transaction.getStatus().isOneOf(ACTIVE_STATES)) {
+                return new CacheInvalidation(this.nodeId);
+            }
+
+            changes = new PendingChanges();
+            transaction.registerSynchronization(changes);
+            this.pending.set(changes);
+        }
+
+        return changes.invalidation;
+    }
+
+    private void publish(CacheInvalidation invalidation) {
+        if (invalidation.isEmpty()) {
+            return;
+        }
+
+        try {
+            this.transport.publish(invalidation);
+            log.debug("Published cache invalidation: {}", invalidation);
+        }
+        catch (Exception e) {
+            // The changes are already committed; other nodes will serve stale data until their
+            // caches expire.
+            log.warn("Unable to publish cache invalidation: {}", invalidation, e);
+        }
+    }
+
+    /**
+     * Evicts the data described by an invalidation received from the cluster. Invalidations
+     * published by this node are ignored, as its own caches are already up to date.
+     *
+     * @param invalidation
+     *  the invalidation to process
+     */
+    private void receive(CacheInvalidation invalidation) {
+        if (invalidation == null || this.nodeId.equals(invalidation.getOrigin())) {
+            return;
+        }
+
+        log.debug("Received cache invalidation: {}", invalidation);
+
+        Cache cache = this.hibernateCache;
+        if (cache != null) {
+            for (Map.Entry<String, Set<String>> entry : invalidation.getEntities().entrySet()) {
+                if (entry.getValue().isEmpty()) {
+                    cache.evictEntityData(entry.getKey());
+                }
+                else {
+                    for (String id : entry.getValue()) {
+                        cache.evictEntityData(entry.getKey(), id);
+                    }
+                }
+            }
+
+            for (Map.Entry<String, Set<String>> entry : invalidation.getCollections().entrySet()) {
+                if (entry.getValue().isEmpty()) {
+                    cache.evictCollectionData(entry.getKey());
+                }
+                else {
+                    for (String ownerId : entry.getValue()) {
+                        cache.evictCollectionData(entry.getKey(), ownerId);
+                    }
+                }
+            }
+
+            if (!invalidation.getEntities().isEmpty() || !invalidation.getCollections().isEmpty()) {
+                cache.evictQueryRegions();
+            }
+        }
+
+        for (String region : invalidation.getRegions()) {
+            this.clearRegion(region);
+        }
+
+        for (Map.Entry<String, Set<String>> entry : invalidation.getCaches().entrySet()) {
+            Consumer<String> evictor = this.nodeCaches.get(entry.getKey());
+            if (evictor == null) {
+                continue;
+            }
+
+            if (entry.getValue().isEmpty()) {
+                evictor.accept(null);
+            }
+            else {
+                entry.getValue().forEach(evictor);
+            }
+        }
+    }
+
+    private void clearRegion(String region) {
+        Cache cache = this.hibernateCache;
+
+        if (cache != null) {
+            cache.evictRegion(region);
+        }
+    }
+
+    /**
+     * Converts an identifier to the form in which it is sent to other nodes. Only string
+     * identifiers can be evicted individually; anything else requires the whole entity or
+     * collection to be evicted, indicated by a null key.
+     */
+    private static String toKey(Serializable id) {
+        return id instanceof String ? (String) id : null;
+    }
+
+    public String getNodeId() {
+        return this.nodeId;
+    }
+
+    public boolean isStarted() {
+        return this.started;
+    }
+
+}
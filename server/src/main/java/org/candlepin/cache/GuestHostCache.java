@@ -0,0 +1,566 @@
+/**
+ * Copyright (c) 2009 - 2020 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.cache;
+
+import org.candlepin.common.config.Configuration;
+import org.candlepin.config.ConfigProperties;
+import org.candlepin.model.Consumer;
+import org.candlepin.model.GuestId;
+
+import com.google.inject.Inject;
+
+import org.hibernate.Transaction;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.resource.transaction.spi.TransactionStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import javax.inject.Singleton;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+
+
+
+/**
+ * The GuestHostCache maintains a per-owner index of guest IDs to the host consumers which have
+ * reported them, allowing host resolution for virtual guests to be performed in memory.
+ * <p></p>
+ * Each owner's index is loaded lazily on first use, and is then maintained incrementally from the
+ * Hibernate events of the {@link GuestId} entity: changes made in a transaction are applied to
+ * the index once the transaction commits, while a rollback discards the affected owners' indexes.
+ * Until the transaction completes, the thread making the changes is told the index for the
+ * affected owners is unavailable, so it falls back to the database and sees its own changes.
+ * <p></p>
+ * The indexes are held by each node. Once a transaction commits, the owners it changed are
+ * published through the {@link ClusterCacheInvalidator}, so the other nodes of a cluster discard
+ * their indexes for those owners. Indexes are also reloaded once they reach their maximum age.
+ * <p></p>
+ * The cache only serves lookups once its listeners have been registered with Hibernate through
+ * {@link #registerListeners(EventListenerRegistry)}, as it would otherwise have no way to learn
+ * of changes.
+ */
+@Singleton
+public class GuestHostCache {
+    private static Logger log = LoggerFactory.getLogger(GuestHostCache.class);
+
+    /** The name identifying this cache to the cluster cache invalidator */
+    public static final String CACHE_NAME = "guest_host";
+
+    /** The states in which a transaction will still notify registered synchronizations */
+    private static final TransactionStatus[] ACTIVE_STATES = {
+        TransactionStatus.ACTIVE, TransactionStatus.MARKED_ROLLBACK
+    };
+
+    /**
+     * The guest-to-host index of a single owner. Each guest ID maps to an immutable map of the
+     * host consumer IDs reporting it, to the time of their most recent report.
+     */
+    private static class OwnerIndex {
+        private final ConcurrentMap<String, Map<String, Long>> guests;
+        private final long loaded;
+        private volatile long version;
+        private volatile long lastAccess;
+
+        public OwnerIndex(long version) {
+            this.guests = new ConcurrentHashMap<>();
+            this.version = version;
+            this.loaded = System.nanoTime();
+            this.lastAccess = this.loaded;
+        }
+
+        public void put(String guestId, String hostId, long updated) {
+            this.guests.compute(guestId, (key, hosts) -> {
+                Map<String, Long> output = hosts != null ? new HashMap<>(hosts) : new HashMap<>();
+                output.merge(hostId, updated, Math::max);
+
+                return Collections.unmodifiableMap(output);
+            });
+        }
+
+        public void remove(String guestId, String hostId) {
+            this.guests.computeIfPresent(guestId, (key, hosts) -> {
+                Map<String, Long> output = new HashMap<>(hosts);
+                output.remove(hostId);
+
+                return output.isEmpty() ? null : Collections.unmodifiableMap(output);
+            });
+        }
+    }
+
+    /**
+     * A single change to the guest IDs reported by a host
+     */
+    private static class Change {
+        private final String ownerId;
+        private final String guestId;
+        private final String hostId;
+        private final long updated;
+        private final boolean removed;
+
+        public Change(String ownerId, String guestId, String hostId, long updated, boolean removed) {
+            this.ownerId = ownerId;
+            this.guestId = guestId;
+            this.hostId = hostId;
+            this.updated = updated;
+            this.removed = removed;
+        }
+    }
+
+    /**
+     * The changes made by a single transaction, applied or discarded once it completes
+     */
+    private class PendingChanges implements Synchronization {
+        private final Set<String> owners = new HashSet<>();
+        private final Set<String> invalidated = new HashSet<>();
+        private final List<Change> changes = new ArrayList<>();
+
+        @Override
+        public void beforeCompletion() {
+            // Intentionally left empty
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            if (pending.get() == this) {
+                pending.remove();
+            }
+
+            if (status == Status.STATUS_COMMITTED) {
+                apply(this.changes, this.invalidated);
+                publish(this.owners);
+            }
+            else {
+                // Nothing changed, but an index built in the meantime may have seen the changes
+                apply(Collections.emptyList(), this.owners);
+            }
+        }
+    }
+
+    /**
+     * Hibernate event listener forwarding changes to guest IDs to the cache
+     */
+    private class GuestIdListener implements PostInsertEventListener, PostUpdateEventListener,
+        PostDeleteEventListener {
+
+        @Override
+        public void onPostInsert(PostInsertEvent event) {
+            if (event.getEntity() instanceof GuestId) {
+                GuestId guestId = (GuestId) event.getEntity();
+                record(event.getSession(), guestId.getConsumer(), toLower(guestId.getGuestId()),
+                    guestId.getUpdated(), false);
+            }
+        }
+
+        @Override
+        public void onPostUpdate(PostUpdateEvent event) {
+            if (event.getEntity() instanceof GuestId) {
+                GuestId guestId = (GuestId) event.getEntity();
+                Object[] oldState = event.getOldState();
+
+                if (oldState != null) {
+                    String[] properties = event.getPersister().getPropertyNames();
+
+                    for (int i = 0; i < properties.length; ++i) {
+                        if ("consumer".equals(properties[i]) && oldState[i] instanceof Consumer) {
+                            Consumer previous = (Consumer) oldState[i];
+                            record(event.getSession(), previous, getOldGuestId(properties, oldState),
+                                null, true);
+                        }
+                    }
+                }
+                else {
+                    // We don't know where this guest used to be; start over for the owner
+                    invalidate(event.getSession(), guestId.getConsumer());
+                }
+
+                record(event.getSession(), guestId.getConsumer(), toLower(guestId.getGuestId()),
+                    guestId.getUpdated(), false);
+            }
+        }
+
+        @Override
+        public void onPostDelete(PostDeleteEvent event) {
+            if (event.getEntity() instanceof GuestId) {
+                GuestId guestId = (GuestId) event.getEntity();
+                record(event.getSession(), guestId.getConsumer(), toLower(guestId.getGuestId()),
+                    null, true);
+            }
+        }
+
+        @Override
+        public boolean requiresPostCommitHanding(EntityPersister persister) {
+            return false;
+        }
+
+        private String getOldGuestId(String[] properties, Object[] oldState) {
+            for (int i = 0; i < properties.length; ++i) {
+                if ("guestIdLower".equals(properties[i])) {
+                    return (String) oldState[i];
+                }
+            }
+
+            return null;
+        }
+    }
+
+    private final int maxOwners;
+    private final long maxAge;
+    private final ClusterCacheInvalidator clusterInvalidator;
+    private final ConcurrentMap<String, OwnerIndex> entries;
+    private final ConcurrentMap<String, AtomicLong> versions;
+    private final ThreadLocal<PendingChanges> pending;
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+    private volatile boolean listening;
+
+    @Inject
+    public GuestHostCache(Configuration config, ClusterCacheInvalidator clusterInvalidator) {
+        if (config == null) {
+            throw new IllegalArgumentException("config is null");
+        }
+
+        if (clusterInvalidator == null) {
+            throw new IllegalArgumentException("clusterInvalidator is null");
+        }
+
+        this.maxOwners = config.getInt(ConfigProperties.GUEST_HOST_CACHE_MAX_OWNERS);
+        this.maxAge = TimeUnit.SECONDS.toNanos(config.getLong(ConfigProperties.GUEST_HOST_CACHE_MAX_AGE));
+        this.clusterInvalidator = clusterInvalidator;
+        this.entries = new ConcurrentHashMap<>();
+        this.versions = new ConcurrentHashMap<>();
+        this.pending = new ThreadLocal<>();
+        this.hits = new AtomicLong();
+        this.misses = new AtomicLong();
+        this.listening = false;
+
+        this.clusterInvalidator.registerNodeCache(CACHE_NAME, this::evictOwner);
+    }
+
+    /**
+     * Registers the listeners which keep this cache up to date with the given Hibernate event
+     * listener registry. Lookups are not served until the listeners are registered.
+     *
+     * @param registry
+     *  the event listener registry of the session factory backing the guest IDs
+     */
+    public void registerListeners(EventListenerRegistry registry) {
+        if (registry == null) {
+            throw new IllegalArgumentException("registry is null");
+        }
+
+        GuestIdListener listener = new GuestIdListener();
+        registry.getEventListenerGroup(EventType.POST_INSERT).appendListener(listener);
+        registry.getEventListenerGroup(EventType.POST_UPDATE).appendListener(listener);
+        registry.getEventListenerGroup(EventType.POST_DELETE).appendListener(listener);
+
+        this.listening = true;
+    }
+
+    /**
+     * Checks whether or not the index for the given owner may be used by the current thread. The
+     * index is unavailable if the cache is disabled, or if the current transaction has made
+     * changes to the owner's guest IDs which have not yet been committed.
+     *
+     * @param ownerId
+     *  the ID of the owner to check
+     *
+     * @return
+     *  true if host lookups for the owner may be performed with this cache; false otherwise
+     */
+    public boolean isAvailable(String ownerId) {
+        if (!this.listening || this.maxOwners < 1 || ownerId == null) {
+            return false;
+        }
+
+        PendingChanges changes = this.pending.get();
+        return changes == null || !changes.owners.contains(ownerId);
+    }
+
+    /**
+     * Fetches the ID of the host consumer which most recently reported any of the given guest IDs
+     * in the specified owner. If the owner's index has not yet been loaded, it is loaded with the
+     * given loader, which must return a row of guest ID (lower case), host consumer ID and last
+     * update time for each guest ID of the owner.
+     * <p></p>
+     * Callers must check {@link #isAvailable(String)} before using this method.
+     *
+     * @param ownerId
+     *  the ID of the owner in which to look up the guest
+     *
+     * @param guestIds
+     *  the possible forms of the guest ID to look up
+     *
+     * @param loader
+     *  a function loading the guest ID rows of an owner from the database
+     *
+     * @return
+     *  the ID of the host consumer of the guest, or null if the guest has not been reported by any
+     *  host
+     */
+    public String getHostId(String ownerId, Collection<String> guestIds,
+        Function<String, List<Object[]>> loader) {
+
+        if (ownerId == null) {
+            throw new IllegalArgumentException("ownerId is null");
+        }
+
+        if (loader == null) {
+            throw new IllegalArgumentException("loader is null");
+        }
+
+        OwnerIndex index = this.entries.get(ownerId);
+        if (index != null && System.nanoTime() - index.loaded >= this.maxAge) {
+            log.debug("Guest-to-host index for owner {} has expired", ownerId);
+            this.entries.remove(ownerId, index);
+            index = null;
+        }
+
+        if (index != null) {
+            this.hits.incrementAndGet();
+            index.lastAccess = System.nanoTime();
+        }
+        else {
+            this.misses.incrementAndGet();
+            index = this.load(ownerId, loader);
+        }
+
+        String hostId = null;
+        long latest = Long.MIN_VALUE;
+
+        if (guestIds != null) {
+            for (String guestId : guestIds) {
+                Map<String, Long> hosts = guestId != null ?
+                    index.guests.get(guestId.toLowerCase()) :
+                    null;
+
+                if (hosts != null) {
+                    for (Map.Entry<String, Long> entry : hosts.entrySet()) {
+                        if (entry.getValue() > latest) {
+                            hostId = entry.getKey();
+                            latest = entry.getValue();
+                        }
+                    }
+                }
+            }
+        }
+
+        return hostId;
+    }
+
+    private OwnerIndex load(String ownerId, Function<String, List<Object[]>> loader) {
+        long version = this.getVersion(ownerId);
+        long start = System.currentTimeMillis();
+
+        OwnerIndex index = new OwnerIndex(version);
+        List<Object[]> rows = loader.apply(ownerId);
+
+        if (rows != null) {
+            for (Object[] row : rows) {
+                index.put((String) row[0], (String) row[1], toMillis((Date) row[2]));
+            }
+        }
+
+        log.debug("Loaded guest-to-host index for owner {} in {}ms: {} guests", ownerId,
+            System.currentTimeMillis() - start, index.guests.size());
+
+        synchronized (this) {
+            // Only publish the index if no changes for the owner were committed while we were
+            // loading it; otherwise it may be missing them.
+            if (this.getVersion(ownerId) == version) {
+                this.entries.put(ownerId, index);
+                this.evict();
+            }
+        }
+
+        return index;
+    }
+
+    private void record(EventSource session, Consumer host, String guestId, Date updated,
+        boolean removed) {
+
+        if (host == null || host.getOwnerId() == null || guestId == null) {
+            return;
+        }
+
+        Change change = new Change(host.getOwnerId(), guestId, host.getId(), toMillis(updated), removed);
+        PendingChanges changes = this.getPendingChanges(session);
+
+        if (changes != null) {
+            changes.owners.add(change.ownerId);
+            changes.changes.add(change);
+        }
+        else {
+            this.apply(Collections.singletonList(change), Collections.emptySet());
+            this.publish(Collections.singleton(change.ownerId));
+        }
+    }
+
+    private void invalidate(EventSource session, Consumer host) {
+        if (host == null || host.getOwnerId() == null) {
+            return;
+        }
+
+        PendingChanges changes = this.getPendingChanges(session);
+
+        if (changes != null) {
+            changes.owners.add(host.getOwnerId());
+            changes.invalidated.add(host.getOwnerId());
+        }
+        else {
+            this.apply(Collections.emptyList(), Collections.singleton(host.getOwnerId()));
+            this.publish(Collections.singleton(host.getOwnerId()));
+        }
+    }
+
+    private PendingChanges getPendingChanges(EventSource session) {
+        PendingChanges changes = this.pending.get();
+
+        if (changes == null) {
+            Transaction transaction = session != null ? session.getTransaction() : null;
+
+            if (transaction == null || !transaction.getStatus().isOneOf(ACTIVE_STATES)) {
+                return null;
+            }
+
+            changes = new PendingChanges();
+            transaction.registerSynchronization(changes);
+            this.pending.set(changes);
+        }
+
+        return changes;
+    }
+
+    /**
+     * Applies the given committed changes to the loaded indexes, and discards the indexes of the
+     * given owners. Each affected owner's version is bumped, so an index being loaded concurrently
+     * will not be published.
+     */
+    private synchronized void apply(Collection<Change> changes, Collection<String> invalidated) {
+        for (String ownerId : invalidated) {
+            this.versions.computeIfAbsent(ownerId, key -> new AtomicLong()).incrementAndGet();
+            this.entries.remove(ownerId);
+        }
+
+        for (Change change : changes) {
+            long version = this.versions.computeIfAbsent(change.ownerId, key -> new AtomicLong())
+                .incrementAndGet();
+
+            OwnerIndex index = this.entries.get(change.ownerId);
+            if (index != null) {
+                if (change.removed) {
+                    index.remove(change.guestId, change.hostId);
+                }
+                else {
+                    index.put(change.guestId, change.hostId, change.updated);
+                }
+
+                index.version = version;
+            }
+        }
+    }
+
+    /**
+     * Discards the index of the given owner, or of every owner if the owner ID is null, after
+     * another node of the cluster committed changes to its guest IDs.
+     */
+    private synchronized void evictOwner(String ownerId) {
+        Collection<String> owners = ownerId != null ?
+            Collections.singleton(ownerId) :
+            new ArrayList<>(this.versions.keySet());
+
+        this.apply(Collections.emptyList(), owners);
+    }
+
+    /**
+     * Publishes the owners whose guest IDs have been committed to the other nodes of the cluster
+     */
+    private void publish(Collection<String> owners) {
+        for (String ownerId : owners) {
+            this.clusterInvalidator.invalidateNodeCache(CACHE_NAME, ownerId);
+        }
+    }
+
+    private long getVersion(String ownerId) {
+        return this.versions.computeIfAbsent(ownerId, key -> new AtomicLong()).get();
+    }
+
+    /**
+     * Evicts the least recently used indexes until the cache is back within its owner limit.
+     * Must be called while holding the cache lock.
+     */
+    private void evict() {
+        if (this.entries.size() <= this.maxOwners) {
+            return;
+        }
+
+        List<Map.Entry<String, OwnerIndex>> candidates = new ArrayList<>(this.entries.entrySet());
+        candidates.sort(Comparator.comparingLong(entry -> entry.getValue().lastAccess));
+
+        for (Map.Entry<String, OwnerIndex> entry : candidates) {
+            if (this.entries.size() <= this.maxOwners) {
+                break;
+            }
+
+            this.entries.remove(entry.getKey());
+            log.debug("Evicted guest-to-host index for owner: {}", entry.getKey());
+        }
+    }
+
+    private static String toLower(String guestId) {
+        return guestId != null ? guestId.toLowerCase() : null;
+    }
+
+    private static long toMillis(Date date) {
+        return date != null ? date.getTime() : System.currentTimeMillis();
+    }
+
+    public int size() {
+        return this.entries.size();
+    }
+
+    public long getHits() {
+        return this.hits.get();
+    }
+
+    public long getMisses() {
+        return this.misses.get();
+    }
+
+}
@@ -0,0 +1,167 @@
+/**
+ * Copyright (c) 2009 - 2020 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.cache;
+
+import org.candlepin.messaging.CPMConsumerConfig;
+import org.candlepin.messaging.CPMException;
+import org.candlepin.messaging.CPMMessage;
+import org.candlepin.messaging.CPMProducer;
+import org.candlepin.messaging.CPMSession;
+import org.candlepin.messaging.CPMSessionConfig;
+import org.candlepin.messaging.CPMSessionFactory;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+
+
+/**
+ * CacheInvalidationTransport implementation which sends invalidations through the configured
+ * messaging provider. Invalidations are sent as non-durable messages to a multicast address, to
+ * which each subscriber binds its own temporary queue.
+ * <p></p>
+ * For the invalidations to reach every node of a cluster, the nodes must share a broker; nodes
+ * each running their own embedded broker will only receive their own invalidations.
+ */
+@Singleton
+public class MessagingCacheInvalidationTransport implements CacheInvalidationTransport {
+    private static Logger log = LoggerFactory.getLogger(MessagingCacheInvalidationTransport.class);
+
+    private static final String CACHE_INVALIDATION_ADDRESS = "cache.invalidation";
+
+    private final CPMSessionFactory cpmSessionFactory;
+    private final ObjectMapper mapper;
+
+    private CPMSession session;
+    private CPMProducer producer;
+    private final List<CPMSession> subscriptions;
+
+    /**
+     * Creates a new transport sending invalidations through the given session factory
+     *
+     * @param cpmSessionFactory
+     *  the session factory to create messaging sessions
+     *
+     * @param mapper
+     *  the object mapper to use to serialize and deserialize invalidations
+     */
+    @Inject
+    public MessagingCacheInvalidationTransport(CPMSessionFactory cpmSessionFactory, ObjectMapper mapper) {
+        this.cpmSessionFactory = Objects.requireNonNull(cpmSessionFactory);
+        this.mapper = Objects.requireNonNull(mapper);
+        this.subscriptions = new ArrayList<>();
+    }
+
+    /**
+     * Creates a new non-transactional session. Invalidations are only published once the changes
+     * they describe are committed, so they need no transaction of their own.
+     */
+    private CPMSession createSession() throws CPMException {
+        CPMSessionConfig config = this.cpmSessionFactory.createSessionConfig()
+            .setTransactional(false);
+
+        return this.cpmSessionFactory.createSession(config);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void publish(CacheInvalidation invalidation) throws CPMException {
+        if (invalidation == null) {
+            throw new IllegalArgumentException("invalidation is null");
+        }
+
+        if (this.session == null || this.session.isClosed()) {
+            this.session = this.createSession();
+            this.session.start();
+            this.producer = null;
+        }
+
+        if (this.producer == null || this.producer.isClosed()) {
+            this.producer = this.session.createProducer();
+        }
+
+        try {
+            CPMMessage message = this.session.createMessage()
+                .setDurable(false)
+                .setBody(this.mapper.writeValueAsString(invalidation));
+
+            this.producer.send(CACHE_INVALIDATION_ADDRESS, message);
+        }
+        catch (JsonProcessingException e) {
+            throw new CPMException(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void subscribe(Consumer<CacheInvalidation> receiver) throws CPMException {
+        if (receiver == null) {
+            throw new IllegalArgumentException("receiver is null");
+        }
+
+        CPMSession subscription = this.createSession();
+
+        CPMConsumerConfig config = subscription.createConsumerConfig()
+            .setSubscriptionAddress(CACHE_INVALIDATION_ADDRESS);
+
+        subscription.createConsumer(config)
+            .setMessageListener((session, consumer, message) -> {
+                try {
+                    message.acknowledge();
+                    receiver.accept(this.mapper.readValue(message.getBody(), CacheInvalidation.class));
+                }
+                catch (Exception e) {
+                    log.error("Unable to process cache invalidation: {}", message.getBody(), e);
+                }
+            });
+
+        subscription.start();
+        this.subscriptions.add(subscription);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void close() throws CPMException {
+        for (CPMSession subscription : this.subscriptions) {
+            subscription.close();
+        }
+
+        this.subscriptions.clear();
+
+        if (this.session != null) {
+            this.session.close();
+            this.session = null;
+            this.producer = null;
+        }
+    }
+
+}
@@ -0,0 +1,561 @@
+/**
+ * Copyright (c) 2009 - 2020 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.cache;
+
+import org.candlepin.common.config.Configuration;
+import org.candlepin.config.ConfigProperties;
+import org.candlepin.model.Consumer;
+import org.candlepin.model.Entitlement;
+import org.candlepin.model.OwnerInfo;
+import org.candlepin.model.Pool;
+
+import com.google.inject.Inject;
+
+import org.hibernate.Transaction;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.resource.transaction.spi.TransactionStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import javax.inject.Singleton;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+
+
+
+/**
+ * The OwnerInfoCache holds the most recently computed {@link OwnerInfo} summary of each owner, so
+ * repeated requests for an owner's info need not recompute it from scratch.
+ * <p></p>
+ * Summaries are computed on first use and kept up to date from the Hibernate events of the
+ * consumers, entitlements and pools they are derived from: once a transaction changing any of
+ * these commits, the summary of each affected owner is marked stale. A stale summary is only
+ * served for up to the configured staleness window, after which it is recomputed on read; the
+ * {@link OwnerInfoRefresher} of each node recomputes stale summaries in the background so that
+ * readers rarely have to. The owners changed by a committed transaction are also published through
+ * the {@link ClusterCacheInvalidator}, so the other nodes of a cluster mark their summaries stale
+ * as well. Since parts of the summary also depend on the current date, and since bulk updates raise
+ * no events, summaries are never served once older than the configured maximum age.
+ * <p></p>
+ * The cache only serves summaries once its listeners have been registered with Hibernate through
+ * {@link #registerListeners(EventListenerRegistry)}, as it would otherwise have no way to learn
+ * of changes.
+ */
+@Singleton
+public class OwnerInfoCache {
+    private static Logger log = LoggerFactory.getLogger(OwnerInfoCache.class);
+
+    /** The name identifying this cache to the cluster cache invalidator */
+    public static final String CACHE_NAME = "owner_info";
+
+    /** The states in which a transaction will still notify registered synchronizations */
+    private static final TransactionStatus[] ACTIVE_STATES = {
+        TransactionStatus.ACTIVE, TransactionStatus.MARKED_ROLLBACK
+    };
+
+    /** Consumer properties which play no part in the summary, and may change without staling it */
+    private static final Set<String> UNSUMMARIZED_CONSUMER_PROPERTIES = new HashSet<>(
+        Arrays.asList("lastCheckin", "updated"));
+
+    /**
+     * The cached summary of a single owner
+     */
+    private static class Entry {
+        private final OwnerInfo info;
+        private final long computed;
+        private volatile long staleSince;
+        private volatile long lastAccess;
+
+        public Entry(OwnerInfo info, long computed) {
+            this.info = info;
+            this.computed = computed;
+            this.lastAccess = computed;
+        }
+    }
+
+    /**
+     * The owners affected by a single transaction, marked stale once it commits
+     */
+    private class PendingChanges implements Synchronization {
+        private final Set<String> owners = new HashSet<>();
+
+        @Override
+        public void beforeCompletion() {
+            // Intentionally left empty
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            if (pending.get() == this) {
+                pending.remove();
+            }
+
+            if (status == Status.STATUS_COMMITTED) {
+                markStale(this.owners);
+                publish(this.owners);
+            }
+        }
+    }
+
+    /**
+     * Hibernate event listener forwarding changes to the entities summarized by owner info to the
+     * cache
+     */
+    private class SummaryListener implements PostInsertEventListener, PostUpdateEventListener,
+        PostDeleteEventListener {
+
+        @Override
+        public void onPostInsert(PostInsertEvent event) {
+            record(event.getSession(), event.getEntity());
+        }
+
+        @Override
+        public void onPostUpdate(PostUpdateEvent event) {
+            if (!(event.getEntity() instanceof Consumer) || isSummarizedChange(event)) {
+                record(event.getSession(), event.getEntity());
+            }
+        }
+
+        /**
+         * Checks whether a consumer update touched anything other than the timestamps every
+         * check-in bumps, which would otherwise keep the summaries of busy owners permanently stale
+         */
+        private boolean isSummarizedChange(PostUpdateEvent event) {
+            int[] dirty = event.getDirtyProperties();
+            if (dirty == null) {
+                return true;
+            }
+
+            String[] properties = event.getPersister().getPropertyNames();
+            for (int index : dirty) {
+                if (!UNSUMMARIZED_CONSUMER_PROPERTIES.contains(properties[index])) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        @Override
+        public void onPostDelete(PostDeleteEvent event) {
+            record(event.getSession(), event.getEntity());
+        }
+
+        @Override
+        public boolean requiresPostCommitHanding(EntityPersister persister) {
+            return false;
+        }
+    }
+
+    private final int maxOwners;
+    private final long maxAge;
+    private final long maxStaleness;
+    private final ClusterCacheInvalidator clusterInvalidator;
+    private final ConcurrentMap<String, Entry> entries;
+    private final ConcurrentMap<String, AtomicLong> versions;
+    private volatile long baseVersion;
+    private final ThreadLocal<PendingChanges> pending;
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+    private volatile boolean listening;
+
+    @Inject
+    public OwnerInfoCache(Configuration config, ClusterCacheInvalidator clusterInvalidator) {
+        if (config == null) {
+            throw new IllegalArgumentException("config is null");
+        }
+
+        if (clusterInvalidator == null) {
+            throw new IllegalArgumentException("clusterInvalidator is null");
+        }
+
+        this.maxOwners = config.getInt(ConfigProperties.OWNER_INFO_CACHE_MAX_OWNERS);
+        this.maxAge = TimeUnit.SECONDS.toMillis(config.getLong(ConfigProperties.OWNER_INFO_CACHE_MAX_AGE));
+        this.maxStaleness = TimeUnit.SECONDS.toMillis(
+            config.getLong(ConfigProperties.OWNER_INFO_CACHE_MAX_STALENESS));
+        this.clusterInvalidator = clusterInvalidator;
+
+        this.entries = new ConcurrentHashMap<>();
+        this.versions = new ConcurrentHashMap<>();
+        this.baseVersion = 0;
+        this.pending = new ThreadLocal<>();
+        this.hits = new AtomicLong();
+        this.misses = new AtomicLong();
+        this.listening = false;
+
+        this.clusterInvalidator.registerNodeCache(CACHE_NAME, ownerId -> this.markStale(ownerId != null ?
+            Collections.singleton(ownerId) :
+            new ArrayList<>(this.entries.keySet())));
+    }
+
+    /**
+     * Registers the listeners which keep this cache up to date with the given Hibernate event
+     * listener registry. Summaries are not cached until the listeners are registered.
+     *
+     * @param registry
+     *  the event listener registry of the session factory backing the summarized entities
+     */
+    public void registerListeners(EventListenerRegistry registry) {
+        if (registry == null) {
+            throw new IllegalArgumentException("registry is null");
+        }
+
+        SummaryListener listener = new SummaryListener();
+        registry.getEventListenerGroup(EventType.POST_INSERT).appendListener(listener);
+        registry.getEventListenerGroup(EventType.POST_UPDATE).appendListener(listener);
+        registry.getEventListenerGroup(EventType.POST_DELETE).appendListener(listener);
+
+        this.listening = true;
+    }
+
+    /**
+     * Checks whether or not summaries are being cached at all.
+     *
+     * @return
+     *  true if this cache is enabled; false otherwise
+     */
+    public boolean isEnabled() {
+        return this.listening && this.maxOwners > 0 && this.maxAge > 0;
+    }
+
+    /**
+     * Fetches the summary of the given owner, serving the cached summary if it is still fresh
+     * enough, or computing it with the given loader otherwise. Summaries computed by a thread with
+     * uncommitted changes to the owner are returned, but not cached.
+     *
+     * @param ownerId
+     *  the ID of the owner for which to fetch the summary
+     *
+     * @param loader
+     *  a supplier computing the owner's summary from the database
+     *
+     * @throws IllegalArgumentException
+     *  if ownerId or loader is null
+     *
+     * @return
+     *  the summary of the owner, with its last updated time set to the time it was computed
+     */
+    public OwnerInfo get(String ownerId, Supplier<OwnerInfo> loader) {
+        if (ownerId == null) {
+            throw new IllegalArgumentException("ownerId is null");
+        }
+
+        if (loader == null) {
+            throw new IllegalArgumentException("loader is null");
+        }
+
+        if (!this.isEnabled() || this.hasPendingChanges(ownerId)) {
+            return this.compute(loader);
+        }
+
+        long now = System.currentTimeMillis();
+        Entry entry = this.entries.get(ownerId);
+
+        if (entry != null && this.isServable(entry, now)) {
+            this.hits.incrementAndGet();
+            entry.lastAccess = now;
+
+            return entry.info;
+        }
+
+        this.misses.incrementAndGet();
+        return this.load(ownerId, loader).info;
+    }
+
+    /**
+     * Recomputes the summary of the given owner with the given loader, replacing any summary
+     * already cached.
+     *
+     * @param ownerId
+     *  the ID of the owner for which to refresh the summary
+     *
+     * @param loader
+     *  a supplier computing the owner's summary from the database
+     *
+     * @throws IllegalArgumentException
+     *  if ownerId or loader is null
+     */
+    public void refresh(String ownerId, Supplier<OwnerInfo> loader) {
+        if (ownerId == null) {
+            throw new IllegalArgumentException("ownerId is null");
+        }
+
+        if (loader == null) {
+            throw new IllegalArgumentException("loader is null");
+        }
+
+        if (this.isEnabled()) {
+            Entry previous = this.entries.get(ownerId);
+            Entry entry = this.load(ownerId, loader);
+
+            // A background refresh doesn't count as an access
+            if (previous != null) {
+                entry.lastAccess = previous.lastAccess;
+            }
+        }
+    }
+
+    /**
+     * Fetches the IDs of the owners whose summaries are stale, or will exceed the maximum age
+     * within half of it, and so are due to be refreshed. Summaries which have not been read for
+     * longer than the maximum age are evicted rather than returned, as nobody is polling them.
+     *
+     * @return
+     *  a list of the IDs of the owners whose summaries should be refreshed
+     */
+    public List<String> getRefreshCandidates() {
+        List<String> candidates = new ArrayList<>();
+        long now = System.currentTimeMillis();
+
+        for (Map.Entry<String, Entry> mapping : this.entries.entrySet()) {
+            Entry entry = mapping.getValue();
+
+            if (now - entry.lastAccess > this.maxAge) {
+                this.entries.remove(mapping.getKey(), entry);
+                log.debug("Evicted idle owner info summary for owner: {}", mapping.getKey());
+            }
+            else if (entry.staleSince > 0 || now - entry.computed > this.maxAge / 2) {
+                candidates.add(mapping.getKey());
+            }
+        }
+
+        return candidates;
+    }
+
+    /**
+     * Discards the cached summary of the given owner, if any.
+     *
+     * @param ownerId
+     *  the ID of the owner whose summary should be discarded
+     */
+    public void evict(String ownerId) {
+        if (ownerId != null) {
+            this.entries.remove(ownerId);
+        }
+    }
+
+    private boolean isServable(Entry entry, long now) {
+        if (now - entry.computed > this.maxAge) {
+            return false;
+        }
+
+        long staleSince = entry.staleSince;
+        return staleSince == 0 || now - staleSince < this.maxStaleness;
+    }
+
+    private OwnerInfo compute(Supplier<OwnerInfo> loader) {
+        Date computed = new Date();
+        OwnerInfo info = loader.get();
+
+        if (info != null) {
+            info.setLastUpdated(computed);
+        }
+
+        return info;
+    }
+
+    private Entry load(String ownerId, Supplier<OwnerInfo> loader) {
+        long base;
+        long version;
+
+        synchronized (this) {
+            base = this.baseVersion;
+            version = this.getVersion(ownerId).get();
+        }
+
+        long start = System.currentTimeMillis();
+
+        OwnerInfo info = this.compute(loader);
+        Entry entry = new Entry(info, start);
+
+        log.debug("Computed owner info summary for owner {} in {}ms", ownerId,
+            System.currentTimeMillis() - start);
+
+        synchronized (this) {
+            // Changes committed while we were computing may be missing from the summary
+            if (this.baseVersion != base || this.getVersion(ownerId).get() != version) {
+                entry.staleSince = System.currentTimeMillis();
+            }
+
+            this.entries.put(ownerId, entry);
+            this.evictExcess();
+        }
+
+        return entry;
+    }
+
+    private void record(EventSource session, Object entity) {
+        String ownerId = null;
+
+        if (entity instanceof Consumer) {
+            ownerId = ((Consumer) entity).getOwnerId();
+        }
+        else if (entity instanceof Entitlement) {
+            ownerId = ((Entitlement) entity).getOwnerId();
+        }
+        else if (entity instanceof Pool) {
+            ownerId = ((Pool) entity).getOwnerId();
+        }
+
+        if (ownerId == null) {
+            return;
+        }
+
+        PendingChanges changes = this.getPendingChanges(session);
+
+        if (changes != null) {
+            changes.owners.add(ownerId);
+        }
+        else {
+            this.markStale(Collections.singleton(ownerId));
+            this.publish(Collections.singleton(ownerId));
+        }
+    }
+
+    private boolean hasPendingChanges(String ownerId) {
+        PendingChanges changes = this.pending.get();
+        return changes != null && changes.owners.contains(ownerId);
+    }
+
+    private PendingChanges getPendingChanges(EventSource session) {
+        PendingChanges changes = this.pending.get();
+
+        if (changes == null) {
+            Transaction transaction = session != null ? session.getTransaction() : null;
+
+            if (transaction == null || !transaction.getStatus().isOneOf(ACTIVE_STATES)) {
+                return null;
+            }
+
+            changes = new PendingChanges();
+            transaction.registerSynchronization(changes);
+            this.pending.set(changes);
+        }
+
+        return changes;
+    }
+
+    /**
+     * Marks the summaries of the given owners stale, and bumps each owner's version so a summary
+     * being computed concurrently is published as stale.
+     */
+    private synchronized void markStale(Collection<String> owners) {
+        long now = System.currentTimeMillis();
+
+        for (String ownerId : owners) {
+            this.getVersion(ownerId).incrementAndGet();
+
+            Entry entry = this.entries.get(ownerId);
+            if (entry != null && entry.staleSince == 0) {
+                entry.staleSince = now;
+            }
+        }
+
+        this.pruneVersions();
+    }
+
+    /**
+     * Discards the versions of owners without a cached summary once there are too many of them,
+     * so that the versions do not grow with every owner ever changed. The base version is bumped
+     * first, so a summary being computed concurrently for a pruned owner is published as stale.
+     * Must be called while holding the cache lock.
+     */
+    private void pruneVersions() {
+        if (this.versions.size() <= 2 * Math.max(this.maxOwners, 1)) {
+            return;
+        }
+
+        ++this.baseVersion;
+        this.versions.keySet().retainAll(this.entries.keySet());
+    }
+
+    /**
+     * Publishes the owners whose summarized entities have been committed to the other nodes of
+     * the cluster
+     */
+    private void publish(Collection<String> owners) {
+        for (String ownerId : owners) {
+            this.clusterInvalidator.invalidateNodeCache(CACHE_NAME, ownerId);
+        }
+    }
+
+    private AtomicLong getVersion(String ownerId) {
+        return this.versions.computeIfAbsent(ownerId, key -> new AtomicLong());
+    }
+
+    /**
+     * Evicts the least recently used summaries until the cache is back within its owner limit.
+     * Must be called while holding the cache lock.
+     */
+    private void evictExcess() {
+        if (this.entries.size() <= this.maxOwners) {
+            return;
+        }
+
+        List<Map.Entry<String, Entry>> candidates = new ArrayList<>(this.entries.entrySet());
+        candidates.sort(Comparator.comparingLong(entry -> entry.getValue().lastAccess));
+
+        for (Map.Entry<String, Entry> entry : candidates) {
+            if (this.entries.size() <= this.maxOwners) {
+                break;
+            }
+
+            this.entries.remove(entry.getKey());
+            log.debug("Evicted owner info summary for owner: {}", entry.getKey());
+        }
+    }
+
+    public int size() {
+        return this.entries.size();
+    }
+
+    int getVersionCount() {
+        return this.versions.size();
+    }
+
+    public long getHits() {
+        return this.hits.get();
+    }
+
+    public long getMisses() {
+        return this.misses.get();
+    }
+
+}
@@ -0,0 +1,180 @@
+/**
+ * Copyright (c) 2009 - 2020 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.cache;
+
+import org.candlepin.common.config.Configuration;
+import org.candlepin.config.ConfigProperties;
+import org.candlepin.guice.CandlepinRequestScope;
+import org.candlepin.model.Owner;
+import org.candlepin.model.OwnerCurator;
+import org.candlepin.model.OwnerInfoCurator;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+import com.google.inject.persist.UnitOfWork;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Singleton;
+
+
+
+/**
+ * The OwnerInfoRefresher periodically recomputes the owner info summaries of this node's
+ * {@link OwnerInfoCache} which have gone stale, or are nearing their maximum age, so that
+ * dashboards polling owner info are served from the cache rather than waiting on the summary to
+ * be computed.
+ * <p></p>
+ * Each node holds its own summaries, so each node runs its own refresher on a local timer rather
+ * than through the clustered job scheduler.
+ */
+@Singleton
+public class OwnerInfoRefresher {
+    private static Logger log = LoggerFactory.getLogger(OwnerInfoRefresher.class);
+
+    private final OwnerInfoCache ownerInfoCache;
+    private final OwnerCurator ownerCurator;
+    private final OwnerInfoCurator ownerInfoCurator;
+    private final UnitOfWork unitOfWork;
+    private final CandlepinRequestScope requestScope;
+    private final long interval;
+
+    private ScheduledExecutorService executor;
+
+    @Inject
+    public OwnerInfoRefresher(Configuration config, OwnerInfoCache ownerInfoCache,
+        OwnerCurator ownerCurator, OwnerInfoCurator ownerInfoCurator, UnitOfWork unitOfWork,
+        CandlepinRequestScope requestScope) {
+
+        if (config == null) {
+            throw new IllegalArgumentException("config is null");
+        }
+
+        if (ownerInfoCache == null) {
+            throw new IllegalArgumentException("ownerInfoCache is null");
+        }
+
+        if (ownerCurator == null) {
+            throw new IllegalArgumentException("ownerCurator is null");
+        }
+
+        if (ownerInfoCurator == null) {
+            throw new IllegalArgumentException("ownerInfoCurator is null");
+        }
+
+        if (unitOfWork == null) {
+            throw new IllegalArgumentException("unitOfWork is null");
+        }
+
+        if (requestScope == null) {
+            throw new IllegalArgumentException("requestScope is null");
+        }
+
+        this.ownerInfoCache = ownerInfoCache;
+        this.ownerCurator = ownerCurator;
+        this.ownerInfoCurator = ownerInfoCurator;
+        this.unitOfWork = unitOfWork;
+        this.requestScope = requestScope;
+        this.interval = config.getLong(ConfigProperties.OWNER_INFO_CACHE_REFRESH_INTERVAL);
+    }
+
+    /**
+     * Starts refreshing summaries on this node at the configured interval. If the interval is not
+     * positive, this method does nothing.
+     */
+    public synchronized void start() {
+        if (this.executor != null || this.interval < 1) {
+            return;
+        }
+
+        this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+            .setNameFormat("owner-info-refresh")
+            .setDaemon(true)
+            .build());
+
+        this.executor.scheduleWithFixedDelay(this::run, this.interval, this.interval, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops refreshing summaries on this node, interrupting any refresh in progress.
+     */
+    public synchronized void shutdown() {
+        if (this.executor != null) {
+            this.executor.shutdownNow();
+            this.executor = null;
+        }
+    }
+
+    private void run() {
+        this.requestScope.enter();
+        this.unitOfWork.begin();
+
+        try {
+            this.refresh();
+        }
+        catch (RuntimeException e) {
+            // Never let an exception escape, or the executor will stop scheduling us
+            log.error("Unable to refresh owner info summaries", e);
+        }
+        finally {
+            this.unitOfWork.end();
+            this.requestScope.exit();
+        }
+    }
+
+    /**
+     * Recomputes the summaries of this node which are due to be refreshed. Summaries of owners
+     * which no longer exist are evicted, and a failure to refresh one summary does not prevent the
+     * others from being refreshed. Must be called within a unit of work.
+     *
+     * @return
+     *  the number of summaries refreshed
+     */
+    public int refresh() {
+        if (!this.ownerInfoCache.isEnabled()) {
+            return 0;
+        }
+
+        int refreshed = 0;
+        int failed = 0;
+
+        for (String ownerId : this.ownerInfoCache.getRefreshCandidates()) {
+            Owner owner = this.ownerCurator.get(ownerId);
+
+            if (owner == null) {
+                this.ownerInfoCache.evict(ownerId);
+                continue;
+            }
+
+            try {
+                this.ownerInfoCurator.refresh(owner);
+                ++refreshed;
+            }
+            catch (RuntimeException e) {
+                // Leave the summary as-is; it'll be recomputed on read once it gets too old
+                log.warn("Unable to refresh owner info summary for owner: {}", owner.getKey(), e);
+                ++failed;
+            }
+        }
+
+        log.debug("Refreshed {} owner info summaries; {} failed", refreshed, failed);
+        return refreshed;
+    }
+}
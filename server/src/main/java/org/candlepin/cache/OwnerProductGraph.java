@@ -0,0 +1,320 @@
+/**
+ * Copyright (c) 2009 - 2020 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.cache;
+
+import org.candlepin.model.Content;
+import org.candlepin.model.Product;
+import org.candlepin.model.ProductContent;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+
+
+/**
+ * The OwnerProductGraph is an immutable snapshot of the product to content graph of a single
+ * owner at a given version. Snapshots are detached from the Hibernate session that built them and
+ * may be shared freely between threads.
+ * <p></p>
+ * The content instances held by a snapshot are detached copies of the content entities, and are
+ * shared by every reader of the snapshot. They must be treated as read-only.
+ */
+public final class OwnerProductGraph {
+
+    /** Rough estimate of the fixed overhead of an object and its header, in bytes */
+    private static final int OBJECT_OVERHEAD = 16;
+
+    /** Rough estimate of the overhead of a single map or collection entry, in bytes */
+    private static final int ENTRY_OVERHEAD = 32;
+
+    /**
+     * An immutable view of a single product within an owner product graph
+     */
+    public static final class ProductNode {
+        private final String uuid;
+        private final String id;
+        private final String name;
+        private final Long multiplier;
+        private final Map<String, String> attributes;
+        private final Set<String> dependentProductIds;
+        private final Map<String, Boolean> content;
+
+        private ProductNode(Product product) {
+            this.uuid = product.getUuid();
+            this.id = product.getId();
+            this.name = product.getName();
+            this.multiplier = product.getMultiplier();
+            this.attributes = Collections.unmodifiableMap(new HashMap<>(product.getAttributes()));
+            this.dependentProductIds = Collections.unmodifiableSet(
+                new HashSet<>(product.getDependentProductIds()));
+
+            Map<String, Boolean> content = new LinkedHashMap<>();
+            for (ProductContent pc : product.getProductContent()) {
+                content.put(pc.getContent().getId(), pc.isEnabled());
+            }
+
+            this.content = Collections.unmodifiableMap(content);
+        }
+
+        public String getUuid() {
+            return this.uuid;
+        }
+
+        public String getId() {
+            return this.id;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        public Long getMultiplier() {
+            return this.multiplier;
+        }
+
+        public Map<String, String> getAttributes() {
+            return this.attributes;
+        }
+
+        public String getAttributeValue(String key) {
+            return this.attributes.get(key);
+        }
+
+        public Set<String> getDependentProductIds() {
+            return this.dependentProductIds;
+        }
+
+        /**
+         * Fetches the content provided by this product, mapped by content ID to the enabled flag of
+         * the product-content link.
+         *
+         * @return
+         *  an unmodifiable map of content ID to enabled flag
+         */
+        public Map<String, Boolean> getContent() {
+            return this.content;
+        }
+
+        private long estimateFootprint() {
+            long size = OBJECT_OVERHEAD + sizeOf(this.uuid) + sizeOf(this.id) + sizeOf(this.name);
+
+            for (Map.Entry<String, String> entry : this.attributes.entrySet()) {
+                size += ENTRY_OVERHEAD + sizeOf(entry.getKey()) + sizeOf(entry.getValue());
+            }
+
+            for (String pid : this.dependentProductIds) {
+                size += ENTRY_OVERHEAD + sizeOf(pid);
+            }
+
+            for (String cid : this.content.keySet()) {
+                size += ENTRY_OVERHEAD + sizeOf(cid);
+            }
+
+            return size;
+        }
+    }
+
+    private final String ownerId;
+    private final long version;
+    private final long created;
+    private final Map<String, ProductNode> products;
+    private final Map<String, Content> content;
+    private final long footprint;
+
+    /**
+     * Builds a new snapshot from the given products. The products, and the content they
+     * reference, are copied into the snapshot, and are not retained.
+     *
+     * @param ownerId
+     *  the ID of the owner to which the products belong
+     *
+     * @param version
+     *  the owner's graph version at the time the products were read
+     *
+     * @param products
+     *  the products of the owner
+     *
+     * @throws IllegalArgumentException
+     *  if ownerId or products is null
+     */
+    public OwnerProductGraph(String ownerId, long version, Iterable<Product> products) {
+        if (ownerId == null) {
+            throw new IllegalArgumentException("ownerId is null");
+        }
+
+        if (products == null) {
+            throw new IllegalArgumentException("products is null");
+        }
+
+        Map<String, ProductNode> productMap = new HashMap<>();
+        Map<String, Content> contentMap = new HashMap<>();
+        long footprint = OBJECT_OVERHEAD;
+
+        for (Product product : products) {
+            ProductNode node = new ProductNode(product);
+            productMap.put(node.getId(), node);
+            footprint += ENTRY_OVERHEAD + node.estimateFootprint();
+
+            for (ProductContent pc : product.getProductContent()) {
+                Content content = pc.getContent();
+
+                if (!contentMap.containsKey(content.getId())) {
+                    Content copy = content.clone();
+
+                    contentMap.put(copy.getId(), copy);
+                    footprint += ENTRY_OVERHEAD + estimateFootprint(copy);
+                }
+            }
+        }
+
+        this.ownerId = ownerId;
+        this.version = version;
+        this.created = System.currentTimeMillis();
+        this.products = Collections.unmodifiableMap(productMap);
+        this.content = Collections.unmodifiableMap(contentMap);
+        this.footprint = footprint;
+    }
+
+    public String getOwnerId() {
+        return this.ownerId;
+    }
+
+    /**
+     * Fetches the version of the owner's graph at which this snapshot was built. The version
+     * changes each time the products or content of the owner are changed.
+     *
+     * @return
+     *  the version of this snapshot
+     */
+    public long getVersion() {
+        return this.version;
+    }
+
+    /**
+     * Fetches the time at which this snapshot was built, in milliseconds since the epoch.
+     *
+     * @return
+     *  the creation time of this snapshot
+     */
+    public long getCreated() {
+        return this.created;
+    }
+
+    public ProductNode getProduct(String productId) {
+        return this.products.get(productId);
+    }
+
+    public Collection<ProductNode> getProducts() {
+        return this.products.values();
+    }
+
+    /**
+     * Fetches the content with the given ID. The returned instance is shared with all other
+     * readers of this snapshot, and must not be modified.
+     *
+     * @param contentId
+     *  the ID of the content to fetch
+     *
+     * @return
+     *  the content with the given ID, or null if the owner has no such content
+     */
+    public Content getContent(String contentId) {
+        return this.content.get(contentId);
+    }
+
+    /**
+     * Fetches all of the content provided by the products of the owner, mapped to whether or not
+     * the content is enabled by any of the products providing it.
+     *
+     * @return
+     *  a map of the owner's content to its effective enabled flag
+     */
+    public Map<Content, Boolean> getEffectiveContent() {
+        Map<String, Boolean> enabled = new HashMap<>();
+
+        for (ProductNode product : this.products.values()) {
+            for (Map.Entry<String, Boolean> entry : product.getContent().entrySet()) {
+                enabled.merge(entry.getKey(), entry.getValue(), Boolean::logicalOr);
+            }
+        }
+
+        Map<Content, Boolean> result = new HashMap<>();
+        for (Map.Entry<String, Boolean> entry : enabled.entrySet()) {
+            result.put(this.content.get(entry.getKey()), entry.getValue());
+        }
+
+        return result;
+    }
+
+    /**
+     * Fetches the products in this snapshot which provide the given content.
+     *
+     * @param contentId
+     *  the ID of the content for which to find products
+     *
+     * @return
+     *  a list of the products providing the given content
+     */
+    public List<ProductNode> getProductsProvidingContent(String contentId) {
+        List<ProductNode> result = new ArrayList<>();
+
+        for (ProductNode product : this.products.values()) {
+            if (product.getContent().containsKey(contentId)) {
+                result.add(product);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Fetches the estimated memory footprint of this snapshot, in bytes. The estimate only
+     * accounts for the data copied into the snapshot, and is intended for cache accounting rather
+     * than precise measurement.
+     *
+     * @return
+     *  the estimated footprint of this snapshot, in bytes
+     */
+    public long getFootprint() {
+        return this.footprint;
+    }
+
+    private static long estimateFootprint(Content content) {
+        return OBJECT_OVERHEAD * 4 +
+            sizeOf(content.getUuid()) + sizeOf(content.getId()) + sizeOf(content.getName()) +
+            sizeOf(content.getType()) + sizeOf(content.getLabel()) + sizeOf(content.getVendor()) +
+            sizeOf(content.getContentUrl()) + sizeOf(content.getGpgUrl()) +
+            sizeOf(content.getRequiredTags()) + sizeOf(content.getReleaseVersion()) +
+            sizeOf(content.getArches()) +
+            (long) content.getModifiedProductIds().size() * (ENTRY_OVERHEAD + OBJECT_OVERHEAD);
+    }
+
+    private static long sizeOf(String value) {
+        return value != null ? OBJECT_OVERHEAD + 2L * value.length() : 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("OwnerProductGraph [owner: %s, version: %d, products: %d, content: %d]",
+            this.ownerId, this.version, this.products.size(), this.content.size());
+    }
+}
@@ -0,0 +1,412 @@
+/**
+ * Copyright (c) 2009 - 2020 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.cache;
+
+import org.candlepin.common.config.Configuration;
+import org.candlepin.config.ConfigProperties;
+import org.candlepin.model.Owner;
+import org.candlepin.model.OwnerProductCurator;
+
+import com.google.inject.Inject;
+
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+import org.hibernate.resource.transaction.spi.TransactionStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Singleton;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+
+
+
+/**
+ * The OwnerProductGraphCache maintains lazily built {@link OwnerProductGraph} snapshots for each
+ * owner. Snapshots are versioned; any change to the products or content of an owner must be
+ * reported through {@link #invalidate(Owner)}, which bumps the owner's version and discards the
+ * current snapshot once the change has been committed.
+ * <p></p>
+ * Snapshots built within a transaction are only shared with other threads once that transaction
+ * commits, and only if the owner was not changed in the meantime. The cache accounts for the
+ * estimated memory footprint of its snapshots, and evicts the least recently used snapshots once
+ * either the configured footprint or owner limit is exceeded.
+ * <p></p>
+ * Snapshots are held by each node; invalidations are published to the other nodes of a cluster
+ * through the {@link ClusterCacheInvalidator}, if cluster invalidation is enabled.
+ */
+@Singleton
+public class OwnerProductGraphCache {
+    private static Logger log = LoggerFactory.getLogger(OwnerProductGraphCache.class);
+
+    /** The name under which invalidations of this cache are published to the cluster */
+    public static final String CACHE_NAME = "owner_product_graph";
+
+    /** The states in which a transaction will still notify registered synchronizations */
+    private static final TransactionStatus[] ACTIVE_STATES = {
+        TransactionStatus.ACTIVE, TransactionStatus.MARKED_ROLLBACK
+    };
+
+    /**
+     * A cached snapshot along with its last access time
+     */
+    private static class CacheEntry {
+        private final OwnerProductGraph graph;
+        private volatile long lastAccess;
+
+        public CacheEntry(OwnerProductGraph graph) {
+            this.graph = graph;
+            this.lastAccess = System.nanoTime();
+        }
+
+        public OwnerProductGraph touch() {
+            this.lastAccess = System.nanoTime();
+            return this.graph;
+        }
+    }
+
+    /**
+     * The snapshots built by a single transaction, published once it commits
+     */
+    private class PendingSnapshots implements Synchronization {
+        private final Map<String, OwnerProductGraph> graphs = new HashMap<>();
+
+        @Override
+        public void beforeCompletion() {
+            // Intentionally left empty
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            if (pending.get() == this) {
+                pending.remove();
+            }
+
+            if (status == Status.STATUS_COMMITTED) {
+                for (OwnerProductGraph graph : this.graphs.values()) {
+                    publish(graph);
+                }
+            }
+        }
+    }
+
+    private final OwnerProductCurator ownerProductCurator;
+    private final ClusterCacheInvalidator clusterInvalidator;
+    private final int maxOwners;
+    private final long maxFootprint;
+
+    private final ConcurrentMap<String, CacheEntry> entries;
+    private final ConcurrentMap<String, Long> versions;
+    private final AtomicLong generation;
+    private volatile long baseVersion;
+    private final ThreadLocal<PendingSnapshots> pending;
+    private final AtomicLong footprint;
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+    private final AtomicLong evictions;
+
+    @Inject
+    public OwnerProductGraphCache(Configuration config, OwnerProductCurator ownerProductCurator,
+        ClusterCacheInvalidator clusterInvalidator) {
+
+        if (config == null) {
+            throw new IllegalArgumentException("config is null");
+        }
+
+        if (ownerProductCurator == null) {
+            throw new IllegalArgumentException("ownerProductCurator is null");
+        }
+
+        if (clusterInvalidator == null) {
+            throw new IllegalArgumentException("clusterInvalidator is null");
+        }
+
+        this.ownerProductCurator = ownerProductCurator;
+        this.clusterInvalidator = clusterInvalidator;
+        this.maxOwners = config.getInt(ConfigProperties.PRODUCT_GRAPH_CACHE_MAX_OWNERS);
+        this.maxFootprint = config.getLong(ConfigProperties.PRODUCT_GRAPH_CACHE_MAX_BYTES);
+
+        this.entries = new ConcurrentHashMap<>();
+        this.versions = new ConcurrentHashMap<>();
+        this.generation = new AtomicLong();
+        this.baseVersion = 0;
+        this.pending = new ThreadLocal<>();
+        this.footprint = new AtomicLong();
+        this.hits = new AtomicLong();
+        this.misses = new AtomicLong();
+        this.evictions = new AtomicLong();
+
+        this.clusterInvalidator.registerNodeCache(CACHE_NAME, ownerId -> {
+            if (ownerId != null) {
+                this.invalidate(ownerId);
+            }
+            else {
+                this.invalidateAll();
+            }
+        });
+    }
+
+    /**
+     * Fetches the current snapshot of the product graph for the given owner, building it if
+     * necessary. The snapshot is built using the session of the calling thread, and will reflect
+     * any uncommitted changes made in the current transaction. Such a snapshot is reused for the
+     * remainder of the transaction, but is not shared with other threads until it commits.
+     *
+     * @param owner
+     *  the owner for which to fetch the product graph
+     *
+     * @throws IllegalArgumentException
+     *  if owner is null
+     *
+     * @return
+     *  a snapshot of the product graph for the given owner
+     */
+    public OwnerProductGraph getSnapshot(Owner owner) {
+        if (owner == null) {
+            throw new IllegalArgumentException("owner is null");
+        }
+
+        String ownerId = owner.getId();
+        if (ownerId == null) {
+            // Unpersisted owner; nothing we can safely cache
+            return new OwnerProductGraph("", 0, this.ownerProductCurator.getProductsByOwner(owner));
+        }
+
+        long version = this.getVersion(ownerId);
+        CacheEntry entry = this.entries.get(ownerId);
+
+        if (entry != null && entry.graph.getVersion() == version) {
+            this.hits.incrementAndGet();
+            return entry.touch();
+        }
+
+        PendingSnapshots snapshots = this.pending.get();
+        OwnerProductGraph graph = snapshots != null ? snapshots.graphs.get(ownerId) : null;
+
+        if (graph != null && graph.getVersion() == version) {
+            this.hits.incrementAndGet();
+            return graph;
+        }
+
+        this.misses.incrementAndGet();
+        long start = System.currentTimeMillis();
+
+        graph = new OwnerProductGraph(ownerId, version, this.ownerProductCurator.getProductsByOwner(owner));
+        log.debug("Built product graph snapshot in {}ms: {}", System.currentTimeMillis() - start, graph);
+
+        if (this.maxOwners > 0) {
+            Transaction transaction = this.getActiveTransaction();
+
+            if (transaction != null) {
+                // The snapshot may reflect changes which are yet to be committed or rolled back
+                if (snapshots == null) {
+                    snapshots = new PendingSnapshots();
+                    transaction.registerSynchronization(snapshots);
+                    this.pending.set(snapshots);
+                }
+
+                snapshots.graphs.put(ownerId, graph);
+            }
+            else {
+                this.publish(graph);
+            }
+        }
+
+        return graph;
+    }
+
+    /**
+     * Invalidates the snapshot for the given owner. If a transaction is active in the current
+     * session, the snapshot is invalidated immediately and again once the transaction completes,
+     * so that no snapshot built from data read before the commit survives it. Once committed, the
+     * invalidation is published to the other nodes of the cluster.
+     *
+     * @param owner
+     *  the owner for which to invalidate the product graph snapshot
+     */
+    public void invalidate(Owner owner) {
+        if (owner == null || owner.getId() == null) {
+            return;
+        }
+
+        String ownerId = owner.getId();
+        this.invalidate(ownerId);
+
+        Transaction transaction = this.getActiveTransaction();
+
+        if (transaction != null) {
+            transaction.registerSynchronization(new Synchronization() {
+                @Override
+                public void beforeCompletion() {
+                    // Intentionally left empty
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    invalidate(ownerId);
+
+                    if (status == Status.STATUS_COMMITTED) {
+                        clusterInvalidator.invalidateNodeCache(CACHE_NAME, ownerId);
+                    }
+                }
+            });
+        }
+        else {
+            this.clusterInvalidator.invalidateNodeCache(CACHE_NAME, ownerId);
+        }
+    }
+
+    /**
+     * Invalidates the snapshots of all owners.
+     */
+    public synchronized void invalidateAll() {
+        // Every owner falls back to the new base version, which no existing snapshot matches
+        this.baseVersion = this.generation.incrementAndGet();
+        this.versions.clear();
+
+        for (String ownerId : new ArrayList<>(this.entries.keySet())) {
+            this.remove(ownerId);
+        }
+    }
+
+    private void invalidate(String ownerId) {
+        this.versions.put(ownerId, this.generation.incrementAndGet());
+        this.remove(ownerId);
+        this.pruneVersions();
+    }
+
+    private long getVersion(String ownerId) {
+        Long version = this.versions.get(ownerId);
+        return version != null ? version : this.baseVersion;
+    }
+
+    private Transaction getActiveTransaction() {
+        Session session = this.ownerProductCurator.currentSession();
+        Transaction transaction = session != null ? session.getTransaction() : null;
+
+        return transaction != null && transaction.getStatus().isOneOf(ACTIVE_STATES) ? transaction : null;
+    }
+
+    /**
+     * Stores a snapshot in the cache, provided the owner has not been changed since it was built.
+     */
+    private synchronized void publish(OwnerProductGraph graph) {
+        String ownerId = graph.getOwnerId();
+
+        // Even if we lose a race here, readers compare versions, so a stale snapshot is never
+        // returned
+        if (this.getVersion(ownerId) == graph.getVersion()) {
+            this.versions.putIfAbsent(ownerId, graph.getVersion());
+            this.store(ownerId, new CacheEntry(graph));
+        }
+    }
+
+    private void store(String ownerId, CacheEntry entry) {
+        CacheEntry previous = this.entries.put(ownerId, entry);
+
+        this.footprint.addAndGet(entry.graph.getFootprint());
+        if (previous != null) {
+            this.footprint.addAndGet(-previous.graph.getFootprint());
+        }
+
+        this.evict();
+    }
+
+    /**
+     * Discards the versions of owners without a cached snapshot once they outnumber the cached
+     * snapshots, so that versions are not retained for every owner ever changed. Owners without a
+     * tracked version share the base version, which is bumped first, so that any snapshot built
+     * before their version was discarded no longer matches.
+     */
+    private synchronized void pruneVersions() {
+        if (this.versions.size() <= 2 * Math.max(this.maxOwners, 1)) {
+            return;
+        }
+
+        this.baseVersion = this.generation.incrementAndGet();
+        this.versions.keySet().removeIf(ownerId -> !this.entries.containsKey(ownerId));
+    }
+
+    private void remove(String ownerId) {
+        CacheEntry previous = this.entries.remove(ownerId);
+
+        if (previous != null) {
+            this.footprint.addAndGet(-previous.graph.getFootprint());
+        }
+    }
+
+    /**
+     * Evicts the least recently used snapshots until the cache is back within its limits.
+     */
+    private synchronized void evict() {
+        if (this.entries.size() <= this.maxOwners && this.footprint.get() <= this.maxFootprint) {
+            return;
+        }
+
+        List<String> candidates = new ArrayList<>(this.entries.keySet());
+        candidates.sort(Comparator.comparingLong(key -> {
+            CacheEntry entry = this.entries.get(key);
+            return entry != null ? entry.lastAccess : Long.MIN_VALUE;
+        }));
+
+        for (String ownerId : candidates) {
+            if (this.entries.size() <= this.maxOwners && this.footprint.get() <= this.maxFootprint) {
+                break;
+            }
+
+            this.remove(ownerId);
+            this.evictions.incrementAndGet();
+            log.debug("Evicted product graph snapshot for owner: {}", ownerId);
+        }
+    }
+
+    public int size() {
+        return this.entries.size();
+    }
+
+    public long getFootprint() {
+        return this.footprint.get();
+    }
+
+    public long getHits() {
+        return this.hits.get();
+    }
+
+    public long getMisses() {
+        return this.misses.get();
+    }
+
+    public long getEvictions() {
+        return this.evictions.get();
+    }
+
+    /**
+     * @return
+     *  the number of owners for which a version is currently tracked
+     */
+    int getVersionCount() {
+        return this.versions.size();
+    }
+
+}
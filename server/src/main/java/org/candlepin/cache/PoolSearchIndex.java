@@ -0,0 +1,976 @@
+/**
+ * Copyright (c) 2009 - 2020 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.cache;
+
+import org.candlepin.common.config.Configuration;
+import org.candlepin.config.ConfigProperties;
+import org.candlepin.model.Content;
+import org.candlepin.model.Pool;
+import org.candlepin.model.Product;
+import org.candlepin.model.ProductContent;
+
+import com.google.inject.Inject;
+
+import org.hibernate.Transaction;
+import org.hibernate.collection.spi.PersistentCollection;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.AbstractCollectionEvent;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostCollectionRecreateEvent;
+import org.hibernate.event.spi.PostCollectionRecreateEventListener;
+import org.hibernate.event.spi.PostCollectionRemoveEvent;
+import org.hibernate.event.spi.PostCollectionRemoveEventListener;
+import org.hibernate.event.spi.PostCollectionUpdateEvent;
+import org.hibernate.event.spi.PostCollectionUpdateEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.resource.transaction.spi.TransactionStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.regex.Pattern;
+
+import javax.inject.Singleton;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+
+
+
+/**
+ * The PoolSearchIndex maintains a per-owner inverted index of the values searched by the pool
+ * "matches" filter: the contract and order numbers of each pool, the IDs and names of its product
+ * and provided products, the support level of its product, and the names and labels of the
+ * content of its provided products. Each distinct value is indexed by its trigrams, allowing
+ * substring and wildcard searches to be answered by verifying a handful of candidate values
+ * rather than by scanning every pool, product and content row of the owner with ILIKE.
+ * <p></p>
+ * Each owner's index is loaded lazily on first use. Rather than being updated row by row, indexes
+ * are discarded when a committed transaction changes anything they were built from and are then
+ * rebuilt on next use: changes to a pool discard its owner's index, while changes to products
+ * and content, which may be shared between owners, discard every index. Updates to pools which
+ * don't touch searched values, such as changes to consumed quantities, are ignored. Until the
+ * transaction completes, the thread making the changes is told the index is unavailable, so it
+ * falls back to the database and sees its own changes.
+ * <p></p>
+ * The indexes are held by each node. Once a transaction commits, the owners it changed are
+ * published through the {@link ClusterCacheInvalidator}, so the other nodes of a cluster discard
+ * their indexes as well.
+ * <p></p>
+ * The index only serves searches once its listeners have been registered with Hibernate through
+ * {@link #registerListeners(EventListenerRegistry)}, as it would otherwise have no way to learn
+ * of changes.
+ */
+@Singleton
+public class PoolSearchIndex {
+    private static Logger log = LoggerFactory.getLogger(PoolSearchIndex.class);
+
+    /** The name identifying this index to the cluster cache invalidator */
+    public static final String CACHE_NAME = "pool_search";
+
+    /** The states in which a transaction will still notify registered synchronizations */
+    private static final TransactionStatus[] ACTIVE_STATES = {
+        TransactionStatus.ACTIVE, TransactionStatus.MARKED_ROLLBACK
+    };
+
+    /** The length of the fragments by which values are indexed */
+    private static final int GRAM_LENGTH = 3;
+
+    /** The escape character used by the sanitized patterns */
+    private static final char ESCAPE_CHAR = '!';
+
+    /** Pool properties which, when updated, change the values searched for the pool */
+    private static final Set<String> SEARCHED_POOL_PROPERTIES = new HashSet<>(Arrays.asList(
+        "contractNumber", "orderNumber", "product", "owner"));
+
+    /** Pool collections which, when updated, change the values searched for the pool */
+    private static final Set<String> SEARCHED_POOL_COLLECTIONS = new HashSet<>(Arrays.asList(
+        Pool.class.getName() + ".providedProducts", Pool.class.getName() + ".attributes"));
+
+    /**
+     * A single distinct value of an owner, along with the pools, products and content in which it
+     * appears
+     */
+    private static class Term {
+        private final String value;
+        private Set<Integer> pools;
+        private Set<String> products;
+        private Set<String> supportLevelProducts;
+        private Set<String> contents;
+
+        public Term(String value) {
+            this.value = value;
+        }
+
+        private static Set<Integer> add(Set<Integer> set, int value) {
+            Set<Integer> output = set != null ? set : new HashSet<>();
+            output.add(value);
+
+            return output;
+        }
+
+        private static Set<String> add(Set<String> set, String value) {
+            Set<String> output = set != null ? set : new HashSet<>();
+            output.add(value);
+
+            return output;
+        }
+    }
+
+    /**
+     * Collects the searchable values of an owner's pools while the owner's index is loaded. Pools
+     * must be added before any values referencing them; references to unknown pools are ignored.
+     */
+    public static class Builder {
+        private final Map<String, Integer> poolIndices = new HashMap<>();
+        private final List<String> poolIds = new ArrayList<>();
+        private final Map<String, Term> terms = new HashMap<>();
+        private final Map<String, List<Integer>> poolsByProduct = new HashMap<>();
+        private final Map<String, List<Integer>> poolsByProvidedProduct = new HashMap<>();
+        private final Map<String, Set<String>> providedProductsByContent = new HashMap<>();
+        private final BitSet supportLevelOverrides = new BitSet();
+
+        private Builder() {
+            // Intentionally left empty
+        }
+
+        private Term getTerm(String value) {
+            return value != null && !value.isEmpty() ?
+                this.terms.computeIfAbsent(value.toLowerCase(), Term::new) :
+                null;
+        }
+
+        /**
+         * Adds a pool to the index
+         *
+         * @param poolId
+         *  the ID of the pool
+         *
+         * @param contractNumber
+         *  the contract number of the pool, or null
+         *
+         * @param orderNumber
+         *  the order number of the pool, or null
+         *
+         * @param productUuid
+         *  the UUID of the pool's product
+         *
+         * @return
+         *  a reference to this builder
+         */
+        public Builder addPool(String poolId, String contractNumber, String orderNumber,
+            String productUuid) {
+
+            if (poolId == null || this.poolIndices.containsKey(poolId)) {
+                return this;
+            }
+
+            int index = this.poolIds.size();
+            this.poolIds.add(poolId);
+            this.poolIndices.put(poolId, index);
+
+            for (String value : Arrays.asList(contractNumber, orderNumber)) {
+                Term term = this.getTerm(value);
+                if (term != null) {
+                    term.pools = Term.add(term.pools, index);
+                }
+            }
+
+            if (productUuid != null) {
+                this.poolsByProduct.computeIfAbsent(productUuid, key -> new ArrayList<>()).add(index);
+            }
+
+            return this;
+        }
+
+        /**
+         * Adds a provided product to a pool previously added to the index
+         *
+         * @param poolId
+         *  the ID of the pool
+         *
+         * @param productUuid
+         *  the UUID of the provided product
+         *
+         * @return
+         *  a reference to this builder
+         */
+        public Builder addProvidedProduct(String poolId, String productUuid) {
+            Integer index = this.poolIndices.get(poolId);
+
+            if (index != null && productUuid != null) {
+                this.poolsByProvidedProduct.computeIfAbsent(productUuid, key -> new ArrayList<>())
+                    .add(index);
+            }
+
+            return this;
+        }
+
+        /**
+         * Adds the searched values of a product used as the product or a provided product of
+         * the owner's pools
+         *
+         * @param productUuid
+         *  the UUID of the product
+         *
+         * @param productId
+         *  the ID of the product
+         *
+         * @param name
+         *  the name of the product
+         *
+         * @return
+         *  a reference to this builder
+         */
+        public Builder addProduct(String productUuid, String productId, String name) {
+            if (productUuid != null) {
+                for (String value : Arrays.asList(productId, name)) {
+                    Term term = this.getTerm(value);
+                    if (term != null) {
+                        term.products = Term.add(term.products, productUuid);
+                    }
+                }
+            }
+
+            return this;
+        }
+
+        /**
+         * Adds the support level of a product used as the product of the owner's pools. The
+         * support level is only matched for pools which don't define their own.
+         *
+         * @param productUuid
+         *  the UUID of the product
+         *
+         * @param supportLevel
+         *  the support level of the product
+         *
+         * @return
+         *  a reference to this builder
+         */
+        public Builder addSupportLevel(String productUuid, String supportLevel) {
+            Term term = this.getTerm(supportLevel);
+
+            if (term != null && productUuid != null) {
+                term.supportLevelProducts = Term.add(term.supportLevelProducts, productUuid);
+            }
+
+            return this;
+        }
+
+        /**
+         * Flags a pool previously added to the index as defining its own support level
+         *
+         * @param poolId
+         *  the ID of the pool
+         *
+         * @return
+         *  a reference to this builder
+         */
+        public Builder addSupportLevelOverride(String poolId) {
+            Integer index = this.poolIndices.get(poolId);
+
+            if (index != null) {
+                this.supportLevelOverrides.set(index);
+            }
+
+            return this;
+        }
+
+        /**
+         * Adds the searched values of a content provided by a provided product of the owner's pools
+         *
+         * @param productUuid
+         *  the UUID of the provided product
+         *
+         * @param contentUuid
+         *  the UUID of the content
+         *
+         * @param name
+         *  the name of the content
+         *
+         * @param label
+         *  the label of the content
+         *
+         * @return
+         *  a reference to this builder
+         */
+        public Builder addContent(String productUuid, String contentUuid, String name, String label) {
+            if (productUuid == null || contentUuid == null) {
+                return this;
+            }
+
+            this.providedProductsByContent.computeIfAbsent(contentUuid, key -> new HashSet<>())
+                .add(productUuid);
+
+            for (String value : Arrays.asList(name, label)) {
+                Term term = this.getTerm(value);
+                if (term != null) {
+                    term.contents = Term.add(term.contents, contentUuid);
+                }
+            }
+
+            return this;
+        }
+
+        private OwnerIndex build(long ownerVersion, long globalVersion) {
+            Term[] terms = this.terms.values().toArray(new Term[0]);
+            Map<String, List<Integer>> grams = new HashMap<>();
+
+            for (int i = 0; i < terms.length; ++i) {
+                String value = terms[i].value;
+                Set<String> seen = new HashSet<>();
+
+                for (int offset = 0; offset + GRAM_LENGTH <= value.length(); ++offset) {
+                    String gram = value.substring(offset, offset + GRAM_LENGTH);
+
+                    if (seen.add(gram)) {
+                        grams.computeIfAbsent(gram, key -> new ArrayList<>()).add(i);
+                    }
+                }
+            }
+
+            Map<String, int[]> postings = new HashMap<>();
+            for (Map.Entry<String, List<Integer>> entry : grams.entrySet()) {
+                postings.put(entry.getKey(), toArray(entry.getValue()));
+            }
+
+            return new OwnerIndex(this, terms, postings, ownerVersion, globalVersion);
+        }
+    }
+
+    /**
+     * The search index of a single owner. Instances are immutable once built.
+     */
+    private static class OwnerIndex {
+        private final String[] poolIds;
+        private final Term[] terms;
+        private final Map<String, int[]> grams;
+        private final Map<String, int[]> poolsByProduct;
+        private final Map<String, int[]> poolsByProvidedProduct;
+        private final Map<String, Set<String>> providedProductsByContent;
+        private final BitSet supportLevelOverrides;
+        private final long ownerVersion;
+        private final long globalVersion;
+        private volatile long lastAccess;
+
+        public OwnerIndex(Builder builder, Term[] terms, Map<String, int[]> grams, long ownerVersion,
+            long globalVersion) {
+
+            this.poolIds = builder.poolIds.toArray(new String[0]);
+            this.terms = terms;
+            this.grams = grams;
+            this.poolsByProduct = toArrays(builder.poolsByProduct);
+            this.poolsByProvidedProduct = toArrays(builder.poolsByProvidedProduct);
+            this.providedProductsByContent = builder.providedProductsByContent;
+            this.supportLevelOverrides = builder.supportLevelOverrides;
+            this.ownerVersion = ownerVersion;
+            this.globalVersion = globalVersion;
+            this.lastAccess = System.nanoTime();
+        }
+
+        /**
+         * Finds the pools with any searched value matching the given sanitized LIKE pattern.
+         */
+        public BitSet match(String pattern) {
+            BitSet output = new BitSet(this.poolIds.length);
+            List<String> literals = new ArrayList<>();
+            Pattern regex = toRegex(pattern.toLowerCase(), literals);
+
+            int[] candidates = null;
+            for (String literal : literals) {
+                for (int offset = 0; offset + GRAM_LENGTH <= literal.length(); ++offset) {
+                    int[] posting = this.grams.get(literal.substring(offset, offset + GRAM_LENGTH));
+
+                    if (posting == null) {
+                        return output;
+                    }
+
+                    candidates = candidates != null ? intersect(candidates, posting) : posting;
+                }
+            }
+
+            if (candidates != null) {
+                for (int candidate : candidates) {
+                    this.matchTerm(this.terms[candidate], regex, output);
+                }
+            }
+            else {
+                for (Term term : this.terms) {
+                    this.matchTerm(term, regex, output);
+                }
+            }
+
+            return output;
+        }
+
+        private void matchTerm(Term term, Pattern regex, BitSet output) {
+            if (!regex.matcher(term.value).matches()) {
+                return;
+            }
+
+            if (term.pools != null) {
+                for (int pool : term.pools) {
+                    output.set(pool);
+                }
+            }
+
+            if (term.products != null) {
+                for (String productUuid : term.products) {
+                    set(output, this.poolsByProduct.get(productUuid));
+                    set(output, this.poolsByProvidedProduct.get(productUuid));
+                }
+            }
+
+            if (term.supportLevelProducts != null) {
+                for (String productUuid : term.supportLevelProducts) {
+                    int[] pools = this.poolsByProduct.get(productUuid);
+
+                    if (pools != null) {
+                        for (int pool : pools) {
+                            if (!this.supportLevelOverrides.get(pool)) {
+                                output.set(pool);
+                            }
+                        }
+                    }
+                }
+            }
+
+            if (term.contents != null) {
+                for (String contentUuid : term.contents) {
+                    Set<String> products = this.providedProductsByContent.get(contentUuid);
+
+                    if (products != null) {
+                        for (String productUuid : products) {
+                            set(output, this.poolsByProvidedProduct.get(productUuid));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The owners affected by a single transaction, whose indexes are discarded once it completes
+     */
+    private class PendingChanges implements Synchronization {
+        private final Set<String> owners = new HashSet<>();
+        private boolean global = false;
+
+        @Override
+        public void beforeCompletion() {
+            // Intentionally left empty
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            if (pending.get() == this) {
+                pending.remove();
+            }
+
+            // On rollback nothing changed, but an index built in the meantime may have seen the
+            // changes, so the affected indexes are discarded either way.
+            invalidate(this.owners, this.global);
+
+            if (status == Status.STATUS_COMMITTED) {
+                publish(this.owners, this.global);
+            }
+        }
+    }
+
+    /**
+     * Hibernate event listener forwarding changes to searched values to the index
+     */
+    private class SearchIndexListener implements PostInsertEventListener, PostUpdateEventListener,
+        PostDeleteEventListener, PostCollectionRecreateEventListener, PostCollectionUpdateEventListener,
+        PostCollectionRemoveEventListener {
+
+        @Override
+        public void onPostInsert(PostInsertEvent event) {
+            this.onEntityChange(event.getSession(), event.getEntity(), false);
+        }
+
+        @Override
+        public void onPostUpdate(PostUpdateEvent event) {
+            Object entity = event.getEntity();
+            boolean ownerChanged = false;
+
+            if (entity instanceof Pool) {
+                int[] dirty = event.getDirtyProperties();
+                String[] properties = event.getPersister().getPropertyNames();
+                boolean searched = dirty == null;
+
+                for (int i = 0; dirty != null && i < dirty.length; ++i) {
+                    searched |= SEARCHED_POOL_PROPERTIES.contains(properties[dirty[i]]);
+                    ownerChanged |= "owner".equals(properties[dirty[i]]);
+                }
+
+                if (!searched) {
+                    return;
+                }
+            }
+
+            // A pool moving between owners changes two indexes; this is rare enough that we don't
+            // bother finding the previous owner.
+            this.onEntityChange(event.getSession(), entity, ownerChanged);
+        }
+
+        @Override
+        public void onPostDelete(PostDeleteEvent event) {
+            this.onEntityChange(event.getSession(), event.getEntity(), false);
+        }
+
+        @Override
+        public void onPostRecreateCollection(PostCollectionRecreateEvent event) {
+            this.onCollectionChange(event);
+        }
+
+        @Override
+        public void onPostUpdateCollection(PostCollectionUpdateEvent event) {
+            this.onCollectionChange(event);
+        }
+
+        @Override
+        public void onPostRemoveCollection(PostCollectionRemoveEvent event) {
+            this.onCollectionChange(event);
+        }
+
+        @Override
+        public boolean requiresPostCommitHanding(EntityPersister persister) {
+            return false;
+        }
+
+        private void onEntityChange(EventSource session, Object entity, boolean global) {
+            if (entity instanceof Pool) {
+                record(session, getOwnerId((Pool) entity), global);
+            }
+            else if (entity instanceof Product || entity instanceof Content ||
+                entity instanceof ProductContent) {
+
+                record(session, null, true);
+            }
+        }
+
+        private void onCollectionChange(AbstractCollectionEvent event) {
+            Object owner = event.getAffectedOwnerOrNull();
+            PersistentCollection collection = event.getCollection();
+            String role = collection != null ? collection.getRole() : null;
+
+            if (owner instanceof Pool) {
+                if (role == null || SEARCHED_POOL_COLLECTIONS.contains(role)) {
+                    record(event.getSession(), getOwnerId((Pool) owner), false);
+                }
+            }
+            else if (owner instanceof Product || owner instanceof Content) {
+                record(event.getSession(), null, true);
+            }
+        }
+    }
+
+    private final int maxOwners;
+    private final ClusterCacheInvalidator clusterInvalidator;
+    private final ConcurrentMap<String, OwnerIndex> entries;
+    private final ConcurrentMap<String, AtomicLong> versions;
+    private final AtomicLong globalVersion;
+    private final ThreadLocal<PendingChanges> pending;
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+    private volatile boolean listening;
+
+    @Inject
+    public PoolSearchIndex(Configuration config, ClusterCacheInvalidator clusterInvalidator) {
+        if (config == null) {
+            throw new IllegalArgumentException("config is null");
+        }
+
+        if (clusterInvalidator == null) {
+            throw new IllegalArgumentException("clusterInvalidator is null");
+        }
+
+        this.maxOwners = config.getInt(ConfigProperties.POOL_SEARCH_INDEX_MAX_OWNERS);
+        this.clusterInvalidator = clusterInvalidator;
+        this.entries = new ConcurrentHashMap<>();
+        this.versions = new ConcurrentHashMap<>();
+        this.globalVersion = new AtomicLong();
+        this.pending = new ThreadLocal<>();
+        this.hits = new AtomicLong();
+        this.misses = new AtomicLong();
+        this.listening = false;
+
+        this.clusterInvalidator.registerNodeCache(CACHE_NAME, ownerId -> this.invalidate(
+            ownerId != null ? Collections.singleton(ownerId) : Collections.emptySet(), ownerId == null));
+    }
+
+    /**
+     * Registers the listeners which keep this index up to date with the given Hibernate event
+     * listener registry. Searches are not served until the listeners are registered.
+     *
+     * @param registry
+     *  the event listener registry of the session factory backing the pools
+     */
+    public void registerListeners(EventListenerRegistry registry) {
+        if (registry == null) {
+            throw new IllegalArgumentException("registry is null");
+        }
+
+        SearchIndexListener listener = new SearchIndexListener();
+        registry.getEventListenerGroup(EventType.POST_INSERT).appendListener(listener);
+        registry.getEventListenerGroup(EventType.POST_UPDATE).appendListener(listener);
+        registry.getEventListenerGroup(EventType.POST_DELETE).appendListener(listener);
+        registry.getEventListenerGroup(EventType.POST_COLLECTION_RECREATE).appendListener(listener);
+        registry.getEventListenerGroup(EventType.POST_COLLECTION_UPDATE).appendListener(listener);
+        registry.getEventListenerGroup(EventType.POST_COLLECTION_REMOVE).appendListener(listener);
+
+        this.listening = true;
+    }
+
+    /**
+     * Checks whether or not the index for the given owner may be used by the current thread. The
+     * index is unavailable if it is disabled, or if the current transaction has made changes to
+     * the owner's pools, or to any products or content, which have not yet been committed.
+     *
+     * @param ownerId
+     *  the ID of the owner to check
+     *
+     * @return
+     *  true if pool searches for the owner may be performed with this index; false otherwise
+     */
+    public boolean isAvailable(String ownerId) {
+        if (!this.listening || this.maxOwners < 1 || ownerId == null) {
+            return false;
+        }
+
+        PendingChanges changes = this.pending.get();
+        return changes == null || (!changes.global && !changes.owners.contains(ownerId));
+    }
+
+    /**
+     * Finds the IDs of the pools of the given owner which match every one of the given patterns.
+     * A pool matches a pattern if its contract number, order number, product ID or name, provided
+     * product IDs or names, product support level, or the names or labels of its provided content
+     * match the pattern, ignoring case. Patterns use the syntax of SQL LIKE expressions, with '!'
+     * as the escape character.
+     * <p></p>
+     * If the owner's index has not yet been loaded, it is loaded with the given loader, which must
+     * populate the builder with the searchable values of every pool of the owner. Callers must
+     * check {@link #isAvailable(String)} before using this method.
+     *
+     * @param ownerId
+     *  the ID of the owner whose pools should be searched
+     *
+     * @param patterns
+     *  the sanitized LIKE patterns to match
+     *
+     * @param loader
+     *  a function loading the searchable values of an owner's pools from the database
+     *
+     * @return
+     *  a set containing the IDs of the matching pools
+     */
+    public Set<String> search(String ownerId, Collection<String> patterns,
+        BiConsumer<String, Builder> loader) {
+
+        if (ownerId == null) {
+            throw new IllegalArgumentException("ownerId is null");
+        }
+
+        if (loader == null) {
+            throw new IllegalArgumentException("loader is null");
+        }
+
+        OwnerIndex index = this.entries.get(ownerId);
+        if (index != null) {
+            this.hits.incrementAndGet();
+            index.lastAccess = System.nanoTime();
+        }
+        else {
+            this.misses.incrementAndGet();
+            index = this.load(ownerId, loader);
+        }
+
+        BitSet matches = null;
+        if (patterns != null) {
+            for (String pattern : patterns) {
+                if (pattern == null) {
+                    continue;
+                }
+
+                BitSet match = index.match(pattern);
+
+                if (matches != null) {
+                    matches.and(match);
+                }
+                else {
+                    matches = match;
+                }
+            }
+        }
+
+        if (matches == null) {
+            return new HashSet<>(Arrays.asList(index.poolIds));
+        }
+
+        Set<String> output = new HashSet<>();
+        for (int pool = matches.nextSetBit(0); pool >= 0; pool = matches.nextSetBit(pool + 1)) {
+            output.add(index.poolIds[pool]);
+        }
+
+        return output;
+    }
+
+    private OwnerIndex load(String ownerId, BiConsumer<String, Builder> loader) {
+        long globalVersion = this.globalVersion.get();
+        long ownerVersion = this.getVersion(ownerId);
+        long start = System.currentTimeMillis();
+
+        Builder builder = new Builder();
+        loader.accept(ownerId, builder);
+        OwnerIndex index = builder.build(ownerVersion, globalVersion);
+
+        log.debug("Loaded pool search index for owner {} in {}ms: {} pools, {} values", ownerId,
+            System.currentTimeMillis() - start, index.poolIds.length, index.terms.length);
+
+        synchronized (this) {
+            // Only publish the index if nothing it was built from changed while we were loading
+            // it; otherwise it may be missing the changes.
+            if (this.globalVersion.get() == globalVersion && this.getVersion(ownerId) == ownerVersion) {
+                this.entries.put(ownerId, index);
+                this.evict();
+            }
+        }
+
+        return index;
+    }
+
+    private void record(EventSource session, String ownerId, boolean global) {
+        if (ownerId == null && !global) {
+            return;
+        }
+
+        PendingChanges changes = this.getPendingChanges(session);
+
+        if (changes != null) {
+            if (ownerId != null) {
+                changes.owners.add(ownerId);
+            }
+
+            changes.global |= global;
+        }
+        else {
+            Collection<String> owners = ownerId != null ?
+                Collections.singleton(ownerId) :
+                Collections.emptySet();
+
+            this.invalidate(owners, global);
+            this.publish(owners, global);
+        }
+    }
+
+    private PendingChanges getPendingChanges(EventSource session) {
+        PendingChanges changes = this.pending.get();
+
+        if (changes == null) {
+            Transaction transaction = session != null ? session.getTransaction() : null;
+
+            if (transaction == null || !transaction.getStatus().isOneOf(ACTIVE_STATES)) {
+                return null;
+            }
+
+            changes = new PendingChanges();
+            transaction.registerSynchronization(changes);
+            this.pending.set(changes);
+        }
+
+        return changes;
+    }
+
+    /**
+     * Discards the indexes of the given owners, or every index if global is set. The affected
+     * versions are bumped, so an index being loaded concurrently will not be published.
+     */
+    private synchronized void invalidate(Collection<String> owners, boolean global) {
+        if (global) {
+            this.globalVersion.incrementAndGet();
+            this.entries.clear();
+        }
+
+        for (String ownerId : owners) {
+            this.versions.computeIfAbsent(ownerId, key -> new AtomicLong()).incrementAndGet();
+            this.entries.remove(ownerId);
+        }
+    }
+
+    /**
+     * Publishes the owners whose searched values have been committed to the other nodes of the
+     * cluster, or every owner if global is set.
+     */
+    private void publish(Collection<String> owners, boolean global) {
+        if (global) {
+            this.clusterInvalidator.invalidateNodeCache(CACHE_NAME, null);
+            return;
+        }
+
+        for (String ownerId : owners) {
+            this.clusterInvalidator.invalidateNodeCache(CACHE_NAME, ownerId);
+        }
+    }
+
+    private long getVersion(String ownerId) {
+        return this.versions.computeIfAbsent(ownerId, key -> new AtomicLong()).get();
+    }
+
+    /**
+     * Evicts the least recently used indexes until the cache is back within its owner limit.
+     * Must be called while holding the index lock.
+     */
+    private void evict() {
+        if (this.entries.size() <= this.maxOwners) {
+            return;
+        }
+
+        List<Map.Entry<String, OwnerIndex>> candidates = new ArrayList<>(this.entries.entrySet());
+        candidates.sort(Comparator.comparingLong(entry -> entry.getValue().lastAccess));
+
+        for (Map.Entry<String, OwnerIndex> entry : candidates) {
+            if (this.entries.size() <= this.maxOwners) {
+                break;
+            }
+
+            this.entries.remove(entry.getKey());
+            log.debug("Evicted pool search index for owner: {}", entry.getKey());
+        }
+    }
+
+    /**
+     * Converts a LIKE pattern to an equivalent regular expression, collecting the literal runs
+     * of the pattern into the given list.
+     */
+    private static Pattern toRegex(String pattern, List<String> literals) {
+        StringBuilder regex = new StringBuilder();
+        StringBuilder literal = new StringBuilder();
+
+        for (int i = 0; i < pattern.length(); ++i) {
+            char c = pattern.charAt(i);
+
+            if (c == ESCAPE_CHAR && i + 1 < pattern.length()) {
+                literal.append(pattern.charAt(++i));
+            }
+            else if (c == '%' || c == '_') {
+                flushLiteral(literal, regex, literals);
+                regex.append(c == '%' ? ".*" : ".");
+            }
+            else {
+                literal.append(c);
+            }
+        }
+
+        flushLiteral(literal, regex, literals);
+        return Pattern.compile(regex.toString(), Pattern.DOTALL);
+    }
+
+    private static void flushLiteral(StringBuilder literal, StringBuilder regex, List<String> literals) {
+        if (literal.length() > 0) {
+            regex.append(Pattern.quote(literal.toString()));
+            literals.add(literal.toString());
+            literal.setLength(0);
+        }
+    }
+
+    private static int[] intersect(int[] left, int[] right) {
+        int[] output = new int[Math.min(left.length, right.length)];
+        int count = 0;
+
+        for (int l = 0, r = 0; l < left.length && r < right.length;) {
+            if (left[l] < right[r]) {
+                ++l;
+            }
+            else if (left[l] > right[r]) {
+                ++r;
+            }
+            else {
+                output[count++] = left[l];
+                ++l;
+                ++r;
+            }
+        }
+
+        return Arrays.copyOf(output, count);
+    }
+
+    private static void set(BitSet output, int[] pools) {
+        if (pools != null) {
+            for (int pool : pools) {
+                output.set(pool);
+            }
+        }
+    }
+
+    private static int[] toArray(List<Integer> values) {
+        int[] output = new int[values.size()];
+
+        for (int i = 0; i < output.length; ++i) {
+            output[i] = values.get(i);
+        }
+
+        return output;
+    }
+
+    private static Map<String, int[]> toArrays(Map<String, List<Integer>> map) {
+        Map<String, int[]> output = new HashMap<>();
+
+        for (Map.Entry<String, List<Integer>> entry : map.entrySet()) {
+            output.put(entry.getKey(), toArray(entry.getValue()));
+        }
+
+        return output;
+    }
+
+    private static String getOwnerId(Pool pool) {
+        return pool.getOwner() != null ? pool.getOwner().getId() : null;
+    }
+
+    public int size() {
+        return this.entries.size();
+    }
+
+    public long getHits() {
+        return this.hits.get();
+    }
+
+    public long getMisses() {
+        return this.misses.get();
+    }
+
+}
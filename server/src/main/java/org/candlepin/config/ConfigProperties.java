@@ -24,8 +24,11 @@ import org.candlepin.async.tasks.ImportRecordCleanerJob;
 import org.candlepin.async.tasks.JobCleaner;
 import org.candlepin.async.tasks.ManifestCleanerJob;
 import org.candlepin.async.tasks.OrphanCleanupJob;
+import org.candlepin.async.tasks.PoolQuantityReconcileJob;
 import org.candlepin.async.tasks.UnmappedGuestEntitlementCleanerJob;
 import org.candlepin.common.config.Configuration;
+import org.candlepin.resteasy.AdmissionController;
+import org.candlepin.resteasy.AsyncRequestExecutor;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -120,6 +123,20 @@ public class ConfigProperties {
      */
     public static final String AUDIT_FILTER_DEFAULT_POLICY = "candlepin.audit.filter.policy";
 
+    /**
+     * The maximum number of events packed into a single event message. Events queued by a request or
+     * job are sent in batches rather than one message per event, reducing the number of messages the
+     * broker has to store and deliver. Setting this to 1 sends every event in its own message.
+     */
+    public static final String AUDIT_BATCH_MAX_EVENTS = "candlepin.audit.batch.max_events";
+
+    /**
+     * The approximate maximum size, in bytes, of the body of a batched event message. A batch is
+     * sent early once adding another event would exceed this size; an event larger than this limit
+     * is always sent in a message of its own.
+     */
+    public static final String AUDIT_BATCH_MAX_BYTES = "candlepin.audit.batch.max_bytes";
+
     public static final String PRETTY_PRINT = "candlepin.pretty_print";
     public static final String ACTIVATION_DEBUG_PREFIX = "candlepin.subscription.activation.debug_prefix";
 
@@ -141,6 +158,48 @@ public class ConfigProperties {
      */
     public static final String SUSPEND_MODE_ENABLED = "candlepin.suspend_mode_enabled";
 
+    /**
+     * Enables attribution of Hibernate statements, entity loads and collection fetches to the
+     * curator methods and REST endpoints which caused them. The collected statistics are available
+     * from the /admin/profiling endpoint, and a per-request summary is returned in the
+     * X-Candlepin-Query-Profile header for requests which include it. Disabled by default.
+     */
+    public static final String DB_PROFILING_ENABLED = "candlepin.db.profiling.enabled";
+
+    /**
+     * The JDBC URL of a read replica of the primary database. When set, database connections
+     * acquired on behalf of methods annotated with @ReadOnly are served by a separate connection
+     * pool to the replica, sharing the primary's pool settings. Unset by default, in which case
+     * every connection is served by the primary.
+     */
+    public static final String DB_REPLICA_URL = "candlepin.db.replica.url";
+
+    /**
+     * The username and password with which to connect to the read replica. Default to the
+     * credentials of the primary database.
+     */
+    public static final String DB_REPLICA_USERNAME = "candlepin.db.replica.username";
+    public static final String DB_REPLICA_PASSWORD = "candlepin.db.replica.password";
+
+    /**
+     * The query used to determine the replication lag of the read replica, in milliseconds. The
+     * default is suitable for PostgreSQL 10 and newer streaming replicas, and reports no lag once
+     * the replica has replayed everything it has received.
+     */
+    public static final String DB_REPLICA_LAG_QUERY = "candlepin.db.replica.lag_query";
+
+    /**
+     * The maximum replication lag, in milliseconds, at which the read replica is still used. While
+     * the lag exceeds this value, or cannot be determined, connections are served by the primary.
+     * A value of zero disables the lag check.
+     */
+    public static final String DB_REPLICA_MAX_LAG = "candlepin.db.replica.max_lag";
+
+    /**
+     * The minimum interval, in milliseconds, between checks of the replication lag.
+     */
+    public static final String DB_REPLICA_LAG_CHECK_INTERVAL = "candlepin.db.replica.lag_check_interval";
+
     // Messaging
     public static final String CPM_PROVIDER = "candlepin.messaging.provider";
 
@@ -184,12 +243,14 @@ public class ConfigProperties {
 
     // Hibernate
     public static final String DB_PASSWORD = JPA_CONFIG_PREFIX + "hibernate.connection.password";
+    public static final String DB_DIALECT = JPA_CONFIG_PREFIX + "hibernate.dialect";
     // Cache
     public static final String CACHE_JMX_STATS = "cache.jmx.statistics";
     public static final String CACHE_CONFIG_FILE_URI = JPA_CONFIG_PREFIX + "hibernate.javax.cache.uri";
 
     public static final String[] ENCRYPTED_PROPERTIES = new String[] {
         DB_PASSWORD,
+        DB_REPLICA_PASSWORD,
     };
 
     public static final String SYNC_WORK_DIR = "candlepin.sync.work_dir";
@@ -217,6 +278,99 @@ public class ConfigProperties {
 
     public static final String PRODUCT_CACHE_MAX = "candlepin.cache.product_cache_max";
 
+    /**
+     * Limits for the per-owner product graph snapshot cache. Snapshots are evicted, least recently
+     * used first, once either the number of cached owners or their estimated total size in bytes
+     * exceeds these limits. Setting the owner limit to 0 disables the cache, which is the default:
+     * snapshots are held by each node, so a cluster must also enable cluster cache invalidation.
+     */
+    public static final String PRODUCT_GRAPH_CACHE_MAX_OWNERS = "candlepin.cache.product_graph.max_owners";
+    public static final String PRODUCT_GRAPH_CACHE_MAX_BYTES = "candlepin.cache.product_graph.max_bytes";
+
+    /**
+     * The maximum number of owners for which the guest-to-host index used to resolve the hosts of
+     * virtual guests is kept in memory. The least recently used owners are evicted first. Setting
+     * this to 0, the default, disables the index, and hosts are resolved from the database instead.
+     * The indexes are held by each node, so a cluster must also enable cluster cache invalidation.
+     */
+    public static final String GUEST_HOST_CACHE_MAX_OWNERS = "candlepin.cache.guest_host.max_owners";
+
+    /**
+     * The maximum age, in seconds, of an owner's guest-to-host index. Older indexes are reloaded
+     * from the database on their next use, bounding the staleness of an index which missed a
+     * change made outside of this application.
+     */
+    public static final String GUEST_HOST_CACHE_MAX_AGE = "candlepin.cache.guest_host.max_age";
+
+    /**
+     * The maximum number of owners for which the owner info summary is kept in memory. The least
+     * recently used owners are evicted first. Setting this to 0 disables the cache, and owner info
+     * is computed on every request instead.
+     */
+    public static final String OWNER_INFO_CACHE_MAX_OWNERS = "candlepin.cache.owner_info.max_owners";
+
+    /**
+     * The maximum age, in seconds, of a cached owner info summary. Older summaries are recomputed
+     * on read. This bounds how long changes made by bulk operations or by other nodes of a cluster,
+     * which the cache cannot observe, take to show up.
+     */
+    public static final String OWNER_INFO_CACHE_MAX_AGE = "candlepin.cache.owner_info.max_age";
+
+    /**
+     * How long, in seconds, a cached owner info summary may still be served after a change to the
+     * owner's consumers, entitlements or pools, giving the refresher a chance to recompute it in
+     * the background. Defaults to 0, in which case owner info always reflects committed changes.
+     */
+    public static final String OWNER_INFO_CACHE_MAX_STALENESS = "candlepin.cache.owner_info.max_staleness";
+
+    /**
+     * The interval, in seconds, at which each node recomputes its stale owner info summaries in the
+     * background. Setting this to 0 disables the background refresh, and stale summaries are only
+     * recomputed on read.
+     */
+    public static final String OWNER_INFO_CACHE_REFRESH_INTERVAL =
+        "candlepin.cache.owner_info.refresh_interval";
+
+    /**
+     * The maximum number of owners for which the search index used to answer the pool "matches"
+     * filter is kept in memory. The least recently used owners are evicted first. Setting this to 0,
+     * the default, disables the index, and matches filters are evaluated by the database instead.
+     * The indexes are held by each node, so a cluster must also enable cluster cache invalidation.
+     */
+    public static final String POOL_SEARCH_INDEX_MAX_OWNERS = "candlepin.cache.pool_search.max_owners";
+
+    /**
+     * Limits for the cache of compressed entitlement certificate bundles served to consumers.
+     * Bundles are evicted, least recently used first, once either the number of cached consumers or
+     * the total size of their bundles in bytes exceeds these limits. Setting the consumer limit to 0
+     * disables the cache, and bundles are built on every request.
+     */
+    public static final String CERT_BUNDLE_CACHE_MAX_CONSUMERS = "candlepin.cache.cert_bundles.max_consumers";
+    public static final String CERT_BUNDLE_CACHE_MAX_BYTES = "candlepin.cache.cert_bundles.max_bytes";
+
+    /**
+     * The number of escrow slices carved out of a pool's quantity for concurrent binds to consume
+     * from, instead of locking the pool row. Setting this to 0 disables escrow, and every bind
+     * locks the pools it consumes from. Escrow is only supported on PostgreSQL, and is always
+     * disabled on other databases.
+     */
+    public static final String POOL_ESCROW_STRIPES = "candlepin.pool.escrow.stripes";
+
+    /**
+     * The quantity held in each escrow slice. Quantity held in escrow but not yet consumed is
+     * counted as consumed on the pool until the slice is released.
+     */
+    public static final String POOL_ESCROW_SLICE_SIZE = "candlepin.pool.escrow.slice_size";
+
+    /**
+     * Whether or not changes to second-level cached entities, and invalidations of named cache
+     * regions, are broadcast to the other nodes of a cluster over the message broker, so each node
+     * can evict its stale copies. Requires the Artemis messaging provider, and a broker shared by
+     * all of the nodes.
+     */
+    public static final String CACHE_CLUSTER_INVALIDATION_ENABLED =
+        "candlepin.cache.cluster_invalidation.enabled";
+
     public static final String INTEGER_FACTS = "candlepin.integer_facts";
     private static final String INTEGER_FACT_LIST = "";
 
@@ -308,6 +462,7 @@ public class ConfigProperties {
         JobCleaner.JOB_KEY,
         ManifestCleanerJob.JOB_KEY,
         OrphanCleanupJob.JOB_KEY,
+        PoolQuantityReconcileJob.JOB_KEY,
         UnmappedGuestEntitlementCleanerJob.JOB_KEY
     };
 
@@ -351,8 +506,82 @@ public class ConfigProperties {
         return builder.toString();
     }
 
+    public static final String ASYNC_REQUESTS_PREFIX = "candlepin.async_requests.";
+
+    /**
+     * Fetches the configuration key for the specified setting of requests to a long-running endpoint
+     * completed by the {@link AsyncRequestExecutor}. Each endpoint accepts the settings:
+     * <ul>
+     *  <li>max_concurrent: the number of requests executed concurrently; 0 executes requests on the
+     *  threads which received them</li>
+     *  <li>max_queued: the number of requests waiting for a thread, beyond which further requests
+     *  are rejected</li>
+     * </ul>
+     *
+     * @param endpoint
+     *  the endpoint for which to fetch the configuration key
+     *
+     * @param cfgName
+     *  the name of the setting
+     *
+     * @return
+     *  the configuration key of the setting for the given endpoint
+     */
+    public static String asyncRequestConfig(String endpoint, String cfgName) {
+        StringBuilder builder = new StringBuilder(ASYNC_REQUESTS_PREFIX)
+            .append(endpoint)
+            .append('.')
+            .append(cfgName);
+
+        return builder.toString();
+    }
+
+    /**
+     * Whether or not requests are subject to admission control. While enabled, the number of
+     * concurrent requests of each cost class is limited, adapting to the latency of its requests,
+     * and requests beyond those limits are rejected with a 429 response.
+     */
+    public static final String ADMISSION_CONTROL_ENABLED = "candlepin.admission.enabled";
+    public static final String ADMISSION_PREFIX = "candlepin.admission.";
+
+    /**
+     * Fetches the configuration key for the specified admission control setting of a request cost
+     * class. Each class accepts the settings:
+     * <ul>
+     *  <li>min_limit: the number of concurrent requests below which the limit never decreases</li>
+     *  <li>max_limit: the number of concurrent requests above which the limit never increases</li>
+     *  <li>latency_target: the latency, in milliseconds, above which the limit is decreased; for
+     *      the queued class, the time spent waiting in the AsyncRequestExecutor's queue</li>
+     *  <li>retry_after: the number of seconds rejected clients are asked to wait</li>
+     * </ul>
+     *
+     * @param level
+     *  the configuration name of the cost class for which to fetch the configuration key
+     *
+     * @param cfgName
+     *  the name of the setting
+     *
+     * @return
+     *  the configuration key of the setting for the given cost class
+     */
+    public static String admissionConfig(String level, String cfgName) {
+        StringBuilder builder = new StringBuilder(ADMISSION_PREFIX)
+            .append(level)
+            .append('.')
+            .append(cfgName);
+
+        return builder.toString();
+    }
+
     public static final String ENTITLER_BULK_SIZE = "entitler.bulk.size";
 
+    /**
+     * The number of threads used to fetch and compile subscriptions from the subscription service
+     * while refreshing pools for multiple owners. Pools are still refreshed one owner at a time,
+     * each in its own transaction; a value of 1 disables concurrent fetching entirely.
+     */
+    public static final String REFRESH_FETCH_THREADS = "candlepin.refresh.fetch_threads";
+
     public static final Map<String, String> DEFAULT_PROPERTIES = new HashMap<String, String>() {
         private static final long serialVersionUID = 1L;
 
@@ -405,6 +634,7 @@ public class ConfigProperties {
             this.put(AUDIT_FILTER_ENABLED, "false");
 
             this.put(ENTITLER_BULK_SIZE, "1000");
+            this.put(REFRESH_FETCH_THREADS, "4");
 
             /**
             * These default DO_NOT_FILTER events are those events needed by
@@ -422,6 +652,8 @@ public class ConfigProperties {
 
             this.put(AUDIT_FILTER_DO_FILTER, "");
             this.put(AUDIT_FILTER_DEFAULT_POLICY, "DO_FILTER");
+            this.put(AUDIT_BATCH_MAX_EVENTS, "500");
+            this.put(AUDIT_BATCH_MAX_BYTES, Integer.toString(64 * 1024));
 
             this.put(PRETTY_PRINT, "false");
             this.put(CRL_FILE_PATH, "/var/lib/candlepin/candlepin-crl.crl");
@@ -447,6 +679,13 @@ public class ConfigProperties {
             this.put(CACHE_CONFIG_FILE_URI, "ehcache.xml");
 
             this.put(SUSPEND_MODE_ENABLED, "true");
+            this.put(DB_PROFILING_ENABLED, "false");
+            this.put(DB_REPLICA_URL, "");
+            this.put(DB_REPLICA_LAG_QUERY, "SELECT CASE WHEN pg_last_wal_receive_lsn() = " +
+                "pg_last_wal_replay_lsn() THEN 0 ELSE CAST(EXTRACT(EPOCH FROM (now() - " +
+                "pg_last_xact_replay_timestamp())) * 1000 AS BIGINT) END");
+            this.put(DB_REPLICA_MAX_LAG, "5000");
+            this.put(DB_REPLICA_LAG_CHECK_INTERVAL, "1000");
 
             this.put(IDENTITY_CERT_YEAR_ADDENDUM, "16");
             this.put(IDENTITY_CERT_EXPIRY_THRESHOLD, "90");
@@ -476,6 +715,51 @@ public class ConfigProperties {
              *  a larger memory footprint as the cache fills up.
              */
             this.put(PRODUCT_CACHE_MAX, "100");
+            this.put(PRODUCT_GRAPH_CACHE_MAX_OWNERS, "0");
+            this.put(PRODUCT_GRAPH_CACHE_MAX_BYTES, Long.toString(64L * 1024 * 1024));
+            this.put(GUEST_HOST_CACHE_MAX_OWNERS, "0");
+            this.put(GUEST_HOST_CACHE_MAX_AGE, "300");
+            this.put(OWNER_INFO_CACHE_MAX_OWNERS, "100");
+            this.put(OWNER_INFO_CACHE_MAX_AGE, "300");
+            this.put(OWNER_INFO_CACHE_MAX_STALENESS, "0");
+            this.put(OWNER_INFO_CACHE_REFRESH_INTERVAL, "120");
+            this.put(POOL_SEARCH_INDEX_MAX_OWNERS, "0");
+            this.put(CERT_BUNDLE_CACHE_MAX_CONSUMERS, "1000");
+            this.put(CERT_BUNDLE_CACHE_MAX_BYTES, Long.toString(64L * 1024 * 1024));
+
+            this.put(asyncRequestConfig(AsyncRequestExecutor.ENDPOINT_BIND,
+                AsyncRequestExecutor.CFG_MAX_CONCURRENT), "16");
+            this.put(asyncRequestConfig(AsyncRequestExecutor.ENDPOINT_BIND,
+                AsyncRequestExecutor.CFG_MAX_QUEUED), "200");
+            this.put(asyncRequestConfig(AsyncRequestExecutor.ENDPOINT_EXPORT,
+                AsyncRequestExecutor.CFG_MAX_CONCURRENT), "4");
+            this.put(asyncRequestConfig(AsyncRequestExecutor.ENDPOINT_EXPORT,
+                AsyncRequestExecutor.CFG_MAX_QUEUED), "20");
+            this.put(asyncRequestConfig(AsyncRequestExecutor.ENDPOINT_IMPORT,
+                AsyncRequestExecutor.CFG_MAX_CONCURRENT), "2");
+            this.put(asyncRequestConfig(AsyncRequestExecutor.ENDPOINT_IMPORT,
+                AsyncRequestExecutor.CFG_MAX_QUEUED), "10");
+
+            this.put(ADMISSION_CONTROL_ENABLED, "false");
+            this.put(admissionConfig("low", AdmissionController.CFG_MIN_LIMIT), "20");
+            this.put(admissionConfig("low", AdmissionController.CFG_MAX_LIMIT), "400");
+            this.put(admissionConfig("low", AdmissionController.CFG_LATENCY_TARGET), "250");
+            this.put(admissionConfig("low", AdmissionController.CFG_RETRY_AFTER), "1");
+            this.put(admissionConfig("normal", AdmissionController.CFG_MIN_LIMIT), "10");
+            this.put(admissionConfig("normal", AdmissionController.CFG_MAX_LIMIT), "200");
+            this.put(admissionConfig("normal", AdmissionController.CFG_LATENCY_TARGET), "1000");
+            this.put(admissionConfig("normal", AdmissionController.CFG_RETRY_AFTER), "5");
+            this.put(admissionConfig("high", AdmissionController.CFG_MIN_LIMIT), "2");
+            this.put(admissionConfig("high", AdmissionController.CFG_MAX_LIMIT), "50");
+            this.put(admissionConfig("high", AdmissionController.CFG_LATENCY_TARGET), "5000");
+            this.put(admissionConfig("high", AdmissionController.CFG_RETRY_AFTER), "30");
+            this.put(admissionConfig("queued", AdmissionController.CFG_MIN_LIMIT), "4");
+            this.put(admissionConfig("queued", AdmissionController.CFG_MAX_LIMIT), "100");
+            this.put(admissionConfig("queued", AdmissionController.CFG_LATENCY_TARGET), "2000");
+            this.put(admissionConfig("queued", AdmissionController.CFG_RETRY_AFTER), "30");
+            this.put(POOL_ESCROW_STRIPES, "0");
+            this.put(POOL_ESCROW_SLICE_SIZE, "100");
+            this.put(CACHE_CLUSTER_INVALIDATION_ENABLED, "false");
 
             /** As we do math on some facts and attributes, we need to constrain some values */
             this.put(INTEGER_FACTS, INTEGER_FACT_LIST);
@@ -515,6 +799,8 @@ public class ConfigProperties {
                 ManifestCleanerJob.DEFAULT_SCHEDULE);
             this.put(jobConfig(OrphanCleanupJob.JOB_KEY, ASYNC_JOBS_JOB_SCHEDULE),
                 OrphanCleanupJob.DEFAULT_SCHEDULE);
+            this.put(jobConfig(PoolQuantityReconcileJob.JOB_KEY, ASYNC_JOBS_JOB_SCHEDULE),
+                PoolQuantityReconcileJob.DEFAULT_SCHEDULE);
             this.put(jobConfig(UnmappedGuestEntitlementCleanerJob.JOB_KEY, ASYNC_JOBS_JOB_SCHEDULE),
                 UnmappedGuestEntitlementCleanerJob.DEFAULT_SCHEDULE);
 
@@ -62,6 +62,7 @@ import org.candlepin.policy.activationkey.ActivationKeyRules;
 import org.candlepin.policy.js.autobind.AutobindRules;
 import org.candlepin.policy.js.compliance.ComplianceRules;
 import org.candlepin.policy.js.compliance.ComplianceStatus;
+import org.candlepin.policy.js.entitlement.ConsumerRulesContext;
 import org.candlepin.policy.js.entitlement.Enforcer;
 import org.candlepin.policy.js.entitlement.Enforcer.CallerType;
 import org.candlepin.policy.js.pool.PoolRules;
@@ -99,6 +100,7 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -120,6 +122,10 @@ public class CandlepinPoolManager implements PoolManager {
     private static Logger log = LoggerFactory.getLogger(CandlepinPoolManager.class);
 
     private static final int MAX_ENTITLE_RETRIES = 3;
+    private static final int REFRESH_PROGRESS_INTERVAL = 1000;
+
+    /** The minimum number of pools loaded and validated at once when listing a page of pools */
+    private static final int POOL_LIST_WINDOW_SIZE = 100;
 
     private EventSink sink;
     private EventFactory eventFactory;
@@ -144,6 +150,7 @@ public class CandlepinPoolManager implements PoolManager {
     private CdnCurator cdnCurator;
     private OwnerManager ownerManager;
     private BindChainFactory bindChainFactory;
+    private PoolQuantityEscrow poolQuantityEscrow;
 
     @Inject protected JsonProvider jsonProvider;
 
@@ -179,7 +186,8 @@ public class CandlepinPoolManager implements PoolManager {
         OwnerManager ownerManager,
         CdnCurator cdnCurator,
         I18n i18n,
-        BindChainFactory bindChainFactory) {
+        BindChainFactory bindChainFactory,
+        PoolQuantityEscrow poolQuantityEscrow) {
 
         this.poolCurator = poolCurator;
         this.sink = sink;
@@ -207,6 +215,7 @@ public class CandlepinPoolManager implements PoolManager {
         this.cdnCurator = cdnCurator;
         this.i18n = i18n;
         this.bindChainFactory = bindChainFactory;
+        this.poolQuantityEscrow = poolQuantityEscrow;
     }
 
     /*
@@ -214,19 +223,58 @@ public class CandlepinPoolManager implements PoolManager {
      * so we don't miss anything
      */
     @Transactional
-    @SuppressWarnings("checkstyle:methodlength")
     @Traceable
     void refreshPoolsWithRegeneration(SubscriptionServiceAdapter subAdapter,
         @TraceableParam("owner") Owner owner, boolean lazy) {
 
-        Date now = new Date();
         owner = this.resolveOwner(owner);
-        log.info("Refreshing pools for owner: {}", owner);
 
-        ImportedEntityCompiler compiler = new ImportedEntityCompiler();
+        long start = System.currentTimeMillis();
+        RefreshResult result = new RefreshResult();
 
         log.debug("Fetching subscriptions from adapter...");
+        ImportedEntityCompiler compiler = new ImportedEntityCompiler();
         compiler.addSubscriptions(subAdapter.getSubscriptions(owner.getKey()));
+        result.addPhaseTime(RefreshResult.Phase.FETCH, System.currentTimeMillis() - start);
+
+        this.refreshPoolsWithRegeneration(owner, compiler, lazy, result);
+    }
+
+    /**
+     * Refreshes the pools for the given owner using the subscriptions, products and content
+     * previously compiled from the subscription service adapter. Fetching the upstream data is
+     * left to the caller so it may be performed outside of the refresh transaction, and for
+     * several owners at once.
+     *
+     * @param owner
+     *  the owner for which to refresh pools
+     *
+     * @param compiler
+     *  an entity compiler containing the upstream subscriptions for the owner
+     *
+     * @param lazy
+     *  whether or not to mark affected entitlements dirty rather than regenerating them immediately
+     *
+     * @param result
+     *  the refresh result in which to record statistics and phase timings
+     */
+    @Transactional
+    @SuppressWarnings("checkstyle:methodlength")
+    @Traceable
+    void refreshPoolsWithRegeneration(@TraceableParam("owner") Owner owner, ImportedEntityCompiler compiler,
+        boolean lazy, RefreshResult result) {
+
+        if (compiler == null) {
+            throw new IllegalArgumentException("compiler is null");
+        }
+
+        if (result == null) {
+            throw new IllegalArgumentException("result is null");
+        }
+
+        Date now = new Date();
+        owner = this.resolveOwner(owner);
+        log.info("Refreshing pools for owner: {}", owner);
 
         Map<String, ? extends SubscriptionInfo> subscriptionMap = compiler.getSubscriptions();
         Map<String, ? extends ProductInfo> productMap = compiler.getProducts();
@@ -250,24 +298,42 @@ public class CandlepinPoolManager implements PoolManager {
 
         // Persist content changes
         log.debug("Importing {} content...", contentMap.size());
+        long phaseStart = System.currentTimeMillis();
 
         Map<String, Content> importedContent = this.contentManager
             .importContent(owner, contentMap, productMap.keySet())
             .getImportedEntities();
 
+        result.addPhaseTime(RefreshResult.Phase.IMPORT_CONTENT, System.currentTimeMillis() - phaseStart);
+
         log.debug("Importing {} product(s)...", productMap.size());
+        phaseStart = System.currentTimeMillis();
+
         ImportResult<Product> importResult = this.productManager
             .importProducts(owner, productMap, importedContent);
 
         Map<String, Product> importedProducts = importResult.getImportedEntities();
         Map<String, Product> updatedProducts = importResult.getUpdatedEntities();
 
+        result.addPhaseTime(RefreshResult.Phase.IMPORT_PRODUCTS, System.currentTimeMillis() - phaseStart);
+
         log.debug("Refreshing {} pool(s)...", subscriptionMap.size());
+        phaseStart = System.currentTimeMillis();
+
+        int total = subscriptionMap.size();
+        int processed = 0;
+
         for (Iterator<? extends SubscriptionInfo> si = subscriptionMap.values().iterator(); si.hasNext();) {
             SubscriptionInfo sub = si.next();
 
+            if (++processed % REFRESH_PROGRESS_INTERVAL == 0) {
+                log.info("Refresh progress for owner {}: {} of {} subscriptions processed",
+                    owner.getKey(), processed, total);
+            }
+
             if (now.after(sub.getEndDate())) {
                 log.info("Skipping expired subscription: {}", sub);
+                result.incrementSubscriptionsSkipped();
 
                 si.remove();
                 continue;
@@ -277,10 +343,14 @@ public class CandlepinPoolManager implements PoolManager {
             Pool pool = this.convertToMasterPoolImpl(sub, owner, importedProducts);
             pool.setLocked(true);
             this.refreshPoolsForMasterPool(pool, false, lazy, updatedProducts);
+            result.incrementSubscriptionsProcessed();
         }
 
+        result.addPhaseTime(RefreshResult.Phase.REFRESH_POOLS, System.currentTimeMillis() - phaseStart);
+
         // delete pools whose subscription disappeared:
         log.debug("Deleting pools for absent subscriptions...");
+        phaseStart = System.currentTimeMillis();
         List<Pool> poolsToDelete = new ArrayList<>();
 
         for (Pool pool : poolCurator.getPoolsFromBadSubs(owner, subscriptionMap.keySet())) {
@@ -290,12 +360,18 @@ public class CandlepinPoolManager implements PoolManager {
         }
 
         deletePools(poolsToDelete);
+        result.addPoolsDeleted(poolsToDelete.size());
+        result.addPhaseTime(RefreshResult.Phase.DELETE_POOLS, System.currentTimeMillis() - phaseStart);
 
         // TODO: break this call into smaller pieces. There may be lots of floating pools
         log.debug("Updating floating pools...");
+        phaseStart = System.currentTimeMillis();
+
         List<Pool> floatingPools = poolCurator.getOwnersFloatingPools(owner);
         updateFloatingPools(floatingPools, lazy, updatedProducts);
 
+        result.addPhaseTime(RefreshResult.Phase.FLOATING_POOLS, System.currentTimeMillis() - phaseStart);
+
         log.info("Refresh pools for owner: {} completed in: {}ms", owner.getKey(),
             System.currentTimeMillis() - now.getTime());
     }
@@ -415,37 +491,72 @@ public class CandlepinPoolManager implements PoolManager {
      * Deletes all known expired pools. The deletion of expired pools also triggers entitlement
      * revocation and consumer compliance recalculation.
      * <p></p>
+     * Expired pools are cleaned up one owner at a time, using
+     * {@link #cleanupExpiredPools(String, ExpiredPoolsCleanupResult)}.
+     *
+     * @return
+     *  the statistics and per-phase timings of the cleanup
+     */
+    public ExpiredPoolsCleanupResult cleanupExpiredPools() {
+        ExpiredPoolsCleanupResult result = new ExpiredPoolsCleanupResult();
+
+        log.debug("Beginning cleanup expired pools job");
+
+        for (String ownerId : this.poolCurator.getExpiredPoolOwnerIds()) {
+            this.cleanupExpiredPools(ownerId, result);
+        }
+
+        if (result.getPoolsDeleted() > 0) {
+            log.info("Cleaned up {} expired pools; {}", result.getPoolsDeleted(), result);
+        }
+
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p></p>
      * This method will delete pools in blocks, using a new transaction for each block unless a
      * transaction was already started before this method is called.
      */
-    public void cleanupExpiredPools() {
+    @Override
+    public int cleanupExpiredPools(String ownerId, ExpiredPoolsCleanupResult result) {
+        if (ownerId == null) {
+            throw new IllegalArgumentException("ownerId is null");
+        }
+
+        if (result == null) {
+            throw new IllegalArgumentException("result is null");
+        }
+
         int count = 0;
         boolean loop;
 
-        log.debug("Beginning cleanup expired pools job");
-
         do {
             // This call is run within a new transaction if we're not already in a transaction
-            int blockSize = this.cleanupExpiredPoolsImpl();
+            int blockSize = this.cleanupExpiredPoolsImpl(ownerId, result);
             count += blockSize;
 
             loop = blockSize >= PoolCurator.EXPIRED_POOL_BLOCK_SIZE;
         } while (loop);
 
-        if (count > 0) {
-            log.info("Cleaned up {} expired pools", count);
-        }
+        result.incrementOwnersProcessed();
+        log.debug("Cleaned up {} expired pools for owner: {}", count, ownerId);
+
+        return count;
     }
 
     /**
-     * Performs the cleanup of a block of expired pools.
+     * Performs the cleanup of a block of expired pools belonging to the given owner.
      *
      * @return
      *  the number of expired pools deleted as a result of this method
      */
     @Transactional
-    protected int cleanupExpiredPoolsImpl() {
-        List<Pool> pools = poolCurator.listExpiredPools(PoolCurator.EXPIRED_POOL_BLOCK_SIZE);
+    protected int cleanupExpiredPoolsImpl(String ownerId, ExpiredPoolsCleanupResult result) {
+        long start = System.currentTimeMillis();
+        List<Pool> pools = poolCurator.listExpiredPools(ownerId, PoolCurator.EXPIRED_POOL_BLOCK_SIZE);
+        result.addPhaseTime(ExpiredPoolsCleanupResult.Phase.FIND, System.currentTimeMillis() - start);
 
         if (log.isDebugEnabled()) {
             for (Pool pool : pools) {
@@ -457,8 +568,13 @@ public class CandlepinPoolManager implements PoolManager {
         // Delete the block of pools & flush the results to tell Hibernate to evict the objects
         // (we hope). Even if it doesn't, and even if the transaction completion is going to
         // flush the objects anyway, it should not hurt and is an explicit call.
+        start = System.currentTimeMillis();
         this.deletePools(pools);
         this.poolCurator.flush();
+        result.addPhaseTime(ExpiredPoolsCleanupResult.Phase.DELETE, System.currentTimeMillis() - start);
+
+        result.incrementBlocksProcessed()
+            .addPoolsDeleted(pools.size());
 
         return pools.size();
     }
@@ -638,6 +754,17 @@ public class CandlepinPoolManager implements PoolManager {
         // Impl note: this may remove pools which are not backed by the DB.
         overflowing = poolCurator.lock(overflowing);
 
+        // Quantity held in escrow is counted as consumed; return it to the pools before deciding
+        // which entitlements to revoke
+        this.poolQuantityEscrow.release(overflowing);
+        overflowing = overflowing.stream()
+            .filter(Pool::isOverflowing)
+            .collect(Collectors.toList());
+
+        if (overflowing.isEmpty()) {
+            return null;
+        }
+
         List<Entitlement> overFlowingEnts = this.poolCurator.retrieveOrderedEntitlementsOf(overflowing);
         Map<String, List<Entitlement>> entMap = new HashMap<>();
         for (Entitlement entitlement : overFlowingEnts) {
@@ -647,7 +774,7 @@ public class CandlepinPoolManager implements PoolManager {
         for (Pool pool : overflowing) {
             // we then start revoking the existing entitlements
             List<Entitlement> entitlements = entMap.get(pool.getId());
-            long newConsumed = pool.getConsumed();
+            long newConsumed = pool.getConsumed() - pool.getEscrowed();
 
             // deletes ents in order of date since we retrieved and put them in the map in order.
             if (entitlements != null) {
@@ -1305,6 +1432,7 @@ public class CandlepinPoolManager implements PoolManager {
         Map<String, Set<String>> derivedProvidedProductIds = this.poolCurator
             .getDerivedProvidedProductIds(allOwnerPools);
 
+        List<PoolQuantity> candidates = new ArrayList<>();
         for (Pool pool : allOwnerPools) {
             boolean providesProduct = false;
             boolean matchesAddOns = false;
@@ -1376,21 +1504,31 @@ public class CandlepinPoolManager implements PoolManager {
             }
 
             if (providesProduct || matchesAddOns || matchesRole) {
-                ValidationResult result = enforcer.preEntitlement(host, pool, 1, CallerType.BEST_POOLS);
-
-                if (result.hasErrors() || result.hasWarnings()) {
-                    // Just keep the last one around, if we need it
-                    failedResults.put(pool.getId(), result);
-                    if (log.isDebugEnabled()) {
-                        log.debug("Pool filtered from candidates due to failed rule(s): {}", pool);
-                        log.debug("  warnings: {}", Util.collectionToString(result.getWarnings()));
-                        log.debug("  errors: {}", Util.collectionToString(result.getErrors()));
-                    }
-                }
-                else {
-                    filteredPools.add(pool);
+                candidates.add(new PoolQuantity(pool, 1));
+            }
+        }
+
+        // Validate all of the candidates with a single rules call, so the host only needs to be
+        // prepared for the rules once
+        Map<String, ValidationResult> results = candidates.isEmpty() ? Collections.emptyMap() :
+            enforcer.preEntitlement(host, candidates, CallerType.BEST_POOLS);
+
+        for (PoolQuantity candidate : candidates) {
+            Pool pool = candidate.getPool();
+            ValidationResult result = results.get(pool.getId());
+
+            if (result.hasErrors() || result.hasWarnings()) {
+                // Just keep the last one around, if we need it
+                failedResults.put(pool.getId(), result);
+                if (log.isDebugEnabled()) {
+                    log.debug("Pool filtered from candidates due to failed rule(s): {}", pool);
+                    log.debug("  warnings: {}", Util.collectionToString(result.getWarnings()));
+                    log.debug("  errors: {}", Util.collectionToString(result.getErrors()));
                 }
             }
+            else {
+                filteredPools.add(pool);
+            }
         }
 
         // Only throw refused exception if we actually hit the rules:
@@ -1516,6 +1654,7 @@ public class CandlepinPoolManager implements PoolManager {
         // for this lookup.
         Map<String, Set<String>> providedProductIds = this.poolCurator.getProvidedProductIds(allOwnerPools);
 
+        List<PoolQuantity> candidates = new ArrayList<>();
         for (Pool pool : allOwnerPools) {
             boolean providesProduct = false;
             boolean matchesAddOns = false;
@@ -1578,15 +1717,25 @@ public class CandlepinPoolManager implements PoolManager {
             }
 
             if (providesProduct || matchesAddOns || matchesRole) {
-                ValidationResult result = enforcer.preEntitlement(consumer, pool, 1, CallerType.BEST_POOLS);
+                candidates.add(new PoolQuantity(pool, 1));
+            }
+        }
 
-                if (result.hasErrors() || result.hasWarnings()) {
-                    failedResults.put(pool.getId(), result);
-                    log.debug("Pool filtered from candidates due to rules failure: {}", pool.getId());
-                }
-                else {
-                    filteredPools.add(pool);
-                }
+        // Validate all of the candidates with a single rules call, so the consumer only needs to be
+        // prepared for the rules once
+        Map<String, ValidationResult> results = candidates.isEmpty() ? Collections.emptyMap() :
+            enforcer.preEntitlement(consumer, candidates, CallerType.BEST_POOLS);
+
+        for (PoolQuantity candidate : candidates) {
+            Pool pool = candidate.getPool();
+            ValidationResult result = results.get(pool.getId());
+
+            if (result.hasErrors() || result.hasWarnings()) {
+                failedResults.put(pool.getId(), result);
+                log.debug("Pool filtered from candidates due to rules failure: {}", pool.getId());
+            }
+            else {
+                filteredPools.add(pool);
             }
         }
 
@@ -1883,47 +2032,32 @@ public class CandlepinPoolManager implements PoolManager {
         this.poolCurator.refresh(poolsToLock);
 
         log.info("Batch revoking {} entitlements", entsToRevoke.size());
-        entsToRevoke = new ArrayList<>(entsToRevoke);
-
-        for (Pool pool : poolsToDelete) {
-            for (Entitlement ent : pool.getEntitlements()) {
-                ent.setDeletedFromPool(true);
-                entsToRevoke.add(ent);
-            }
-        }
 
-        log.debug("Adjusting consumed quantities on pools");
-        List<Pool> poolsToSave = new ArrayList<>();
-        Set<String> entIdsToRevoke = new HashSet<>();
+        // Collect the full set of entitlements to revoke, including those of the pools being
+        // deleted, without revoking any entitlement twice
+        Map<String, Entitlement> revocations = new LinkedHashMap<>();
         for (Entitlement ent : entsToRevoke) {
             // TODO: Should we throw an exception if we find a malformed/incomplete entitlement
             // or just continue silently ignoring them?
-            if (ent == null || ent.getId() == null) {
-                continue;
+            if (ent != null && ent.getId() != null) {
+                revocations.putIfAbsent(ent.getId(), ent);
             }
+        }
 
-            // Collect the entitlement IDs to revoke seeing as we are iterating over them anyway.
-            entIdsToRevoke.add(ent.getId());
-
-            //We need to trigger lazy load of provided products
-            //to have access to those products later in this method.
-            Pool pool = ent.getPool();
-            int entQuantity = ent.getQuantity() != null ? ent.getQuantity() : 0;
-
-            pool.setConsumed(pool.getConsumed() - entQuantity);
-            Consumer consumer = ent.getConsumer();
-            ConsumerType ctype = this.consumerTypeCurator.getConsumerType(consumer);
+        Set<String> poolIdsToDelete = new HashSet<>();
+        for (Pool pool : poolsToDelete) {
+            poolIdsToDelete.add(pool.getId());
 
-            if (ctype != null  && ctype.isManifest()) {
-                pool.setExported(pool.getExported() - entQuantity);
+            for (Entitlement ent : pool.getEntitlements()) {
+                ent.setDeletedFromPool(true);
+                revocations.putIfAbsent(ent.getId(), ent);
             }
-
-            consumer.setEntitlementCount(consumer.getEntitlementCount() - entQuantity);
-            consumerCurator.update(consumer);
-            poolsToSave.add(pool);
         }
 
-        poolCurator.updateAll(poolsToSave, false, false);
+        entsToRevoke = new ArrayList<>(revocations.values());
+        Set<String> entIdsToRevoke = revocations.keySet();
+
+        this.adjustCountsForRevokedEntitlements(entsToRevoke, poolsToDelete);
 
         /*
          * Before deleting the entitlements, we need to find out if there are any
@@ -1935,15 +2069,24 @@ public class CandlepinPoolManager implements PoolManager {
             log.debug("{} dependent entitlements marked dirty.", update);
         }
 
+        // Delete the entitlements and their certificates with set-based statements, revoking the
+        // certificate serials in bulk. The pools derived from the entitlements are unlinked first,
+        // as they still reference them until they are deleted below.
+        log.info("Starting batch delete of entitlements");
+        this.poolCurator.clearPoolSourceEntitlementRefs(poolIdsToDelete);
+        this.entitlementCurator.unlinkEntitlements(entsToRevoke);
+        this.entitlementCertificateCurator.deleteByEntitlementIds(entIdsToRevoke);
+        this.entitlementCurator.batchDeleteByIds(entIdsToRevoke);
+        this.entitlementCurator.flush();
+        this.entitlementCurator.batchDetach(entsToRevoke);
+
         log.info("Starting batch delete of pools");
         poolCurator.batchDelete(poolsToDelete, alreadyDeletedPools);
         for (Pool pool : poolsToDelete) {
             this.sink.queueEvent(this.eventFactory.poolDeleted(pool));
         }
-        log.info("Starting batch delete of entitlements");
-        entitlementCurator.batchDelete(entsToRevoke);
         log.info("Starting delete flush");
-        entitlementCurator.flush();
+        poolCurator.flush();
         log.info("All deletes flushed successfully");
 
         Map<Consumer, List<Entitlement>> consumerSortedEntitlements = entitlementCurator
@@ -1982,7 +2125,65 @@ public class CandlepinPoolManager implements PoolManager {
         return poolsToDelete;
     }
 
+    /**
+     * Adjusts the consumed and exported quantities of the pools, and the entitlement counts of the
+     * consumers, affected by the revocation of the given entitlements. The adjustments are summed
+     * per pool and per consumer, so that each affected entity is updated once, regardless of how
+     * many of its entitlements are being revoked. Pools which are about to be deleted are skipped.
+     */
+    private void adjustCountsForRevokedEntitlements(Collection<Entitlement> entitlements,
+        Set<Pool> poolsToDelete) {
+
+        log.debug("Adjusting consumed quantities on pools");
+
+        Map<Pool, long[]> poolAdjustments = new HashMap<>();
+        Map<Consumer, Integer> consumerAdjustments = new HashMap<>();
+        Map<Consumer, Boolean> manifestConsumers = new HashMap<>();
+
+        for (Entitlement ent : entitlements) {
+            Pool pool = ent.getPool();
+            Consumer consumer = ent.getConsumer();
+            int quantity = ent.getQuantity() != null ? ent.getQuantity() : 0;
+
+            consumerAdjustments.merge(consumer, quantity, Integer::sum);
+
+            if (!poolsToDelete.contains(pool)) {
+                boolean manifest = manifestConsumers.computeIfAbsent(consumer, key -> {
+                    ConsumerType ctype = this.consumerTypeCurator.getConsumerType(key);
+                    return ctype != null && ctype.isManifest();
+                });
+
+                long[] adjustment = poolAdjustments.computeIfAbsent(pool, key -> new long[2]);
+                adjustment[0] += quantity;
+                adjustment[1] += manifest ? quantity : 0;
+            }
+        }
+
+        for (Map.Entry<Pool, long[]> entry : poolAdjustments.entrySet()) {
+            Pool pool = entry.getKey();
+
+            pool.setConsumed(pool.getConsumed() - entry.getValue()[0]);
+            if (entry.getValue()[1] != 0) {
+                pool.setExported(pool.getExported() - entry.getValue()[1]);
+            }
+        }
+
+        for (Map.Entry<Consumer, Integer> entry : consumerAdjustments.entrySet()) {
+            Consumer consumer = entry.getKey();
+            consumer.setEntitlementCount(consumer.getEntitlementCount() - entry.getValue());
+        }
+
+        this.poolCurator.updateAll(poolAdjustments.keySet(), false, false);
+        this.consumerCurator.updateAll(consumerAdjustments.keySet(), false, false);
+
+        log.debug("Adjusted counts on {} pools and {} consumers", poolAdjustments.size(),
+            consumerAdjustments.size());
+    }
+
     private void sendDeletedEvents(List<Entitlement> entsToRevoke) {
+        // Whether or not each consumer has a host, looked up at most once per consumer
+        Map<Consumer, Boolean> hostedConsumers = new HashMap<>();
+
         // for each deleted entitlement, create an event
         for (Entitlement entitlement : entsToRevoke) {
             if (entitlement.deletedFromPool()) {
@@ -1993,7 +2194,8 @@ public class CandlepinPoolManager implements PoolManager {
             Event event = eventFactory.entitlementDeleted(entitlement);
 
             if (!entitlement.isValid() && entitlement.getPool().isUnmappedGuestPool() &&
-                consumerCurator.getHost(consumer.getFact("virt.uuid"), consumer.getOwnerId()) == null) {
+                !hostedConsumers.computeIfAbsent(consumer, key ->
+                    consumerCurator.getHost(key.getFact("virt.uuid"), key.getOwnerId()) != null)) {
                 event = eventFactory.entitlementExpired(entitlement);
                 event.setMessageText(event.getMessageText() + ": " +
                     i18n.tr("Unmapped guest entitlement expired without establishing a host/guest mapping."));
@@ -2065,20 +2267,38 @@ public class CandlepinPoolManager implements PoolManager {
             }
         }
 
+        if (stackingEntitlements.isEmpty()) {
+            return;
+        }
+
+        Set<String> consumerIds = new HashSet<>();
+        Set<String> stackIds = new HashSet<>();
+        for (Entry<Consumer, List<Entitlement>> entry : stackingEntitlements.entrySet()) {
+            consumerIds.add(entry.getKey().getId());
+
+            for (Entitlement ent : entry.getValue()) {
+                stackIds.add(ent.getPool().getStackId());
+            }
+        }
+
+        // Fetch the stack derived pools of all of the affected consumers at once, rather than
+        // looking them up consumer by consumer
+        Map<String, Set<String>> consumerStackDerivedPoolIds = this.poolCurator
+            .getConsumerStackDerivedPoolIdMap(consumerIds, stackIds);
+
         for (Entry<Consumer, List<Entitlement>> entry : stackingEntitlements.entrySet()) {
             if (log.isDebugEnabled()) {
                 log.debug("Found {} stacking entitlements to delete for consumer: {}",
                     entry.getValue().size(), entry.getKey());
             }
 
-            Set<String> stackIds = new HashSet<>();
-            for (Entitlement ent : entry.getValue()) {
-                stackIds.add(ent.getPool().getStackId());
-            }
+            Set<String> subPoolIds = consumerStackDerivedPoolIds.get(entry.getKey().getId());
+            if (CollectionUtils.isNotEmpty(subPoolIds)) {
+                List<Pool> subPools = this.poolCurator.listAllByIds(subPoolIds).list();
 
-            List<Pool> subPools = poolCurator.getSubPoolForStackIds(entry.getKey(), stackIds);
-            if (CollectionUtils.isNotEmpty(subPools)) {
-                poolRules.updatePoolsFromStack(entry.getKey(), subPools, null, alreadyDeletedPools, true);
+                if (CollectionUtils.isNotEmpty(subPools)) {
+                    poolRules.updatePoolsFromStack(entry.getKey(), subPools, null, alreadyDeletedPools, true);
+                }
             }
         }
     }
@@ -2321,8 +2541,12 @@ public class CandlepinPoolManager implements PoolManager {
                 // Update stacked entitlements for affected consumers(???)
                 if (!stackIds.isEmpty()) {
                     // Get consumer + pool tuples for stack ids
+                    Set<String> consumerIds = consumerStackedEnts.keySet().stream()
+                        .map(Consumer::getId)
+                        .collect(Collectors.toSet());
+
                     Map<String, Set<String>> consumerStackDerivedPoolIds = this.poolCurator
-                        .getConsumerStackDerivedPoolIdMap(stackIds);
+                        .getConsumerStackDerivedPoolIdMap(consumerIds, stackIds);
 
                     if (!consumerStackDerivedPoolIds.isEmpty()) {
                         log.info("Updating stacked entitlements for {} consumers...",
@@ -2470,7 +2694,8 @@ public class CandlepinPoolManager implements PoolManager {
 
     @Override
     public Refresher getRefresher(SubscriptionServiceAdapter subAdapter, boolean lazy) {
-        return new Refresher(this, subAdapter, ownerManager, lazy);
+        return new Refresher(this, subAdapter, ownerManager, lazy,
+            this.config.getInt(ConfigProperties.REFRESH_FETCH_THREADS));
     }
 
     @Override
@@ -2486,10 +2711,18 @@ public class CandlepinPoolManager implements PoolManager {
             filters.addAttributeFilter(Pool.Attributes.DEVELOPMENT_POOL, "!true");
         }
 
+        if (postFilter && pageRequest != null && pageRequest.isPaging()) {
+            return this.listAvailableEntitlementPoolPage(consumer, key, ownerId, productId,
+                subscriptionId, activeOn, includeWarnings, filters, pageRequest, addFuture, onlyFuture,
+                after);
+        }
+
         Page<List<Pool>> page = this.poolCurator.listAvailableEntitlementPools(consumer,
             ownerId, productId, subscriptionId, activeOn, filters, pageRequest, postFilter,
             addFuture, onlyFuture, after);
 
+        this.poolQuantityEscrow.annotate(page.getPageData());
+
         if (consumer == null && key == null) {
             return page;
         }
@@ -2522,6 +2755,88 @@ public class CandlepinPoolManager implements PoolManager {
         return page;
     }
 
+    /**
+     * Lists a single page of the pools available to the given consumer or activation key. Rather
+     * than loading and validating every matching pool before applying the page, the IDs of the
+     * matching pools are fetched in order, and the pools themselves are loaded and validated in
+     * windows until the requested page and a lookahead of one further page have been filled.
+     * <p></p>
+     * Since pools beyond the lookahead are never validated, the maximum record count of the
+     * returned page is an upper bound: the pools which passed validation, plus those which were not
+     * validated. It is exact whenever every matching pool was validated.
+     *
+     * @return
+     *  a page of the pools available to the given consumer or activation key
+     */
+    private Page<List<Pool>> listAvailableEntitlementPoolPage(Consumer consumer, ActivationKey key,
+        String ownerId, String productId, String subscriptionId, Date activeOn, boolean includeWarnings,
+        PoolFilterBuilder filters, PageRequest pageRequest, boolean addFuture, boolean onlyFuture,
+        Date after) {
+
+        List<String> poolIds = this.poolCurator.listAvailableEntitlementPoolIds(consumer, ownerId,
+            (productId != null ? Arrays.asList(productId) : null), subscriptionId, activeOn, filters,
+            pageRequest, addFuture, onlyFuture, after);
+
+        int required = (pageRequest.getPage() + 1) * pageRequest.getPerPage();
+        List<Pool> available = new ArrayList<>();
+        int offset = 0;
+
+        // The consumer doesn't change while its pools are listed, so it only needs to be prepared
+        // for the rules once, rather than once per window
+        ConsumerRulesContext context = consumer != null ? this.enforcer.buildConsumerContext(consumer) : null;
+
+        while (offset < poolIds.size() && available.size() < required) {
+            int windowSize = Math.max(POOL_LIST_WINDOW_SIZE, required - available.size());
+            List<String> windowIds = poolIds.subList(offset, Math.min(offset + windowSize, poolIds.size()));
+            offset += windowIds.size();
+
+            List<Pool> window = this.loadPoolsInOrder(windowIds);
+            this.poolQuantityEscrow.annotate(window);
+
+            if (consumer != null) {
+                window = this.enforcer.filterPools(context, window, includeWarnings);
+            }
+
+            if (key != null) {
+                window = this.filterPoolsForActKey(key, window, includeWarnings);
+            }
+
+            available.addAll(window);
+        }
+
+        log.debug("Validated {} of {} candidate pools to fill page {}", offset, poolIds.size(),
+            pageRequest.getPage());
+
+        Page<List<Pool>> page = new Page<>();
+        page.setMaxRecords(available.size() + (poolIds.size() - offset));
+        page.setPageData(this.poolCurator.takeSubList(pageRequest, available));
+        page.setPageRequest(pageRequest);
+
+        return page;
+    }
+
+    /**
+     * Loads the pools with the given IDs, in the order in which the IDs are provided.
+     */
+    private List<Pool> loadPoolsInOrder(List<String> poolIds) {
+        Map<String, Pool> pools = new HashMap<>();
+        for (Pool pool : this.poolCurator.listAllByIds(poolIds)) {
+            pools.put(pool.getId(), pool);
+        }
+
+        List<Pool> ordered = new ArrayList<>(poolIds.size());
+        for (String poolId : poolIds) {
+            Pool pool = pools.get(poolId);
+
+            // A pool may have been deleted since its ID was fetched
+            if (pool != null) {
+                ordered.add(pool);
+            }
+        }
+
+        return ordered;
+    }
+
     /**
      * Creates a Subscription object using information derived from the specified pool. Used to
      * support deprecated API calls that still require a subscription.
@@ -15,9 +15,10 @@
 package org.candlepin.controller;
 
 import org.candlepin.audit.EventSink;
+import org.candlepin.cache.OwnerProductGraph;
+import org.candlepin.cache.OwnerProductGraphCache;
 import org.candlepin.common.config.Configuration;
 import org.candlepin.config.ConfigProperties;
-import org.candlepin.model.CandlepinQuery;
 import org.candlepin.model.CertificateSerial;
 import org.candlepin.model.CertificateSerialCurator;
 import org.candlepin.model.Consumer;
@@ -26,6 +27,7 @@ import org.candlepin.model.ConsumerCurator;
 import org.candlepin.model.ConsumerType;
 import org.candlepin.model.ConsumerType.ConsumerTypeEnum;
 import org.candlepin.model.ConsumerTypeCurator;
+import org.candlepin.model.Content;
 import org.candlepin.model.ContentAccessCertificate;
 import org.candlepin.model.ContentAccessCertificateCurator;
 import org.candlepin.model.Entitlement;
@@ -37,10 +39,8 @@ import org.candlepin.model.Owner;
 import org.candlepin.model.OwnerCurator;
 import org.candlepin.model.OwnerEnvContentAccess;
 import org.candlepin.model.OwnerEnvContentAccessCurator;
-import org.candlepin.model.OwnerProductCurator;
 import org.candlepin.model.Pool;
 import org.candlepin.model.Product;
-import org.candlepin.model.ProductContent;
 import org.candlepin.pki.PKIUtility;
 import org.candlepin.pki.X509ByteExtensionWrapper;
 import org.candlepin.pki.X509ExtensionWrapper;
@@ -196,7 +196,7 @@ public class ContentAccessManager {
     private ConsumerTypeCurator consumerTypeCurator;
     private EnvironmentCurator environmentCurator;
     private ContentAccessCertificateCurator contentAccessCertCurator;
-    private OwnerProductCurator ownerProductCurator;
+    private OwnerProductGraphCache productGraphCache;
     private EventSink eventSink;
 
     private boolean standalone;
@@ -215,7 +215,7 @@ public class ContentAccessManager {
         ConsumerTypeCurator consumerTypeCurator,
         EnvironmentCurator environmentCurator,
         ContentAccessCertificateCurator contentAccessCertCurator,
-        OwnerProductCurator ownerProductCurator,
+        OwnerProductGraphCache productGraphCache,
         EventSink eventSink) {
 
         this.config = Objects.requireNonNull(config);
@@ -231,7 +231,7 @@ public class ContentAccessManager {
         this.environmentCurator = Objects.requireNonNull(environmentCurator);
         this.contentAccessCertCurator = Objects.requireNonNull(contentAccessCertCurator);
         this.eventSink = Objects.requireNonNull(eventSink);
-        this.ownerProductCurator = Objects.requireNonNull(ownerProductCurator);
+        this.productGraphCache = Objects.requireNonNull(productGraphCache);
         this.standalone = this.config.getBoolean(ConfigProperties.STANDALONE, true);
     }
 
@@ -509,7 +509,7 @@ public class ContentAccessManager {
     private byte[] createContentAccessDataPayload(Owner owner, Environment environment) throws IOException {
         // fake a product dto as a container for the org content
         Set<Product> containerSet = new HashSet<>();
-        CandlepinQuery<Product> ownerProduct = ownerProductCurator.getProductsByOwner(owner);
+        OwnerProductGraph productGraph = this.productGraphCache.getSnapshot(owner);
         Set<String> entitledProductIds = new HashSet<>();
         List<org.candlepin.model.dto.Product> productModels = new ArrayList<>();
         Map<String, EnvironmentContent> promotedContent = getPromotedContent(environment);
@@ -524,20 +524,10 @@ public class ContentAccessManager {
         containerSet.add(container);
         container.setId("content_access");
         container.setName(" Content Access");
-        Map<String, Boolean> contentEnabledMap = new HashMap<>();
 
-        for (Product product : ownerProduct) {
-            for (ProductContent pc : product.getProductContent()) {
-                if (!contentEnabledMap.containsKey(pc.getContent().getUuid())) {
-                    container.addContent(pc.getContent(), pc.isEnabled());
-                    contentEnabledMap.put(pc.getContent().getUuid(), pc.isEnabled());
-                }
-                else if (pc.isEnabled() && !contentEnabledMap.get(pc.getContent().getUuid())) {
-                    // Overwrite the content
-                    container.addContent(pc.getContent(), pc.isEnabled());
-                    contentEnabledMap.put(pc.getContent().getUuid(), pc.isEnabled());
-                }
-            }
+        // Content is enabled in the container if any of the owner's products enable it
+        for (Map.Entry<Content, Boolean> entry : productGraph.getEffectiveContent().entrySet()) {
+            container.addContent(entry.getKey(), entry.getValue());
         }
 
         emptyConsumer.setEnvironment(environment);
@@ -14,6 +14,7 @@
  */
 package org.candlepin.controller;
 
+import org.candlepin.cache.OwnerProductGraphCache;
 import org.candlepin.dto.ModelTranslator;
 import org.candlepin.dto.api.v1.ContentDTO;
 import org.candlepin.dto.api.v1.ProductDTO;
@@ -70,12 +71,14 @@ public class ContentManager {
     private ProductCurator productCurator;
     private ProductManager productManager;
     private ModelTranslator modelTranslator;
+    private OwnerProductGraphCache productGraphCache;
 
     @Inject
     public ContentManager(
         ContentCurator contentCurator, EntitlementCertificateGenerator entitlementCertGenerator,
         OwnerContentCurator ownerContentCurator, ProductCurator productCurator,
-        ProductManager productManager, ModelTranslator modelTranslator) {
+        ProductManager productManager, ModelTranslator modelTranslator,
+        OwnerProductGraphCache productGraphCache) {
 
         this.contentCurator = contentCurator;
         this.entitlementCertGenerator = entitlementCertGenerator;
@@ -83,6 +86,7 @@ public class ContentManager {
         this.productCurator = productCurator;
         this.productManager = productManager;
         this.modelTranslator = modelTranslator;
+        this.productGraphCache = productGraphCache;
     }
 
     /**
@@ -231,6 +235,7 @@ public class ContentManager {
 
         log.debug("Applying content update for org: {}, {}", entity, owner);
         Content updated = this.applyContentChanges((Content) entity.clone(), update);
+        this.productGraphCache.invalidate(owner);
 
         List<Content> alternateVersions = this.ownerContentCurator.getContentByVersions(
             owner, Collections.<String, Integer>singletonMap(updated.getId(), updated.getEntityVersion()))
@@ -367,6 +372,8 @@ public class ContentManager {
             return importResult;
         }
 
+        this.productGraphCache.invalidate(owner);
+
         Map<String, Content> skippedContent = importResult.getSkippedEntities();
         Map<String, Content> createdContent = importResult.getCreatedEntities();
         Map<String, Content> updatedContent = importResult.getUpdatedEntities();
@@ -378,7 +385,15 @@ public class ContentManager {
 
         // - Divide imported products into sets of updates and creates
         log.debug("Fetching existing content for update...");
-        for (Content content : this.ownerContentCurator.getContentByIds(owner, contentData.keySet())) {
+        List<Content> existingContent = this.ownerContentCurator
+            .getContentByIds(owner, contentData.keySet())
+            .list();
+
+        // Load the content collections in bulk now, rather than one content at a time as they're
+        // compared against the incoming data below
+        this.contentCurator.hydrateContentCollections(existingContent);
+
+        for (Content content : existingContent) {
             ContentInfo update = contentData.get(content.getId());
 
             if (content.isLocked() && !this.isChangedBy(content, update)) {
@@ -420,7 +435,13 @@ public class ContentManager {
         }
 
         log.debug("Checking for existing content versions...");
-        for (Content alt : this.ownerContentCurator.getContentByVersions(owner, contentVersions)) {
+        List<Content> alternateContent = this.ownerContentCurator
+            .getContentByVersions(owner, contentVersions)
+            .list();
+
+        this.contentCurator.hydrateContentCollections(alternateContent);
+
+        for (Content alt : alternateContent) {
             List<Content> alternates = existingVersions.get(alt.getId());
             if (alternates == null) {
                 alternates = new LinkedList<>();
@@ -493,8 +514,8 @@ public class ContentManager {
         // they're used later. However, the join objects can be evicted safely since they're only
         // really used here.
         log.debug("Persisting content changes...");
-        this.contentCurator.saveAll(stagedEntities.values(), true, false);
-        this.ownerContentCurator.saveAll(ownerContentBuffer, true, true);
+        this.contentCurator.saveAllBatched(stagedEntities.values(), true, false);
+        this.ownerContentCurator.saveAllBatched(ownerContentBuffer, true, true);
 
         // Fetch collection of products affected by this import that aren't being imported themselves
         log.debug("Updating non-imported, affected products...");
@@ -665,6 +686,7 @@ public class ContentManager {
 
         if (contentUuids != null && !contentUuids.isEmpty()) {
             log.debug("Deleting content with UUIDs: {}", contentUuids);
+            this.productGraphCache.invalidate(owner);
 
             List<Product> affectedProducts = this.productCurator
                 .getProductsByContentUuids(owner, contentUuids)
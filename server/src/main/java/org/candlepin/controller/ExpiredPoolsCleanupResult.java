@@ -0,0 +1,185 @@
+/**
+ * Copyright (c) 2009 - 2020 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.controller;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+
+/**
+ * The ExpiredPoolsCleanupResult class collects the statistics and per-phase timings of an
+ * expired pool cleanup. Since the expired pools of several owners may be cleaned up by several
+ * threads at once, all of the counters maintained by this class are safe for concurrent updates.
+ */
+public class ExpiredPoolsCleanupResult {
+
+    /**
+     * The distinct phases of an expired pool cleanup for which timings are collected
+     */
+    public enum Phase {
+        /** Finding the blocks of expired pools to delete */
+        FIND,
+
+        /** Revoking the entitlements of the expired pools and deleting them */
+        DELETE
+    }
+
+    private final Map<Phase, AtomicLong> timings;
+    private final AtomicInteger ownersProcessed;
+    private final AtomicInteger ownersFailed;
+    private final AtomicInteger blocksProcessed;
+    private final AtomicInteger poolsDeleted;
+
+    /**
+     * Instantiates a new, empty ExpiredPoolsCleanupResult instance.
+     */
+    public ExpiredPoolsCleanupResult() {
+        // The map is fully populated here and never structurally modified afterward, so it is
+        // safe to read from multiple threads without further synchronization.
+        Map<Phase, AtomicLong> timings = new EnumMap<>(Phase.class);
+        for (Phase phase : Phase.values()) {
+            timings.put(phase, new AtomicLong());
+        }
+
+        this.timings = Collections.unmodifiableMap(timings);
+        this.ownersProcessed = new AtomicInteger();
+        this.ownersFailed = new AtomicInteger();
+        this.blocksProcessed = new AtomicInteger();
+        this.poolsDeleted = new AtomicInteger();
+    }
+
+    /**
+     * Adds the specified amount of time, in milliseconds, to the given phase.
+     *
+     * @param phase
+     *  the phase to which the time should be added
+     *
+     * @param millis
+     *  the amount of time spent in the phase, in milliseconds
+     *
+     * @throws IllegalArgumentException
+     *  if phase is null
+     *
+     * @return
+     *  a reference to this cleanup result
+     */
+    public ExpiredPoolsCleanupResult addPhaseTime(Phase phase, long millis) {
+        if (phase == null) {
+            throw new IllegalArgumentException("phase is null");
+        }
+
+        this.timings.get(phase).addAndGet(millis);
+        return this;
+    }
+
+    /**
+     * Fetches the total time, in milliseconds, spent in the given phase. When owners are cleaned
+     * up concurrently, this is the sum of the time spent by each thread.
+     *
+     * @param phase
+     *  the phase for which to fetch the time
+     *
+     * @throws IllegalArgumentException
+     *  if phase is null
+     *
+     * @return
+     *  the total time spent in the given phase, in milliseconds
+     */
+    public long getPhaseTime(Phase phase) {
+        if (phase == null) {
+            throw new IllegalArgumentException("phase is null");
+        }
+
+        return this.timings.get(phase).get();
+    }
+
+    /**
+     * Fetches the number of expired pools processed per second spent in the given phase.
+     *
+     * @param phase
+     *  the phase for which to fetch the throughput
+     *
+     * @throws IllegalArgumentException
+     *  if phase is null
+     *
+     * @return
+     *  the throughput of the given phase, in pools per second, or zero if no time was spent in it
+     */
+    public double getPhaseThroughput(Phase phase) {
+        long millis = this.getPhaseTime(phase);
+        return millis > 0 ? this.getPoolsDeleted() * 1000.0 / millis : 0.0;
+    }
+
+    public ExpiredPoolsCleanupResult incrementOwnersProcessed() {
+        this.ownersProcessed.incrementAndGet();
+        return this;
+    }
+
+    public int getOwnersProcessed() {
+        return this.ownersProcessed.get();
+    }
+
+    public ExpiredPoolsCleanupResult incrementOwnersFailed() {
+        this.ownersFailed.incrementAndGet();
+        return this;
+    }
+
+    public int getOwnersFailed() {
+        return this.ownersFailed.get();
+    }
+
+    public ExpiredPoolsCleanupResult incrementBlocksProcessed() {
+        this.blocksProcessed.incrementAndGet();
+        return this;
+    }
+
+    public int getBlocksProcessed() {
+        return this.blocksProcessed.get();
+    }
+
+    public ExpiredPoolsCleanupResult addPoolsDeleted(int count) {
+        this.poolsDeleted.addAndGet(count);
+        return this;
+    }
+
+    public int getPoolsDeleted() {
+        return this.poolsDeleted.get();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder()
+            .append("owners: ").append(this.getOwnersProcessed())
+            .append(", owners failed: ").append(this.getOwnersFailed())
+            .append(", blocks: ").append(this.getBlocksProcessed())
+            .append(", pools deleted: ").append(this.getPoolsDeleted())
+            .append("; timings (ms, pools/s):");
+
+        for (Phase phase : Phase.values()) {
+            builder.append(' ')
+                .append(phase.name().toLowerCase())
+                .append('=')
+                .append(this.getPhaseTime(phase))
+                .append(String.format(" (%.1f/s)", this.getPhaseThroughput(phase)));
+        }
+
+        return builder.toString();
+    }
+
+}
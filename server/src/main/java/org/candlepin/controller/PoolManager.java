@@ -161,8 +161,27 @@ public interface PoolManager {
     /**
      * Search for any expired pools on the server, cleanup their subscription,
      * entitlements, and the pool itself.
+     *
+     * @return
+     *  the statistics and per-phase timings of the cleanup
      */
-    void cleanupExpiredPools();
+    ExpiredPoolsCleanupResult cleanupExpiredPools();
+
+    /**
+     * Cleans up the expired pools of a single owner, along with their entitlements, recording
+     * the statistics and timings of the cleanup in the given result. The expired pools of
+     * different owners may be cleaned up concurrently, by separate pool manager instances.
+     *
+     * @param ownerId
+     *  the ID of the owner for which to clean up expired pools
+     *
+     * @param result
+     *  the cleanup result in which to record statistics and timings
+     *
+     * @return
+     *  the number of expired pools deleted
+     */
+    int cleanupExpiredPools(String ownerId, ExpiredPoolsCleanupResult result);
 
 
     /**
@@ -171,6 +190,11 @@ public interface PoolManager {
      * If a consumer is specified, a pass through the rules will be done for
      * each potentially usable pool.
      *
+     * If a consumer or activation key is specified along with a paging request,
+     * only enough pools to fill the requested page and the page after it are
+     * passed through the rules, and the maximum record count of the returned
+     * page is an upper bound rather than an exact count.
+     *
      * @param consumer Consumer being entitled.
      * @param ownerId Owner whose subscriptions should be inspected.
      * @param productId only entitlements which provide this product are included.
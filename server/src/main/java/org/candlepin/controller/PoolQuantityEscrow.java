@@ -0,0 +1,318 @@
+/**
+ * Copyright (c) 2009 - 2020 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.controller;
+
+import org.candlepin.common.config.Configuration;
+import org.candlepin.config.ConfigProperties;
+import org.candlepin.model.ConsumerType;
+import org.candlepin.model.Pool;
+import org.candlepin.model.PoolCurator;
+import org.candlepin.model.PoolQuantitySlice;
+import org.candlepin.model.PoolQuantitySliceCurator;
+import org.candlepin.model.Product;
+
+import com.google.inject.persist.Transactional;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+
+
+/**
+ * The PoolQuantityEscrow allows binds to consume quantity from a pool without locking the pool
+ * row, which otherwise serializes every bind against a popular pool.
+ * <p></p>
+ * A number of slices of a fixed size are carved out of the pool's quantity while the pool is
+ * locked, and their full allotment is added to the pool's consumed count. Binds then consume from
+ * a randomly chosen slice with a single conditional update, which can never take more than the
+ * slice's allotment. Since the allotment is already counted as consumed, every other reader of the
+ * pool sees a conservative consumed count, and the pool can never be oversubscribed. The unused
+ * remainder of a pool's slices is returned to it when the slices are released, either when a bind
+ * finds them exhausted, when the pool's quantity changes, or by the reconcile job.
+ * <p></p>
+ * Manifest consumers, derived pools and pools of virt-limited products are never escrowed, as
+ * binding them updates more than the pool's consumed count.
+ * <p></p>
+ * Escrow is only enabled on PostgreSQL. Releasing slices relies on SKIP LOCKED to pass over the
+ * slices of in-flight binds, which the MySQL and MariaDB dialects silently ignore; waiting on
+ * those slices while holding the pool lock would deadlock with the binds.
+ */
+@Singleton
+public class PoolQuantityEscrow {
+    private static Logger log = LoggerFactory.getLogger(PoolQuantityEscrow.class);
+
+    /**
+     * The multiple of the total quantity carved into slices which a limited pool must have left
+     * before it is escrowed, so that escrow does not starve binds on nearly exhausted pools
+     */
+    private static final int CARVE_HEADROOM = 4;
+
+    private final PoolQuantitySliceCurator sliceCurator;
+    private final PoolCurator poolCurator;
+    private final int stripes;
+    private final long sliceSize;
+    private final boolean supported;
+
+    @Inject
+    public PoolQuantityEscrow(PoolQuantitySliceCurator sliceCurator, PoolCurator poolCurator,
+        Configuration config) {
+
+        if (sliceCurator == null) {
+            throw new IllegalArgumentException("sliceCurator is null");
+        }
+
+        if (poolCurator == null) {
+            throw new IllegalArgumentException("poolCurator is null");
+        }
+
+        if (config == null) {
+            throw new IllegalArgumentException("config is null");
+        }
+
+        this.sliceCurator = sliceCurator;
+        this.poolCurator = poolCurator;
+        this.stripes = config.getInt(ConfigProperties.POOL_ESCROW_STRIPES);
+        this.sliceSize = config.getLong(ConfigProperties.POOL_ESCROW_SLICE_SIZE);
+
+        // Candlepin defaults to PostgreSQL when no dialect is configured
+        String dialect = config.getString(ConfigProperties.DB_DIALECT, "postgresql");
+        this.supported = dialect.toLowerCase().contains("postgresql");
+
+        if (this.stripes > 0 && !this.supported) {
+            log.warn("Pool quantity escrow is only supported on PostgreSQL; disabled for dialect: {}",
+                dialect);
+        }
+    }
+
+    /**
+     * Checks whether binds may consume quantity from escrow slices.
+     *
+     * @return
+     *  true if escrow is enabled; false otherwise
+     */
+    public boolean isEnabled() {
+        return this.supported && this.stripes > 0 && this.sliceSize > 0;
+    }
+
+    /**
+     * Checks whether binds of the given consumer type may consume quantity from escrow slices of
+     * the specified pool.
+     *
+     * @param pool
+     *  the pool to check
+     *
+     * @param ctype
+     *  the type of the consumer binding to the pool
+     *
+     * @return
+     *  true if the bind may be served from escrow; false otherwise
+     */
+    public boolean isEligible(Pool pool, ConsumerType ctype) {
+        return this.isEnabled() && pool != null && pool.getId() != null &&
+            (ctype == null || !ctype.isManifest()) &&
+            !pool.hasAttribute(Pool.Attributes.DERIVED_POOL) &&
+            !pool.hasMergedAttribute(Product.Attributes.VIRT_LIMIT);
+    }
+
+    /**
+     * Sets the quantity held in escrow, but not yet consumed, on each of the given pools, using a
+     * single query per block of pools. No locks are taken, so the quantities are only an estimate.
+     * If escrow is disabled, this method does nothing, and any quantity left in escrow remains
+     * counted as consumed.
+     *
+     * @param pools
+     *  the pools to annotate
+     */
+    public void annotate(Collection<Pool> pools) {
+        if (!this.isEnabled() || pools == null || pools.isEmpty()) {
+            return;
+        }
+
+        Map<String, Pool> poolMap = this.mapPools(pools);
+        Map<String, Long> unused = this.sliceCurator.getUnusedQuantities(poolMap.keySet());
+
+        for (Pool pool : poolMap.values()) {
+            pool.setEscrowed(unused.getOrDefault(pool.getId(), 0L));
+        }
+    }
+
+    /**
+     * Attempts to consume the given quantity from one of the escrow slices of the specified pool.
+     * The pool is not locked; the slice consumed from remains locked until the current
+     * transaction ends.
+     *
+     * @param pool
+     *  the pool from which to consume
+     *
+     * @param quantity
+     *  the quantity to consume
+     *
+     * @return
+     *  true if the quantity was consumed from escrow; false if no slice had enough quantity left
+     */
+    public boolean reserve(Pool pool, long quantity) {
+        if (pool == null || pool.getId() == null || quantity <= 0 || quantity > this.sliceSize) {
+            return false;
+        }
+
+        int start = ThreadLocalRandom.current().nextInt(this.stripes);
+        if (this.sliceCurator.consume(pool.getId(), start, quantity)) {
+            return true;
+        }
+
+        // Our preferred slice is missing or exhausted; fall back to any which looked available
+        for (Integer stripe : this.sliceCurator.getAvailableStripes(pool.getId(), quantity)) {
+            if (stripe != start && this.sliceCurator.consume(pool.getId(), stripe, quantity)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Releases the escrow slices of the given pools, returning their unused quantity to the
+     * pools. The pools must be locked by the caller. Slices still locked by an in-flight bind are
+     * skipped, and are left for the next release. The in-flight bind may still consume the quantity
+     * those slices hold, so it remains counted as consumed: the escrowed quantity of each pool is
+     * zero afterward, and checks against the locked pools never count it as available.
+     *
+     * @param pools
+     *  the locked pools for which to release escrow slices
+     */
+    public void release(Collection<Pool> pools) {
+        if (pools == null || pools.isEmpty()) {
+            return;
+        }
+
+        Map<String, Pool> poolMap = this.mapPools(pools);
+        List<PoolQuantitySlice> slices = this.sliceCurator.lockByPools(poolMap.keySet());
+
+        for (PoolQuantitySlice slice : slices) {
+            Pool pool = poolMap.get(slice.getPoolId());
+            pool.setConsumed(pool.getConsumed() - slice.getUnused());
+
+            this.sliceCurator.delete(slice);
+        }
+
+        if (!slices.isEmpty()) {
+            // Flush the deletes now, as Hibernate would otherwise order them after the inserts of
+            // any slices carved later in this transaction
+            this.sliceCurator.flush();
+            log.debug("Released {} escrow slice(s) of {} pool(s)", slices.size(), poolMap.size());
+        }
+
+        for (Pool pool : poolMap.values()) {
+            pool.setEscrowed(0);
+        }
+    }
+
+    /**
+     * Carves escrow slices out of the specified pool's quantity, if it has enough quantity left
+     * and has no slices left over from a previous carve, including slices which could not be
+     * released. The pool must be locked by the caller.
+     *
+     * @param pool
+     *  the locked pool from which to carve slices
+     *
+     * @return
+     *  true if slices were carved; false otherwise
+     */
+    public boolean carve(Pool pool) {
+        if (pool == null || pool.getId() == null ||
+            this.sliceCurator.getUnusedQuantities(Collections.singleton(pool.getId())).size() > 0) {
+            return false;
+        }
+
+        long total = this.stripes * this.sliceSize;
+
+        if (!pool.isUnlimited() && pool.getQuantity() - pool.getConsumed() < CARVE_HEADROOM * total) {
+            return false;
+        }
+
+        List<PoolQuantitySlice> slices = new ArrayList<>();
+        for (int stripe = 0; stripe < this.stripes; ++stripe) {
+            slices.add(this.sliceCurator.create(
+                new PoolQuantitySlice(pool.getId(), stripe, this.sliceSize), false));
+        }
+
+        // Slices are only ever consumed by bulk updates, so we don't keep them in the session where
+        // their state would go stale
+        this.sliceCurator.flush();
+        this.sliceCurator.batchDetach(slices);
+
+        pool.setConsumed(pool.getConsumed() + total);
+        pool.setEscrowed(total);
+
+        log.debug("Carved {} escrow slice(s) of {} out of pool: {}", this.stripes, this.sliceSize,
+            pool.getId());
+
+        return true;
+    }
+
+    /**
+     * Fetches the IDs of all pools which currently have quantity held in escrow.
+     *
+     * @return
+     *  a list of the IDs of pools with escrow slices
+     */
+    public List<String> getEscrowedPoolIds() {
+        return this.sliceCurator.getPoolIds();
+    }
+
+    /**
+     * Locks the specified pool and releases its escrow slices, returning the quantity they hold
+     * but which has not been consumed.
+     *
+     * @param poolId
+     *  the ID of the pool to reconcile
+     *
+     * @return
+     *  true if the pool was reconciled; false if it no longer exists
+     */
+    @Transactional
+    public boolean reconcile(String poolId) {
+        Pool pool = this.poolCurator.lockAndLoad(poolId);
+        if (pool == null) {
+            return false;
+        }
+
+        this.release(Collections.singleton(pool));
+        return true;
+    }
+
+    private Map<String, Pool> mapPools(Collection<Pool> pools) {
+        Map<String, Pool> poolMap = new HashMap<>();
+
+        pools.stream()
+            .filter(Objects::nonNull)
+            .filter(pool -> pool.getId() != null)
+            .forEach(pool -> poolMap.putIfAbsent(pool.getId(), pool));
+
+        return poolMap;
+    }
+}
@@ -14,6 +14,7 @@
  */
 package org.candlepin.controller;
 
+import org.candlepin.cache.OwnerProductGraphCache;
 import org.candlepin.dto.api.v1.BrandingDTO;
 import org.candlepin.dto.api.v1.ContentDTO;
 import org.candlepin.dto.api.v1.ProductDTO;
@@ -69,16 +70,18 @@ public class ProductManager {
     private OwnerContentCurator ownerContentCurator;
     private OwnerProductCurator ownerProductCurator;
     private ProductCurator productCurator;
+    private OwnerProductGraphCache productGraphCache;
 
     @Inject
     public ProductManager(EntitlementCertificateGenerator entitlementCertGenerator,
         OwnerContentCurator ownerContentCurator, OwnerProductCurator ownerProductCurator,
-        ProductCurator productCurator) {
+        ProductCurator productCurator, OwnerProductGraphCache productGraphCache) {
 
         this.entitlementCertGenerator = entitlementCertGenerator;
         this.ownerContentCurator = ownerContentCurator;
         this.ownerProductCurator = ownerProductCurator;
         this.productCurator = productCurator;
+        this.productGraphCache = productGraphCache;
     }
 
     /**
@@ -120,6 +123,7 @@ public class ProductManager {
         this.applyProductChanges(entity, dto, owner);
 
         log.debug("Creating new product for org: {}, {}", entity, owner);
+        this.productGraphCache.invalidate(owner);
 
         // Check if we have an alternate version we can use instead.
         List<Product> alternateVersions = this.ownerProductCurator.getProductsByVersions(
@@ -197,6 +201,7 @@ public class ProductManager {
 
         log.debug("Applying product update for org: {} => {}, {}", update, entity, owner);
         Product updated = this.applyProductChanges((Product) entity.clone(), update, owner);
+        this.productGraphCache.invalidate(owner);
 
         // Check for newer versions of the same product. We want to try to dedupe as much data as we
         // can, and if we have a newer version of the product (which matches the version provided by
@@ -304,6 +309,8 @@ public class ProductManager {
             return importResult;
         }
 
+        this.productGraphCache.invalidate(owner);
+
         Map<String, Product> skippedProducts = importResult.getSkippedEntities();
         Map<String, Product> createdProducts = importResult.getCreatedEntities();
         Map<String, Product> updatedProducts = importResult.getUpdatedEntities();
@@ -315,7 +322,15 @@ public class ProductManager {
 
         // - Divide imported products into sets of updates and creates
         log.debug("Fetching existing products for update...");
-        for (Product product : this.ownerProductCurator.getProductsByIds(owner, productData.keySet())) {
+        List<Product> existingProducts = this.ownerProductCurator
+            .getProductsByIds(owner, productData.keySet())
+            .list();
+
+        // Load the product collections in bulk now, rather than one product at a time as they're
+        // compared against the incoming data below
+        this.productCurator.hydrateProductCollections(existingProducts);
+
+        for (Product product : existingProducts) {
             ProductInfo update = productData.get(product.getId());
 
             if (product.isLocked() && !isChangedBy(product, update)) {
@@ -356,7 +371,13 @@ public class ProductManager {
         }
 
         log.debug("Checking for existing product versions...");
-        for (Product alt : this.ownerProductCurator.getProductsByVersions(owner, productVersions)) {
+        List<Product> alternateProducts = this.ownerProductCurator
+            .getProductsByVersions(owner, productVersions)
+            .list();
+
+        this.productCurator.hydrateProductCollections(alternateProducts);
+
+        for (Product alt : alternateProducts) {
             List<Product> alternates = existingVersions.get(alt.getId());
             if (alternates == null) {
                 alternates = new LinkedList<>();
@@ -430,8 +451,8 @@ public class ProductManager {
         // they're used later. However, the join objects can be evicted safely since they're only
         // really used here.
         log.debug("Persisting product changes...");
-        this.productCurator.saveAll(stagedEntities.values(), true, false);
-        this.ownerProductCurator.saveAll(ownerProductBuffer, true, true);
+        this.productCurator.saveAllBatched(stagedEntities.values(), true, false);
+        this.ownerProductCurator.saveAllBatched(ownerProductBuffer, true, true);
 
         // Perform bulk reference update
         Map<String, String> productUuidMap = new HashMap<>();
@@ -560,6 +581,7 @@ public class ProductManager {
             // Remove owner references to all the products. This will leave the products orphaned,
             // to be eventually deleted by the orphan removal job
             this.ownerProductCurator.removeOwnerProductReferences(owner, productUuids);
+            this.productGraphCache.invalidate(owner);
         }
     }
 
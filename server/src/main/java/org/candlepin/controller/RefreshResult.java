@@ -0,0 +1,181 @@
+/**
+ * Copyright (c) 2009 - 2020 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.controller;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+
+/**
+ * The RefreshResult class collects the statistics and per-phase timings of a pool refresh
+ * operation. Since the upstream data for a refresh may be fetched by several threads at once,
+ * all of the counters maintained by this class are safe for concurrent updates.
+ */
+public class RefreshResult {
+
+    /**
+     * The distinct phases of a refresh operation for which timings are collected
+     */
+    public enum Phase {
+        /** Fetching and compiling subscriptions from the subscription service adapter */
+        FETCH,
+
+        /** Importing the content referenced by the upstream subscriptions */
+        IMPORT_CONTENT,
+
+        /** Importing the products referenced by the upstream subscriptions */
+        IMPORT_PRODUCTS,
+
+        /** Creating and updating the pools for each upstream subscription */
+        REFRESH_POOLS,
+
+        /** Deleting the pools of subscriptions which no longer exist upstream */
+        DELETE_POOLS,
+
+        /** Updating floating pools which have no subscription */
+        FLOATING_POOLS,
+
+        /** Recalculating the pool quantities for the refreshed owners */
+        RECALCULATE
+    }
+
+    private final Map<Phase, AtomicLong> timings;
+    private final AtomicInteger ownersRefreshed;
+    private final AtomicInteger subscriptionsProcessed;
+    private final AtomicInteger subscriptionsSkipped;
+    private final AtomicInteger poolsDeleted;
+
+    /**
+     * Instantiates a new, empty RefreshResult instance.
+     */
+    public RefreshResult() {
+        // The map is fully populated here and never structurally modified afterward, so it is
+        // safe to read from multiple threads without further synchronization.
+        Map<Phase, AtomicLong> timings = new EnumMap<>(Phase.class);
+        for (Phase phase : Phase.values()) {
+            timings.put(phase, new AtomicLong());
+        }
+
+        this.timings = Collections.unmodifiableMap(timings);
+        this.ownersRefreshed = new AtomicInteger();
+        this.subscriptionsProcessed = new AtomicInteger();
+        this.subscriptionsSkipped = new AtomicInteger();
+        this.poolsDeleted = new AtomicInteger();
+    }
+
+    /**
+     * Adds the specified amount of time, in milliseconds, to the given phase.
+     *
+     * @param phase
+     *  the phase to which the time should be added
+     *
+     * @param millis
+     *  the amount of time spent in the phase, in milliseconds
+     *
+     * @throws IllegalArgumentException
+     *  if phase is null
+     *
+     * @return
+     *  a reference to this refresh result
+     */
+    public RefreshResult addPhaseTime(Phase phase, long millis) {
+        if (phase == null) {
+            throw new IllegalArgumentException("phase is null");
+        }
+
+        this.timings.get(phase).addAndGet(millis);
+        return this;
+    }
+
+    /**
+     * Fetches the total time, in milliseconds, spent in the given phase.
+     *
+     * @param phase
+     *  the phase for which to fetch the time
+     *
+     * @throws IllegalArgumentException
+     *  if phase is null
+     *
+     * @return
+     *  the total time spent in the given phase, in milliseconds
+     */
+    public long getPhaseTime(Phase phase) {
+        if (phase == null) {
+            throw new IllegalArgumentException("phase is null");
+        }
+
+        return this.timings.get(phase).get();
+    }
+
+    public RefreshResult incrementOwnersRefreshed() {
+        this.ownersRefreshed.incrementAndGet();
+        return this;
+    }
+
+    public int getOwnersRefreshed() {
+        return this.ownersRefreshed.get();
+    }
+
+    public RefreshResult incrementSubscriptionsProcessed() {
+        this.subscriptionsProcessed.incrementAndGet();
+        return this;
+    }
+
+    public int getSubscriptionsProcessed() {
+        return this.subscriptionsProcessed.get();
+    }
+
+    public RefreshResult incrementSubscriptionsSkipped() {
+        this.subscriptionsSkipped.incrementAndGet();
+        return this;
+    }
+
+    public int getSubscriptionsSkipped() {
+        return this.subscriptionsSkipped.get();
+    }
+
+    public RefreshResult addPoolsDeleted(int count) {
+        this.poolsDeleted.addAndGet(count);
+        return this;
+    }
+
+    public int getPoolsDeleted() {
+        return this.poolsDeleted.get();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder()
+            .append("owners: ").append(this.getOwnersRefreshed())
+            .append(", subscriptions: ").append(this.getSubscriptionsProcessed())
+            .append(", expired subscriptions skipped: ").append(this.getSubscriptionsSkipped())
+            .append(", pools deleted: ").append(this.getPoolsDeleted())
+            .append("; timings (ms):");
+
+        for (Phase phase : Phase.values()) {
+            builder.append(' ')
+                .append(phase.name().toLowerCase())
+                .append('=')
+                .append(this.getPhaseTime(phase));
+        }
+
+        return builder.toString();
+    }
+
+}
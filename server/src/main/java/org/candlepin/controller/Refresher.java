@@ -21,20 +21,34 @@ import org.candlepin.service.SubscriptionServiceAdapter;
 import org.candlepin.service.model.OwnerInfo;
 import org.candlepin.service.model.SubscriptionInfo;
 
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 
 
 /**
- * Refresher
+ * The Refresher refreshes the pools of a set of owners, and of any subscriptions using a set of
+ * changed products. Only the upstream subscriptions are fetched concurrently; the pools of each
+ * owner are still diffed and updated one subscription at a time, in a single transaction per
+ * owner.
  */
 public class Refresher {
 
@@ -42,18 +56,26 @@ public class Refresher {
     private SubscriptionServiceAdapter subAdapter;
     private OwnerManager ownerManager;
     private boolean lazy;
+    private int fetchThreads;
     private static Logger log = LoggerFactory.getLogger(Refresher.class);
 
-    private Map<String, Owner> owners = new HashMap<>();
+    private Map<String, Owner> owners = new LinkedHashMap<>();
     private Set<Product> products = new HashSet<>();
 
     Refresher(CandlepinPoolManager poolManager, SubscriptionServiceAdapter subAdapter,
         OwnerManager ownerManager, boolean lazy) {
 
+        this(poolManager, subAdapter, ownerManager, lazy, 1);
+    }
+
+    Refresher(CandlepinPoolManager poolManager, SubscriptionServiceAdapter subAdapter,
+        OwnerManager ownerManager, boolean lazy, int fetchThreads) {
+
         this.poolManager = poolManager;
         this.subAdapter = subAdapter;
         this.ownerManager = ownerManager;
         this.lazy = lazy;
+        this.fetchThreads = Math.max(1, fetchThreads);
     }
 
     public Refresher add(Owner owner) {
@@ -83,7 +105,21 @@ public class Refresher {
         return this;
     }
 
-    public void run() {
+    /**
+     * Refreshes the pools for all of the owners and products added to this refresher.
+     * <p></p>
+     * Owners are processed in batches no larger than the configured number of fetch threads. The
+     * subscriptions for each owner in a batch are fetched from the subscription service adapter
+     * and compiled concurrently, outside of any transaction, on a single executor which lives for
+     * the duration of the refresh. The pools of each owner are then refreshed serially, each in
+     * its own transaction, while the subscriptions for the next batch are being fetched. Only the
+     * upstream fetch runs concurrently; refreshing a single owner gains nothing from this.
+     *
+     * @return
+     *  a RefreshResult containing the statistics and per-phase timings of this refresh
+     */
+    public RefreshResult run() {
+        RefreshResult result = new RefreshResult();
 
         // If products were specified on the refresher, lookup any subscriptions
         // using them, regardless of organization, and trigger a refresh for those
@@ -148,11 +184,143 @@ public class Refresher {
                 Collections.<String, Product>emptyMap());
         }
 
-        for (Owner owner : this.owners.values()) {
-            poolManager.refreshPoolsWithRegeneration(this.subAdapter, owner, this.lazy);
-            poolManager.recalculatePoolQuantitiesForOwner(owner);
-            ownerManager.updateRefreshDate(owner);
+        List<List<Owner>> batches = Lists.partition(new ArrayList<>(this.owners.values()), this.fetchThreads);
+        ExecutorService executor = this.createFetchExecutor();
+
+        try {
+            // The subscriptions for the next batch of owners are fetched while the pools of the
+            // current batch are being refreshed
+            List<Future<ImportedEntityCompiler>> pending = batches.isEmpty() ?
+                Collections.emptyList() :
+                this.submitFetches(executor, batches.get(0), result);
+
+            for (int i = 0; i < batches.size(); ++i) {
+                List<Owner> batch = batches.get(i);
+                Map<String, ImportedEntityCompiler> compiled = this.awaitFetches(batch, pending);
+
+                pending = i + 1 < batches.size() ?
+                    this.submitFetches(executor, batches.get(i + 1), result) :
+                    Collections.emptyList();
+
+                for (Owner owner : batch) {
+                    poolManager.refreshPoolsWithRegeneration(owner, compiled.get(owner.getKey()),
+                        this.lazy, result);
+
+                    long start = System.currentTimeMillis();
+                    poolManager.recalculatePoolQuantitiesForOwner(owner);
+                    result.addPhaseTime(RefreshResult.Phase.RECALCULATE, System.currentTimeMillis() - start);
+
+                    ownerManager.updateRefreshDate(owner);
+                    result.incrementOwnersRefreshed();
+
+                    log.info("Refreshed pools for {} of {} owners", result.getOwnersRefreshed(),
+                        this.owners.size());
+                }
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+
+        return result;
+    }
+
+    /**
+     * Creates the executor used to fetch subscriptions for the duration of a single refresh. If
+     * this refresher only has one owner to refresh or is limited to a single fetch thread, the
+     * returned executor fetches subscriptions on the calling thread.
+     *
+     * @return
+     *  an executor to use for fetching subscriptions
+     */
+    private ExecutorService createFetchExecutor() {
+        if (this.fetchThreads < 2 || this.owners.size() < 2) {
+            return MoreExecutors.newDirectExecutorService();
         }
+
+        int threads = Math.min(this.fetchThreads, this.owners.size());
+
+        return Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder()
+            .setNameFormat("refresh-fetch-%d")
+            .setDaemon(true)
+            .build());
+    }
+
+    /**
+     * Submits the fetching and compiling of the upstream subscriptions for each of the given
+     * owners to the specified executor.
+     *
+     * @param executor
+     *  the executor to use to fetch subscriptions
+     *
+     * @param batch
+     *  the owners for which to fetch subscriptions
+     *
+     * @param result
+     *  the refresh result in which to record the fetch timings
+     *
+     * @return
+     *  a list of futures providing the compiled upstream entities, in the order of the owners
+     */
+    private List<Future<ImportedEntityCompiler>> submitFetches(ExecutorService executor, List<Owner> batch,
+        RefreshResult result) {
+
+        List<Future<ImportedEntityCompiler>> futures = new ArrayList<>(batch.size());
+        for (Owner owner : batch) {
+            futures.add(executor.submit(() -> this.fetchSubscriptions(owner, result)));
+        }
+
+        return futures;
+    }
+
+    /**
+     * Waits for the subscriptions of each owner in the given batch to be fetched and compiled.
+     *
+     * @param batch
+     *  the owners for which subscriptions are being fetched
+     *
+     * @param futures
+     *  the futures returned when submitting the fetches for the batch
+     *
+     * @return
+     *  a map of compiled upstream entities, mapped by owner key
+     */
+    private Map<String, ImportedEntityCompiler> awaitFetches(List<Owner> batch,
+        List<Future<ImportedEntityCompiler>> futures) {
+
+        Map<String, ImportedEntityCompiler> compiled = new HashMap<>();
+
+        try {
+            for (int i = 0; i < batch.size(); ++i) {
+                compiled.put(batch.get(i).getKey(), futures.get(i).get());
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while fetching subscriptions", e);
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+
+            throw new RuntimeException("Unable to fetch subscriptions", cause);
+        }
+
+        return compiled;
+    }
+
+    private ImportedEntityCompiler fetchSubscriptions(Owner owner, RefreshResult result) {
+        long start = System.currentTimeMillis();
+
+        log.debug("Fetching subscriptions for owner {} from adapter...", owner.getKey());
+        ImportedEntityCompiler compiler = new ImportedEntityCompiler();
+        compiler.addSubscriptions(this.subAdapter.getSubscriptions(owner.getKey()));
+
+        result.addPhaseTime(RefreshResult.Phase.FETCH, System.currentTimeMillis() - start);
+        return compiler;
     }
 
 }
@@ -0,0 +1,221 @@
+/**
+ * Copyright (c) 2009 - 2020 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.dto;
+
+import org.candlepin.model.Branding;
+import org.candlepin.model.CandlepinQuery;
+import org.candlepin.model.Consumer;
+import org.candlepin.model.ConsumerType;
+import org.candlepin.model.Content;
+import org.candlepin.model.Environment;
+import org.candlepin.model.Owner;
+import org.candlepin.model.Pool;
+import org.candlepin.model.Product;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+
+
+/**
+ * The MemoizingModelTranslator decorates another ModelTranslator, remembering the translations of
+ * nested objects which are commonly shared between the elements of a collection, such as the
+ * owner of every pool in a pool listing, or the pool and consumer of each of an owner's
+ * entitlements. Each such object is translated once and the resulting DTO instance is reused
+ * wherever the object appears again.
+ * <p></p>
+ * Since the DTOs are shared, instances of this translator should only be used to build output
+ * which is serialized and discarded, and should not outlive the request for which they were
+ * created. Objects are matched by identity, which is only meaningful within a single Hibernate
+ * session.
+ * <p></p>
+ * Top-level elements translated with the ObjectTranslators fetched from this translator, or with
+ * its stream mapper, are not remembered; only the nested objects they reference are.
+ */
+public class MemoizingModelTranslator implements ModelTranslator {
+
+    /** The maximum number of translations remembered by a single instance */
+    public static final int DEFAULT_MAX_ENTRIES = 10000;
+
+    /** The types of object shared often enough to be worth remembering */
+    private static final List<Class<?>> SHARED_CLASSES = Arrays.asList(Owner.class, Pool.class,
+        Consumer.class, ConsumerType.class, Environment.class, Product.class, Content.class,
+        Branding.class);
+
+    private final ModelTranslator delegate;
+    private final int maxEntries;
+    private final Map<Class<?>, Map<Object, Object>> translations;
+    private int entries;
+
+    /**
+     * Creates a new translator remembering up to the default number of translations
+     *
+     * @param delegate
+     *  the translator to use to find translators and perform translations
+     */
+    public MemoizingModelTranslator(ModelTranslator delegate) {
+        this(delegate, DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * Creates a new translator remembering up to the given number of translations. Once the
+     * limit is reached, further translations are performed as normal but are not remembered.
+     *
+     * @param delegate
+     *  the translator to use to find translators and perform translations
+     *
+     * @param maxEntries
+     *  the maximum number of translations to remember
+     */
+    public MemoizingModelTranslator(ModelTranslator delegate, int maxEntries) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("delegate is null");
+        }
+
+        this.delegate = delegate;
+        this.maxEntries = maxEntries;
+        this.translations = new HashMap<>();
+        this.entries = 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <I, O> ObjectTranslator<I, O> registerTranslator(ObjectTranslator<I, O> translator,
+        Class<I> inputClass, Class<O> outputClass) {
+
+        return this.delegate.registerTranslator(translator, inputClass, outputClass);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <I, O> ObjectTranslator<I, O> unregisterTranslator(Class<I> inputClass, Class<O> outputClass) {
+        return this.delegate.unregisterTranslator(inputClass, outputClass);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int unregisterTranslator(ObjectTranslator translator) {
+        return this.delegate.unregisterTranslator(translator);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <I, O> ObjectTranslator<I, O> getTranslator(Class<I> inputClass, Class<O> outputClass) {
+        return this.delegate.getTranslator(inputClass, outputClass);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <I, O> ObjectTranslator<I, O> findTranslatorByClass(Class<I> inputClass, Class<O> outputClass) {
+        return this.delegate.findTranslatorByClass(inputClass, outputClass);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <I, O> ObjectTranslator<I, O> findTranslatorByInstance(I instance, Class<O> outputClass) {
+        return this.delegate.findTranslatorByInstance(instance, outputClass);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public <I, O> O translate(I input, Class<O> outputClass) {
+        if (outputClass == null) {
+            throw new IllegalArgumentException("outputClass is null");
+        }
+
+        if (input == null) {
+            return null;
+        }
+
+        boolean shared = isShared(input);
+        Map<Object, Object> cache = shared ?
+            this.translations.computeIfAbsent(outputClass, key -> new IdentityHashMap<>()) :
+            Collections.emptyMap();
+
+        O output = (O) cache.get(input);
+        if (output == null) {
+            // Nested objects must be translated through this translator, or they won't be shared
+            ObjectTranslator<I, O> translator = this.findTranslatorByClass((Class<I>) input.getClass(),
+                outputClass);
+
+            output = translator.translate(this, input);
+
+            if (shared && output != null && this.entries < this.maxEntries) {
+                cache.put(input, output);
+                ++this.entries;
+            }
+        }
+
+        return output;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <I, O> Function<I, O> getStreamMapper(Class<I> inputClass, Class<O> outputClass) {
+        ObjectTranslator<I, O> translator = this.findTranslatorByClass(inputClass, outputClass);
+        return (input) -> translator.translate(this, input);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <I, O> CandlepinQuery<O> translateQuery(CandlepinQuery<I> query, Class<O> outputClass) {
+        return this.delegate.translateQuery(query, outputClass);
+    }
+
+    private static boolean isShared(Object input) {
+        for (Class<?> cls : SHARED_CLASSES) {
+            if (cls.isInstance(input)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Fetches the number of translations currently remembered by this translator
+     *
+     * @return
+     *  the number of remembered translations
+     */
+    public int size() {
+        return this.entries;
+    }
+
+}
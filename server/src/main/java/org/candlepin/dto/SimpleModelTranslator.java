@@ -24,6 +24,7 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 
 
@@ -39,12 +40,18 @@ public class SimpleModelTranslator implements ModelTranslator {
     // output => input => translator
     protected Map<Class, Map<Class, ObjectTranslator>> translators;
 
+    // output => input => resolved translator. Holds the result of the class hierarchy walk for each
+    // concrete class translated, including subclasses and Hibernate proxy classes which can only be
+    // resolved to a translator registered for one of their ancestors.
+    private final Map<Class, Map<Class, ObjectTranslator>> resolved;
+
 
     /**
      * Initializes a new ModelTranslator instance.
      */
     public SimpleModelTranslator() {
         this.translators = new HashMap<>();
+        this.resolved = new ConcurrentHashMap<>();
     }
 
     /**
@@ -74,6 +81,7 @@ public class SimpleModelTranslator implements ModelTranslator {
 
         ObjectTranslator<I, O> existing = (ObjectTranslator<I, O>) inputMappings.get(inputClass);
         inputMappings.put(inputClass, translator);
+        this.resolved.clear();
 
         return existing;
     }
@@ -92,7 +100,15 @@ public class SimpleModelTranslator implements ModelTranslator {
         }
 
         Map<Class, ObjectTranslator> inputMappings = this.translators.get(outputClass);
-        return inputMappings != null ? (ObjectTranslator<I, O>) inputMappings.remove(inputClass) : null;
+        ObjectTranslator<I, O> existing = inputMappings != null ?
+            (ObjectTranslator<I, O>) inputMappings.remove(inputClass) :
+            null;
+
+        if (existing != null) {
+            this.resolved.clear();
+        }
+
+        return existing;
     }
 
     /**
@@ -118,6 +134,10 @@ public class SimpleModelTranslator implements ModelTranslator {
             }
         }
 
+        if (mappings > 0) {
+            this.resolved.clear();
+        }
+
         return mappings;
     }
 
@@ -214,6 +234,8 @@ public class SimpleModelTranslator implements ModelTranslator {
      * 7. If C is not null, go to step 2
      * 8. Return T
      * </pre>
+     * The result of this search is remembered for each pair of input and output classes, until the
+     * registered translators are next changed.
      *
      * @param inputClass
      *  The input class for which to find a translator
@@ -240,6 +262,35 @@ public class SimpleModelTranslator implements ModelTranslator {
             throw new IllegalArgumentException("outputClass is null");
         }
 
+        Map<Class, ObjectTranslator> resolvedMappings = this.resolved
+            .computeIfAbsent(outputClass, key -> new ConcurrentHashMap<>());
+
+        ObjectTranslator<I, O> translator = (ObjectTranslator<I, O>) resolvedMappings.get(inputClass);
+        if (translator == null) {
+            translator = this.resolveTranslator(inputClass, outputClass);
+            resolvedMappings.put(inputClass, translator);
+        }
+
+        return translator;
+    }
+
+    /**
+     * Walks the class hierarchies of the given input and output classes to find the nearest
+     * registered translator, as described by findTranslatorByClass.
+     *
+     * @param inputClass
+     *  The input class for which to find a translator
+     *
+     * @param outputClass
+     *  The output class for which to find a translator
+     *
+     * @throws TranslationException
+     *  if a translator cannot be found for the given class map
+     *
+     * @return
+     *  a translator for the given class map
+     */
+    private <I, O> ObjectTranslator<I, O> resolveTranslator(Class<I> inputClass, Class<O> outputClass) {
         ObjectTranslator<I, O> translator = null;
 
         // TODO: This is broken for finding nearest output. Output cannot be less specific than
@@ -350,6 +401,8 @@ public class SimpleModelTranslator implements ModelTranslator {
             throw new IllegalArgumentException("outputClass is null");
         }
 
+        // Queries are streamed straight to the response, so nested objects shared between the
+        // elements, such as their owner, are only translated once per query.
         return query.transform(new ElementTransformer<I, O>() {
             private ModelTranslator modelTranslator;
             private Class<O> outputClass;
@@ -381,7 +434,7 @@ public class SimpleModelTranslator implements ModelTranslator {
 
                 return output;
             }
-        }.init(this, outputClass));
+        }.init(new MemoizingModelTranslator(this), outputClass));
     }
 
 }
@@ -82,7 +82,7 @@ public class PoolTranslator implements ObjectTranslator<Pool, PoolDTO> {
         dest.setContractNumber(source.getContractNumber());
         dest.setAccountNumber(source.getAccountNumber());
         dest.setOrderNumber(source.getOrderNumber());
-        dest.setConsumed(source.getConsumed());
+        dest.setConsumed(source.getCommittedConsumed());
         dest.setExported(source.getExported());
         dest.setCalculatedAttributes(source.getCalculatedAttributes());
         dest.setUpstreamPoolId(source.getUpstreamPoolId());
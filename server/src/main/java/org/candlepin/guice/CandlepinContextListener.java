@@ -22,6 +22,11 @@ import org.candlepin.audit.ActiveMQContextListener;
 import org.candlepin.audit.QpidConnection;
 import org.candlepin.audit.QpidQmf;
 import org.candlepin.audit.QpidStatus;
+import org.candlepin.cache.ClusterCacheInvalidator;
+import org.candlepin.cache.GuestHostCache;
+import org.candlepin.cache.OwnerInfoCache;
+import org.candlepin.cache.OwnerInfoRefresher;
+import org.candlepin.cache.PoolSearchIndex;
 import org.candlepin.common.config.Configuration;
 import org.candlepin.common.config.ConfigurationException;
 import org.candlepin.common.config.EncryptedConfiguration;
@@ -31,10 +36,12 @@ import org.candlepin.config.ConfigProperties;
 import org.candlepin.config.DatabaseConfigFactory;
 import org.candlepin.controller.QpidStatusMonitor;
 import org.candlepin.controller.SuspendModeTransitioner;
+import org.candlepin.hibernate.ProfilingEventListener;
 import org.candlepin.logging.LoggerContextListener;
 import org.candlepin.messaging.CPMContextListener;
 import org.candlepin.pki.impl.JSSProviderLoader;
 import org.candlepin.resteasy.AnnotationLocator;
+import org.candlepin.resteasy.AsyncRequestExecutor;
 import org.candlepin.swagger.CandlepinSwaggerModelConverter;
 import org.candlepin.util.CrlFileUtil;
 import org.candlepin.util.Util;
@@ -92,6 +99,8 @@ public class CandlepinContextListener extends GuiceResteasyBootstrapServletConte
     public static final String CONFIGURATION_NAME = Configuration.class.getName();
 
     private CPMContextListener cpmContextListener;
+    private ClusterCacheInvalidator cacheInvalidator;
+    private OwnerInfoRefresher ownerInfoRefresher;
 
     private ActiveMQContextListener activeMQContextListener;
     private JobManager jobManager;
@@ -170,6 +179,12 @@ public class CandlepinContextListener extends GuiceResteasyBootstrapServletConte
         this.cpmContextListener = injector.getInstance(CPMContextListener.class);
         this.cpmContextListener.initialize(injector);
 
+        this.cacheInvalidator = injector.getInstance(ClusterCacheInvalidator.class);
+        this.cacheInvalidator.start();
+
+        this.ownerInfoRefresher = injector.getInstance(OwnerInfoRefresher.class);
+        this.ownerInfoRefresher.start();
+
         if (config.getBoolean(ConfigProperties.AMQP_INTEGRATION_ENABLED)) {
             if (!config.getBoolean(ConfigProperties.SUSPEND_MODE_ENABLED)) {
                 QpidQmf qmf = injector.getInstance(QpidQmf.class);
@@ -257,6 +272,13 @@ public class CandlepinContextListener extends GuiceResteasyBootstrapServletConte
     }
 
     private void destroySubsystems() throws Exception {
+        // Stop executing suspended requests before the services they depend upon are torn down
+        injector.getInstance(AsyncRequestExecutor.class).shutdown();
+        this.ownerInfoRefresher.shutdown();
+
+        // Stop receiving cache invalidations while the messaging sessions are still usable
+        this.cacheInvalidator.shutdown();
+
         // Perform graceful shutdown operations before the job system's final destruction
         this.cpmContextListener.shutdown();
 
@@ -401,6 +423,22 @@ public class CandlepinContextListener extends GuiceResteasyBootstrapServletConte
         registry.getEventListenerGroup(EventType.PRE_INSERT).appendListener(listenerProvider.get());
         registry.getEventListenerGroup(EventType.PRE_UPDATE).appendListener(listenerProvider.get());
         registry.getEventListenerGroup(EventType.PRE_DELETE).appendListener(listenerProvider.get());
+
+        // The guest-to-host and pool search indexes, and the owner info summaries, are maintained
+        // from entity events, so they must be wired in here too
+        injector.getInstance(GuestHostCache.class).registerListeners(registry);
+        injector.getInstance(PoolSearchIndex.class).registerListeners(registry);
+        injector.getInstance(OwnerInfoCache.class).registerListeners(registry);
+
+        // As are the cluster cache invalidations, which also need the second-level cache to evict
+        // the changes received from other nodes
+        injector.getInstance(ClusterCacheInvalidator.class)
+            .registerListeners(registry, sessionFactoryImpl.getCache());
+
+        // Entity loads and collection fetches are only reported while profiling
+        if (config.getBoolean(ConfigProperties.DB_PROFILING_ENABLED)) {
+            new ProfilingEventListener().registerListeners(registry);
+        }
     }
 
 
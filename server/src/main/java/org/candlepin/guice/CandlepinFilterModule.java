@@ -23,7 +23,7 @@ import org.candlepin.servlet.filter.EventFilter;
 
 import com.google.inject.servlet.ServletModule;
 
-import org.jboss.resteasy.plugins.server.servlet.HttpServletDispatcher;
+import org.jboss.resteasy.plugins.server.servlet.HttpServlet30Dispatcher;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -67,6 +67,18 @@ public class CandlepinFilterModule extends ServletModule {
         filterRegex(regex).through(LoggingFilter.class, loggingFilterConfig);
         filterRegex(regex).through(EventFilter.class);
 
-        serveRegex(regex).with(HttpServletDispatcher.class);
+        /*
+         * Requests are dispatched to RESTEasy by the servlet declared in web.xml, which supports
+         * the asynchronous processing suspended requests need. The static pages are mapped to the
+         * container there as well; any which are disabled are served by RESTEasy instead, which
+         * does not know them.
+         */
+        if (!config.getBoolean(ConfigProperties.SWAGGER_ENABLED)) {
+            serve("/docs", "/docs/*").with(HttpServlet30Dispatcher.class);
+        }
+
+        if (!config.getBoolean(ConfigProperties.TOKENPAGE_ENABLED)) {
+            serve("/token", "/token/*").with(HttpServlet30Dispatcher.class);
+        }
     }
 }
@@ -31,6 +31,7 @@ import org.candlepin.async.tasks.ImportRecordCleanerJob;
 import org.candlepin.async.tasks.JobCleaner;
 import org.candlepin.async.tasks.ManifestCleanerJob;
 import org.candlepin.async.tasks.OrphanCleanupJob;
+import org.candlepin.async.tasks.PoolQuantityReconcileJob;
 import org.candlepin.async.tasks.RefreshPoolsForProductJob;
 import org.candlepin.async.tasks.RefreshPoolsJob;
 import org.candlepin.async.tasks.RegenEnvEntitlementCertsJob;
@@ -51,7 +52,9 @@ import org.candlepin.auth.Principal;
 import org.candlepin.bind.BindChainFactory;
 import org.candlepin.bind.BindContextFactory;
 import org.candlepin.bind.PreEntitlementRulesCheckOpFactory;
+import org.candlepin.cache.CacheInvalidationTransport;
 import org.candlepin.cache.JCacheManagerProvider;
+import org.candlepin.cache.MessagingCacheInvalidationTransport;
 import org.candlepin.common.config.Configuration;
 import org.candlepin.common.config.ConfigurationPrefixes;
 import org.candlepin.common.exceptions.mappers.BadRequestExceptionMapper;
@@ -90,6 +93,13 @@ import org.candlepin.controller.SuspendModeTransitioner;
 import org.candlepin.controller.mode.CandlepinModeManager;
 import org.candlepin.dto.ModelTranslator;
 import org.candlepin.dto.StandardTranslator;
+import org.candlepin.hibernate.CuratorProfilingInterceptor;
+import org.candlepin.hibernate.DatabaseRouter;
+import org.candlepin.hibernate.DatabaseRoutingInterceptor;
+import org.candlepin.hibernate.ProfilingStatementInspector;
+import org.candlepin.hibernate.QueryProfiler;
+import org.candlepin.hibernate.ReadOnly;
+import org.candlepin.hibernate.ReplicaRoutingConnectionProvider;
 import org.candlepin.jackson.PoolEventFilter;
 import org.candlepin.messaging.CPMContextListener;
 import org.candlepin.messaging.CPMSessionFactory;
@@ -98,6 +108,7 @@ import org.candlepin.messaging.impl.artemis.ArtemisSessionFactory;
 import org.candlepin.messaging.impl.artemis.ArtemisUtil;
 import org.candlepin.messaging.impl.noop.NoopContextListener;
 import org.candlepin.messaging.impl.noop.NoopSessionFactory;
+import org.candlepin.model.AbstractHibernateCurator;
 import org.candlepin.model.CPRestrictions;
 import org.candlepin.model.UeberCertificateGenerator;
 import org.candlepin.pki.CertificateReader;
@@ -147,11 +158,13 @@ import org.candlepin.resource.util.ResolverUtil;
 import org.candlepin.resteasy.AnnotationLocator;
 import org.candlepin.resteasy.DateFormatter;
 import org.candlepin.resteasy.JsonProvider;
+import org.candlepin.resteasy.filter.AdmissionControlFilter;
 import org.candlepin.resteasy.filter.AuthenticationFilter;
 import org.candlepin.resteasy.filter.AuthorizationFeature;
 import org.candlepin.resteasy.filter.CandlepinQueryInterceptor;
 import org.candlepin.resteasy.filter.CandlepinSuspendModeFilter;
 import org.candlepin.resteasy.filter.ConsumerCheckInFilter;
+import org.candlepin.resteasy.filter.QueryProfilingFilter;
 import org.candlepin.resteasy.filter.SecurityHoleAuthorizationFilter;
 import org.candlepin.resteasy.filter.StoreFactory;
 import org.candlepin.resteasy.filter.SuperAdminAuthorizationFilter;
@@ -193,6 +206,7 @@ import com.google.inject.AbstractModule;
 import com.google.inject.Provides;
 import com.google.inject.Singleton;
 import com.google.inject.assistedinject.FactoryModuleBuilder;
+import com.google.inject.matcher.Matchers;
 import com.google.inject.name.Named;
 import com.google.inject.name.Names;
 import com.google.inject.persist.jpa.JpaPersistModule;
@@ -201,6 +215,7 @@ import io.swagger.jaxrs.config.BeanConfig;
 import io.swagger.jaxrs.listing.ApiListingResource;
 import io.swagger.jaxrs.listing.SwaggerSerializers;
 
+import org.hibernate.cfg.AvailableSettings;
 import org.hibernate.cfg.beanvalidation.BeanValidationEventListener;
 import org.hibernate.validator.HibernateValidator;
 import org.quartz.SchedulerFactory;
@@ -212,6 +227,7 @@ import java.util.concurrent.ScheduledExecutorService;
 
 import javax.cache.CacheManager;
 import javax.inject.Provider;
+import javax.persistence.EntityManager;
 import javax.validation.MessageInterpolator;
 import javax.validation.Validation;
 import javax.validation.ValidatorFactory;
@@ -238,6 +254,9 @@ public class CandlepinModule extends AbstractModule {
         bind(BeanValidationEventListener.class).toProvider(ValidationListenerProvider.class);
         bind(MessageInterpolator.class).to(CandlepinMessageInterpolator.class);
 
+        // The routing interceptor must be bound ahead of the JPA module's transaction interceptor, so
+        // read-only transactional methods are routed before their transaction begins
+        configureDatabaseRouting();
         configureJPA();
         bindPki();
 
@@ -307,6 +326,7 @@ public class CandlepinModule extends AbstractModule {
         }
 
         bind(CacheManager.class).toProvider(JCacheManagerProvider.class).in(Singleton.class);
+        bind(CacheInvalidationTransport.class).to(MessagingCacheInvalidationTransport.class);
 
         // Configure model translators
         this.configureModelTranslator();
@@ -391,10 +411,59 @@ public class CandlepinModule extends AbstractModule {
 
     protected void configureJPA() {
         Configuration jpaConfig = config.strippedSubset(ConfigurationPrefixes.JPA_CONFIG_PREFIX);
-        install(new JpaPersistModule("default").properties(jpaConfig.toProperties()));
+        Properties jpaProperties = jpaConfig.toProperties();
+
+        if (this.isReplicaConfigured()) {
+            String[] replicaProperties = new String[] {
+                ConfigProperties.DB_REPLICA_URL,
+                ConfigProperties.DB_REPLICA_USERNAME,
+                ConfigProperties.DB_REPLICA_PASSWORD,
+                ConfigProperties.DB_REPLICA_LAG_QUERY,
+                ConfigProperties.DB_REPLICA_MAX_LAG,
+                ConfigProperties.DB_REPLICA_LAG_CHECK_INTERVAL
+            };
+
+            for (String property : replicaProperties) {
+                if (config.containsKey(property)) {
+                    jpaProperties.setProperty(property, config.getString(property));
+                }
+            }
+
+            jpaProperties.setProperty(AvailableSettings.CONNECTION_PROVIDER,
+                ReplicaRoutingConnectionProvider.class.getName());
+        }
+
+        // Statements are only counted while profiling, as the inspector runs for every statement
+        if (this.config.getBoolean(ConfigProperties.DB_PROFILING_ENABLED)) {
+            jpaProperties.setProperty(AvailableSettings.STATEMENT_INSPECTOR,
+                ProfilingStatementInspector.class.getName());
+        }
+
+        install(new JpaPersistModule("default").properties(jpaProperties));
         bind(JPAInitializer.class).asEagerSingleton();
     }
 
+    private boolean isReplicaConfigured() {
+        String url = config.getString(ConfigProperties.DB_REPLICA_URL, null);
+        return url != null && !url.isEmpty();
+    }
+
+    private void configureDatabaseRouting() {
+        bind(DatabaseRouter.class).toInstance(DatabaseRouter.getInstance());
+
+        // Read-only methods are only worth intercepting when there is a replica to route them to
+        if (!this.isReplicaConfigured()) {
+            return;
+        }
+
+        DatabaseRoutingInterceptor interceptor = new DatabaseRoutingInterceptor(
+            DatabaseRouter.getInstance(), getProvider(EntityManager.class));
+
+        bindInterceptor(Matchers.any(), Matchers.annotatedWith(ReadOnly.class), interceptor);
+        bindInterceptor(Matchers.annotatedWith(ReadOnly.class), CuratorProfilingInterceptor.METHOD_MATCHER,
+            interceptor);
+    }
+
     private void configureBindFactories() {
         install(new FactoryModuleBuilder().build(BindChainFactory.class));
         install(new FactoryModuleBuilder().build(BindContextFactory.class));
@@ -423,6 +492,20 @@ public class CandlepinModule extends AbstractModule {
             bind(CandlepinSuspendModeFilter.class);
         }
 
+        // Admission control may reject requests under load, so it is strictly opt-in
+        if (this.config.getBoolean(ConfigProperties.ADMISSION_CONTROL_ENABLED)) {
+            bind(AdmissionControlFilter.class);
+        }
+
+        // Curator profiling adds an interceptor to every curator call, so it is strictly opt-in
+        bind(QueryProfiler.class).toInstance(QueryProfiler.getInstance());
+        if (this.config.getBoolean(ConfigProperties.DB_PROFILING_ENABLED)) {
+            bind(QueryProfilingFilter.class);
+            bindInterceptor(Matchers.subclassesOf(AbstractHibernateCurator.class),
+                CuratorProfilingInterceptor.METHOD_MATCHER,
+                new CuratorProfilingInterceptor(QueryProfiler.getInstance()));
+        }
+
         bindConstant().annotatedWith(Names.named("PREFIX_APIURL_KEY")).to(ConfigProperties.PREFIX_APIURL);
     }
 
@@ -446,6 +529,7 @@ public class CandlepinModule extends AbstractModule {
         JobManager.registerJob(JobCleaner.JOB_KEY, JobCleaner.class);
         JobManager.registerJob(ManifestCleanerJob.JOB_KEY, ManifestCleanerJob.class);
         JobManager.registerJob(OrphanCleanupJob.JOB_KEY, OrphanCleanupJob.class);
+        JobManager.registerJob(PoolQuantityReconcileJob.JOB_KEY, PoolQuantityReconcileJob.class);
         JobManager.registerJob(RefreshPoolsForProductJob.JOB_KEY, RefreshPoolsForProductJob.class);
         JobManager.registerJob(RefreshPoolsJob.JOB_KEY, RefreshPoolsJob.class);
         JobManager.registerJob(RegenEnvEntitlementCertsJob.JOB_KEY, RegenEnvEntitlementCertsJob.class);
@@ -35,7 +35,7 @@ import org.candlepin.sync.file.ManifestFileService;
 
 import com.google.inject.AbstractModule;
 
-import org.jboss.resteasy.plugins.server.servlet.HttpServletDispatcher;
+import org.jboss.resteasy.plugins.server.servlet.HttpServlet30Dispatcher;
 
 /**
  * DefaultConfig
@@ -44,7 +44,7 @@ class DefaultConfig extends AbstractModule {
 
     @Override
     public void configure() {
-        bind(HttpServletDispatcher.class).asEagerSingleton();
+        bind(HttpServlet30Dispatcher.class).asEagerSingleton();
         bind(ScriptEngineProvider.class);
         bind(OwnerServiceAdapter.class).to(DefaultOwnerServiceAdapter.class);
         bind(SubjectKeyIdentifierWriter.class).to(DefaultSubjectKeyIdentifierWriter.class);
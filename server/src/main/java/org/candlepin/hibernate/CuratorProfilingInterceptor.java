@@ -0,0 +1,101 @@
+/**
+ * Copyright (c) 2009 - 2020 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.hibernate;
+
+import com.google.inject.matcher.AbstractMatcher;
+import com.google.inject.matcher.Matcher;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.Map;
+
+
+
+/**
+ * Method interceptor which reports curator method invocations to the {@link QueryProfiler}, so
+ * the database work performed during each invocation can be attributed to it.
+ */
+public class CuratorProfilingInterceptor implements MethodInterceptor {
+
+    /**
+     * Matches the methods worth profiling: those declared by the curators themselves, excluding
+     * compiler-generated bridge methods.
+     */
+    public static final Matcher<Method> METHOD_MATCHER = new AbstractMatcher<Method>() {
+        @Override
+        public boolean matches(Method method) {
+            return !method.isSynthetic() && method.getDeclaringClass() != Object.class;
+        }
+    };
+
+    private final QueryProfiler profiler;
+
+    public CuratorProfilingInterceptor(QueryProfiler profiler) {
+        if (profiler == null) {
+            throw new IllegalArgumentException("profiler is null");
+        }
+
+        this.profiler = profiler;
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        this.profiler.enterCurator(getMethodName(invocation.getThis(), invocation.getMethod()));
+        long rows = -1;
+
+        try {
+            Object result = invocation.proceed();
+
+            if (result instanceof Collection) {
+                rows = ((Collection) result).size();
+            }
+            else if (result instanceof Map) {
+                rows = ((Map) result).size();
+            }
+
+            return result;
+        }
+        finally {
+            this.profiler.exitCurator(rows);
+        }
+    }
+
+    /**
+     * Builds the name under which invocations of the given method are reported. Inherited methods
+     * are reported against the concrete curator, rather than the class declaring them.
+     *
+     * @param target
+     *  the curator on which the method was invoked
+     *
+     * @param method
+     *  the method invoked
+     *
+     * @return
+     *  the name of the invoked curator method
+     */
+    static String getMethodName(Object target, Method method) {
+        Class<?> type = target != null ? target.getClass() : method.getDeclaringClass();
+
+        // Skip past any enhanced subclass generated for interception
+        while (type.getSimpleName().contains("$$") && type.getSuperclass() != null) {
+            type = type.getSuperclass();
+        }
+
+        return type.getSimpleName() + "." + method.getName();
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ * Copyright (c) 2009 - 2020 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.hibernate;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlRootElement;
+
+
+
+/**
+ * The DatabaseRouteStats class counts the connections acquired on behalf of a single read-only
+ * method, by the database which served them.
+ */
+@XmlRootElement
+@XmlAccessorType(XmlAccessType.PROPERTY)
+public class DatabaseRouteStats {
+
+    private final String method;
+
+    private final LongAdder replicaConnections;
+    private final LongAdder staleFallbacks;
+    private final LongAdder failureFallbacks;
+
+    public DatabaseRouteStats(String method) {
+        this.method = method;
+
+        this.replicaConnections = new LongAdder();
+        this.staleFallbacks = new LongAdder();
+        this.failureFallbacks = new LongAdder();
+    }
+
+    void recordReplica() {
+        this.replicaConnections.increment();
+    }
+
+    void recordStaleFallback() {
+        this.staleFallbacks.increment();
+    }
+
+    void recordFailureFallback() {
+        this.failureFallbacks.increment();
+    }
+
+    public String getMethod() {
+        return this.method;
+    }
+
+    /**
+     * Fetches the number of connections served by the replica.
+     *
+     * @return
+     *  the number of connections served by the replica
+     */
+    public long getReplicaConnections() {
+        return this.replicaConnections.sum();
+    }
+
+    /**
+     * Fetches the number of connections served by the primary because the replica lagged too far
+     * behind it.
+     *
+     * @return
+     *  the number of connections which fell back to the primary due to replication lag
+     */
+    public long getStaleFallbacks() {
+        return this.staleFallbacks.sum();
+    }
+
+    /**
+     * Fetches the number of connections served by the primary because no connection to the
+     * replica could be established.
+     *
+     * @return
+     *  the number of connections which fell back to the primary due to replica failures
+     */
+    public long getFailureFallbacks() {
+        return this.failureFallbacks.sum();
+    }
+
+    /**
+     * Fetches the total number of connections acquired on behalf of this method.
+     *
+     * @return
+     *  the total number of connections acquired
+     */
+    public long getConnections() {
+        return this.getReplicaConnections() + this.getStaleFallbacks() + this.getFailureFallbacks();
+    }
+}
@@ -0,0 +1,200 @@
+/**
+ * Copyright (c) 2009 - 2020 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.hibernate;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+
+
+/**
+ * The DatabaseRouter tracks, for the calling thread, whether database connections should be
+ * acquired from the primary database or from a read replica, and collects per-method statistics
+ * on the connections routed to the replica.
+ * <p></p>
+ * Routing is scoped to the calling thread: the replica is only considered between a call to
+ * {@link #enter(Route, String)} with the replica route and the matching call to {@link #exit()},
+ * and only while no primary scope has been entered within it. Since Hibernate instantiates
+ * its own connection providers, the router is a process-wide instance available through
+ * {@link #getInstance()}.
+ */
+public final class DatabaseRouter {
+
+    /**
+     * The databases to which connections may be routed
+     */
+    public enum Route {
+        /** The primary database, which serves all writes and any reads not explicitly routed */
+        PRIMARY,
+
+        /** The read replica, which may serve reads performed by read-only methods */
+        REPLICA
+    }
+
+    private static final DatabaseRouter INSTANCE = new DatabaseRouter();
+
+    /**
+     * A single routing scope, such as the invocation of a read-only method
+     */
+    private static class Scope {
+        private final Route route;
+        private final String method;
+
+        public Scope(Route route, String method) {
+            this.route = route;
+            this.method = method;
+        }
+    }
+
+    private final ThreadLocal<Deque<Scope>> scopes;
+    private final ConcurrentMap<String, DatabaseRouteStats> stats;
+
+    private DatabaseRouter() {
+        this.scopes = new ThreadLocal<>();
+        this.stats = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Fetches the process-wide database router.
+     *
+     * @return
+     *  the database router
+     */
+    public static DatabaseRouter getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Enters a routing scope on the current thread.
+     *
+     * @param route
+     *  the route to use for connections acquired within the scope
+     *
+     * @param method
+     *  the name of the method entering the scope, against which connections routed to the replica
+     *  are recorded
+     *
+     * @throws IllegalArgumentException
+     *  if route is null
+     *
+     * @return
+     *  true if entering the scope changed the current route; false otherwise
+     */
+    public boolean enter(Route route, String method) {
+        if (route == null) {
+            throw new IllegalArgumentException("route is null");
+        }
+
+        Deque<Scope> stack = this.scopes.get();
+        if (stack == null) {
+            stack = new ArrayDeque<>();
+            this.scopes.set(stack);
+        }
+
+        Route previous = this.getRoute(stack);
+        stack.push(new Scope(route, method));
+
+        return previous != route;
+    }
+
+    /**
+     * Exits the innermost routing scope of the current thread.
+     *
+     * @return
+     *  true if exiting the scope changed the current route; false otherwise
+     */
+    public boolean exit() {
+        Deque<Scope> stack = this.scopes.get();
+        if (stack == null || stack.isEmpty()) {
+            return false;
+        }
+
+        Route previous = this.getRoute(stack);
+        stack.pop();
+
+        if (stack.isEmpty()) {
+            this.scopes.remove();
+        }
+
+        return previous != this.getRoute(stack);
+    }
+
+    /**
+     * Discards any routing scopes left on the current thread, such that subsequent connections are
+     * acquired from the primary.
+     */
+    public void reset() {
+        this.scopes.remove();
+    }
+
+    private Route getRoute(Deque<Scope> stack) {
+        Scope scope = stack != null ? stack.peek() : null;
+        return scope != null ? scope.route : Route.PRIMARY;
+    }
+
+    /**
+     * Fetches the route to use for connections acquired by the current thread.
+     *
+     * @return
+     *  the current route of the calling thread
+     */
+    public Route getRoute() {
+        return this.getRoute(this.scopes.get());
+    }
+
+    /**
+     * Fetches the statistics for the method of the innermost routing scope of the current thread,
+     * creating them as necessary.
+     *
+     * @return
+     *  the statistics of the current method, or null if the current thread is not within any scope
+     */
+    DatabaseRouteStats getCurrentStats() {
+        Deque<Scope> stack = this.scopes.get();
+        Scope scope = stack != null ? stack.peek() : null;
+
+        if (scope == null) {
+            return null;
+        }
+
+        String method = scope.method != null ? scope.method : "(unknown)";
+        return this.stats.computeIfAbsent(method, DatabaseRouteStats::new);
+    }
+
+    /**
+     * Fetches the statistics collected since the router was last reset, sorted by the total number
+     * of connections acquired, descending.
+     *
+     * @return
+     *  a list of the collected statistics
+     */
+    public List<DatabaseRouteStats> getStats() {
+        List<DatabaseRouteStats> output = new ArrayList<>(this.stats.values());
+        output.sort((lhs, rhs) -> Long.compare(rhs.getConnections(), lhs.getConnections()));
+
+        return output;
+    }
+
+    /**
+     * Discards all of the statistics collected so far. Routing in progress is unaffected.
+     */
+    public void resetStats() {
+        this.stats.clear();
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ * Copyright (c) 2009 - 2020 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.hibernate;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.hibernate.Session;
+
+import javax.inject.Provider;
+import javax.persistence.EntityManager;
+
+
+
+/**
+ * Method interceptor which routes the database connections acquired during the invocation of a
+ * {@link ReadOnly} method to the replica, by way of the {@link DatabaseRouter}.
+ * <p></p>
+ * Since a session keeps its connection between statements, any connection held by the current
+ * session is released whenever the route changes outside of a transaction, so the next statement
+ * acquires a connection from the newly selected database. A transaction already in progress keeps
+ * its connection, and so continues to see its own changes.
+ */
+public class DatabaseRoutingInterceptor implements MethodInterceptor {
+
+    private final DatabaseRouter router;
+    private final Provider<EntityManager> entityManager;
+
+    /**
+     * Creates a new interceptor routing invocations through the given router
+     *
+     * @param router
+     *  the router tracking the route of each thread
+     *
+     * @param entityManager
+     *  a provider for the entity manager of the current unit of work
+     */
+    public DatabaseRoutingInterceptor(DatabaseRouter router, Provider<EntityManager> entityManager) {
+        if (router == null) {
+            throw new IllegalArgumentException("router is null");
+        }
+
+        if (entityManager == null) {
+            throw new IllegalArgumentException("entityManager is null");
+        }
+
+        this.router = router;
+        this.entityManager = entityManager;
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        String method = CuratorProfilingInterceptor.getMethodName(invocation.getThis(),
+            invocation.getMethod());
+
+        if (this.router.enter(DatabaseRouter.Route.REPLICA, method)) {
+            this.releaseConnection();
+        }
+
+        try {
+            return invocation.proceed();
+        }
+        finally {
+            if (this.router.exit()) {
+                this.releaseConnection();
+            }
+        }
+    }
+
+    /**
+     * Releases the connection held by the current session, if any, unless it is in use by an
+     * active transaction. The session acquires a new connection for its next statement.
+     */
+    private void releaseConnection() {
+        EntityManager em = this.entityManager.get();
+
+        if (em != null && em.isOpen() && !em.getTransaction().isActive()) {
+            em.unwrap(Session.class).disconnect();
+        }
+    }
+}
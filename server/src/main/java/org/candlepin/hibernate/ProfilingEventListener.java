@@ -0,0 +1,57 @@
+/**
+ * Copyright (c) 2009 - 2020 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.hibernate;
+
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.InitializeCollectionEvent;
+import org.hibernate.event.spi.InitializeCollectionEventListener;
+import org.hibernate.event.spi.PostLoadEvent;
+import org.hibernate.event.spi.PostLoadEventListener;
+
+
+
+/**
+ * Event listener which reports entity loads and lazy collection fetches to the
+ * {@link QueryProfiler}. It is only registered with the session factory, through
+ * {@link #registerListeners(EventListenerRegistry)}, while database profiling is enabled.
+ */
+public class ProfilingEventListener implements PostLoadEventListener, InitializeCollectionEventListener {
+
+    /**
+     * Registers this listener with the given Hibernate event listener registry.
+     *
+     * @param registry
+     *  the event listener registry of the session factory
+     */
+    public void registerListeners(EventListenerRegistry registry) {
+        if (registry == null) {
+            throw new IllegalArgumentException("registry is null");
+        }
+
+        registry.appendListeners(EventType.POST_LOAD, this);
+        registry.appendListeners(EventType.INIT_COLLECTION, this);
+    }
+
+    @Override
+    public void onPostLoad(PostLoadEvent event) {
+        QueryProfiler.getInstance().recordEntityLoad();
+    }
+
+    @Override
+    public void onInitializeCollection(InitializeCollectionEvent event) {
+        QueryProfiler.getInstance().recordCollectionFetch();
+    }
+}
@@ -0,0 +1,222 @@
+/**
+ * Copyright (c) 2009 - 2020 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.hibernate;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlRootElement;
+
+
+
+/**
+ * The QueryProfileStats class accumulates the database work attributed to a single curator method
+ * when invoked on behalf of a single endpoint. Along with running totals, it maintains histograms
+ * of the latency and statement count of each invocation, which is where N+1 query patterns tend
+ * to stand out.
+ */
+@XmlRootElement
+@XmlAccessorType(XmlAccessType.PROPERTY)
+public class QueryProfileStats {
+
+    /** Upper bounds of the latency histogram buckets, in milliseconds */
+    private static final long[] LATENCY_BOUNDS = { 1, 5, 10, 50, 100, 500, 1000, 5000 };
+
+    /** Upper bounds of the per-invocation statement count histogram buckets */
+    private static final long[] STATEMENT_BOUNDS = { 0, 1, 2, 5, 10, 25, 50, 100, 500 };
+
+    /**
+     * A fixed-bucket histogram which is safe for concurrent updates
+     */
+    private static class Histogram {
+        private final long[] bounds;
+        private final AtomicLongArray counts;
+
+        public Histogram(long[] bounds) {
+            this.bounds = bounds;
+            this.counts = new AtomicLongArray(bounds.length + 1);
+        }
+
+        public void record(long value) {
+            int bucket = 0;
+            while (bucket < this.bounds.length && value > this.bounds[bucket]) {
+                ++bucket;
+            }
+
+            this.counts.incrementAndGet(bucket);
+        }
+
+        public Map<String, Long> getBuckets() {
+            Map<String, Long> buckets = new LinkedHashMap<>();
+
+            for (int i = 0; i < this.bounds.length; ++i) {
+                buckets.put("<=" + this.bounds[i], this.counts.get(i));
+            }
+
+            buckets.put(">" + this.bounds[this.bounds.length - 1], this.counts.get(this.bounds.length));
+            return buckets;
+        }
+    }
+
+    private final String endpoint;
+    private final String method;
+
+    private final LongAdder invocations;
+    private final LongAdder time;
+    private final AtomicLong maxTime;
+    private final LongAdder statements;
+    private final LongAdder entityLoads;
+    private final LongAdder collectionFetches;
+    private final LongAdder rows;
+    private final Histogram latencyHistogram;
+    private final Histogram statementHistogram;
+
+    public QueryProfileStats(String endpoint, String method) {
+        this.endpoint = endpoint;
+        this.method = method;
+
+        this.invocations = new LongAdder();
+        this.time = new LongAdder();
+        this.maxTime = new AtomicLong();
+        this.statements = new LongAdder();
+        this.entityLoads = new LongAdder();
+        this.collectionFetches = new LongAdder();
+        this.rows = new LongAdder();
+        this.latencyHistogram = new Histogram(LATENCY_BOUNDS);
+        this.statementHistogram = new Histogram(STATEMENT_BOUNDS);
+    }
+
+    /**
+     * Records a single invocation, or a batch of work performed outside of any invocation.
+     *
+     * @param nanos
+     *  the duration of the invocation in nanoseconds, or a negative value if the work was not
+     *  performed by a timed invocation
+     *
+     * @param statements
+     *  the number of statements issued
+     *
+     * @param entityLoads
+     *  the number of entities loaded
+     *
+     * @param collectionFetches
+     *  the number of collections fetched
+     *
+     * @param rows
+     *  the number of rows or entities returned by the invocation, or a negative value if unknown
+     */
+    void record(long nanos, long statements, long entityLoads, long collectionFetches, long rows) {
+        this.statements.add(statements);
+        this.entityLoads.add(entityLoads);
+        this.collectionFetches.add(collectionFetches);
+
+        if (rows > 0) {
+            this.rows.add(rows);
+        }
+
+        if (nanos >= 0) {
+            long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+
+            this.invocations.increment();
+            this.time.add(nanos);
+            this.maxTime.accumulateAndGet(millis, Math::max);
+            this.latencyHistogram.record(millis);
+            this.statementHistogram.record(statements);
+        }
+    }
+
+    public String getEndpoint() {
+        return this.endpoint;
+    }
+
+    public String getMethod() {
+        return this.method;
+    }
+
+    public long getInvocations() {
+        return this.invocations.sum();
+    }
+
+    /**
+     * Fetches the total time spent in timed invocations, in milliseconds.
+     *
+     * @return
+     *  the total time spent in invocations, in milliseconds
+     */
+    public long getTotalTime() {
+        return TimeUnit.NANOSECONDS.toMillis(this.time.sum());
+    }
+
+    /**
+     * Fetches the duration of the slowest invocation, in milliseconds.
+     *
+     * @return
+     *  the duration of the slowest invocation, in milliseconds
+     */
+    public long getMaxTime() {
+        return this.maxTime.get();
+    }
+
+    public long getStatements() {
+        return this.statements.sum();
+    }
+
+    public long getEntityLoads() {
+        return this.entityLoads.sum();
+    }
+
+    public long getCollectionFetches() {
+        return this.collectionFetches.sum();
+    }
+
+    public long getRows() {
+        return this.rows.sum();
+    }
+
+    /**
+     * Fetches the latency histogram, mapping the label of each bucket, in milliseconds, to the
+     * number of invocations which fell into it.
+     *
+     * @return
+     *  the latency histogram of this method
+     */
+    public Map<String, Long> getLatencyHistogram() {
+        return this.latencyHistogram.getBuckets();
+    }
+
+    /**
+     * Fetches the statement count histogram, mapping the label of each bucket to the number of
+     * invocations which issued that many statements.
+     *
+     * @return
+     *  the statement count histogram of this method
+     */
+    public Map<String, Long> getStatementHistogram() {
+        return this.statementHistogram.getBuckets();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("QueryProfileStats [endpoint: %s, method: %s, invocations: %d, " +
+            "statements: %d]", this.getEndpoint(), this.getMethod(), this.getInvocations(),
+            this.getStatements());
+    }
+}
@@ -0,0 +1,94 @@
+/**
+ * Copyright (c) 2009 - 2020 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.hibernate;
+
+import java.util.concurrent.TimeUnit;
+
+
+
+/**
+ * The QueryProfileSummary collects the totals of the database work performed while profiling a
+ * single request. Instances are only updated by the thread being profiled, and are not safe for
+ * concurrent modification.
+ */
+public class QueryProfileSummary {
+
+    private long statements;
+    private long entityLoads;
+    private long collectionFetches;
+    private long curatorCalls;
+    private long curatorTime;
+
+    void addStatement() {
+        ++this.statements;
+    }
+
+    void addEntityLoad() {
+        ++this.entityLoads;
+    }
+
+    void addCollectionFetch() {
+        ++this.collectionFetches;
+    }
+
+    void addCuratorCall(long nanos) {
+        ++this.curatorCalls;
+        this.curatorTime += nanos;
+    }
+
+    public long getStatements() {
+        return this.statements;
+    }
+
+    public long getEntityLoads() {
+        return this.entityLoads;
+    }
+
+    public long getCollectionFetches() {
+        return this.collectionFetches;
+    }
+
+    public long getCuratorCalls() {
+        return this.curatorCalls;
+    }
+
+    /**
+     * Fetches the total time spent in curator methods, in milliseconds. Time spent in nested
+     * curator calls is counted once for each level of nesting.
+     *
+     * @return
+     *  the time spent in curator methods, in milliseconds
+     */
+    public long getCuratorTime() {
+        return TimeUnit.NANOSECONDS.toMillis(this.curatorTime);
+    }
+
+    /**
+     * Builds a compact representation of this summary, suitable for use as a response header.
+     *
+     * @return
+     *  a header-friendly representation of this summary
+     */
+    public String toHeaderValue() {
+        return String.format("statements=%d; entity_loads=%d; collection_fetches=%d; " +
+            "curator_calls=%d; curator_time_ms=%d", this.getStatements(), this.getEntityLoads(),
+            this.getCollectionFetches(), this.getCuratorCalls(), this.getCuratorTime());
+    }
+
+    @Override
+    public String toString() {
+        return String.format("QueryProfileSummary [%s]", this.toHeaderValue());
+    }
+}
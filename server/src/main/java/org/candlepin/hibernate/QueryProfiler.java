@@ -0,0 +1,276 @@
+/**
+ * Copyright (c) 2009 - 2020 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.hibernate;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+
+
+/**
+ * The QueryProfiler attributes the statements, entity loads and collection fetches issued by
+ * Hibernate to the curator method and REST endpoint which caused them.
+ * <p></p>
+ * Profiling is scoped to the calling thread: it only takes place between a call to
+ * {@link #beginRequest(String)} and {@link #endRequest()}, or for the duration of an outermost
+ * curator call. Threads which are not being profiled pay only for a thread-local lookup per event.
+ * Since Hibernate instantiates its own hooks, the profiler is a process-wide instance available
+ * through {@link #getInstance()}.
+ */
+public final class QueryProfiler {
+
+    /** The endpoint name used for work performed outside of a REST request */
+    public static final String NO_ENDPOINT = "(background)";
+
+    /** The method name used for work performed outside of any curator method */
+    public static final String NO_CURATOR = "(outside curator)";
+
+    private static final QueryProfiler INSTANCE = new QueryProfiler();
+
+    /**
+     * The counters of a single curator call, or of the work performed outside of any curator call
+     */
+    private static class Frame {
+        private final String method;
+        private final long start;
+        private long statements;
+        private long entityLoads;
+        private long collectionFetches;
+
+        public Frame(String method) {
+            this.method = method;
+            this.start = System.nanoTime();
+        }
+    }
+
+    /**
+     * The profiling state of a single thread
+     */
+    private static class Context {
+        private final String endpoint;
+        private final boolean implicit;
+        private final Frame outside;
+        private final Deque<Frame> frames;
+        private final QueryProfileSummary summary;
+
+        public Context(String endpoint, boolean implicit) {
+            this.endpoint = endpoint;
+            this.implicit = implicit;
+            this.outside = new Frame(NO_CURATOR);
+            this.frames = new ArrayDeque<>();
+            this.summary = new QueryProfileSummary();
+        }
+
+        public Frame current() {
+            Frame frame = this.frames.peek();
+            return frame != null ? frame : this.outside;
+        }
+    }
+
+    private final ThreadLocal<Context> context;
+    private final ConcurrentMap<String, QueryProfileStats> stats;
+
+    private QueryProfiler() {
+        this.context = new ThreadLocal<>();
+        this.stats = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Fetches the process-wide query profiler.
+     *
+     * @return
+     *  the query profiler
+     */
+    public static QueryProfiler getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Begins profiling the current thread on behalf of the given endpoint. Any profiling already
+     * in progress on this thread is discarded.
+     *
+     * @param endpoint
+     *  the name of the endpoint being invoked
+     */
+    public void beginRequest(String endpoint) {
+        this.context.set(new Context(endpoint != null ? endpoint : NO_ENDPOINT, false));
+    }
+
+    /**
+     * Ends profiling of the current thread, recording any work performed outside of curator
+     * methods against the endpoint.
+     *
+     * @return
+     *  a summary of the work performed since profiling began, or null if the current thread was
+     *  not being profiled
+     */
+    public QueryProfileSummary endRequest() {
+        Context ctx = this.context.get();
+        if (ctx == null) {
+            return null;
+        }
+
+        this.context.remove();
+        this.record(ctx, ctx.outside, -1, -1);
+
+        return ctx.summary;
+    }
+
+    /**
+     * Fetches the summary of the work performed so far on the current thread, without ending
+     * profiling.
+     *
+     * @return
+     *  a summary of the work performed since profiling began, or null if the current thread is
+     *  not being profiled
+     */
+    public QueryProfileSummary getSummary() {
+        Context ctx = this.context.get();
+        return ctx != null ? ctx.summary : null;
+    }
+
+    /**
+     * Checks if the current thread is being profiled.
+     *
+     * @return
+     *  true if the current thread is being profiled; false otherwise
+     */
+    public boolean isActive() {
+        return this.context.get() != null;
+    }
+
+    /**
+     * Records entry into the given curator method. If the current thread is not already being
+     * profiled, profiling is started implicitly and ends when the method exits.
+     *
+     * @param method
+     *  the name of the curator method being entered
+     */
+    public void enterCurator(String method) {
+        Context ctx = this.context.get();
+        if (ctx == null) {
+            ctx = new Context(NO_ENDPOINT, true);
+            this.context.set(ctx);
+        }
+
+        ctx.frames.push(new Frame(method));
+    }
+
+    /**
+     * Records exit from the curator method most recently entered on the current thread.
+     *
+     * @param rows
+     *  the number of rows or entities returned by the method, or a negative value if unknown
+     */
+    public void exitCurator(long rows) {
+        Context ctx = this.context.get();
+        if (ctx == null || ctx.frames.isEmpty()) {
+            return;
+        }
+
+        Frame frame = ctx.frames.pop();
+        long elapsed = System.nanoTime() - frame.start;
+
+        ctx.summary.addCuratorCall(elapsed);
+        this.record(ctx, frame, elapsed, rows);
+
+        if (ctx.implicit && ctx.frames.isEmpty()) {
+            this.context.remove();
+        }
+    }
+
+    /**
+     * Records a statement prepared by Hibernate on the current thread.
+     */
+    public void recordStatement() {
+        Context ctx = this.context.get();
+        if (ctx != null) {
+            ctx.current().statements++;
+            ctx.summary.addStatement();
+        }
+    }
+
+    /**
+     * Records an entity loaded by Hibernate on the current thread.
+     */
+    public void recordEntityLoad() {
+        Context ctx = this.context.get();
+        if (ctx != null) {
+            ctx.current().entityLoads++;
+            ctx.summary.addEntityLoad();
+        }
+    }
+
+    /**
+     * Records a collection fetched by Hibernate on the current thread.
+     */
+    public void recordCollectionFetch() {
+        Context ctx = this.context.get();
+        if (ctx != null) {
+            ctx.current().collectionFetches++;
+            ctx.summary.addCollectionFetch();
+        }
+    }
+
+    private void record(Context ctx, Frame frame, long elapsed, long rows) {
+        // Nothing worth reporting happened outside of the curators
+        if (elapsed < 0 && frame.statements == 0 && frame.entityLoads == 0 &&
+            frame.collectionFetches == 0) {
+            return;
+        }
+
+        String key = ctx.endpoint + " " + frame.method;
+        QueryProfileStats entry = this.stats.computeIfAbsent(key,
+            k -> new QueryProfileStats(ctx.endpoint, frame.method));
+
+        entry.record(elapsed, frame.statements, frame.entityLoads, frame.collectionFetches, rows);
+    }
+
+    /**
+     * Fetches the statistics collected since the profiler was last reset, sorted by the total
+     * number of statements issued, descending.
+     *
+     * @return
+     *  a list of the collected statistics
+     */
+    public List<QueryProfileStats> getStats() {
+        List<QueryProfileStats> output = new ArrayList<>(this.stats.values());
+        output.sort((lhs, rhs) -> Long.compare(rhs.getStatements(), lhs.getStatements()));
+
+        return output;
+    }
+
+    /**
+     * Discards all of the statistics collected so far. Profiling in progress is unaffected.
+     */
+    public void reset() {
+        this.stats.clear();
+    }
+
+    /**
+     * Fetches the number of curator method and endpoint pairs for which statistics have been
+     * collected.
+     *
+     * @return
+     *  the number of collected statistics entries
+     */
+    public int size() {
+        return this.stats.size();
+    }
+}
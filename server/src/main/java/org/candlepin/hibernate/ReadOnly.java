@@ -0,0 +1,40 @@
+/**
+ * Copyright (c) 2009 - 2020 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.hibernate;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+
+
+/**
+ * Marks a resource or curator method, or every method of a class, as only reading data. When a
+ * read replica is configured, the queries issued during the invocation of such a method may be
+ * served by the replica rather than the primary database.
+ * <p></p>
+ * Data read from a replica may lag slightly behind the primary, so this annotation should only be
+ * applied to methods which neither write, nor depend on data written earlier in the same request.
+ * Every method invoked from within a read-only method is routed along with it, with the exception
+ * of work performed within a transaction which was already in progress on the primary.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.METHOD, ElementType.TYPE})
+public @interface ReadOnly {
+
+}
@@ -0,0 +1,249 @@
+/**
+ * Copyright (c) 2009 - 2020 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.hibernate;
+
+import org.candlepin.config.ConfigProperties;
+
+import org.hibernate.c3p0.internal.C3P0ConnectionProvider;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.service.UnknownUnwrapTypeException;
+import org.hibernate.service.spi.Configurable;
+import org.hibernate.service.spi.ServiceRegistryAwareService;
+import org.hibernate.service.spi.ServiceRegistryImplementor;
+import org.hibernate.service.spi.Stoppable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+
+/**
+ * Connection provider which maintains separate c3p0 pools for the primary database and a read
+ * replica, and serves each connection from the pool selected by the {@link DatabaseRouter}.
+ * <p></p>
+ * The replica is configured through the properties named by the ConfigProperties.DB_REPLICA_*
+ * constants, which are passed along with the persistence unit's own properties. The replica pool
+ * shares the primary's c3p0 settings, while its URL and credentials replace the primary's. Before a
+ * replica connection is handed out, the replication lag is checked (at most once per configured
+ * interval) with the configured lag query; while the lag exceeds the configured maximum, or the
+ * replica cannot be reached, connections are served by the primary instead.
+ * <p></p>
+ * When no replica URL is configured, this provider behaves exactly as the c3p0 provider it wraps.
+ */
+public class ReplicaRoutingConnectionProvider implements ConnectionProvider, Configurable, Stoppable,
+    ServiceRegistryAwareService {
+
+    private static final long serialVersionUID = 1L;
+    private static Logger log = LoggerFactory.getLogger(ReplicaRoutingConnectionProvider.class);
+
+    private final DatabaseRouter router;
+    private final C3P0ConnectionProvider primary;
+    private C3P0ConnectionProvider replica;
+    private ServiceRegistryImplementor serviceRegistry;
+
+    private final Set<Connection> replicaConnections;
+    private final AtomicLong lastLagCheck;
+    private volatile long lag;
+
+    private String lagQuery;
+    private long maxLag;
+    private long lagCheckInterval;
+
+    public ReplicaRoutingConnectionProvider() {
+        this.router = DatabaseRouter.getInstance();
+        this.primary = new C3P0ConnectionProvider();
+
+        this.replicaConnections = Collections.synchronizedSet(
+            Collections.newSetFromMap(new IdentityHashMap<>()));
+        this.lastLagCheck = new AtomicLong();
+    }
+
+    @Override
+    public void injectServices(ServiceRegistryImplementor serviceRegistry) {
+        this.primary.injectServices(serviceRegistry);
+
+        // The replica provider is not created until configuration, so hold on to the registry
+        this.serviceRegistry = serviceRegistry;
+    }
+
+    @Override
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public void configure(Map props) {
+        this.primary.configure(props);
+
+        String url = getString(props, ConfigProperties.DB_REPLICA_URL, null);
+        if (url == null || url.isEmpty()) {
+            log.debug("No read replica configured; all connections will be served by the primary");
+            return;
+        }
+
+        Map replicaProps = new HashMap(props);
+        replicaProps.put(AvailableSettings.URL, url);
+        replicaProps.put(AvailableSettings.USER, getString(props, ConfigProperties.DB_REPLICA_USERNAME,
+            getString(props, AvailableSettings.USER, null)));
+        replicaProps.put(AvailableSettings.PASS, getString(props, ConfigProperties.DB_REPLICA_PASSWORD,
+            getString(props, AvailableSettings.PASS, null)));
+
+        // Drop any null credentials rather than handing them to the driver
+        replicaProps.values().removeIf(value -> value == null);
+
+        this.lagQuery = getString(props, ConfigProperties.DB_REPLICA_LAG_QUERY, null);
+        this.maxLag = Long.parseLong(getString(props, ConfigProperties.DB_REPLICA_MAX_LAG, "0"));
+        this.lagCheckInterval = Long.parseLong(
+            getString(props, ConfigProperties.DB_REPLICA_LAG_CHECK_INTERVAL, "0"));
+
+        this.replica = new C3P0ConnectionProvider();
+        if (this.serviceRegistry != null) {
+            this.replica.injectServices(this.serviceRegistry);
+        }
+
+        this.replica.configure(replicaProps);
+        log.info("Read-only queries will be routed to the replica at {}", url);
+    }
+
+    private static String getString(Map<?, ?> props, String key, String defaultValue) {
+        Object value = props.get(key);
+        return value != null ? value.toString().trim() : defaultValue;
+    }
+
+    /**
+     * Checks whether or not this provider has a replica configured.
+     *
+     * @return
+     *  true if a replica is configured; false otherwise
+     */
+    public boolean isReplicaConfigured() {
+        return this.replica != null;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (this.replica == null || this.router.getRoute() != DatabaseRouter.Route.REPLICA) {
+            return this.primary.getConnection();
+        }
+
+        DatabaseRouteStats stats = this.router.getCurrentStats();
+        Connection connection;
+
+        try {
+            connection = this.replica.getConnection();
+        }
+        catch (SQLException e) {
+            log.warn("Unable to acquire a replica connection; falling back to the primary", e);
+            stats.recordFailureFallback();
+
+            return this.primary.getConnection();
+        }
+
+        if (this.isReplicaStale(connection)) {
+            this.replica.closeConnection(connection);
+            stats.recordStaleFallback();
+
+            return this.primary.getConnection();
+        }
+
+        this.replicaConnections.add(connection);
+        stats.recordReplica();
+
+        return connection;
+    }
+
+    /**
+     * Checks whether the replica lags too far behind the primary to serve reads. The lag is only
+     * queried once per check interval, by whichever thread first finds it due; other threads use
+     * the last known value in the meantime.
+     *
+     * @param connection
+     *  a connection to the replica with which to query the replication lag
+     *
+     * @return
+     *  true if the replica is too stale to be used; false otherwise
+     */
+    private boolean isReplicaStale(Connection connection) {
+        if (this.lagQuery == null || this.lagQuery.isEmpty() || this.maxLag <= 0) {
+            return false;
+        }
+
+        long now = System.currentTimeMillis();
+        long last = this.lastLagCheck.get();
+
+        if (now - last >= this.lagCheckInterval && this.lastLagCheck.compareAndSet(last, now)) {
+            try (Statement statement = connection.createStatement();
+                ResultSet result = statement.executeQuery(this.lagQuery)) {
+
+                this.lag = result.next() ? result.getLong(1) : 0;
+                log.debug("Replica lag: {}ms", this.lag);
+            }
+            catch (SQLException e) {
+                log.warn("Unable to determine the replica lag; assuming the replica is stale", e);
+                this.lag = Long.MAX_VALUE;
+            }
+        }
+
+        return this.lag > this.maxLag;
+    }
+
+    @Override
+    public void closeConnection(Connection connection) throws SQLException {
+        if (this.replicaConnections.remove(connection)) {
+            this.replica.closeConnection(connection);
+        }
+        else {
+            this.primary.closeConnection(connection);
+        }
+    }
+
+    @Override
+    public boolean supportsAggressiveRelease() {
+        return false;
+    }
+
+    @Override
+    public void stop() {
+        this.primary.stop();
+
+        if (this.replica != null) {
+            this.replica.stop();
+        }
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public boolean isUnwrappableAs(Class unwrapType) {
+        return ConnectionProvider.class.equals(unwrapType) ||
+            ReplicaRoutingConnectionProvider.class.isAssignableFrom(unwrapType);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T unwrap(Class<T> unwrapType) {
+        if (this.isUnwrappableAs(unwrapType)) {
+            return (T) this;
+        }
+
+        throw new UnknownUnwrapTypeException(unwrapType);
+    }
+}
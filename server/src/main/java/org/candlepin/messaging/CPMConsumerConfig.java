@@ -24,6 +24,7 @@ public class CPMConsumerConfig {
 
     private String queue;
     private String messageFilter;
+    private String subscriptionAddress;
 
 
     /**
@@ -88,4 +89,34 @@ public class CPMConsumerConfig {
         return this.messageFilter;
     }
 
+    /**
+     * Sets the address to which consumers created from this configuration will subscribe. When
+     * set, each consumer reads from a new temporary queue bound to the address, which receives a
+     * copy of every message sent to the address from then on, and is deleted when the consumer's
+     * session is closed. If a queue has also been set, it is used as the name of the temporary
+     * queue; otherwise a unique name is generated.
+     *
+     * @param address
+     *  the address to which consumers created from this configuration will subscribe
+     *
+     * @return
+     *  a reference to this consumer config
+     */
+    public CPMConsumerConfig setSubscriptionAddress(String address) {
+        this.subscriptionAddress = address;
+        return this;
+    }
+
+    /**
+     * Fetches the address to which consumers created from this configuration will subscribe. If the
+     * subscription address has not been set, this method returns null.
+     *
+     * @return
+     *  the address to which consumers created from this configuration will subscribe, or null if
+     *  the subscription address has not been set
+     */
+    public String getSubscriptionAddress() {
+        return this.subscriptionAddress;
+    }
+
 }
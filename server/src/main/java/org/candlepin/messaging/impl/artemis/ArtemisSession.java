@@ -21,12 +21,14 @@ import org.candlepin.messaging.CPMProducerConfig;
 import org.candlepin.messaging.CPMSession;
 
 import org.apache.activemq.artemis.api.core.ActiveMQException;
+import org.apache.activemq.artemis.api.core.RoutingType;
 import org.apache.activemq.artemis.api.core.client.ClientConsumer;
 import org.apache.activemq.artemis.api.core.client.ClientMessage;
 import org.apache.activemq.artemis.api.core.client.ClientProducer;
 import org.apache.activemq.artemis.api.core.client.ClientSession;
 
 import java.util.Objects;
+import java.util.UUID;
 
 
 
@@ -209,10 +211,20 @@ public class ArtemisSession implements CPMSession {
 
         try {
             String filter = config.getMessageFilter();
+            String queue = config.getQueue();
+
+            String address = config.getSubscriptionAddress();
+            if (address != null) {
+                if (queue == null) {
+                    queue = String.format("%s.%s", address, UUID.randomUUID());
+                }
+
+                this.session.createTemporaryQueue(address, RoutingType.MULTICAST, queue);
+            }
 
             ClientConsumer consumer = (filter != null && !filter.isEmpty()) ?
-                this.session.createConsumer(config.getQueue(), filter) :
-                this.session.createConsumer(config.getQueue());
+                this.session.createConsumer(queue, filter) :
+                this.session.createConsumer(queue);
 
             return new ArtemisConsumer(this, consumer);
         }
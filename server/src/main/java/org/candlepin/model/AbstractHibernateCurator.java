@@ -53,11 +53,14 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.function.Function;
 
 import javax.persistence.EntityManager;
 import javax.persistence.EntityTransaction;
@@ -328,7 +331,7 @@ public abstract class AbstractHibernateCurator<E extends Persisted> {
         return query.getResultList();
     }
 
-    private Order createPagingOrder(PageRequest p) {
+    protected Order createPagingOrder(PageRequest p) {
         String sortBy = (p.getSortBy() == null) ? AbstractHibernateObject.DEFAULT_SORT_FIELD : p.getSortBy();
         PageRequest.Order order = (p.getOrder() == null) ? PageRequest.DEFAULT_ORDER : p.getOrder();
 
@@ -811,6 +814,39 @@ public abstract class AbstractHibernateCurator<E extends Persisted> {
         return entities;
     }
 
+    /**
+     * Saves the given entities as {@link #saveAll(Collection, boolean, boolean)} does, while
+     * grouping the statements flushed for each block of entities into JDBC batches of up to the
+     * batch block size. Batching is only enabled on the current session for the duration of this
+     * call, leaving every other session and code path unaffected.
+     *
+     * @param entities
+     *  the entities to save
+     *
+     * @param flush
+     *  whether or not to flush the session after each block of entities
+     *
+     * @param evict
+     *  whether or not to evict the entities from the session once flushed
+     *
+     * @return
+     *  the saved entities
+     */
+    @Transactional
+    public Collection<E> saveAllBatched(Collection<E> entities, boolean flush, boolean evict) {
+        Session session = this.currentSession();
+        Integer batchSize = session.getJdbcBatchSize();
+
+        session.setJdbcBatchSize(this.getBatchBlockSize());
+
+        try {
+            return this.saveAll(entities, flush, evict);
+        }
+        finally {
+            session.setJdbcBatchSize(batchSize);
+        }
+    }
+
     public Collection<E> updateAll(Collection<E> entities, boolean flush, boolean evict) {
         if (entities != null && !entities.isEmpty()) {
             try {
@@ -1413,6 +1449,55 @@ public abstract class AbstractHibernateCurator<E extends Persisted> {
         return query.executeUpdate();
     }
 
+    /**
+     * Initializes lazily loaded collections of the given entities in bulk. Each of the given JPQL
+     * queries is expected to select the entities identified by the "ids" parameter, fetching one of
+     * their collections, and is executed once for each block of entity IDs. Hibernate would
+     * otherwise load each collection with a separate query per entity as it is first accessed.
+     * <p></p>
+     * The entities are expected to be managed by the current session. Collections which have
+     * already been initialized are left as-is.
+     *
+     * @param entityClass
+     *  the class of the entities selected by the queries
+     *
+     * @param entities
+     *  the entities for which to initialize collections
+     *
+     * @param idResolver
+     *  a function returning the ID of an entity, as bound to the "ids" parameter
+     *
+     * @param jpql
+     *  the fetch queries to execute; each collection should be fetched by its own query, to avoid
+     *  building the cartesian product of every collection for every entity
+     */
+    protected <T> void hydrateCollections(Class<T> entityClass, Collection<? extends T> entities,
+        Function<? super T, String> idResolver, String... jpql) {
+
+        if (entities == null || entities.isEmpty()) {
+            return;
+        }
+
+        Set<String> ids = new HashSet<>();
+        for (T entity : entities) {
+            String id = entity != null ? idResolver.apply(entity) : null;
+
+            if (id != null) {
+                ids.add(id);
+            }
+        }
+
+        EntityManager entityManager = this.getEntityManager();
+
+        for (List<String> block : this.partition(ids)) {
+            for (String query : jpql) {
+                entityManager.createQuery(query, entityClass)
+                    .setParameter("ids", block)
+                    .getResultList();
+            }
+        }
+    }
+
     /**
      * Partitions the given collection using the value returned by the getInBlockSize() method as
      * the partition size. This method is provided as a utility method to avoid referencing a very
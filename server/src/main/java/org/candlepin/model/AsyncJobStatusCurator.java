@@ -321,6 +321,32 @@ public class AsyncJobStatusCurator extends AbstractHibernateCurator<AsyncJobStat
         return states != null ? this.getJobsInState(Arrays.asList(states)) : new ArrayList<>();
     }
 
+    /**
+     * Fetches the start time of the most recent run of the given job which finished successfully.
+     * If the job has never finished successfully, or the records of its successful runs have been
+     * cleaned up, this method returns null.
+     *
+     * @param jobKey
+     *  the key of the job for which to fetch the last successful run
+     *
+     * @return
+     *  the start time of the job's most recent successful run, or null if no such run exists
+     */
+    public Date getLastSuccessfulRun(String jobKey) {
+        if (jobKey == null) {
+            return null;
+        }
+
+        String jpql = "SELECT MAX(aj.startTime) FROM AsyncJobStatus aj " +
+            "WHERE aj.jobKey = :job_key AND aj.state = :state";
+
+        return this.getEntityManager()
+            .createQuery(jpql, Date.class)
+            .setParameter("job_key", jobKey)
+            .setParameter("state", JobState.FINISHED)
+            .getSingleResult();
+    }
+
     /**
      * Fetches a collection of jobs currently in non-terminal states
      *
@@ -24,13 +24,18 @@ import com.fasterxml.jackson.annotation.JsonFilter;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 
 import org.apache.commons.lang.StringUtils;
+import org.hibernate.Hibernate;
 import org.hibernate.annotations.BatchSize;
 import org.hibernate.annotations.Cascade;
 import org.hibernate.annotations.GenericGenerator;
 import org.hibernate.annotations.Type;
+import org.hibernate.collection.spi.PersistentCollection;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
@@ -39,6 +44,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.TreeMap;
 
 import javax.persistence.Basic;
 import javax.persistence.CascadeType;
@@ -208,6 +214,11 @@ public class Consumer extends AbstractHibernateObject implements Linkable, Owned
     @JsonDeserialize(contentConverter = StringTrimmingConverter.class)
     private Map<String, String> facts;
 
+    // Digest of the facts above, allowing incoming facts to be checked for changes without
+    // loading the stored facts
+    @Column(name = "facts_digest", length = 64)
+    private String factsDigest;
+
     @OneToOne(cascade = CascadeType.ALL, fetch = FetchType.LAZY)
     private KeyPair keyPair;
 
@@ -480,7 +491,25 @@ public class Consumer extends AbstractHibernateObject implements Linkable, Owned
         if (this.checkForCloudProfileFacts(factsIn)) {
             this.updateRHCloudProfileModified();
         }
-        facts = factsIn;
+
+        if (this.facts instanceof PersistentCollection && factsIn != null && this.facts != factsIn) {
+            // Replacing a persistent collection makes Hibernate delete and re-insert every fact;
+            // apply only the differences to the existing collection instead
+            this.facts.keySet().retainAll(factsIn.keySet());
+
+            for (Entry<String, String> entry : factsIn.entrySet()) {
+                if (!this.facts.containsKey(entry.getKey()) ||
+                    !Util.equals(this.facts.get(entry.getKey()), entry.getValue())) {
+
+                    this.facts.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        else {
+            facts = factsIn;
+        }
+
+        this.factsDigest = computeFactsDigest(this.facts);
     }
 
     /**
@@ -491,6 +520,12 @@ public class Consumer extends AbstractHibernateObject implements Linkable, Owned
      * @return <code>true</code> if the facts are the same, <code>false</code> otherwise
      */
     public boolean factsAreEqual(Map<String, String> otherFacts) {
+        // If the stored facts haven't been loaded, they can't have been changed since their digest
+        // was computed, so compare digests rather than loading them
+        if (this.factsDigest != null && otherFacts != null && !Hibernate.isInitialized(this.facts)) {
+            return this.factsDigest.equals(computeFactsDigest(otherFacts));
+        }
+
         if (this.getFacts() == null && otherFacts == null) {
             return true;
         }
@@ -517,9 +552,58 @@ public class Consumer extends AbstractHibernateObject implements Linkable, Owned
             }
         }
 
+        // Record the digest of the facts we've just compared, so later comparisons can skip
+        // loading them. Consumers created before digests were stored get one this way.
+        if (this.factsDigest == null) {
+            this.factsDigest = computeFactsDigest(otherFacts);
+        }
+
         return true;
     }
 
+    /**
+     * @return the digest of this consumer's facts, or null if it has not been computed
+     */
+    @JsonIgnore
+    @XmlTransient
+    public String getFactsDigest() {
+        return this.factsDigest;
+    }
+
+    /**
+     * Computes a canonical digest of the given facts, which does not depend on the order of the
+     * facts in the map.
+     *
+     * @param facts
+     *  the facts to digest
+     *
+     * @return
+     *  a SHA-256 digest of the facts as a hex string, or null if the facts are null
+     */
+    public static String computeFactsDigest(Map<String, String> facts) {
+        if (facts == null) {
+            return null;
+        }
+
+        Hasher hasher = Hashing.sha256().newHasher();
+
+        for (Entry<String, String> entry : new TreeMap<>(facts).entrySet()) {
+            hasher.putInt(entry.getKey().length())
+                .putString(entry.getKey(), StandardCharsets.UTF_8);
+
+            if (entry.getValue() != null) {
+                hasher.putBoolean(true)
+                    .putInt(entry.getValue().length())
+                    .putString(entry.getValue(), StandardCharsets.UTF_8);
+            }
+            else {
+                hasher.putBoolean(false);
+            }
+        }
+
+        return hasher.hash().toString();
+    }
+
     /**
      * Set a fact
      * @param name to set
@@ -537,6 +621,7 @@ public class Consumer extends AbstractHibernateObject implements Linkable, Owned
         }
 
         this.facts.put(name, value);
+        this.factsDigest = computeFactsDigest(this.facts);
     }
 
     public long getEntitlementCount() {
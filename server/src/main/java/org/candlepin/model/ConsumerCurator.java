@@ -15,6 +15,7 @@
 package org.candlepin.model;
 
 import org.candlepin.auth.Principal;
+import org.candlepin.cache.GuestHostCache;
 import org.candlepin.common.config.Configuration;
 import org.candlepin.common.exceptions.BadRequestException;
 import org.candlepin.common.exceptions.NotFoundException;
@@ -82,6 +83,7 @@ public class ConsumerCurator extends AbstractHibernateCurator<Consumer> {
     @Inject private FactValidator factValidator;
     @Inject private OwnerCurator ownerCurator;
     @Inject private Provider<HostCache> cachedHostsProvider;
+    @Inject private GuestHostCache guestHostCache;
     @Inject private PrincipalProvider principalProvider;
 
     public ConsumerCurator() {
@@ -696,6 +698,15 @@ public class ConsumerCurator extends AbstractHibernateCurator<Consumer> {
             return cachedHostsProvider.get().get(key);
         }
 
+        if (this.guestHostCache.isAvailable(ownerId)) {
+            String hostId = this.guestHostCache.getHostId(ownerId, Util.getPossibleUuids(guestId),
+                this::getGuestHostMappings);
+
+            Consumer host = hostId != null ? this.get(hostId) : null;
+            cachedHostsProvider.get().put(key, host);
+            return host;
+        }
+
         Disjunction guestIdCrit = Restrictions.disjunction();
         for (String possibleId : Util.getPossibleUuids(guestId)) {
             guestIdCrit.add(Restrictions.eq("guestIdLower", possibleId.toLowerCase()));
@@ -715,6 +726,27 @@ public class ConsumerCurator extends AbstractHibernateCurator<Consumer> {
         return host;
     }
 
+    /**
+     * Fetches the guest-to-host mappings of the given owner, used to load the owner's guest-to-host
+     * index. Each row consists of the lower-case guest ID, the ID of the host consumer reporting
+     * it, and the time it was last reported.
+     *
+     * @param ownerId
+     *  the ID of the owner for which to fetch guest-to-host mappings
+     *
+     * @return
+     *  a list of guest-to-host mapping rows
+     */
+    private List<Object[]> getGuestHostMappings(String ownerId) {
+        String jpql = "SELECT gid.guestIdLower, gid.consumer.id, gid.updated FROM GuestId gid " +
+            "WHERE gid.consumer.ownerId = :owner_id";
+
+        return this.getEntityManager()
+            .createQuery(jpql, Object[].class)
+            .setParameter("owner_id", ownerId)
+            .getResultList();
+    }
+
     /**
      * Creates a mapping of input guest IDs to GuestID objects currently tracked and stored in the
      * backing database. If a given guest ID is not present in the database, it will be mapped to
@@ -1297,6 +1329,55 @@ public class ConsumerCurator extends AbstractHibernateCurator<Consumer> {
             .list();
     }
 
+    /**
+     * Fetches the IDs of consumers whose entitlement status may have changed within the given
+     * window without any change being made to the consumer: consumers with entitlements which
+     * have started but have not yet been updated on start, and consumers with entitlements which
+     * ended within the window. The start and end dates of entitlements are indexed, so this does
+     * not scan every entitlement.
+     *
+     * @param since
+     *  the start of the window, exclusive
+     *
+     * @param until
+     *  the end of the window, inclusive
+     *
+     * @throws IllegalArgumentException
+     *  if either date is null
+     *
+     * @return
+     *  a list of the IDs of consumers with status transitions within the window
+     */
+    public List<String> getConsumerIdsWithStatusTransitions(Date since, Date until) {
+        if (since == null) {
+            throw new IllegalArgumentException("since is null");
+        }
+
+        if (until == null) {
+            throw new IllegalArgumentException("until is null");
+        }
+
+        String started = "SELECT DISTINCT e.consumer.id FROM Entitlement e JOIN e.pool p " +
+            "WHERE e.updatedOnStart = false AND p.startDate < :until";
+
+        String ended = "SELECT DISTINCT e.consumer.id FROM Entitlement e JOIN e.pool p " +
+            "WHERE (e.endDateOverride > :since AND e.endDateOverride <= :until) " +
+            "OR (e.endDateOverride IS NULL AND p.endDate > :since AND p.endDate <= :until)";
+
+        Set<String> consumerIds = new HashSet<>(this.getEntityManager()
+            .createQuery(started, String.class)
+            .setParameter("until", until)
+            .getResultList());
+
+        consumerIds.addAll(this.getEntityManager()
+            .createQuery(ended, String.class)
+            .setParameter("since", since)
+            .setParameter("until", until)
+            .getResultList());
+
+        return new ArrayList<>(consumerIds);
+    }
+
     /**
      * Clears (nulls) the content access mode for any consumer belonging to the given owner, that is
      * using a mode which is no longer in the provided set of existing modes.
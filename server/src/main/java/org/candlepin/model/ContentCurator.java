@@ -24,10 +24,13 @@ import org.hibernate.criterion.Restrictions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 
 import javax.inject.Singleton;
+import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
 
 
 
@@ -39,6 +42,10 @@ public class ContentCurator extends AbstractHibernateCurator<Content> {
 
     private static Logger log = LoggerFactory.getLogger(ContentCurator.class);
 
+    /** Fetches the modified product IDs of the content identified by the "ids" parameter */
+    static final String MODIFIED_PRODUCT_IDS_FETCH_JPQL = "SELECT DISTINCT c FROM Content c " +
+        "LEFT JOIN FETCH c.modifiedProductIds WHERE c.uuid IN (:ids)";
+
     private ProductCurator productCurator;
 
     @Inject
@@ -105,4 +112,69 @@ public class ContentCurator extends AbstractHibernateCurator<Content> {
 
         return this.cpQueryFactory.<Content>buildQuery();
     }
+
+    /**
+     * Initializes the modified product IDs of the given content in bulk, using one query for each
+     * block of content rather than one query per content as the collections are first accessed.
+     * <p></p>
+     * The content is expected to be managed by the current session.
+     *
+     * @param contents
+     *  A collection of content for which to initialize collections
+     */
+    public void hydrateContentCollections(Collection<Content> contents) {
+        this.hydrateCollections(Content.class, contents, Content::getUuid, MODIFIED_PRODUCT_IDS_FETCH_JPQL);
+    }
+
+    /**
+     * Deletes the specified content, along with the rows which depend on it, provided it is
+     * still orphaned. The content is locked and checked again before anything is deleted, so
+     * content mapped to an owner since the given UUIDs were fetched is left in place. Rows are
+     * deleted with set-based statements, without loading the content into the session.
+     * <p></p>
+     * This method should be called within a transaction, with a bounded number of UUIDs.
+     *
+     * @param uuids
+     *  the UUIDs of the orphaned content to delete
+     *
+     * @return
+     *  the number of content deleted
+     */
+    public int deleteOrphanedContent(Collection<String> uuids) {
+        if (uuids == null || uuids.isEmpty()) {
+            return 0;
+        }
+
+        EntityManager entityManager = this.getEntityManager();
+
+        String jpql = "SELECT c.uuid FROM Content c WHERE c.uuid IN (:uuids) " +
+            "AND NOT EXISTS (SELECT oc.ownerId FROM OwnerContent oc WHERE oc.contentUuid = c.uuid)";
+
+        List<String> orphaned = new ArrayList<>();
+        for (List<String> block : this.partition(uuids)) {
+            orphaned.addAll(entityManager.createQuery(jpql, String.class)
+                .setParameter("uuids", block)
+                .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+                .getResultList());
+        }
+
+        int count = 0;
+        for (List<String> block : this.partition(orphaned)) {
+            entityManager.createNativeQuery(
+                "DELETE FROM cp2_content_modified_products WHERE content_uuid IN (:uuids)")
+                .setParameter("uuids", block)
+                .executeUpdate();
+
+            entityManager.createNativeQuery(
+                "DELETE FROM " + ProductContent.DB_TABLE + " WHERE content_uuid IN (:uuids)")
+                .setParameter("uuids", block)
+                .executeUpdate();
+
+            count += entityManager.createQuery("DELETE FROM Content c WHERE c.uuid IN (:uuids)")
+                .setParameter("uuids", block)
+                .executeUpdate();
+        }
+
+        return count;
+    }
 }
@@ -29,8 +29,10 @@ import org.slf4j.LoggerFactory;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.inject.Singleton;
 
@@ -357,26 +359,32 @@ public class OwnerContentCurator extends AbstractHibernateCurator<OwnerContent>
         // content we filter don't have any data in their collections; but we're only using one
         // additional query in those cases, versus n additional in the normal case.
 
-        Disjunction disjunction = Restrictions.disjunction();
-        Criteria uuidCriteria = this.createSecureCriteria("oc")
-            .createAlias("oc.content", "c")
-            .add(disjunction)
-            .setProjection(Projections.distinct(Projections.property("c.uuid")));
-
-        for (Map.Entry<String, Integer> entry : contentVersions.entrySet()) {
-            disjunction.add(Restrictions.and(
-                Restrictions.eq("c.id", entry.getKey()),
-                Restrictions.eq("c.entityVersion", entry.getValue())
-            ));
-        }
+        // The version lookups are performed in blocks to keep the size of the disjunction, and the
+        // number of parameters bound to each statement, within reasonable limits on large imports.
+        Set<String> uuids = new HashSet<>();
+
+        for (List<Map.Entry<String, Integer>> block : this.partition(contentVersions.entrySet())) {
+            Disjunction disjunction = Restrictions.disjunction();
+            Criteria uuidCriteria = this.createSecureCriteria("oc")
+                .createAlias("oc.content", "c")
+                .add(disjunction)
+                .setProjection(Projections.distinct(Projections.property("c.uuid")));
+
+            for (Map.Entry<String, Integer> entry : block) {
+                disjunction.add(Restrictions.and(
+                    Restrictions.eq("c.id", entry.getKey()),
+                    Restrictions.eq("c.entityVersion", entry.getValue())
+                ));
+            }
 
-        if (owner != null) {
-            uuidCriteria.add(Restrictions.not(Restrictions.eq("oc.owner", owner)));
-        }
+            if (owner != null) {
+                uuidCriteria.add(Restrictions.not(Restrictions.eq("oc.owner", owner)));
+            }
 
-        List<String> uuids = uuidCriteria.list();
+            uuids.addAll(uuidCriteria.list());
+        }
 
-        if (uuids != null && !uuids.isEmpty()) {
+        if (!uuids.isEmpty()) {
             DetachedCriteria criteria = this.createSecureDetachedCriteria(Content.class, null)
                 .add(CPRestrictions.in("uuid", uuids));
 
@@ -387,25 +395,38 @@ public class OwnerContentCurator extends AbstractHibernateCurator<OwnerContent>
     }
 
     /**
-     * Builds a query which can be used to fetch the current collection of orphaned content. Due
-     * to the nature of this request, it is highly advised that this query be run within a
-     * transaction, with a pessimistic lock mode set.
+     * Fetches the UUIDs of the current collection of orphaned content, using a single anti-join
+     * query. No locks are taken, so the content may no longer be orphaned by the time it is
+     * used; callers should check again before deleting it.
      *
      * @return
-     *  A CandlepinQuery for fetching the orphaned content
+     *  a list of the UUIDs of orphaned content
      */
-    public CandlepinQuery<Content> getOrphanedContent() {
-        // As with many of the owner=>content lookups, we have to do this in two queries. Since
-        // we need to start from content and do a left join back to owner content, we have to use
-        // a native query instead of any of the ORM query languages
-
+    @SuppressWarnings("unchecked")
+    public List<String> getOrphanedContentUuids() {
+        // As with many of the owner=>content lookups, we have to start from content and do a
+        // left join back to owner content, so we have to use a native query instead of any of the
+        // ORM query languages
         String sql = "SELECT c.uuid " +
             "FROM cp2_content c LEFT JOIN cp2_owner_content oc ON c.uuid = oc.content_uuid " +
-            "WHERE oc.owner_id IS NULL";
+            "WHERE oc.owner_id IS NULL " +
+            "ORDER BY c.uuid";
 
-        List<String> uuids = this.getEntityManager()
+        return this.getEntityManager()
             .createNativeQuery(sql)
             .getResultList();
+    }
+
+    /**
+     * Builds a query which can be used to fetch the current collection of orphaned content. Due
+     * to the nature of this request, it is highly advised that this query be run within a
+     * transaction, with a pessimistic lock mode set.
+     *
+     * @return
+     *  A CandlepinQuery for fetching the orphaned content
+     */
+    public CandlepinQuery<Content> getOrphanedContent() {
+        List<String> uuids = this.getOrphanedContentUuids();
 
         if (uuids != null && !uuids.isEmpty()) {
             DetachedCriteria criteria = DetachedCriteria.forClass(Content.class)
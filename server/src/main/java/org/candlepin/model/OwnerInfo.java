@@ -15,6 +15,7 @@
 
 package org.candlepin.model;
 
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -32,6 +33,7 @@ public class OwnerInfo {
     private Map<String, Integer> enabledConsumerTypeCountByPool;
     private Map<String, Integer> consumerCountsByComplianceStatus;
     private Map<String, ConsumptionTypeCounts> entitlementsConsumedByFamily;
+    private Date lastUpdated;
 
     public static final String GUEST = "guest";
     public static final String PHYSICAL = "physical";
@@ -203,4 +205,19 @@ public class OwnerInfo {
     public void setPhysicalCount(Integer count) {
         consumerGuestCounts.put(PHYSICAL, count);
     }
+
+    /**
+     * Fetches the time at which the counts of this info were computed. Info served from the
+     * owner info cache may trail the current state of the owner by up to its configured age.
+     *
+     * @return
+     *  the time at which this info was computed, or null if unknown
+     */
+    public Date getLastUpdated() {
+        return lastUpdated;
+    }
+
+    public void setLastUpdated(Date lastUpdated) {
+        this.lastUpdated = lastUpdated;
+    }
 }
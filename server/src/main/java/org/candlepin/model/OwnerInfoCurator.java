@@ -14,6 +14,8 @@
  */
 package org.candlepin.model;
 
+import org.candlepin.cache.OwnerInfoCache;
+
 import com.google.inject.Inject;
 import com.google.inject.Provider;
 
@@ -55,18 +57,46 @@ public class OwnerInfoCurator {
     private ConsumerTypeCurator consumerTypeCurator;
     private ConsumerCurator consumerCurator;
     private PoolCurator poolCurator;
+    private OwnerInfoCache ownerInfoCache;
 
     @Inject
     public OwnerInfoCurator(Provider<EntityManager> entityManager,
         ConsumerCurator consumerCurator, ConsumerTypeCurator consumerTypeCurator,
-        PoolCurator poolCurator) {
+        PoolCurator poolCurator, OwnerInfoCache ownerInfoCache) {
         this.entityManager = entityManager;
         this.consumerCurator = consumerCurator;
         this.consumerTypeCurator = consumerTypeCurator;
         this.poolCurator = poolCurator;
+        this.ownerInfoCache = ownerInfoCache;
     }
 
+    /**
+     * Fetches the info summary of the given owner. The summary may be served from the owner info
+     * cache, in which case its last updated time indicates when it was computed. Since the summary
+     * may be cached, it is never computed from a read replica, which may lag behind the primary.
+     *
+     * @param owner
+     *  the owner for which to fetch the info summary
+     *
+     * @return
+     *  the info summary of the owner
+     */
     public OwnerInfo getByOwner(Owner owner) {
+        return this.ownerInfoCache.get(owner.getId(), () -> this.calculate(owner));
+    }
+
+    /**
+     * Recomputes the cached info summary of the given owner, such that subsequent requests for it
+     * need not.
+     *
+     * @param owner
+     *  the owner for which to refresh the info summary
+     */
+    public void refresh(Owner owner) {
+        this.ownerInfoCache.refresh(owner.getId(), () -> this.calculate(owner));
+    }
+
+    private OwnerInfo calculate(Owner owner) {
         OwnerInfo info = new OwnerInfo();
         Date now = new Date();
 
@@ -411,25 +411,38 @@ public class OwnerProductCurator extends AbstractHibernateCurator<OwnerProduct>
     }
 
     /**
-     * Builds a query which can be used to fetch the current collection of orphaned products. Due
-     * to the nature of this request, it is highly advised that this query be run within a
-     * transaction, with a pessimistic lock mode set.
+     * Fetches the UUIDs of the current collection of orphaned products, using a single anti-join
+     * query. No locks are taken, so the products may no longer be orphaned by the time they're
+     * used; callers should check again before deleting them.
      *
      * @return
-     *  A CandlepinQuery for fetching the orphaned products
+     *  a list of the UUIDs of orphaned products
      */
-    public CandlepinQuery<Product> getOrphanedProducts() {
-        // As with many of the owner=>product lookups, we have to do this in two queries. Since
-        // we need to start from product and do a left join back to owner products, we have to use
-        // a native query instead of any of the ORM query languages
-
+    @SuppressWarnings("unchecked")
+    public List<String> getOrphanedProductUuids() {
+        // As with many of the owner=>product lookups, we have to start from product and do a
+        // left join back to owner products, so we have to use a native query instead of any of the
+        // ORM query languages
         String sql = "SELECT p.uuid " +
             "FROM cp2_products p LEFT JOIN cp2_owner_products op ON p.uuid = op.product_uuid " +
-            "WHERE op.owner_id IS NULL";
+            "WHERE op.owner_id IS NULL " +
+            "ORDER BY p.uuid";
 
-        List<String> uuids = this.getEntityManager()
+        return this.getEntityManager()
             .createNativeQuery(sql)
             .getResultList();
+    }
+
+    /**
+     * Builds a query which can be used to fetch the current collection of orphaned products. Due
+     * to the nature of this request, it is highly advised that this query be run within a
+     * transaction, with a pessimistic lock mode set.
+     *
+     * @return
+     *  A CandlepinQuery for fetching the orphaned products
+     */
+    public CandlepinQuery<Product> getOrphanedProducts() {
+        List<String> uuids = this.getOrphanedProductUuids();
 
         if (uuids != null && !uuids.isEmpty()) {
             DetachedCriteria criteria = DetachedCriteria.forClass(Product.class)
@@ -473,26 +486,32 @@ public class OwnerProductCurator extends AbstractHibernateCurator<OwnerProduct>
         // products, or the products we filter don't have any data in their collections; but we're
         // only using one additional query in those cases, versus (0-2)n in the normal case.
 
-        Disjunction disjunction = Restrictions.disjunction();
-        Criteria uuidCriteria = this.createSecureCriteria("op")
-            .createAlias("op.product", "p")
-            .add(disjunction)
-            .setProjection(Projections.distinct(Projections.property("p.uuid")));
-
-        for (Map.Entry<String, Integer> entry : productVersions.entrySet()) {
-            disjunction.add(Restrictions.and(
-                Restrictions.eq("p.id", entry.getKey()),
-                Restrictions.eq("p.entityVersion", entry.getValue())
-            ));
-        }
+        // The version lookups are performed in blocks to keep the size of the disjunction, and the
+        // number of parameters bound to each statement, within reasonable limits on large imports.
+        Set<String> uuids = new HashSet<>();
+
+        for (List<Map.Entry<String, Integer>> block : this.partition(productVersions.entrySet())) {
+            Disjunction disjunction = Restrictions.disjunction();
+            Criteria uuidCriteria = this.createSecureCriteria("op")
+                .createAlias("op.product", "p")
+                .add(disjunction)
+                .setProjection(Projections.distinct(Projections.property("p.uuid")));
+
+            for (Map.Entry<String, Integer> entry : block) {
+                disjunction.add(Restrictions.and(
+                    Restrictions.eq("p.id", entry.getKey()),
+                    Restrictions.eq("p.entityVersion", entry.getValue())
+                ));
+            }
 
-        if (owner != null) {
-            uuidCriteria.add(Restrictions.not(Restrictions.eq("op.owner", owner)));
-        }
+            if (owner != null) {
+                uuidCriteria.add(Restrictions.not(Restrictions.eq("op.owner", owner)));
+            }
 
-        List<String> uuids = uuidCriteria.list();
+            uuids.addAll(uuidCriteria.list());
+        }
 
-        if (uuids != null && !uuids.isEmpty()) {
+        if (!uuids.isEmpty()) {
             DetachedCriteria criteria = this.createSecureDetachedCriteria(Product.class, null)
                 .add(CPRestrictions.in("uuid", uuids));
 
@@ -328,6 +328,12 @@ public class Pool extends AbstractHibernateObject<Pool> implements Owned, Named,
     @NotNull
     private Long exported;
 
+    // The part of the consumed quantity which is held in escrow slices but has not yet been
+    // consumed from them. Only set by PoolQuantityEscrow while escrow is enabled; otherwise the
+    // quantity held in escrow is counted as consumed.
+    @Transient
+    private long escrowed;
+
     // Impl note:
     // These properties are only used as temporary stores to hold information that's only present
     // in the pool JSON due to the product itself not being serialized with it. These will be
@@ -516,6 +522,31 @@ public class Pool extends AbstractHibernateObject<Pool> implements Owned, Named,
         this.consumed = consumed;
     }
 
+    /**
+     * @return the quantity counted as consumed which is held in escrow, but has not actually been
+     *  consumed by any entitlement
+     */
+    @JsonIgnore
+    public long getEscrowed() {
+        return this.escrowed;
+    }
+
+    /**
+     * @param escrowed the quantity counted as consumed which is held in escrow
+     */
+    public void setEscrowed(long escrowed) {
+        this.escrowed = escrowed;
+    }
+
+    /**
+     * @return the quantity actually consumed by entitlements, excluding the quantity held in escrow
+     *  which has not been consumed from it
+     */
+    @JsonIgnore
+    public Long getCommittedConsumed() {
+        return this.consumed != null ? this.consumed - this.escrowed : null;
+    }
+
     /**
      * @return quantity currently exported.
      */
@@ -878,7 +909,9 @@ public class Pool extends AbstractHibernateObject<Pool> implements Owned, Named,
 
     /**
      * Returns true if there are entitlements available in this pool, basically
-     * if 'consumed' is less than the 'quantity'.
+     * if 'consumed' is less than the 'quantity'. Quantity held in escrow which has
+     * not been consumed from it is counted as available, as far as it has been set on the pool
+     * by the PoolQuantityEscrow.
      * @return true if entitlements are available.
      */
     public boolean entitlementsAvailable(Integer quantityToConsume) {
@@ -886,7 +919,7 @@ public class Pool extends AbstractHibernateObject<Pool> implements Owned, Named,
             return true;
         }
 
-        if (getConsumed() + quantityToConsume.intValue() <= getQuantity()) {
+        if (getConsumed() - getEscrowed() + quantityToConsume.intValue() <= getQuantity()) {
             return true;
         }
         return false;
@@ -1153,7 +1186,8 @@ public class Pool extends AbstractHibernateObject<Pool> implements Owned, Named,
     }
 
     /**
-     * Check whether {@link #consumed} is greater than {@link #quantity}
+     * Check whether {@link #consumed}, less any quantity held in escrow, is greater than
+     * {@link #quantity}
      *
      * @return true if consumed>quantity else false.
      */
@@ -1163,7 +1197,7 @@ public class Pool extends AbstractHibernateObject<Pool> implements Owned, Named,
         if (this.quantity == -1) {
             return false;
         }
-        return getConsumed() > this.quantity;
+        return getConsumed() - getEscrowed() > this.quantity;
     }
 
     /**
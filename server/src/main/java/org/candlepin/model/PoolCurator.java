@@ -14,8 +14,10 @@
  */
 package org.candlepin.model;
 
+import org.candlepin.cache.PoolSearchIndex;
 import org.candlepin.common.paging.Page;
 import org.candlepin.common.paging.PageRequest;
+import org.candlepin.model.ConsumerType.ConsumerTypeEnum;
 import org.candlepin.model.Pool.PoolType;
 import org.candlepin.model.activationkeys.ActivationKey;
 import org.candlepin.model.activationkeys.ActivationKeyPool;
@@ -77,12 +79,19 @@ public class PoolCurator extends AbstractHibernateCurator<Pool> {
     public static final int EXPIRED_POOL_BLOCK_SIZE = 1000;
 
     private static Logger log = LoggerFactory.getLogger(PoolCurator.class);
+
+    /** Label of the consumer type used by ueber certificate consumers, which bypass type checks */
+    private static final String UEBERCERT_CONSUMER_TYPE = "uebercert";
+
     private ConsumerCurator consumerCurator;
     private ConsumerTypeCurator consumerTypeCurator;
 
     @Inject
     protected Injector injector;
 
+    @Inject
+    private PoolSearchIndex poolSearchIndex;
+
     @Inject
     public PoolCurator(ConsumerCurator consumerCurator, ConsumerTypeCurator consumerTypeCurator) {
         super(Pool.class);
@@ -241,19 +250,31 @@ public class PoolCurator extends AbstractHibernateCurator<Pool> {
      *  a list of non-derived, expired pools no larger than the specified block size
      */
     @Transactional
-    @SuppressWarnings("checkstyle:indentation")
     public List<Pool> listExpiredPools(int blockSize) {
-        Date now = new Date();
+        return this.listExpiredPools(null, blockSize);
+    }
 
-        DetachedCriteria entCheck = DetachedCriteria.forClass(Pool.class, "entPool")
-            .createAlias("entitlements", "ent", JoinType.INNER_JOIN)
-            .add(Restrictions.eqProperty("entPool.id", "tgtPool.id"))
-            .add(Restrictions.ge("ent.endDateOverride", now))
-            .setProjection(Projections.property("entPool.id"));
+    /**
+     * Fetches a block of non-derived, expired pools belonging to the specified owner, using the
+     * specified block size. If the owner ID is null, expired pools of any owner will be retrieved.
+     * The same caveats as {@link #listExpiredPools(int)} apply.
+     *
+     * @param ownerId
+     *  The ID of the owner for which to fetch expired pools, or null to fetch them for all owners
+     *
+     * @param blockSize
+     *  The maximum number of pools to fetch; if block size is less than 1, no limit will be applied
+     *
+     * @return
+     *  a list of non-derived, expired pools no larger than the specified block size
+     */
+    @Transactional
+    public List<Pool> listExpiredPools(String ownerId, int blockSize) {
+        Criteria criteria = this.createExpiredPoolCriteria(new Date());
 
-        Criteria criteria = this.createSecureCriteria("tgtPool")
-            .add(Restrictions.lt("tgtPool.endDate", now))
-            .add(Subqueries.notExists(entCheck));
+        if (ownerId != null) {
+            criteria.add(Restrictions.eq("tgtPool.owner.id", ownerId));
+        }
 
         if (blockSize > 0) {
             criteria.setMaxResults(blockSize);
@@ -263,6 +284,35 @@ public class PoolCurator extends AbstractHibernateCurator<Pool> {
         return results != null ? results : new LinkedList<>();
     }
 
+    /**
+     * Fetches the IDs of the owners which have at least one expired pool, allowing the expired
+     * pools of each owner to be cleaned up separately.
+     *
+     * @return
+     *  a list of the IDs of owners with expired pools
+     */
+    @Transactional
+    public List<String> getExpiredPoolOwnerIds() {
+        List<String> results = (List<String>) this.createExpiredPoolCriteria(new Date())
+            .setProjection(Projections.distinct(Projections.property("tgtPool.owner.id")))
+            .list();
+
+        return results != null ? results : new LinkedList<>();
+    }
+
+    @SuppressWarnings("checkstyle:indentation")
+    private Criteria createExpiredPoolCriteria(Date now) {
+        DetachedCriteria entCheck = DetachedCriteria.forClass(Pool.class, "entPool")
+            .createAlias("entitlements", "ent", JoinType.INNER_JOIN)
+            .add(Restrictions.eqProperty("entPool.id", "tgtPool.id"))
+            .add(Restrictions.ge("ent.endDateOverride", now))
+            .setProjection(Projections.property("entPool.id"));
+
+        return this.createSecureCriteria("tgtPool")
+            .add(Restrictions.lt("tgtPool.endDate", now))
+            .add(Subqueries.notExists(entCheck));
+    }
+
     @SuppressWarnings("unchecked")
     @Transactional
     public List<Pool> listAvailableEntitlementPools(Consumer c, Owner o, String productId, Date activeOn) {
@@ -344,12 +394,98 @@ public class PoolCurator extends AbstractHibernateCurator<Pool> {
      * @return List of entitlement pools.
      */
     @Transactional
-    @SuppressWarnings({"unchecked", "checkstyle:indentation", "checkstyle:methodlength"})
-    // TODO: Remove the methodlength suppression once this method is cleaned up
+    @SuppressWarnings("unchecked")
     public Page<List<Pool>> listAvailableEntitlementPools(Consumer consumer, String ownerId,
         Collection<String> productIds, String subscriptionId, Date activeOn, PoolFilterBuilder filters,
         PageRequest pageRequest, boolean postFilter, boolean addFuture, boolean onlyFuture, Date after) {
 
+        Criteria criteria = this.buildAvailableEntitlementPoolsCriteria(consumer, ownerId, productIds,
+            subscriptionId, activeOn, filters, addFuture, onlyFuture, after);
+
+        // Impl note:
+        // Hibernate has an issue with properly hydrating objects within collections of the pool
+        // when only a subset of the collection matches the criteria. To work around this, we pull
+        // the ID list from the main filtering query, then pull the pools again using the ID list.
+        // This also makes it easier to eventually start using a cursor, since the distinct entity
+        // functionality doesn't work with cursors.
+
+        List<String> poolIds = criteria != null ? criteria.list() : null;
+
+        if (poolIds != null && !poolIds.isEmpty()) {
+            criteria = this.currentSession()
+                .createCriteria(Pool.class)
+                .createAlias("product", "Product");
+            criteria.add(CPRestrictions.in("id", poolIds));
+
+            return this.listByCriteria(criteria, pageRequest, postFilter);
+        }
+
+        Page<List<Pool>> output = new Page<>();
+        output.setPageData(Collections.<Pool>emptyList());
+        output.setMaxRecords(0);
+
+        return output;
+    }
+
+    /**
+     * Lists the IDs of the entitlement pools matching the given criteria, without loading the pools
+     * themselves. The IDs are returned in the order specified by the page request, but the page
+     * itself is not applied, allowing the caller to load and filter the pools in windows of its
+     * choosing.
+     *
+     * @param consumer Consumer being entitled.
+     * @param ownerId Owner whose subscriptions should be inspected.
+     * @param productIds only entitlements which provide these products are included.
+     * @param activeOn Indicates to return only pools valid on this date.
+     *        Set to null for no date filtering.
+     * @param filters filter builder with set filters to apply to the criteria.
+     * @param pageRequest used to specify the ordering of the IDs; paging values are ignored.
+     * @return List of entitlement pool IDs.
+     */
+    @Transactional
+    @SuppressWarnings("unchecked")
+    public List<String> listAvailableEntitlementPoolIds(Consumer consumer, String ownerId,
+        Collection<String> productIds, String subscriptionId, Date activeOn, PoolFilterBuilder filters,
+        PageRequest pageRequest, boolean addFuture, boolean onlyFuture, Date after) {
+
+        Criteria criteria = this.buildAvailableEntitlementPoolsCriteria(consumer, ownerId, productIds,
+            subscriptionId, activeOn, filters, addFuture, onlyFuture, after);
+
+        List<String> poolIds = criteria != null ? criteria.list() : null;
+
+        if (poolIds == null || poolIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        if (pageRequest == null) {
+            return poolIds;
+        }
+
+        // As above, the filtering query returns distinct IDs, so the ordering has to be applied by
+        // a second query. The ID is used as a tie-breaker to keep the order stable across pages.
+        return this.currentSession()
+            .createCriteria(Pool.class)
+            .createAlias("product", "Product")
+            .add(CPRestrictions.in("id", poolIds))
+            .setProjection(Projections.id())
+            .addOrder(this.createPagingOrder(pageRequest))
+            .addOrder(Order.asc("id"))
+            .list();
+    }
+
+    /**
+     * Builds the criteria selecting the distinct IDs of the entitlement pools matching the given
+     * parameters.
+     *
+     * @return
+     *  the criteria selecting matching pool IDs, or null if no pools can possibly match
+     */
+    @SuppressWarnings({"checkstyle:indentation", "checkstyle:methodlength"})
+    // TODO: Remove the methodlength suppression once this method is cleaned up
+    private Criteria buildAvailableEntitlementPoolsCriteria(Consumer consumer, String ownerId,
+        Collection<String> productIds, String subscriptionId, Date activeOn, PoolFilterBuilder filters,
+        boolean addFuture, boolean onlyFuture, Date after) {
+
         if (log.isDebugEnabled()) {
             log.debug("Listing available pools for:");
             log.debug("    consumer: {}", consumer);
@@ -377,11 +513,7 @@ public class PoolCurator extends AbstractHibernateCurator<Pool> {
                 log.warn("Attempting to filter entitlement pools by owner and a consumer belonging to a " +
                     "different owner: {}, {}", ownerId, consumer);
 
-                Page<List<Pool>> output = new Page<>();
-                output.setPageData(Collections.<Pool>emptyList());
-                output.setMaxRecords(0);
-
-                return output;
+                return null;
             }
 
             // We'll set the owner restriction later
@@ -428,6 +560,14 @@ public class PoolCurator extends AbstractHibernateCurator<Pool> {
 
                 criteria.add(Subqueries.notExists(hostPoolSubquery));
             }
+
+            if (!ctype.isManifest()) {
+                Criterion consumerTypeRestriction = this.buildConsumerTypeRestriction(ctype);
+
+                if (consumerTypeRestriction != null) {
+                    criteria.add(consumerTypeRestriction);
+                }
+            }
         }
 
         if (ownerId != null) {
@@ -494,7 +634,34 @@ public class PoolCurator extends AbstractHibernateCurator<Pool> {
 
             // Matches stuff
             values = filters.getMatchesFilters();
-            if (values != null && !values.isEmpty()) {
+            Set<String> poolIds = null;
+
+            if (values != null && !values.isEmpty() && this.canSearchIndex(ownerId, values)) {
+                List<String> patterns = new ArrayList<>();
+                for (String matches : values) {
+                    patterns.add(this.sanitizeMatchesFilter(matches));
+                }
+
+                poolIds = this.poolSearchIndex.search(ownerId, patterns, this::loadPoolSearchIndex);
+
+                if (poolIds.isEmpty()) {
+                    return null;
+                }
+
+                // Binding too many pool IDs could exceed the database's parameter limit; broad
+                // searches are evaluated by the database instead.
+                if (poolIds.size() > this.getInBlockSize()) {
+                    log.debug("Pool search index matched {} pools; falling back to the database",
+                        poolIds.size());
+
+                    poolIds = null;
+                }
+            }
+
+            if (poolIds != null) {
+                criteria.add(CPRestrictions.in("Pool.id", poolIds));
+            }
+            else if (values != null && !values.isEmpty()) {
                 if (!joinedProvided) {
                     // This was an inner join -- might end up being important later
                     criteria.createAlias("Pool.providedProducts", "Provided", JoinType.LEFT_OUTER_JOIN);
@@ -566,29 +733,35 @@ public class PoolCurator extends AbstractHibernateCurator<Pool> {
             }
         }
 
-        // Impl note:
-        // Hibernate has an issue with properly hydrating objects within collections of the pool
-        // when only a subset of the collection matches the criteria. To work around this, we pull
-        // the ID list from the main filtering query, then pull the pools again using the ID list.
-        // This also makes it easier to eventually start using a cursor, since the distinct entity
-        // functionality doesn't work with cursors.
-
-        List<String> poolIds = criteria.list();
+        return criteria;
+    }
 
-        if (poolIds != null && !poolIds.isEmpty()) {
-            criteria = this.currentSession()
-                .createCriteria(Pool.class)
-                .createAlias("product", "Product");
-            criteria.add(CPRestrictions.in("id", poolIds));
+    /**
+     * Builds a restriction which excludes pools requiring a consumer type other than that of the
+     * given non-manifest consumer type, which the entitlement rules would always reject. Pools
+     * which do not specify a required consumer type are left for the rules to evaluate.
+     *
+     * @param ctype
+     *  the type of the consumer for which pools are being listed
+     *
+     * @return
+     *  the consumer type restriction, or null if consumers of the given type are not restricted
+     */
+    private Criterion buildConsumerTypeRestriction(ConsumerType ctype) {
+        String label = ctype.getLabel();
 
-            return this.listByCriteria(criteria, pageRequest, postFilter);
+        if (label == null || UEBERCERT_CONSUMER_TYPE.equals(label)) {
+            return null;
         }
 
-        Page<List<Pool>> output = new Page<>();
-        output.setPageData(Collections.<Pool>emptyList());
-        output.setMaxRecords(0);
+        // Hypervisors are also permitted to use pools requiring a system
+        List<String> allowed = ctype.isType(ConsumerTypeEnum.HYPERVISOR) ?
+            Arrays.asList(label, ConsumerTypeEnum.SYSTEM.getLabel()) :
+            Arrays.asList(label);
 
-        return output;
+        return Restrictions.or(
+            Restrictions.not(this.addAttributeFilterSubquery(Pool.Attributes.REQUIRES_CONSUMER_TYPE, null)),
+            this.addAttributeFilterSubquery(Pool.Attributes.REQUIRES_CONSUMER_TYPE, allowed));
     }
 
     @SuppressWarnings("checkstyle:indentation")
@@ -694,6 +867,99 @@ public class PoolCurator extends AbstractHibernateCurator<Pool> {
         return Subqueries.exists(prodAttrSubquery);
     }
 
+    /**
+     * Checks whether or not the given matches filters can be answered by the pool search index for
+     * the specified owner. Empty filters match pools with no support level, which the index does
+     * not track, so they are left to the database.
+     */
+    private boolean canSearchIndex(String ownerId, Collection<String> matches) {
+        if (ownerId == null || !this.poolSearchIndex.isAvailable(ownerId)) {
+            return false;
+        }
+
+        for (String value : matches) {
+            if (value == null || value.isEmpty()) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Loads the values searched by the matches filter for every pool of the given owner into the
+     * pool search index builder.
+     *
+     * @param ownerId
+     *  the ID of the owner for which to load searchable values
+     *
+     * @param builder
+     *  the builder to receive the searchable values
+     */
+    @SuppressWarnings("unchecked")
+    private void loadPoolSearchIndex(String ownerId, PoolSearchIndex.Builder builder) {
+        Session session = this.currentSession();
+
+        String poolJpql = "SELECT p.id, p.contractNumber, p.orderNumber, prod.uuid, prod.id, prod.name " +
+            "FROM Pool p JOIN p.product prod " +
+            "WHERE p.owner.id = :owner_id";
+
+        for (Object[] row : (List<Object[]>) session.createQuery(poolJpql)
+            .setParameter("owner_id", ownerId)
+            .list()) {
+
+            builder.addPool((String) row[0], (String) row[1], (String) row[2], (String) row[3])
+                .addProduct((String) row[3], (String) row[4], (String) row[5]);
+        }
+
+        String providedJpql = "SELECT p.id, prov.uuid, prov.id, prov.name " +
+            "FROM Pool p JOIN p.providedProducts prov " +
+            "WHERE p.owner.id = :owner_id";
+
+        for (Object[] row : (List<Object[]>) session.createQuery(providedJpql)
+            .setParameter("owner_id", ownerId)
+            .list()) {
+
+            builder.addProvidedProduct((String) row[0], (String) row[1])
+                .addProduct((String) row[1], (String) row[2], (String) row[3]);
+        }
+
+        String contentJpql = "SELECT DISTINCT prov.uuid, c.uuid, c.name, c.label " +
+            "FROM Pool p JOIN p.providedProducts prov JOIN prov.productContent pc JOIN pc.content c " +
+            "WHERE p.owner.id = :owner_id";
+
+        for (Object[] row : (List<Object[]>) session.createQuery(contentJpql)
+            .setParameter("owner_id", ownerId)
+            .list()) {
+
+            builder.addContent((String) row[0], (String) row[1], (String) row[2], (String) row[3]);
+        }
+
+        String supportLevelJpql = "SELECT DISTINCT prod.uuid, value(attr) " +
+            "FROM Pool p JOIN p.product prod JOIN prod.attributes attr " +
+            "WHERE p.owner.id = :owner_id AND key(attr) = :attribute";
+
+        for (Object[] row : (List<Object[]>) session.createQuery(supportLevelJpql)
+            .setParameter("owner_id", ownerId)
+            .setParameter("attribute", Product.Attributes.SUPPORT_LEVEL)
+            .list()) {
+
+            builder.addSupportLevel((String) row[0], (String) row[1]);
+        }
+
+        String overrideJpql = "SELECT p.id " +
+            "FROM Pool p JOIN p.attributes attr " +
+            "WHERE p.owner.id = :owner_id AND key(attr) = :attribute";
+
+        for (String poolId : (List<String>) session.createQuery(overrideJpql)
+            .setParameter("owner_id", ownerId)
+            .setParameter("attribute", Product.Attributes.SUPPORT_LEVEL)
+            .list()) {
+
+            builder.addSupportLevelOverride(poolId);
+        }
+    }
+
     private String sanitizeMatchesFilter(String matches) {
         StringBuilder output = new StringBuilder();
         boolean escaped = false;
@@ -1564,6 +1830,15 @@ public class PoolCurator extends AbstractHibernateCurator<Pool> {
     }
 
     public void calculateConsumedForOwnersPools(Owner owner) {
+        // Consumed counts are recomputed from the entitlements alone, so any quantity held in
+        // escrow is dropped along with them
+        String escrowStmt = "delete from PoolQuantitySlice s " +
+            "where s.poolId in (select p.id from Pool p where p.owner = :owner)";
+
+        currentSession().createQuery(escrowStmt)
+            .setParameter("owner", owner)
+            .executeUpdate();
+
         String stmt = "update Pool p set p.consumed = coalesce(" +
             "(select sum(quantity) from Entitlement ent where ent.pool.id = p.id),0) " +
             "where p.owner = :owner";
@@ -1942,6 +2217,53 @@ public class PoolCurator extends AbstractHibernateCurator<Pool> {
         return consumerPoolMap;
     }
 
+    /**
+     * Fetches a map of consumer IDs to pool IDs of stack derived pools for the given stack IDs,
+     * limited to the pools sourced from the given consumers. Stack IDs are not unique across
+     * consumers, so this should be used instead of getConsumerStackDerivedPoolIdMap(stackIds) when
+     * only the pools of specific consumers are needed. If no such pools can be found, an empty map
+     * is returned.
+     *
+     * @param consumerIds
+     *  A collection of IDs of the consumers for which to fetch stack derived pool IDs
+     *
+     * @param stackIds
+     *  A collection of stack IDs to use to fetch consumer pool IDs
+     *
+     * @return
+     *  a map of consumer IDs to pool IDs of stack derived pools for the given consumers and stack IDs
+     */
+    public Map<String, Set<String>> getConsumerStackDerivedPoolIdMap(Iterable<String> consumerIds,
+        Iterable<String> stackIds) {
+
+        Map<String, Set<String>> consumerPoolMap = new HashMap<>();
+
+        if (consumerIds != null && consumerIds.iterator().hasNext() &&
+            stackIds != null && stackIds.iterator().hasNext()) {
+
+            String jpql = "SELECT DISTINCT ss.sourceConsumer.id, ss.derivedPool.id FROM SourceStack ss " +
+                "WHERE ss.sourceConsumer.id IN (:consumerIds) " +
+                "AND ss.sourceStackId IN (:stackids)";
+
+            TypedQuery<Object[]> query = this.getEntityManager().createQuery(jpql, Object[].class);
+
+            for (List<String> consumerBlock : this.partition(consumerIds)) {
+                query.setParameter("consumerIds", consumerBlock);
+
+                for (List<String> stackBlock : this.partition(stackIds)) {
+                    query.setParameter("stackids", stackBlock);
+
+                    for (Object[] row : query.getResultList()) {
+                        consumerPoolMap.computeIfAbsent((String) row[0], key -> new HashSet<>())
+                            .add((String) row[1]);
+                    }
+                }
+            }
+        }
+
+        return consumerPoolMap;
+    }
+
     /**
      * Fetches a list of pool IDs for stack derived pools that will be unentitled with the deletion
      * of the specified entitlement IDs.
@@ -0,0 +1,128 @@
+/**
+ * Copyright (c) 2009 - 2020 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.model;
+
+import org.hibernate.annotations.GenericGenerator;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import javax.validation.constraints.NotNull;
+
+
+
+/**
+ * PoolQuantitySlice: A slice of a pool's quantity held in escrow. The full allotment of a slice is
+ * counted as consumed on its pool when the slice is carved out, after which binds consume from the
+ * slice without touching, or locking, the pool row. The unused remainder of the allotment is
+ * returned to the pool when the slice is released.
+ * <p></p>
+ * Each pool has at most one slice per stripe, so that concurrent binds against the same pool are
+ * spread across several rows.
+ */
+@Entity
+@Table(name = PoolQuantitySlice.DB_TABLE)
+public class PoolQuantitySlice extends AbstractHibernateObject<PoolQuantitySlice> {
+
+    /** Name of the table backing this object in the database */
+    public static final String DB_TABLE = "cp_pool_quantity_slice";
+
+    @Id
+    @GeneratedValue(generator = "system-uuid")
+    @GenericGenerator(name = "system-uuid", strategy = "uuid")
+    @Column(length = 32)
+    @NotNull
+    private String id;
+
+    @Column(name = "pool_id", length = 32)
+    @NotNull
+    private String poolId;
+
+    @NotNull
+    private Integer stripe;
+
+    @NotNull
+    private Long allotment;
+
+    @NotNull
+    private Long consumed;
+
+    public PoolQuantitySlice() {
+        // Intentionally left empty
+    }
+
+    public PoolQuantitySlice(String poolId, int stripe, long allotment) {
+        this.poolId = poolId;
+        this.stripe = stripe;
+        this.allotment = allotment;
+        this.consumed = 0L;
+    }
+
+    @Override
+    public String getId() {
+        return this.id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getPoolId() {
+        return this.poolId;
+    }
+
+    public void setPoolId(String poolId) {
+        this.poolId = poolId;
+    }
+
+    public Integer getStripe() {
+        return this.stripe;
+    }
+
+    public void setStripe(Integer stripe) {
+        this.stripe = stripe;
+    }
+
+    public Long getAllotment() {
+        return this.allotment;
+    }
+
+    public void setAllotment(Long allotment) {
+        this.allotment = allotment;
+    }
+
+    public Long getConsumed() {
+        return this.consumed;
+    }
+
+    public void setConsumed(Long consumed) {
+        this.consumed = consumed;
+    }
+
+    /**
+     * @return the quantity of this slice's allotment which has not yet been consumed
+     */
+    public long getUnused() {
+        return this.allotment - this.consumed;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("PoolQuantitySlice [pool: %s, stripe: %s, allotment: %s, consumed: %s]",
+            this.poolId, this.stripe, this.allotment, this.consumed);
+    }
+}
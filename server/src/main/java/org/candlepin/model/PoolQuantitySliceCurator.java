@@ -0,0 +1,177 @@
+/**
+ * Copyright (c) 2009 - 2020 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.model;
+
+import com.google.common.collect.Iterables;
+
+import org.hibernate.LockOptions;
+import org.hibernate.cfg.AvailableSettings;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.inject.Singleton;
+import javax.persistence.LockModeType;
+
+
+
+/**
+ * Curator for {@link PoolQuantitySlice}s.
+ */
+@Singleton
+public class PoolQuantitySliceCurator extends AbstractHibernateCurator<PoolQuantitySlice> {
+
+    public PoolQuantitySliceCurator() {
+        super(PoolQuantitySlice.class);
+    }
+
+    /**
+     * Consumes the given quantity from a single slice of the specified pool, provided the slice
+     * has enough of its allotment left. The check and the update are performed in a single
+     * statement, so that concurrent binds can never consume more than the slice's allotment; the
+     * slice row remains locked until the current transaction ends.
+     *
+     * @param poolId
+     *  the ID of the pool whose slice to consume from
+     *
+     * @param stripe
+     *  the stripe of the slice to consume from
+     *
+     * @param quantity
+     *  the quantity to consume
+     *
+     * @return
+     *  true if the quantity was consumed from the slice; false if no such slice exists, or it does
+     *  not have enough quantity left
+     */
+    public boolean consume(String poolId, int stripe, long quantity) {
+        String jpql = "UPDATE PoolQuantitySlice s SET s.consumed = s.consumed + :quantity " +
+            "WHERE s.poolId = :pool_id AND s.stripe = :stripe " +
+            "AND s.consumed + :quantity <= s.allotment";
+
+        int updated = this.getEntityManager()
+            .createQuery(jpql)
+            .setParameter("quantity", quantity)
+            .setParameter("pool_id", poolId)
+            .setParameter("stripe", stripe)
+            .executeUpdate();
+
+        return updated > 0;
+    }
+
+    /**
+     * Fetches the stripes of the specified pool's slices which had at least the given quantity
+     * left at the time of the query. No locks are taken, so the returned stripes may have been
+     * consumed by the time they are used.
+     *
+     * @param poolId
+     *  the ID of the pool for which to fetch stripes
+     *
+     * @param quantity
+     *  the minimum quantity the slices must have left
+     *
+     * @return
+     *  a list of the stripes of the pool's slices with enough quantity left
+     */
+    public List<Integer> getAvailableStripes(String poolId, long quantity) {
+        String jpql = "SELECT s.stripe FROM PoolQuantitySlice s " +
+            "WHERE s.poolId = :pool_id AND s.consumed + :quantity <= s.allotment";
+
+        return this.getEntityManager()
+            .createQuery(jpql, Integer.class)
+            .setParameter("pool_id", poolId)
+            .setParameter("quantity", quantity)
+            .getResultList();
+    }
+
+    /**
+     * Fetches the quantity held in escrow but not yet consumed for each of the specified pools.
+     * Pools without any slices are omitted from the output.
+     *
+     * @param poolIds
+     *  the IDs of the pools for which to fetch the unused escrow quantity
+     *
+     * @return
+     *  a mapping of pool IDs to the unused quantity held in their slices
+     */
+    public Map<String, Long> getUnusedQuantities(Collection<String> poolIds) {
+        Map<String, Long> unused = new HashMap<>();
+
+        if (poolIds != null && !poolIds.isEmpty()) {
+            String jpql = "SELECT s.poolId, SUM(s.allotment - s.consumed) FROM PoolQuantitySlice s " +
+                "WHERE s.poolId IN (:pool_ids) GROUP BY s.poolId";
+
+            for (List<String> block : Iterables.partition(poolIds, this.getInBlockSize())) {
+                List<Object[]> rows = this.getEntityManager()
+                    .createQuery(jpql, Object[].class)
+                    .setParameter("pool_ids", block)
+                    .getResultList();
+
+                for (Object[] row : rows) {
+                    unused.put((String) row[0], ((Number) row[1]).longValue());
+                }
+            }
+        }
+
+        return unused;
+    }
+
+    /**
+     * Loads and locks the slices of the specified pools. Slices locked by another transaction,
+     * such as a bind still consuming from them, are skipped rather than waited for: binds hold
+     * their slice locks while inserting entitlements, which in turn need a share lock on the pool,
+     * so waiting here while holding the pool lock could deadlock.
+     *
+     * @param poolIds
+     *  the IDs of the pools for which to lock slices
+     *
+     * @return
+     *  a list of the slices of the given pools which could be locked
+     */
+    public List<PoolQuantitySlice> lockByPools(Collection<String> poolIds) {
+        List<PoolQuantitySlice> slices = new ArrayList<>();
+
+        if (poolIds != null && !poolIds.isEmpty()) {
+            String jpql = "SELECT s FROM PoolQuantitySlice s WHERE s.poolId IN (:pool_ids) " +
+                "ORDER BY s.poolId, s.stripe";
+
+            for (List<String> block : Iterables.partition(poolIds, this.getInBlockSize())) {
+                slices.addAll(this.getEntityManager()
+                    .createQuery(jpql, PoolQuantitySlice.class)
+                    .setParameter("pool_ids", block)
+                    .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+                    .setHint(AvailableSettings.JPA_LOCK_TIMEOUT, LockOptions.SKIP_LOCKED)
+                    .getResultList());
+            }
+        }
+
+        return slices;
+    }
+
+    /**
+     * Fetches the IDs of all pools which currently have quantity held in escrow.
+     *
+     * @return
+     *  a list of the IDs of pools with slices
+     */
+    public List<String> getPoolIds() {
+        return this.getEntityManager()
+            .createQuery("SELECT DISTINCT s.poolId FROM PoolQuantitySlice s ORDER BY s.poolId", String.class)
+            .getResultList();
+    }
+}
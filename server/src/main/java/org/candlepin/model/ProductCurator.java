@@ -31,6 +31,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -41,6 +42,7 @@ import java.util.Set;
 import javax.inject.Singleton;
 import javax.persistence.Cache;
 import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
 import javax.persistence.Query;
 import javax.persistence.TypedQuery;
 
@@ -222,6 +224,46 @@ public class ProductCurator extends AbstractHibernateCurator<Product> {
         return productsByUuid;
     }
 
+    /**
+     * Initializes the lazily loaded collections of the given products -- attributes, dependent
+     * product IDs, branding and product content, along with the modified product IDs of the
+     * referenced content -- in bulk. Hibernate would otherwise load each of these collections with
+     * a separate query per product as they are first accessed; this method instead issues one
+     * query per collection for each block of products.
+     * <p></p>
+     * The products are expected to be managed by the current session. Products which have already
+     * had their collections initialized are left as-is.
+     *
+     * @param products
+     *  A collection of products for which to initialize collections
+     */
+    public void hydrateProductCollections(Collection<Product> products) {
+        if (products == null || products.isEmpty()) {
+            return;
+        }
+
+        this.hydrateCollections(Product.class, products, Product::getUuid,
+            "SELECT DISTINCT p FROM Product p LEFT JOIN FETCH p.attributes WHERE p.uuid IN (:ids)",
+            "SELECT DISTINCT p FROM Product p LEFT JOIN FETCH p.dependentProductIds WHERE p.uuid IN (:ids)",
+            "SELECT DISTINCT p FROM Product p LEFT JOIN FETCH p.branding WHERE p.uuid IN (:ids)",
+            "SELECT DISTINCT p FROM Product p LEFT JOIN FETCH p.productContent pc " +
+                "LEFT JOIN FETCH pc.content WHERE p.uuid IN (:ids)");
+
+        Set<Content> contents = new HashSet<>();
+        for (Product product : products) {
+            if (product != null && product.getProductContent() != null) {
+                for (ProductContent pc : product.getProductContent()) {
+                    if (pc.getContent() != null) {
+                        contents.add(pc.getContent());
+                    }
+                }
+            }
+        }
+
+        this.hydrateCollections(Content.class, contents, Content::getUuid,
+            ContentCurator.MODIFIED_PRODUCT_IDS_FETCH_JPQL);
+    }
+
     /**
      * Fetches the provided and derived provided products for the specified pools, populating the
      * respective collections in each pool object. The products will be pulled from the product
@@ -505,4 +547,59 @@ public class ProductCurator extends AbstractHibernateCurator<Product> {
 
         return this.cpQueryFactory.<Product>buildQuery();
     }
+
+    /**
+     * Deletes the specified products, along with the rows which depend on them, provided they are
+     * still orphaned. The products are locked and checked again before anything is deleted, so
+     * products mapped to an owner since the given UUIDs were fetched are left in place. Rows are
+     * deleted with set-based statements, without loading the products into the session.
+     * <p></p>
+     * This method should be called within a transaction, with a bounded number of UUIDs.
+     *
+     * @param uuids
+     *  the UUIDs of the orphaned products to delete
+     *
+     * @return
+     *  the number of products deleted
+     */
+    public int deleteOrphanedProducts(Collection<String> uuids) {
+        if (uuids == null || uuids.isEmpty()) {
+            return 0;
+        }
+
+        EntityManager entityManager = this.getEntityManager();
+
+        String jpql = "SELECT p.uuid FROM Product p WHERE p.uuid IN (:uuids) " +
+            "AND NOT EXISTS (SELECT op.ownerId FROM OwnerProduct op WHERE op.productUuid = p.uuid)";
+
+        List<String> orphaned = new ArrayList<>();
+        for (List<String> block : this.partition(uuids)) {
+            orphaned.addAll(entityManager.createQuery(jpql, String.class)
+                .setParameter("uuids", block)
+                .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+                .getResultList());
+        }
+
+        String[] dependentTables = {
+            "cp2_product_attributes",
+            ProductContent.DB_TABLE,
+            "cp2_product_dependent_products",
+            Branding.DB_TABLE
+        };
+
+        int count = 0;
+        for (List<String> block : this.partition(orphaned)) {
+            for (String table : dependentTables) {
+                entityManager.createNativeQuery("DELETE FROM " + table + " WHERE product_uuid IN (:uuids)")
+                    .setParameter("uuids", block)
+                    .executeUpdate();
+            }
+
+            count += entityManager.createQuery("DELETE FROM Product p WHERE p.uuid IN (:uuids)")
+                .setParameter("uuids", block)
+                .executeUpdate();
+        }
+
+        return count;
+    }
 }
@@ -0,0 +1,77 @@
+/**
+ * Copyright (c) 2009 - 2020 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.policy.js.entitlement;
+
+import org.candlepin.model.Consumer;
+import org.candlepin.model.ConsumerType;
+import org.candlepin.policy.js.JsonJsContext;
+
+import com.fasterxml.jackson.databind.util.RawValue;
+
+import java.util.Collections;
+import java.util.Map;
+
+
+
+/**
+ * The ConsumerRulesContext holds the parts of the entitlement rules context which describe the
+ * consumer: the consumer itself, its host and its current entitlements, already translated and
+ * serialized for the rules. Building these is the most expensive part of preparing a rules call,
+ * so a context may be built once with {@link Enforcer#buildConsumerContext(Consumer)} and reused
+ * for several rule calls made on behalf of the same consumer.
+ * <p></p>
+ * A context is a snapshot, and must not be reused once the consumer, its facts or its
+ * entitlements have been changed.
+ */
+public class ConsumerRulesContext {
+
+    private final Consumer consumer;
+    private final Consumer host;
+    private final ConsumerType consumerType;
+    private final Map<String, RawValue> args;
+
+    ConsumerRulesContext(Consumer consumer, Consumer host, ConsumerType consumerType,
+        Map<String, RawValue> args) {
+
+        this.consumer = consumer;
+        this.host = host;
+        this.consumerType = consumerType;
+        this.args = Collections.unmodifiableMap(args);
+    }
+
+    public Consumer getConsumer() {
+        return this.consumer;
+    }
+
+    public Consumer getHost() {
+        return this.host;
+    }
+
+    public ConsumerType getConsumerType() {
+        return this.consumerType;
+    }
+
+    /**
+     * Adds the serialized consumer arguments of this context to the given rules context
+     *
+     * @param context
+     *  the rules context to receive the consumer arguments
+     */
+    void applyTo(JsonJsContext context) {
+        for (Map.Entry<String, RawValue> entry : this.args.entrySet()) {
+            context.put(entry.getKey(), entry.getValue());
+        }
+    }
+}
@@ -126,6 +126,29 @@ public interface Enforcer {
     Map<String, ValidationResult> preEntitlement(Consumer consumer, Consumer host,
         Collection<PoolQuantity> entitlementPoolQuantities, CallerType caller);
 
+    /**
+     * Run pre-entitlement checks on a batch of pools, using a previously built consumer context.
+     *
+     * @param context the consumer context of the consumer who wishes to consume an entitlement.
+     * @param entitlementPoolQuantities Entitlement pools to consume from, and
+     *        the respective number of entitlements to consume.
+     * @param caller the context calling the rules.
+     * @return {@link ValidationResult} a validation result from the
+     *         pre-entitlement run.
+     */
+    Map<String, ValidationResult> preEntitlement(ConsumerRulesContext context,
+        Collection<PoolQuantity> entitlementPoolQuantities, CallerType caller);
+
+    /**
+     * Builds the consumer context used by the rules for the given consumer, which may be reused
+     * for several rule calls made on behalf of the consumer, as long as the consumer and its
+     * entitlements do not change in between.
+     *
+     * @param consumer Consumer for which to build the context.
+     * @return a consumer context for the given consumer
+     */
+    ConsumerRulesContext buildConsumerContext(Consumer consumer);
+
     /**
      * @param consumer Consumer who wishes to consume an entitlement.
      * @param pools Entitlement pools to potentially consume from.
@@ -134,6 +157,14 @@ public interface Enforcer {
      */
     List<Pool> filterPools(Consumer consumer, List<Pool> pools, boolean showAll);
 
+    /**
+     * @param context the consumer context of the consumer who wishes to consume an entitlement.
+     * @param pools Entitlement pools to potentially consume from.
+     * @param showAll if true, allows pools with warnings
+     * @return list of valid pools for the given consumer
+     */
+    List<Pool> filterPools(ConsumerRulesContext context, List<Pool> pools, boolean showAll);
+
     /**
      * Run post-entitlement actions.
      * @param c consumer
@@ -47,7 +47,9 @@ import org.candlepin.policy.js.RulesObjectMapper;
 import org.candlepin.policy.js.pool.PoolHelper;
 import org.candlepin.util.DateSource;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.util.RawValue;
 import com.google.inject.Inject;
 
 import org.apache.commons.collections.CollectionUtils;
@@ -94,6 +96,9 @@ public class EntitlementRules implements Enforcer {
 
     private static final String POST_PREFIX = "post_";
 
+    /** The consumer fact the rules compare against the arch product attribute */
+    private static final String ARCH_FACT = "uname.machine";
+
     @Inject
     public EntitlementRules(DateSource dateSource,
         JsRunner jsRules, I18n i18n, Configuration config, ConsumerCurator consumerCurator,
@@ -148,26 +153,71 @@ public class EntitlementRules implements Enforcer {
     }
 
     @Override
-    @SuppressWarnings("checkstyle:indentation")
     public Map<String, ValidationResult> preEntitlement(Consumer consumer, Consumer host,
         Collection<PoolQuantity> entitlementPoolQuantities, CallerType caller) {
 
-        Map<String, ValidationResult> resultMap = new HashMap<>();
+        return this.preEntitlement(this.buildConsumerContext(consumer, host), entitlementPoolQuantities,
+            caller);
+    }
+
+    @Override
+    public ConsumerRulesContext buildConsumerContext(Consumer consumer) {
+        return this.buildConsumerContext(consumer, getHost(consumer));
+    }
 
+    /**
+     * Builds a consumer context for the given consumer and host. The consumer, host and consumer
+     * entitlements are translated and serialized once, here, rather than on each rules call.
+     *
+     * @param consumer
+     *  the consumer for which to build a context
+     *
+     * @param host
+     *  the host of the consumer, or null if the consumer is not a guest or its host is unknown
+     *
+     * @return
+     *  a new consumer rules context
+     */
+    @SuppressWarnings("checkstyle:indentation")
+    public ConsumerRulesContext buildConsumerContext(Consumer consumer, Consumer host) {
         ConsumerType ctype = this.consumerTypeCurator.getConsumerType(consumer);
 
-        /* This document describes the java script portion of the pre entitlement rules check:
-         * http://www.candlepinproject.org/docs/candlepin/pre_entitlement_rules_check.html
-         */
-        Stream<EntitlementDTO> entStream = consumer.getEntitlements() == null ? Stream.empty() :
+        Set<EntitlementDTO> entitlements = consumer.getEntitlements() == null ? Collections.emptySet() :
             consumer.getEntitlements().stream()
-                .map(this.translator.getStreamMapper(Entitlement.class, EntitlementDTO.class));
+                .map(this.translator.getStreamMapper(Entitlement.class, EntitlementDTO.class))
+                .collect(Collectors.toSet());
+
+        Map<String, RawValue> args = new HashMap<>();
+
+        try {
+            args.put("consumer", new RawValue(objectMapper.toJsonString(
+                this.translator.translate(consumer, ConsumerDTO.class))));
+            args.put("hostConsumer", new RawValue(objectMapper.toJsonString(
+                this.translator.translate(host, ConsumerDTO.class))));
+            args.put("consumerEntitlements", new RawValue(objectMapper.toJsonString(entitlements)));
+        }
+        catch (JsonProcessingException e) {
+            throw new RuleExecutionException(e);
+        }
+
+        return new ConsumerRulesContext(consumer, host, ctype, args);
+    }
+
+    @Override
+    public Map<String, ValidationResult> preEntitlement(ConsumerRulesContext context,
+        Collection<PoolQuantity> entitlementPoolQuantities, CallerType caller) {
+
+        if (context == null) {
+            throw new IllegalArgumentException("context is null");
+        }
 
+        Map<String, ValidationResult> resultMap = new HashMap<>();
 
+        /* This document describes the java script portion of the pre entitlement rules check:
+         * http://www.candlepinproject.org/docs/candlepin/pre_entitlement_rules_check.html
+         */
         JsonJsContext args = new JsonJsContext(objectMapper);
-        args.put("consumer", this.translator.translate(consumer, ConsumerDTO.class));
-        args.put("hostConsumer", this.translator.translate(host, ConsumerDTO.class));
-        args.put("consumerEntitlements", entStream.collect(Collectors.toSet()));
+        context.applyTo(args);
         args.put("standalone", config.getBoolean(ConfigProperties.STANDALONE));
         args.put("poolQuantities", entitlementPoolQuantities);
         args.put("caller", caller.getLabel());
@@ -200,23 +250,27 @@ public class EntitlementRules implements Enforcer {
     }
 
     @Override
-    @SuppressWarnings("checkstyle:indentation")
     public List<Pool> filterPools(Consumer consumer, List<Pool> pools, boolean showAll) {
+        return this.filterPools(this.buildConsumerContext(consumer), pools, showAll);
+    }
+
+    @Override
+    public List<Pool> filterPools(ConsumerRulesContext context, List<Pool> pools, boolean showAll) {
+        if (context == null) {
+            throw new IllegalArgumentException("context is null");
+        }
+
         JsonJsContext args = new JsonJsContext(objectMapper);
         Map<String, ValidationResult> resultMap = new HashMap<>();
 
-        ConsumerType ctype = this.consumerTypeCurator.getConsumerType(consumer);
+        if (!showAll) {
+            pools = this.prefilterPools(context.getConsumer(), context.getConsumerType(), pools);
+        }
 
         Stream<PoolDTO> poolStream = pools == null ? Stream.empty() :
             pools.stream().map(this.translator.getStreamMapper(Pool.class, PoolDTO.class));
 
-        Stream<EntitlementDTO> entStream = consumer.getEntitlements() == null ? Stream.empty() :
-            consumer.getEntitlements().stream()
-                .map(this.translator.getStreamMapper(Entitlement.class, EntitlementDTO.class));
-
-        args.put("consumer", this.translator.translate(consumer, ConsumerDTO.class));
-        args.put("hostConsumer", this.translator.translate(getHost(consumer), ConsumerDTO.class));
-        args.put("consumerEntitlements", entStream.collect(Collectors.toSet()));
+        context.applyTo(args);
         args.put("standalone", config.getBoolean(ConfigProperties.STANDALONE));
         args.put("pools", poolStream.collect(Collectors.toSet()));
         args.put("caller", CallerType.LIST_POOLS.getLabel());
@@ -256,6 +310,110 @@ public class EntitlementRules implements Enforcer {
         return filteredPools;
     }
 
+    /**
+     * Removes pools which the rules would only reject with a warning for the given consumer,
+     * before they are serialized and passed to the rules. Only checks which depend solely on the
+     * consumer and pool attributes are performed here, and each must mirror its rules counterpart
+     * exactly; anything more involved is left to the rules.
+     *
+     * @param consumer
+     *  the consumer for which pools are being listed
+     *
+     * @param ctype
+     *  the type of the consumer
+     *
+     * @param pools
+     *  the pools to filter
+     *
+     * @return
+     *  the pools which may pass the rules without warnings
+     */
+    private List<Pool> prefilterPools(Consumer consumer, ConsumerType ctype, List<Pool> pools) {
+        if (pools == null || pools.isEmpty()) {
+            return pools;
+        }
+
+        boolean guest = consumer.isGuest();
+        String consumerArch = consumer.getFact(ARCH_FACT);
+        boolean instanceCapable = consumer.getCapabilities() != null && consumer.getCapabilities()
+            .stream()
+            .anyMatch(capability -> Product.Attributes.INSTANCE_MULTIPLIER.equals(capability.getName()));
+
+        List<Pool> candidates = new ArrayList<>(pools.size());
+        for (Pool pool : pools) {
+            if (ctype.isManifest()) {
+                // rulewarning.instance.unsupported.by.consumer
+                if (!instanceCapable &&
+                    this.getPoolAttribute(pool, Product.Attributes.INSTANCE_MULTIPLIER) != null) {
+                    continue;
+                }
+            }
+            else {
+                // rulewarning.physical.only
+                if (guest &&
+                    "true".equalsIgnoreCase(this.getPoolAttribute(pool, Pool.Attributes.PHYSICAL_ONLY))) {
+                    continue;
+                }
+
+                // rulewarning.architecture.mismatch
+                String arch = pool.getProductAttributes().get(Product.Attributes.ARCHITECTURE);
+                if (arch == null) {
+                    arch = pool.getAttributeValue(Product.Attributes.ARCHITECTURE);
+                }
+
+                if (arch != null && !this.architectureMatches(arch, consumerArch, ctype.getLabel())) {
+                    continue;
+                }
+            }
+
+            candidates.add(pool);
+        }
+
+        if (log.isDebugEnabled() && candidates.size() < pools.size()) {
+            log.debug("Omitted {} pools with rule warnings before rules evaluation",
+                pools.size() - candidates.size());
+        }
+
+        return candidates;
+    }
+
+    /**
+     * Fetches an attribute from the pool, falling back to its product, in the same way the rules
+     * do.
+     */
+    private String getPoolAttribute(Pool pool, String key) {
+        String value = pool.getAttributeValue(key);
+        return value != null && !value.isEmpty() ? value : pool.getProductAttributes().get(key);
+    }
+
+    /**
+     * Java counterpart of the architectureMatches function in the rules.
+     */
+    private boolean architectureMatches(String productArch, String consumerArch, String consumerType) {
+        if ((consumerArch == null || consumerArch.isEmpty()) &&
+            !ConsumerType.ConsumerTypeEnum.SYSTEM.getLabel().equals(consumerType)) {
+            return true;
+        }
+
+        Set<String> supported = new HashSet<>();
+        for (String arch : productArch.toUpperCase().split(",")) {
+            supported.add(arch);
+        }
+
+        if (supported.contains("X86")) {
+            supported.add("I386");
+            supported.add("I586");
+            supported.add("I686");
+        }
+
+        if (supported.contains("ALL")) {
+            return true;
+        }
+
+        return consumerArch != null && !consumerArch.isEmpty() &&
+            supported.contains(consumerArch.toUpperCase());
+    }
+
     private Consumer getHost(Consumer consumer) {
         Consumer host = consumer.hasFact("virt.uuid") ? consumerCurator.getHost(
             consumer.getFact("virt.uuid"), consumer.getOwnerId()) : null;
@@ -20,9 +20,18 @@ import org.candlepin.model.Product;
 import org.candlepin.model.ProductCurator;
 
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
 
 
@@ -30,126 +39,305 @@ import java.util.Set;
  * This class is responsible for determining the accumulated values
  * that can be used to update a stacked sub pool from a collection
  * of stacked entitlements.
+ * <p></p>
+ * The values are maintained incrementally: entitlements may be added to or removed from the
+ * accumulator at any time, at a cost which does not depend on the size of the stack. Each
+ * entitlement's contribution is captured when it is added, so an entitlement which has changed
+ * must be removed and added again.
  */
 public class StackedSubPoolValueAccumulator {
 
-    // Accumulate the expected values before we set anything on the pool:
-    private Entitlement eldest;
-    private Entitlement eldestWithVirtLimit;
-    private Date startDate;
-    private Date endDate;
-    private Set<Product> expectedProvidedProds = new HashSet<>();
-    private ProductCurator productCurator;
+    /**
+     * The contribution of a single stacked entitlement to the accumulated values
+     */
+    private static class Member {
+        private final String entitlementId;
+        private final Entitlement entitlement;
+        private final Date created;
+        private final long sequence;
+        private final Date startDate;
+        private final Date endDate;
+        private final boolean virtLimited;
+        private final Set<Product> providedProducts;
+
+        public Member(Entitlement entitlement, long sequence, Set<Product> providedProducts) {
+            this.entitlementId = entitlement.getId();
+            this.entitlement = entitlement;
+            this.sequence = sequence;
+
+            // if the date is null, must be a entitlement about to be created
+            this.created = entitlement.getCreated() != null ? entitlement.getCreated() : new Date();
+
+            this.startDate = entitlement.getStartDate();
+            this.endDate = entitlement.getEndDate();
+            this.virtLimited = entitlement.getPool().hasMergedAttribute(Product.Attributes.VIRT_LIMIT);
+            this.providedProducts = providedProducts;
+        }
+
+        public boolean isSameEntitlement(Member other) {
+            if (other == null) {
+                return false;
+            }
+
+            return this.entitlementId != null ?
+                this.entitlementId.equals(other.entitlementId) :
+                this.entitlement == other.entitlement;
+        }
+    }
+
+    // Orders members by age, with ties going to the member added first
+    private static final Comparator<Member> AGE_ORDER = Comparator
+        .comparing((Member member) -> member.created)
+        .thenComparingLong(member -> member.sequence);
+
+    private final ProductCurator productCurator;
+
+    private final Map<String, Member> members = new HashMap<>();
+    private final Map<Entitlement, Member> transientMembers = new IdentityHashMap<>();
+    private final NavigableSet<Member> byAge = new TreeSet<>(AGE_ORDER);
+    private final NavigableSet<Member> virtLimitedByAge = new TreeSet<>(AGE_ORDER);
+    private final NavigableMap<Date, Integer> startDates = new TreeMap<>();
+    private final NavigableMap<Date, Integer> endDates = new TreeMap<>();
+    private final Map<Object, Integer> providedCounts = new HashMap<>();
+    private final Map<Object, Product> expectedProvidedProds = new HashMap<>();
+    private long sequence;
+
+    public StackedSubPoolValueAccumulator(ProductCurator productCurator) {
+        if (productCurator == null) {
+            throw new IllegalArgumentException("productCurator is null");
+        }
+
+        this.productCurator = productCurator;
+    }
 
     public StackedSubPoolValueAccumulator(Pool stackedSubPool, Collection<Entitlement> stackedEnts,
         ProductCurator productCurator) {
 
-        this.productCurator = productCurator;
+        this(productCurator);
+
         for (Entitlement nextStacked : stackedEnts) {
-            Pool nextStackedPool = nextStacked.getPool();
-            updateEldest(nextStacked);
-            accumulateDateRange(nextStacked);
-            updateEldestWithVirtLimit(nextStacked);
-            accumulateProvidedProducts(stackedSubPool, nextStackedPool);
+            this.add(nextStacked);
         }
     }
 
     /**
-     * Check if the next stacked entitlement is the eldest in the stack.
+     * Adds the given entitlement to the stack, replacing its previous contribution if it had
+     * already been added.
      *
-     * @param nextStacked the entitlement to check.
+     * @param entitlement
+     *  the entitlement to add
      */
-    private void updateEldest(Entitlement nextStacked) {
-        // if the date is null, must be a entitlement about to be created
-        Date createdDate = (nextStacked.getCreated() == null) ?
-            new Date() : nextStacked.getCreated();
+    public void add(Entitlement entitlement) {
+        if (entitlement == null) {
+            throw new IllegalArgumentException("entitlement is null");
+        }
+
+        this.remove(entitlement);
 
-        if (eldest == null || createdDate.before(eldest.getCreated())) {
-            eldest = nextStacked;
+        Member member = new Member(entitlement, this.sequence++,
+            this.getProvidedProducts(entitlement.getPool()));
+
+        if (entitlement.getId() != null) {
+            this.members.put(entitlement.getId(), member);
+        }
+        else {
+            this.transientMembers.put(entitlement, member);
+        }
+
+        this.byAge.add(member);
+        if (member.virtLimited) {
+            this.virtLimitedByAge.add(member);
+        }
+
+        increment(this.startDates, member.startDate);
+        increment(this.endDates, member.endDate);
+
+        for (Product product : member.providedProducts) {
+            Object key = productKey(product);
+
+            increment(this.providedCounts, key);
+            this.expectedProvidedProds.putIfAbsent(key, product);
         }
     }
 
     /**
-     * Stacked sub pool should have a date range that spans the date range
-     * of the entire stack. Check to see if this entitlement will affect
-     * the start or end date.
+     * Removes the given entitlement from the stack. Entitlements are matched by ID, or by identity
+     * if they had no ID when they were added.
+     *
+     * @param entitlement
+     *  the entitlement to remove
      *
-     * @param nextStacked the entitlement to check.
+     * @return
+     *  true if the entitlement was part of the stack; false otherwise
      */
-    private void accumulateDateRange(Entitlement nextStacked) {
-        // the pool should be updated to have the earliest start date.
-        if (startDate == null || nextStacked.getStartDate().before(startDate)) {
-            startDate = nextStacked.getStartDate();
+    public boolean remove(Entitlement entitlement) {
+        if (entitlement == null) {
+            return false;
         }
 
-        // The pool should be updated to have the latest end date.
-        if (endDate == null || nextStacked.getEndDate().after(endDate)) {
-            endDate = nextStacked.getEndDate();
+        Member member = entitlement.getId() != null ? this.members.remove(entitlement.getId()) : null;
+        if (member == null) {
+            member = this.transientMembers.remove(entitlement);
         }
+
+        return this.remove(member);
     }
 
     /**
-     * Check if the entitlement is the eldest with a specified virt limit.
+     * Removes the entitlement with the given ID from the stack.
      *
-     * @param nextStacked the entitlement to check.
-     * @param nextStackedPool
+     * @param entitlementId
+     *  the ID of the entitlement to remove
+     *
+     * @return
+     *  true if the entitlement was part of the stack; false otherwise
      */
-    private void updateEldestWithVirtLimit(Entitlement nextStacked) {
-        // Keep track of the eldest with virt limit so that we can change the
-        // quantity of the sub pool.
-        if (nextStacked.getPool().hasMergedAttribute(Product.Attributes.VIRT_LIMIT)) {
-            // if the date is null, must be a entitlement about to be created
-            Date createdDate = (nextStacked.getCreated() == null) ?
-                new Date() : nextStacked.getCreated();
-            if (eldestWithVirtLimit == null ||
-                createdDate.before(eldestWithVirtLimit.getCreated())) {
-                eldestWithVirtLimit = nextStacked;
+    public boolean remove(String entitlementId) {
+        return entitlementId != null && this.remove(this.members.remove(entitlementId));
+    }
+
+    private boolean remove(Member member) {
+        if (member == null) {
+            return false;
+        }
+
+        this.byAge.remove(member);
+        this.virtLimitedByAge.remove(member);
+
+        decrement(this.startDates, member.startDate);
+        decrement(this.endDates, member.endDate);
+
+        for (Product product : member.providedProducts) {
+            Object key = productKey(product);
+
+            decrement(this.providedCounts, key);
+            if (!this.providedCounts.containsKey(key)) {
+                this.expectedProvidedProds.remove(key);
             }
         }
+
+        return true;
     }
 
     /**
-     * Add the provided products from the specified entitlement to the
-     * collection of ProvidedProducts for the stack.
+     * Checks whether the given entitlement is part of the stack.
      *
-     * @param stackedSubPool
-     * @param nextStackedPool
+     * @param entitlement
+     *  the entitlement to check
+     *
+     * @return
+     *  true if the entitlement was added to the stack; false otherwise
      */
-    private void accumulateProvidedProducts(Pool stackedSubPool, Pool nextStackedPool) {
-        Product product = nextStackedPool.getDerivedProduct() != null ?
-            nextStackedPool.getDerivedProduct() :
-            nextStackedPool.getProduct();
-
-        if (nextStackedPool.getDerivedProduct() == null) {
-            for (Product provided : productCurator.getPoolProvidedProductsCached(nextStackedPool)) {
-                this.expectedProvidedProds.add(provided);
-            }
+    public boolean contains(Entitlement entitlement) {
+        if (entitlement == null) {
+            return false;
         }
-        else {
-            for (Product provided : productCurator.getPoolDerivedProvidedProductsCached(nextStackedPool)) {
-                this.expectedProvidedProds.add(provided);
-            }
+
+        return (entitlement.getId() != null && this.members.containsKey(entitlement.getId())) ||
+            this.transientMembers.containsKey(entitlement);
+    }
+
+    /**
+     * @return the number of entitlements in the stack
+     */
+    public int size() {
+        return this.byAge.size();
+    }
+
+    /**
+     * @return true if the stack has no entitlements; false otherwise
+     */
+    public boolean isEmpty() {
+        return this.byAge.isEmpty();
+    }
+
+    /**
+     * Checks whether this accumulator has the same accumulated values as another, which is the
+     * case for two accumulators of the same entitlements, regardless of the order in which they
+     * were added or removed, unless several entitlements share the eldest creation date.
+     *
+     * @param other
+     *  the accumulator to compare against
+     *
+     * @return
+     *  true if both accumulators have the same values; false otherwise
+     */
+    public boolean hasSameValues(StackedSubPoolValueAccumulator other) {
+        return other != null &&
+            sameDate(this.getStartDate(), other.getStartDate()) &&
+            sameDate(this.getEndDate(), other.getEndDate()) &&
+            sameMember(first(this.byAge), first(other.byAge)) &&
+            sameMember(first(this.virtLimitedByAge), first(other.virtLimitedByAge)) &&
+            this.providedCounts.keySet().equals(other.providedCounts.keySet());
+    }
+
+    // Dates loaded from the database may be timestamps, which never equal plain dates
+    private static boolean sameDate(Date first, Date second) {
+        return first != null ? second != null && first.getTime() == second.getTime() : second == null;
+    }
+
+    private static boolean sameMember(Member first, Member second) {
+        return first != null ? first.isSameEntitlement(second) : second == null;
+    }
+
+    private static Member first(NavigableSet<Member> members) {
+        return !members.isEmpty() ? members.first() : null;
+    }
+
+    /**
+     * Fetches the products provided by the specified stacked pool, which are the derived provided
+     * products of pools with a derived product.
+     */
+    private Set<Product> getProvidedProducts(Pool nextStackedPool) {
+        Set<Product> provided = nextStackedPool.getDerivedProduct() == null ?
+            productCurator.getPoolProvidedProductsCached(nextStackedPool) :
+            productCurator.getPoolDerivedProvidedProductsCached(nextStackedPool);
+
+        return provided != null ? new HashSet<>(provided) : Collections.<Product>emptySet();
+    }
+
+    /**
+     * Products are counted by UUID where they have one, so that products loaded in different
+     * sessions are never compared with each other
+     */
+    private static Object productKey(Product product) {
+        return product.getUuid() != null ? product.getUuid() : product;
+    }
+
+    private static <T> void increment(Map<T, Integer> counts, T key) {
+        if (key != null) {
+            counts.merge(key, 1, Integer::sum);
+        }
+    }
+
+    private static <T> void decrement(Map<T, Integer> counts, T key) {
+        if (key != null) {
+            counts.computeIfPresent(key, (k, count) -> count > 1 ? count - 1 : null);
         }
     }
 
     public Entitlement getEldest() {
-        return eldest;
+        Member eldest = first(this.byAge);
+        return eldest != null ? eldest.entitlement : null;
     }
 
     public Entitlement getEldestWithVirtLimit() {
-        return eldestWithVirtLimit;
+        Member eldest = first(this.virtLimitedByAge);
+        return eldest != null ? eldest.entitlement : null;
     }
 
+    // the pool should be updated to have the earliest start date.
     public Date getStartDate() {
-        return startDate;
+        return !this.startDates.isEmpty() ? this.startDates.firstKey() : null;
     }
 
+    // The pool should be updated to have the latest end date.
     public Date getEndDate() {
-        return endDate;
+        return !this.endDates.isEmpty() ? this.endDates.lastKey() : null;
     }
 
     public Set<Product> getExpectedProvidedProds() {
-        return expectedProvidedProds;
+        return new HashSet<>(this.expectedProvidedProds.values());
     }
 
 }
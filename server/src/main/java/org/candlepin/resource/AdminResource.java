@@ -21,8 +21,17 @@ import org.candlepin.auth.SystemPrincipal;
 import org.candlepin.cache.CandlepinCache;
 import org.candlepin.common.auth.SecurityHole;
 import org.candlepin.common.config.Configuration;
+import org.candlepin.hibernate.DatabaseRouteStats;
+import org.candlepin.hibernate.DatabaseRouter;
+import org.candlepin.hibernate.QueryProfileStats;
+import org.candlepin.hibernate.QueryProfiler;
 import org.candlepin.model.User;
 import org.candlepin.model.UserCurator;
+import org.candlepin.resteasy.AdmissionController;
+import org.candlepin.resteasy.AdmissionStats;
+import org.candlepin.resteasy.AsyncRequestExecutor;
+import org.candlepin.resteasy.AsyncRequestStats;
+import org.candlepin.resteasy.RequestCost;
 import org.candlepin.service.UserServiceAdapter;
 import org.candlepin.service.impl.DefaultUserServiceAdapter;
 
@@ -37,6 +46,7 @@ import org.slf4j.LoggerFactory;
 
 import java.util.List;
 
+import javax.ws.rs.DELETE;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
@@ -47,6 +57,7 @@ import javax.ws.rs.core.MediaType;
  */
 @Path("/admin")
 @Api("admin")
+@RequestCost(RequestCost.Level.EXEMPT)
 public class AdminResource {
 
     private static Logger log = LoggerFactory.getLogger(AdminResource.class);
@@ -56,15 +67,25 @@ public class AdminResource {
     private EventSink sink;
     private Configuration config;
     private CandlepinCache candlepinCache;
+    private QueryProfiler queryProfiler;
+    private DatabaseRouter databaseRouter;
+    private AsyncRequestExecutor asyncRequestExecutor;
+    private AdmissionController admissionController;
 
     @Inject
     public AdminResource(UserServiceAdapter userService, UserCurator userCurator,
-        EventSink dispatcher, Configuration config, CandlepinCache candlepinCache) {
+        EventSink dispatcher, Configuration config, CandlepinCache candlepinCache,
+        QueryProfiler queryProfiler, DatabaseRouter databaseRouter,
+        AsyncRequestExecutor asyncRequestExecutor, AdmissionController admissionController) {
         this.userService = userService;
         this.userCurator = userCurator;
         this.sink = dispatcher;
         this.config = config;
         this.candlepinCache = candlepinCache;
+        this.queryProfiler = queryProfiler;
+        this.databaseRouter = databaseRouter;
+        this.asyncRequestExecutor = asyncRequestExecutor;
+        this.admissionController = admissionController;
     }
 
     @GET
@@ -110,4 +131,66 @@ public class AdminResource {
     public List<QueueStatus> getQueueStats() {
         return sink.getQueueInfo();
     }
+
+    @GET
+    @Produces({MediaType.APPLICATION_JSON})
+    @Path("profiling")
+    @ApiOperation(
+        notes = "Database statistics attributed to each curator method and endpoint, ordered by the " +
+        "number of statements issued. Statistics are only collected while database profiling is enabled.",
+        value = "Get Query Profiling Stats")
+    public List<QueryProfileStats> getQueryProfilingStats() {
+        return this.queryProfiler.getStats();
+    }
+
+    @DELETE
+    @Path("profiling")
+    @ApiOperation(notes = "Discards all of the database profiling statistics collected so far.",
+        value = "Reset Query Profiling Stats")
+    public void resetQueryProfilingStats() {
+        this.queryProfiler.reset();
+    }
+
+    @GET
+    @Produces({MediaType.APPLICATION_JSON})
+    @Path("db_routing")
+    @ApiOperation(
+        notes = "Connections acquired on behalf of each read-only method, by the database which served " +
+        "them. Statistics are only collected while a read replica is configured.",
+        value = "Get Database Routing Stats")
+    public List<DatabaseRouteStats> getDatabaseRoutingStats() {
+        return this.databaseRouter.getStats();
+    }
+
+    @DELETE
+    @Path("db_routing")
+    @ApiOperation(notes = "Discards all of the database routing statistics collected so far.",
+        value = "Reset Database Routing Stats")
+    public void resetDatabaseRoutingStats() {
+        this.databaseRouter.resetStats();
+    }
+
+    @GET
+    @Produces({MediaType.APPLICATION_JSON})
+    @Path("async_requests")
+    @ApiOperation(
+        notes = "Requests to each long-running endpoint executed on dedicated threads: the configured " +
+        "limits, the requests waiting or executing, and the time requests waited for a thread and took " +
+        "to execute, in milliseconds.",
+        value = "Get Async Request Stats")
+    public List<AsyncRequestStats> getAsyncRequestStats() {
+        return this.asyncRequestExecutor.getStats();
+    }
+
+    @GET
+    @Produces({MediaType.APPLICATION_JSON})
+    @Path("admission")
+    @ApiOperation(
+        notes = "The current concurrency limit of each request cost class, along with the requests " +
+        "executing, admitted and rejected, and the recent latency of its requests, in milliseconds. " +
+        "Limits are only enforced while admission control is enabled.",
+        value = "Get Admission Control Stats")
+    public List<AdmissionStats> getAdmissionStats() {
+        return this.admissionController.getStats();
+    }
 }
@@ -33,6 +33,7 @@ import org.candlepin.auth.SubResource;
 import org.candlepin.auth.UpdateConsumerCheckIn;
 import org.candlepin.auth.UserPrincipal;
 import org.candlepin.auth.Verify;
+import org.candlepin.cache.CertificateBundleCache;
 import org.candlepin.common.auth.SecurityHole;
 import org.candlepin.common.config.Configuration;
 import org.candlepin.common.exceptions.BadRequestException;
@@ -114,7 +115,9 @@ import org.candlepin.resource.util.ConsumerTypeValidator;
 import org.candlepin.resource.util.EntitlementFinderUtil;
 import org.candlepin.resource.util.GuestMigration;
 import org.candlepin.resource.util.ResourceDateParser;
+import org.candlepin.resteasy.AsyncRequestExecutor;
 import org.candlepin.resteasy.DateFormat;
+import org.candlepin.resteasy.RequestCost;
 import org.candlepin.resteasy.parameter.KeyValueParameter;
 import org.candlepin.service.EntitlementCertServiceAdapter;
 import org.candlepin.service.IdentityCertServiceAdapter;
@@ -151,6 +154,7 @@ import java.io.IOException;
 import java.math.BigInteger;
 import java.security.GeneralSecurityException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
@@ -160,6 +164,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.regex.Pattern;
 
 import javax.inject.Provider;
@@ -177,7 +182,10 @@ import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
@@ -226,6 +234,8 @@ public class ConsumerResource {
     private Provider<GuestMigration> migrationProvider;
     private ModelTranslator translator;
     private JobManager jobManager;
+    private CertificateBundleCache certBundleCache;
+    private AsyncRequestExecutor asyncRequestExecutor;
 
     @Inject
     @SuppressWarnings({"checkstyle:parameternumber"})
@@ -263,7 +273,9 @@ public class ConsumerResource {
         ConsumerEnricher consumerEnricher,
         Provider<GuestMigration> migrationProvider,
         ModelTranslator translator,
-        JobManager jobManager) {
+        JobManager jobManager,
+        CertificateBundleCache certBundleCache,
+        AsyncRequestExecutor asyncRequestExecutor) {
 
         this.consumerCurator = consumerCurator;
         this.consumerTypeCurator = consumerTypeCurator;
@@ -303,6 +315,8 @@ public class ConsumerResource {
         this.migrationProvider = migrationProvider;
         this.translator = translator;
         this.jobManager = jobManager;
+        this.certBundleCache = certBundleCache;
+        this.asyncRequestExecutor = asyncRequestExecutor;
     }
 
     /**
@@ -1921,6 +1935,200 @@ public class ConsumerResource {
         }
     }
 
+    @ApiOperation(notes = "Retrieves a compressed bundle of the Consumer's current certificates. " +
+        "The bundle carries a strong ETag derived from the certificate serials, so that clients may " +
+        "skip downloading an unchanged bundle using If-None-Match, and resume a partial download " +
+        "using Range.",
+        value = "getEntitlementCertificateBundle")
+    @ApiResponses({ @ApiResponse(code = 404, message = ""), @ApiResponse(code = 304, message = ""),
+        @ApiResponse(code = 206, message = ""), @ApiResponse(code = 416, message = "") })
+    @GET
+    @Produces("application/zip")
+    @Path("{consumer_uuid}/certificates/bundle")
+    @UpdateConsumerCheckIn
+    @RequestCost(RequestCost.Level.LOW)
+    public Response getEntitlementCertificateBundle(
+        @PathParam("consumer_uuid") @Verify(Consumer.class) String consumerUuid,
+        @HeaderParam("If-None-Match") String ifNoneMatch,
+        @HeaderParam("Range") String range,
+        @HeaderParam("If-Range") String ifRange) {
+
+        log.debug("Getting certificate bundle for consumer: {}", consumerUuid);
+        Consumer consumer = consumerCurator.verifyAndLookupConsumer(consumerUuid);
+
+        revokeOnGuestMigration(consumer);
+        poolManager.regenerateDirtyEntitlements(consumer);
+
+        ContentAccessCertificate cac;
+        try {
+            cac = this.contentAccessManager.getCertificate(consumer);
+        }
+        catch (IOException ioe) {
+            throw new BadRequestException(i18n.tr("Cannot retrieve content access certificate"), ioe);
+        }
+        catch (GeneralSecurityException gse) {
+            throw new BadRequestException(i18n.tr("Cannot retrieve content access certificate"), gse);
+        }
+
+        // The serials are all we need to identify the bundle; the certificates themselves are only
+        // read if the client or the cache does not have the bundle already
+        String etag = CertificateBundleCache.computeETag(
+            entCertService.listEntitlementSerialIds(consumer), cac);
+
+        if (matchesETag(ifNoneMatch, etag)) {
+            return Response.notModified(new EntityTag(etag)).build();
+        }
+
+        CertificateBundleCache.Bundle bundle = this.certBundleCache.get(consumer.getUuid(), etag);
+        if (bundle == null) {
+            List<Certificate> certs = new ArrayList<>(entCertService.listForConsumer(consumer));
+            Set<Long> serials = new HashSet<>();
+            for (Certificate cert : certs) {
+                serials.add(cert.getSerial().getId());
+            }
+
+            if (cac != null) {
+                certs.add(cac);
+            }
+
+            try {
+                // Tag the bundle by the certificates actually read, in case they changed meanwhile
+                bundle = CertificateBundleCache.createBundle(
+                    CertificateBundleCache.computeETag(serials, cac), certs);
+            }
+            catch (IOException e) {
+                throw new IseException(i18n.tr("Unable to create entitlement certificate bundle"), e);
+            }
+
+            this.certBundleCache.put(consumer.getUuid(), bundle);
+        }
+
+        byte[] data = bundle.getData();
+        int[] bounds = null;
+
+        // Ranges are only honored if the client's partial copy is of this very bundle
+        if (ifRange == null || matchesStrongETag(ifRange, bundle.getETag())) {
+            bounds = parseByteRange(range, data.length);
+        }
+
+        Response.ResponseBuilder builder;
+        if (bounds == null) {
+            builder = Response.ok(data);
+        }
+        else if (bounds.length == 0) {
+            return Response.status(Response.Status.REQUESTED_RANGE_NOT_SATISFIABLE)
+                .header("Content-Range", "bytes */" + data.length)
+                .tag(new EntityTag(bundle.getETag()))
+                .build();
+        }
+        else {
+            builder = Response.status(Response.Status.PARTIAL_CONTENT)
+                .entity(Arrays.copyOfRange(data, bounds[0], bounds[1] + 1))
+                .header("Content-Range", String.format("bytes %d-%d/%d", bounds[0], bounds[1], data.length));
+        }
+
+        return builder
+            .tag(new EntityTag(bundle.getETag()))
+            .header("Accept-Ranges", "bytes")
+            .header("Content-Disposition", "attachment; filename=" + consumer.getUuid() + "-certificates.zip")
+            .build();
+    }
+
+    /**
+     * Checks whether an If-None-Match header value matches the given entity tag, using the weak
+     * comparison required for If-None-Match: weak tags are compared by their value, and "*"
+     * matches any tag.
+     */
+    private static boolean matchesETag(String header, String etag) {
+        if (header == null) {
+            return false;
+        }
+
+        for (String tag : header.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+
+            if ("*".equals(tag) || ('"' + etag + '"').equals(tag)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Checks whether an If-Range header value matches the given entity tag, using the strong
+     * comparison required for If-Range: the header must be exactly the (strong) tag. Weak tags,
+     * "*" and HTTP dates never match, so the entire entity is served instead of a range of it.
+     */
+    private static boolean matchesStrongETag(String header, String etag) {
+        return header != null && ('"' + etag + '"').equals(header.trim());
+    }
+
+    /**
+     * Parses a Range header requesting a single range of bytes of an entity of the given length.
+     * Headers requesting multiple ranges, or which cannot be parsed, are ignored as permitted by
+     * RFC 7233, and the entire entity is served instead.
+     *
+     * @return
+     *  the first and last offsets of the requested range, inclusive; an empty array if the range
+     *  cannot be satisfied; or null if the header is to be ignored
+     */
+    private static int[] parseByteRange(String range, int length) {
+        if (range == null || !range.startsWith("bytes=") || range.indexOf(',') >= 0) {
+            return null;
+        }
+
+        String spec = range.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+
+        String first = spec.substring(0, dash).trim();
+        String last = spec.substring(dash + 1).trim();
+
+        try {
+            long start;
+            long end = length - 1;
+
+            if (first.isEmpty()) {
+                // A suffix range, requesting the last N bytes
+                long suffix = !last.isEmpty() ? Long.parseLong(last) : -1;
+                if (suffix < 0) {
+                    return null;
+                }
+
+                start = Math.max(0, length - suffix);
+                if (suffix == 0 || length == 0) {
+                    return new int[0];
+                }
+            }
+            else {
+                start = Long.parseLong(first);
+                if (!last.isEmpty()) {
+                    long requested = Long.parseLong(last);
+                    if (requested < start) {
+                        return null;
+                    }
+
+                    end = Math.min(end, requested);
+                }
+
+                if (start >= length) {
+                    return new int[0];
+                }
+            }
+
+            return new int[] { (int) start, (int) end };
+        }
+        catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
     private Set<Long> extractSerials(String serials) {
         Set<Long> serialSet = new HashSet<>();
         if (serials != null && !serials.isEmpty()) {
@@ -1956,6 +2164,7 @@ public class ConsumerResource {
     @Produces(MediaType.APPLICATION_JSON)
     @Wrapped(element = "serials")
     @UpdateConsumerCheckIn
+    @RequestCost(RequestCost.Level.LOW)
     public List<CertificateSerialDTO> getEntitlementCertificateSerials(
         @PathParam("consumer_uuid") @Verify(Consumer.class) String consumerUuid) {
 
@@ -2027,13 +2236,16 @@ public class ConsumerResource {
         "products. The response will contain a list of Entitlement objects if async is" +
         " false, or a JobDetail object if async is true.", value = "Bind Entitlements")
     @ApiResponses({ @ApiResponse(code = 400, message = ""),
-        @ApiResponse(code = 403, message = "Binds Entitlements"), @ApiResponse(code = 404, message = "") })
+        @ApiResponse(code = 403, message = "Binds Entitlements"), @ApiResponse(code = 404, message = ""),
+        @ApiResponse(code = 503, message = "") })
     @POST
     @Consumes(MediaType.APPLICATION_JSON)
     @Produces(MediaType.APPLICATION_JSON)
     @Path("/{consumer_uuid}/entitlements")
     @SuppressWarnings("checkstyle:indentation")
-    public Response bind(
+    @RequestCost(RequestCost.Level.QUEUED)
+    public void bind(
+        @Suspended AsyncResponse asyncResponse,
         @PathParam("consumer_uuid") @Verify(Consumer.class) String consumerUuid,
         @QueryParam("pool") @Verify(value = Pool.class, nullable = true,
             subResource = SubResource.ENTITLEMENTS) String poolIdString,
@@ -2043,7 +2255,33 @@ public class ConsumerResource {
         @QueryParam("email_locale") String emailLocale,
         @QueryParam("async") @DefaultValue("false") boolean async,
         @QueryParam("entitle_date") String entitleDateStr,
-        @QueryParam("from_pool") List<String> fromPools) throws JobException {
+        @QueryParam("from_pool") List<String> fromPools) {
+
+        Callable<Response> task = () -> this.bind(consumerUuid, poolIdString, productIds, quantity, email,
+            emailLocale, async, entitleDateStr, fromPools);
+
+        // Binds requested asynchronously merely queue a job, so they are not worth handing off
+        if (async) {
+            this.asyncRequestExecutor.executeInline(asyncResponse, task);
+        }
+        else {
+            this.asyncRequestExecutor.execute(AsyncRequestExecutor.ENDPOINT_BIND, asyncResponse, task);
+        }
+    }
+
+    /**
+     * Binds entitlements to the specified consumer on the current thread. See
+     * {@link #bind(AsyncResponse, String, String, String[], Integer, String, String, boolean, String,
+     * List)} for a description of the parameters.
+     *
+     * @return
+     *  a response containing the bound entitlements, or the status of the job binding them
+     */
+    @SuppressWarnings("checkstyle:indentation")
+    public Response bind(String consumerUuid, String poolIdString, String[] productIds, Integer quantity,
+        String email, String emailLocale, boolean async, String entitleDateStr, List<String> fromPools)
+        throws JobException {
+
         /* NOTE: This method should NEVER be provided with a POST body.
            While technically that change would be backwards compatible,
            there are older clients which erroneously provide an empty string
@@ -2180,6 +2418,7 @@ public class ConsumerResource {
     @Consumes(MediaType.APPLICATION_JSON)
     @Produces(MediaType.APPLICATION_JSON)
     @Path("/{consumer_uuid}/entitlements/dry-run")
+    @RequestCost(RequestCost.Level.HIGH)
     public List<PoolQuantityDTO> dryBind(
         @PathParam("consumer_uuid") @Verify(Consumer.class) String consumerUuid,
         @QueryParam("service_level") String serviceLevel) {
@@ -2403,6 +2642,7 @@ public class ConsumerResource {
     @Consumes(MediaType.WILDCARD)
     @Path("/{consumer_uuid}/certificates")
     @UpdateConsumerCheckIn
+    @RequestCost(RequestCost.Level.HIGH)
     public void regenerateEntitlementCertificates(
         @PathParam("consumer_uuid") @Verify(Consumer.class) String consumerUuid,
         @QueryParam("entitlement") String entitlementId,
@@ -2424,6 +2664,7 @@ public class ConsumerResource {
      * Retrieves a compressed file representation of a Consumer (manifest).
      *
      * @deprecated use GET /consumers/:consumer_uuid/export/async
+     * @param asyncResponse
      * @param response
      * @param consumerUuid
      * @param cdnLabel
@@ -2437,11 +2678,13 @@ public class ConsumerResource {
         value = "Consumer Export (manifest)",
         response = File.class)
     @ApiResponses({ @ApiResponse(code = 403, message = ""), @ApiResponse(code = 500, message = ""),
-        @ApiResponse(code = 404, message = "") })
+        @ApiResponse(code = 404, message = ""), @ApiResponse(code = 503, message = "") })
     @Produces("application/zip")
     @GET
     @Path("{consumer_uuid}/export")
-    public File exportData(
+    @RequestCost(RequestCost.Level.QUEUED)
+    public void exportData(
+        @Suspended AsyncResponse asyncResponse,
         @Context HttpServletResponse response,
         @PathParam("consumer_uuid") @Verify(Consumer.class) String consumerUuid,
         @QueryParam("cdn_label") String cdnLabel,
@@ -2452,6 +2695,24 @@ public class ConsumerResource {
         required = false, example = "ext=version:1.2.3&ext=extension_key:EXT1")
         List<KeyValueParameter> extensionArgs) {
 
+        this.asyncRequestExecutor.execute(AsyncRequestExecutor.ENDPOINT_EXPORT, asyncResponse,
+            () -> this.exportData(response, consumerUuid, cdnLabel, webAppPrefix, apiUrl, extensionArgs));
+    }
+
+    /**
+     * Generates a compressed file representation of a Consumer (manifest) on the current thread.
+     *
+     * @param response
+     * @param consumerUuid
+     * @param cdnLabel
+     * @param webAppPrefix
+     * @param apiUrl
+     * @param extensionArgs
+     * @return the generated file archive.
+     */
+    public File exportData(HttpServletResponse response, String consumerUuid, String cdnLabel,
+        String webAppPrefix, String apiUrl, List<KeyValueParameter> extensionArgs) {
+
         Consumer consumer = consumerCurator.verifyAndLookupConsumer(consumerUuid);
         ConsumerType ctype = this.consumerTypeCurator.getConsumerType(consumer);
 
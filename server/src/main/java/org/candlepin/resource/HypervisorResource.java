@@ -45,6 +45,7 @@ import org.candlepin.model.Owner;
 import org.candlepin.model.OwnerCurator;
 import org.candlepin.model.VirtConsumerMap;
 import org.candlepin.resource.util.GuestMigration;
+import org.candlepin.resteasy.RequestCost;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -148,6 +149,7 @@ public class HypervisorResource {
     @Transactional
     @UpdateConsumerCheckIn
     @SuppressWarnings("checkstyle:indentation")
+    @RequestCost(RequestCost.Level.HIGH)
     public HypervisorUpdateResultDTO hypervisorUpdate(
         Map<String, List<GuestIdDTO>> hostGuestDTOMap, @Context Principal principal,
         @QueryParam("owner") @Verify(value = Owner.class,
@@ -46,6 +46,7 @@ import org.candlepin.controller.ContentAccessManager.ContentAccessMode;
 import org.candlepin.controller.ManifestManager;
 import org.candlepin.controller.OwnerManager;
 import org.candlepin.controller.PoolManager;
+import org.candlepin.dto.MemoizingModelTranslator;
 import org.candlepin.dto.ModelTranslator;
 import org.candlepin.dto.api.v1.ActivationKeyDTO;
 import org.candlepin.dto.api.v1.AsyncJobStatusDTO;
@@ -97,7 +98,9 @@ import org.candlepin.resource.util.CalculatedAttributesUtil;
 import org.candlepin.resource.util.ConsumerTypeValidator;
 import org.candlepin.resource.util.EntitlementFinderUtil;
 import org.candlepin.resource.util.ResolverUtil;
+import org.candlepin.resteasy.AsyncRequestExecutor;
 import org.candlepin.resteasy.DateFormat;
+import org.candlepin.resteasy.RequestCost;
 import org.candlepin.resteasy.parameter.KeyValueParameter;
 import org.candlepin.service.OwnerServiceAdapter;
 import org.candlepin.sync.ConflictOverrides;
@@ -134,7 +137,6 @@ import org.xnap.commons.i18n.I18n;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
@@ -148,6 +150,7 @@ import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 import javax.persistence.PersistenceException;
 import javax.ws.rs.Consumes;
@@ -160,6 +163,8 @@ import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.GenericType;
 import javax.ws.rs.core.MediaType;
@@ -206,6 +211,7 @@ public class OwnerResource {
     private OwnerProductCurator ownerProductCurator;
     private ModelTranslator translator;
     private JobManager jobManager;
+    private AsyncRequestExecutor asyncRequestExecutor;
 
     @Inject
     public OwnerResource(OwnerCurator ownerCurator,
@@ -235,7 +241,8 @@ public class OwnerResource {
         ConsumerTypeValidator consumerTypeValidator,
         OwnerProductCurator ownerProductCurator,
         ModelTranslator translator,
-        JobManager jobManager) {
+        JobManager jobManager,
+        AsyncRequestExecutor asyncRequestExecutor) {
 
         this.ownerCurator = ownerCurator;
         this.ownerInfoCurator = ownerInfoCurator;
@@ -265,6 +272,7 @@ public class OwnerResource {
         this.ownerProductCurator = ownerProductCurator;
         this.translator = translator;
         this.jobManager = jobManager;
+        this.asyncRequestExecutor = asyncRequestExecutor;
     }
 
     /**
@@ -1147,12 +1155,11 @@ public class OwnerResource {
         // Store the page for the LinkHeaderPostInterceptor
         ResteasyContext.pushContext(Page.class, entitlementsPage);
 
-        List<EntitlementDTO> entitlementDTOs = new ArrayList<>();
-        for (Entitlement entitlement : entitlementsPage.getPageData()) {
-            entitlementDTOs.add(this.translator.translate(entitlement, EntitlementDTO.class));
-        }
-
-        return entitlementDTOs;
+        // Entitlements commonly share their pool and consumer, which only need to be translated once
+        return entitlementsPage.getPageData().stream()
+            .map(new MemoizingModelTranslator(this.translator)
+                .getStreamMapper(Entitlement.class, EntitlementDTO.class))
+            .collect(Collectors.toList());
     }
 
     /**
@@ -1475,7 +1482,10 @@ public class OwnerResource {
     @Produces(MediaType.APPLICATION_JSON)
     @Path("{owner_key}/pools")
     @SuppressWarnings("checkstyle:indentation")
-    @ApiOperation(notes = "Retrieves a list of Pools for an Owner", value = "List Pools")
+    @ApiOperation(notes = "Retrieves a list of Pools for an Owner. When paging the pools available " +
+        "to a consumer or activation key, only the pools up to the page after the requested page are " +
+        "checked against the rules, so the X-total-count header is an upper bound of the number of " +
+        "available pools, rather than an exact count.", value = "List Pools")
     @ApiResponses({
         @ApiResponse(code = 404, message = "Owner not found"),
         @ApiResponse(code = 400, message = "Invalid request")
@@ -1582,12 +1592,10 @@ public class OwnerResource {
         // Store the page for the LinkHeaderResponseFilter
         ResteasyContext.pushContext(Page.class, page);
 
-        List<PoolDTO> poolDTOs = new ArrayList<>();
-        for (Pool pool : poolList) {
-            poolDTOs.add(translator.translate(pool, PoolDTO.class));
-        }
-
-        return poolDTOs;
+        // Pools commonly share their owner, which only needs to be translated once
+        return poolList.stream()
+            .map(new MemoizingModelTranslator(this.translator).getStreamMapper(Pool.class, PoolDTO.class))
+            .collect(Collectors.toList());
     }
 
     /**
@@ -1947,6 +1955,7 @@ public class OwnerResource {
      * @httpcode 500
      * @httpcode 200
      * @httpcode 409
+     * @httpcode 503
      */
     @POST
     @Path("{owner_key}/imports")
@@ -1958,13 +1967,27 @@ public class OwnerResource {
         "assigned to the distributor who generated the manifest.", value = "Import Manifest")
     @ApiResponses({ @ApiResponse(code = 400, message = ""),
         @ApiResponse(code = 404, message = "Owner not found"), @ApiResponse(code = 500, message = ""),
-        @ApiResponse(code = 409, message = "") })
+        @ApiResponse(code = 409, message = ""), @ApiResponse(code = 503, message = "") })
     @Deprecated
-    public ImportRecordDTO importManifest(
+    @RequestCost(RequestCost.Level.QUEUED)
+    public void importManifest(
+        @Suspended AsyncResponse asyncResponse,
         @PathParam("owner_key") @Verify(Owner.class) String ownerKey,
         @QueryParam("force") String[] overrideConflicts,
         MultipartInput input) {
 
+        this.asyncRequestExecutor.execute(AsyncRequestExecutor.ENDPOINT_IMPORT, asyncResponse,
+            () -> this.importManifest(ownerKey, overrideConflicts, input));
+    }
+
+    /**
+     * Imports a manifest zip file for the given organization on the current thread.
+     *
+     * @return a ImportRecord object if the import is successful.
+     */
+    public ImportRecordDTO importManifest(String ownerKey, String[] overrideConflicts,
+        MultipartInput input) {
+
         ConflictOverrides overrides = processConflictOverrideParams(overrideConflicts);
         UploadMetadata fileData = new UploadMetadata();
         Owner owner = findOwnerByKey(ownerKey);
@@ -25,11 +25,13 @@ import org.candlepin.common.exceptions.NotFoundException;
 import org.candlepin.common.paging.Page;
 import org.candlepin.common.paging.PageRequest;
 import org.candlepin.controller.PoolManager;
+import org.candlepin.controller.PoolQuantityEscrow;
 import org.candlepin.dto.ModelTranslator;
 import org.candlepin.dto.api.v1.CdnDTO;
 import org.candlepin.dto.api.v1.CertificateDTO;
 import org.candlepin.dto.api.v1.EntitlementDTO;
 import org.candlepin.dto.api.v1.PoolDTO;
+import org.candlepin.hibernate.ReadOnly;
 import org.candlepin.model.Consumer;
 import org.candlepin.model.ConsumerCurator;
 import org.candlepin.model.Entitlement;
@@ -89,11 +91,12 @@ public class PoolResource {
     private PoolManager poolManager;
     private CalculatedAttributesUtil calculatedAttributesUtil;
     private ModelTranslator translator;
+    private PoolQuantityEscrow poolQuantityEscrow;
 
     @Inject
     public PoolResource(ConsumerCurator consumerCurator, OwnerCurator ownerCurator,
         I18n i18n, PoolManager poolManager, CalculatedAttributesUtil calculatedAttributesUtil,
-        ModelTranslator translator) {
+        ModelTranslator translator, PoolQuantityEscrow poolQuantityEscrow) {
 
         this.consumerCurator = consumerCurator;
         this.ownerCurator = ownerCurator;
@@ -101,6 +104,7 @@ public class PoolResource {
         this.poolManager = poolManager;
         this.calculatedAttributesUtil = calculatedAttributesUtil;
         this.translator = translator;
+        this.poolQuantityEscrow = poolQuantityEscrow;
     }
 
     /**
@@ -108,7 +112,10 @@ public class PoolResource {
      * @return List of pools
      */
     @ApiOperation(
-        notes = "Retrieves a list of Pools @deprecated Use the method on /owners",
+        notes = "Retrieves a list of Pools. When paging the pools available to a consumer, only the " +
+            "pools up to the page after the requested page are checked against the rules, so the " +
+            "X-total-count header is an upper bound of the number of available pools, rather than " +
+            "an exact count. @deprecated Use the method on /owners",
         value = "")
     @ApiResponses({
         @ApiResponse(code = 400,
@@ -121,6 +128,7 @@ public class PoolResource {
     @Wrapped(element = "pools")
     @Deprecated
     @SecurityHole
+    @ReadOnly
     public List<PoolDTO> list(@QueryParam("owner") String ownerId,
         @QueryParam("consumer") String consumerUuid,
         @QueryParam("product") String productId,
@@ -209,6 +217,7 @@ public class PoolResource {
     @GET
     @Path("/{pool_id}")
     @Produces(MediaType.APPLICATION_JSON)
+    @ReadOnly
     public PoolDTO getPool(@PathParam("pool_id") @Verify(Pool.class) String id,
         @QueryParam("consumer") String consumerUuid,
         @ApiParam("Uses ISO 8601 format") @QueryParam("activeon") String activeOn,
@@ -239,6 +248,7 @@ public class PoolResource {
                 calculatedAttributesUtil.buildCalculatedAttributes(toReturn, activeOnDate));
 
             calculatedAttributesUtil.setQuantityAttributes(toReturn, c, activeOnDate);
+            this.poolQuantityEscrow.annotate(Collections.singleton(toReturn));
 
             return translator.translate(toReturn, PoolDTO.class);
         }
@@ -30,6 +30,7 @@ import org.candlepin.guice.CandlepinCapabilities;
 import org.candlepin.model.Rules.RulesSourceEnum;
 import org.candlepin.model.RulesCurator;
 import org.candlepin.policy.js.JsRunnerProvider;
+import org.candlepin.resteasy.RequestCost;
 
 import com.google.inject.Inject;
 
@@ -57,6 +58,7 @@ import javax.ws.rs.core.MediaType;
  */
 @Path("/status")
 @Api("status")
+@RequestCost(RequestCost.Level.EXEMPT)
 public class StatusResource {
     private static Logger log = LoggerFactory.getLogger(StatusResource.class);
 
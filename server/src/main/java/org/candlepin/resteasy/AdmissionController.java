@@ -0,0 +1,280 @@
+/**
+ * Copyright (c) 2009 - 2020 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.resteasy;
+
+import org.candlepin.common.config.Configuration;
+import org.candlepin.config.ConfigProperties;
+
+import com.google.inject.Inject;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.inject.Singleton;
+
+
+
+/**
+ * The AdmissionController limits the number of requests of each cost class executed concurrently,
+ * adapting each limit to the observed latency of its requests.
+ * <p></p>
+ * Limits follow an additive-increase, multiplicative-decrease scheme: each request completing
+ * while the smoothed latency of its class is within the latency target of the class raises the
+ * limit by the reciprocal of the limit, or by roughly one request per limit's worth of requests.
+ * Once the smoothed latency exceeds the target, the limit is decreased by a tenth, at most once per
+ * {@value #BACKOFF_INTERVAL} milliseconds, down to the configured minimum.
+ * <p></p>
+ * Requests of a cheaper class have priority over more expensive ones: whenever a class exceeds
+ * its latency target, the limits of all of the more expensive classes are decreased along with its
+ * own, so expensive requests are shed first. Requests beyond the limit of their class are
+ * rejected, to be retried after the configured number of seconds.
+ * <p></p>
+ * The {@link RequestCost.Level#QUEUED} class is the most expensive of all. Its requests are
+ * completed by the {@link AsyncRequestExecutor}, and its limit follows the time they wait in the
+ * executor's queue instead of their latency.
+ */
+@Singleton
+public class AdmissionController {
+    private static Logger log = LoggerFactory.getLogger(AdmissionController.class);
+
+    // The concurrency limit of a class never decreases below this number of requests
+    public static final String CFG_MIN_LIMIT = "min_limit";
+
+    // The concurrency limit of a class never increases above this number of requests; limits start here
+    public static final String CFG_MAX_LIMIT = "max_limit";
+
+    // The smoothed latency, in milliseconds, above which the limits are decreased
+    public static final String CFG_LATENCY_TARGET = "latency_target";
+
+    // The number of seconds rejected clients are asked to wait before retrying
+    public static final String CFG_RETRY_AFTER = "retry_after";
+
+    /** The minimum time, in milliseconds, between two decreases of the same limit */
+    public static final long BACKOFF_INTERVAL = 1000;
+
+    private static final double BACKOFF_RATIO = 0.9;
+
+    // The weight of each completed request in the smoothed latency of its class
+    private static final double LATENCY_SMOOTHING = 0.2;
+
+    /**
+     * The adaptive limit of a single cost class
+     */
+    private static class Limit {
+        private final RequestCost.Level level;
+        private final int minLimit;
+        private final int maxLimit;
+        private final long latencyTarget;
+        private final int retryAfter;
+
+        private double limit;
+        private int inflight;
+        private double latency;
+        private long lastBackoff;
+        private long admitted;
+        private long rejected;
+
+        public Limit(RequestCost.Level level, int minLimit, int maxLimit, long latencyTarget,
+            int retryAfter) {
+
+            this.level = level;
+            this.minLimit = minLimit;
+            this.maxLimit = maxLimit;
+            this.latencyTarget = latencyTarget;
+            this.retryAfter = retryAfter;
+
+            this.limit = maxLimit;
+
+            // The first backoff is never delayed
+            this.lastBackoff = -BACKOFF_INTERVAL;
+        }
+
+        public synchronized boolean tryAcquire() {
+            if (this.inflight >= (int) this.limit) {
+                ++this.rejected;
+                return false;
+            }
+
+            ++this.inflight;
+            ++this.admitted;
+            return true;
+        }
+
+        /**
+         * @return
+         *  true if the smoothed latency of this class exceeds its target; false otherwise
+         */
+        public synchronized boolean release(long latency) {
+            this.inflight = Math.max(0, this.inflight - 1);
+            this.latency = this.latency > 0 ?
+                this.latency + LATENCY_SMOOTHING * (latency - this.latency) :
+                latency;
+
+            if (this.latency > this.latencyTarget) {
+                return true;
+            }
+
+            this.limit = Math.min(this.maxLimit, this.limit + 1.0 / this.limit);
+            return false;
+        }
+
+        public synchronized void backoff(long now) {
+            if (now - this.lastBackoff >= BACKOFF_INTERVAL && this.limit > this.minLimit) {
+                this.limit = Math.max(this.minLimit, this.limit * BACKOFF_RATIO);
+                this.lastBackoff = now;
+
+                log.debug("Decreased the limit of {} cost requests to {}", this.level, (int) this.limit);
+            }
+        }
+
+        public synchronized AdmissionStats getStats() {
+            return new AdmissionStats(this.level, (int) this.limit, this.minLimit, this.maxLimit,
+                this.inflight, this.admitted, this.rejected, this.latencyTarget, Math.round(this.latency));
+        }
+    }
+
+    private final Map<RequestCost.Level, Limit> limits;
+
+    @Inject
+    public AdmissionController(Configuration config) {
+        if (config == null) {
+            throw new IllegalArgumentException("config is null");
+        }
+
+        this.limits = new EnumMap<>(RequestCost.Level.class);
+
+        for (RequestCost.Level level : RequestCost.Level.values()) {
+            if (level == RequestCost.Level.EXEMPT) {
+                continue;
+            }
+
+            String name = getConfigName(level);
+            int minLimit = Math.max(1, config.getInt(ConfigProperties.admissionConfig(name, CFG_MIN_LIMIT)));
+            int maxLimit = Math.max(minLimit,
+                config.getInt(ConfigProperties.admissionConfig(name, CFG_MAX_LIMIT)));
+            long latencyTarget = config.getLong(ConfigProperties.admissionConfig(name, CFG_LATENCY_TARGET));
+            int retryAfter = config.getInt(ConfigProperties.admissionConfig(name, CFG_RETRY_AFTER));
+
+            this.limits.put(level, new Limit(level, minLimit, maxLimit, latencyTarget, retryAfter));
+        }
+    }
+
+    /**
+     * Fetches the name under which the given class is configured.
+     *
+     * @param level
+     *  the cost class for which to fetch the configuration name
+     *
+     * @return
+     *  the configuration name of the cost class
+     */
+    public static String getConfigName(RequestCost.Level level) {
+        return level.name().toLowerCase();
+    }
+
+    /**
+     * Attempts to admit a request of the given cost class. Every admitted request must be released
+     * once it completes.
+     *
+     * @param level
+     *  the cost class of the request
+     *
+     * @return
+     *  true if the request is admitted; false if it is to be rejected
+     */
+    public boolean tryAcquire(RequestCost.Level level) {
+        Limit limit = this.limits.get(level);
+        return limit == null || limit.tryAcquire();
+    }
+
+    /**
+     * Releases a completed request of the given cost class, adjusting the limits to its latency.
+     *
+     * @param level
+     *  the cost class of the request
+     *
+     * @param start
+     *  the time at which the request was admitted, in milliseconds
+     *
+     * @param end
+     *  the time at which the request completed, in milliseconds
+     */
+    public void release(RequestCost.Level level, long start, long end) {
+        this.releaseWithLatency(level, end - start, end);
+    }
+
+    /**
+     * Releases a completed request of the given cost class, adjusting the limits to the given
+     * latency. Intended for classes whose limits follow a latency other than that of the request
+     * as a whole, such as the time spent waiting in a queue.
+     *
+     * @param level
+     *  the cost class of the request
+     *
+     * @param latency
+     *  the latency to which the limits are adjusted, in milliseconds
+     *
+     * @param now
+     *  the time at which the request completed, in milliseconds
+     */
+    public void releaseWithLatency(RequestCost.Level level, long latency, long now) {
+        Limit limit = this.limits.get(level);
+
+        if (limit != null && limit.release(latency)) {
+            // Shed the requests of this class and of every more expensive one
+            for (Map.Entry<RequestCost.Level, Limit> entry : this.limits.entrySet()) {
+                if (entry.getKey().compareTo(level) >= 0) {
+                    entry.getValue().backoff(now);
+                }
+            }
+        }
+    }
+
+    /**
+     * Fetches the number of seconds rejected requests of the given cost class should wait before
+     * being retried.
+     *
+     * @param level
+     *  the cost class of the request
+     *
+     * @return
+     *  the number of seconds to wait before retrying a request
+     */
+    public int getRetryAfter(RequestCost.Level level) {
+        Limit limit = this.limits.get(level);
+        return limit != null ? limit.retryAfter : 0;
+    }
+
+    /**
+     * Fetches the current admission control state of each cost class, in order of increasing cost.
+     *
+     * @return
+     *  a list of the admission statistics of each cost class
+     */
+    public List<AdmissionStats> getStats() {
+        List<AdmissionStats> stats = new ArrayList<>(this.limits.size());
+
+        for (Limit limit : this.limits.values()) {
+            stats.add(limit.getStats());
+        }
+
+        return stats;
+    }
+}
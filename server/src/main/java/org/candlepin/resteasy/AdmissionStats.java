@@ -0,0 +1,114 @@
+/**
+ * Copyright (c) 2009 - 2020 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.resteasy;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlRootElement;
+
+
+
+/**
+ * The AdmissionStats class is a snapshot of the admission control state of a single request cost
+ * class, as maintained by the {@link AdmissionController}. Latencies are in milliseconds.
+ */
+@XmlRootElement
+@XmlAccessorType(XmlAccessType.PROPERTY)
+public class AdmissionStats {
+
+    private final RequestCost.Level level;
+    private final int limit;
+    private final int minLimit;
+    private final int maxLimit;
+    private final int inflight;
+    private final long admitted;
+    private final long rejected;
+    private final long latencyTarget;
+    private final long latency;
+
+    public AdmissionStats(RequestCost.Level level, int limit, int minLimit, int maxLimit, int inflight,
+        long admitted, long rejected, long latencyTarget, long latency) {
+
+        this.level = level;
+        this.limit = limit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.inflight = inflight;
+        this.admitted = admitted;
+        this.rejected = rejected;
+        this.latencyTarget = latencyTarget;
+        this.latency = latency;
+    }
+
+    public RequestCost.Level getLevel() {
+        return this.level;
+    }
+
+    /**
+     * @return
+     *  the number of requests of this class currently admitted concurrently
+     */
+    public int getLimit() {
+        return this.limit;
+    }
+
+    public int getMinLimit() {
+        return this.minLimit;
+    }
+
+    public int getMaxLimit() {
+        return this.maxLimit;
+    }
+
+    /**
+     * @return
+     *  the number of requests of this class currently executing
+     */
+    public int getInflight() {
+        return this.inflight;
+    }
+
+    /**
+     * @return
+     *  the number of requests of this class admitted so far
+     */
+    public long getAdmitted() {
+        return this.admitted;
+    }
+
+    /**
+     * @return
+     *  the number of requests of this class rejected so far
+     */
+    public long getRejected() {
+        return this.rejected;
+    }
+
+    /**
+     * @return
+     *  the latency above which the limit of this class is decreased
+     */
+    public long getLatencyTarget() {
+        return this.latencyTarget;
+    }
+
+    /**
+     * @return
+     *  the smoothed latency of recently completed requests of this class
+     */
+    public long getLatency() {
+        return this.latency;
+    }
+}
@@ -0,0 +1,406 @@
+/**
+ * Copyright (c) 2009 - 2020 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.resteasy;
+
+import org.candlepin.audit.EventSink;
+import org.candlepin.common.config.Configuration;
+import org.candlepin.common.exceptions.ServiceUnavailableException;
+import org.candlepin.config.ConfigProperties;
+import org.candlepin.hibernate.DatabaseRouter;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import com.google.inject.Provider;
+import com.google.inject.persist.UnitOfWork;
+
+import org.jboss.resteasy.core.ResteasyContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+import org.xnap.commons.i18n.I18n;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Singleton;
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.core.Response;
+
+
+
+/**
+ * The AsyncRequestExecutor completes suspended requests to long-running endpoints on threads of
+ * its own, so that the servlet container's request threads are released while such requests
+ * execute.
+ * <p></p>
+ * Each endpoint has a dedicated pool of threads, limiting the number of its requests executed
+ * concurrently, and a bounded queue of requests waiting for a thread. Requests arriving while the
+ * queue is full are rejected as unavailable. An endpoint without any threads executes its requests
+ * on the thread which received them.
+ * <p></p>
+ * A request is executed in the environment the servlet filters set up for it: the RESTEasy context
+ * data of the request, including its principal and request scope, is carried over to the executing
+ * thread, which begins a unit of work of its own, routed to the primary database. The events
+ * queued by the request are sent once it completes successfully, and rolled back otherwise, in
+ * place of the {@link org.candlepin.servlet.filter.EventFilter}, which does not handle the events
+ * of requests completed here.
+ */
+@Singleton
+public class AsyncRequestExecutor {
+    private static Logger log = LoggerFactory.getLogger(AsyncRequestExecutor.class);
+
+    /**
+     * The request attribute set on requests completed by this executor; its presence indicates the
+     * events of the request are sent or rolled back by the executor rather than by the event filter
+     */
+    public static final String EVENTS_DEFERRED_ATTRIBUTE = AsyncRequestExecutor.class.getName() +
+        ".events_deferred";
+
+    /**
+     * The request attribute holding the time, in milliseconds, a request completed by this executor
+     * waited for a thread; for rejected requests, the time the oldest request still in the queue
+     * has been waiting
+     */
+    public static final String QUEUE_WAIT_ATTRIBUTE = AsyncRequestExecutor.class.getName() +
+        ".queue_wait";
+
+    public static final String ENDPOINT_BIND = "bind";
+    public static final String ENDPOINT_EXPORT = "export";
+    public static final String ENDPOINT_IMPORT = "import";
+
+    public static final String[] ENDPOINTS = new String[] {
+        ENDPOINT_BIND,
+        ENDPOINT_EXPORT,
+        ENDPOINT_IMPORT
+    };
+
+    // The maximum number of requests to an endpoint executed concurrently
+    public static final String CFG_MAX_CONCURRENT = "max_concurrent";
+
+    // The maximum number of requests to an endpoint waiting for a thread
+    public static final String CFG_MAX_QUEUED = "max_queued";
+
+    /**
+     * A request waiting in the queue of an endpoint, along with the time at which it was queued
+     */
+    private static class QueuedRequest implements Runnable {
+        private final long queuedAt;
+        private final Runnable request;
+
+        public QueuedRequest(long queuedAt, Runnable request) {
+            this.queuedAt = queuedAt;
+            this.request = request;
+        }
+
+        @Override
+        public void run() {
+            this.request.run();
+        }
+    }
+
+    private final Injector injector;
+    private final UnitOfWork unitOfWork;
+    private final Provider<I18n> i18nProvider;
+
+    private final Map<String, ThreadPoolExecutor> executors;
+    private final Map<String, AsyncRequestStats> stats;
+
+    @Inject
+    public AsyncRequestExecutor(Configuration config, Injector injector, UnitOfWork unitOfWork,
+        Provider<I18n> i18nProvider) {
+
+        if (config == null) {
+            throw new IllegalArgumentException("config is null");
+        }
+
+        this.injector = injector;
+        this.unitOfWork = unitOfWork;
+        this.i18nProvider = i18nProvider;
+
+        this.executors = new HashMap<>();
+        this.stats = new LinkedHashMap<>();
+
+        for (String endpoint : ENDPOINTS) {
+            int maxConcurrent = Math.max(0,
+                config.getInt(ConfigProperties.asyncRequestConfig(endpoint, CFG_MAX_CONCURRENT)));
+            int maxQueued = Math.max(0,
+                config.getInt(ConfigProperties.asyncRequestConfig(endpoint, CFG_MAX_QUEUED)));
+
+            if (maxConcurrent > 0) {
+                this.executors.put(endpoint, this.createExecutor(endpoint, maxConcurrent, maxQueued));
+            }
+
+            this.stats.put(endpoint, new AsyncRequestStats(endpoint, maxConcurrent, maxQueued));
+        }
+    }
+
+    private ThreadPoolExecutor createExecutor(String endpoint, int maxConcurrent, int maxQueued) {
+        BlockingQueue<Runnable> queue = maxQueued > 0 ?
+            new ArrayBlockingQueue<>(maxQueued) :
+            new SynchronousQueue<>();
+
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(maxConcurrent, maxConcurrent, 60,
+            TimeUnit.SECONDS, queue, new ThreadFactoryBuilder()
+                .setNameFormat("async-request-" + endpoint + "-%d")
+                .setDaemon(true)
+                .build());
+
+        // Threads are only kept while there are requests to execute
+        executor.allowCoreThreadTimeOut(true);
+
+        return executor;
+    }
+
+    /**
+     * Completes the given suspended request by executing the specified task on a thread of the
+     * given endpoint, and resuming the request with the task's result, or with the exception it
+     * throws. If the endpoint has no capacity left, the request is resumed with a
+     * {@link ServiceUnavailableException} instead.
+     * <p></p>
+     * This method must be called on the thread which received the request, while the request is
+     * still being processed by the servlet filters.
+     *
+     * @param endpoint
+     *  the endpoint to which the request was made; one of the ENDPOINT constants
+     *
+     * @param asyncResponse
+     *  the suspended response of the request
+     *
+     * @param task
+     *  the task which handles the request
+     *
+     * @throws IllegalArgumentException
+     *  if the endpoint is unknown, or either the response or the task is null
+     */
+    public void execute(String endpoint, AsyncResponse asyncResponse, Callable<?> task) {
+        AsyncRequestStats endpointStats = this.stats.get(endpoint);
+        if (endpointStats == null) {
+            throw new IllegalArgumentException("unknown endpoint: " + endpoint);
+        }
+
+        if (asyncResponse == null) {
+            throw new IllegalArgumentException("asyncResponse is null");
+        }
+
+        if (task == null) {
+            throw new IllegalArgumentException("task is null");
+        }
+
+        ThreadPoolExecutor executor = this.executors.get(endpoint);
+        if (executor == null) {
+            endpointStats.recordQueued();
+            endpointStats.recordStarted(0);
+            this.complete(endpointStats, asyncResponse, task);
+            return;
+        }
+
+        // Both the context and the request scope of the request are left by this thread once the
+        // request is suspended, so the executing thread is given a copy of the context, and the
+        // events of the request are fetched while still in its scope
+        Map<Class<?>, Object> context = new HashMap<>(ResteasyContext.getContextDataMap());
+        Map<String, String> mdc = MDC.getCopyOfContextMap();
+        EventSink sink = this.injector.getInstance(EventSink.class);
+
+        HttpServletRequest request = ResteasyContext.getContextData(HttpServletRequest.class);
+        if (request != null) {
+            request.setAttribute(EVENTS_DEFERRED_ATTRIBUTE, Boolean.TRUE);
+        }
+
+        long queuedAt = System.currentTimeMillis();
+        endpointStats.recordQueued();
+
+        try {
+            executor.execute(new QueuedRequest(queuedAt, () -> {
+                long wait = System.currentTimeMillis() - queuedAt;
+                endpointStats.recordStarted(wait);
+
+                // Recorded before the request is resumed, for the admission control filter
+                if (request != null) {
+                    request.setAttribute(QUEUE_WAIT_ATTRIBUTE, wait);
+                }
+
+                this.executeRequest(endpointStats, asyncResponse, task, context, mdc, sink);
+            }));
+        }
+        catch (RejectedExecutionException e) {
+            endpointStats.recordRejected();
+
+            if (request != null) {
+                Runnable eldest = executor.getQueue().peek();
+                long wait = eldest instanceof QueuedRequest ?
+                    System.currentTimeMillis() - ((QueuedRequest) eldest).queuedAt :
+                    0;
+
+                request.removeAttribute(EVENTS_DEFERRED_ATTRIBUTE);
+                request.setAttribute(QUEUE_WAIT_ATTRIBUTE, wait);
+            }
+
+            log.warn("Rejecting request to endpoint \"{}\"; {} requests are already waiting",
+                endpoint, executor.getQueue().size());
+
+            asyncResponse.resume(new ServiceUnavailableException(this.i18nProvider.get()
+                .tr("The server is busy processing similar requests; please try again later.")));
+        }
+    }
+
+    /**
+     * Completes the given suspended request on the current thread, by executing the specified task
+     * and resuming the request with the task's result, or with the exception it throws. Intended
+     * for requests to a long-running endpoint which are cheap to handle themselves, such as those
+     * merely queueing a job; such requests are not counted in the statistics of the endpoint.
+     *
+     * @param asyncResponse
+     *  the suspended response of the request
+     *
+     * @param task
+     *  the task which handles the request
+     *
+     * @throws IllegalArgumentException
+     *  if either the response or the task is null
+     */
+    public void executeInline(AsyncResponse asyncResponse, Callable<?> task) {
+        if (asyncResponse == null) {
+            throw new IllegalArgumentException("asyncResponse is null");
+        }
+
+        if (task == null) {
+            throw new IllegalArgumentException("task is null");
+        }
+
+        try {
+            asyncResponse.resume(task.call());
+        }
+        catch (Exception e) {
+            asyncResponse.resume(e);
+        }
+    }
+
+    /**
+     * Executes a request on a thread of this executor, in an environment set up the same way as
+     * that of the thread which received the request.
+     */
+    private void executeRequest(AsyncRequestStats endpointStats, AsyncResponse asyncResponse,
+        Callable<?> task, Map<Class<?>, Object> context, Map<String, String> mdc, EventSink sink) {
+
+        if (mdc != null) {
+            MDC.setContextMap(mdc);
+        }
+
+        ResteasyContext.pushContextDataMap(context);
+        DatabaseRouter.getInstance().reset();
+        this.unitOfWork.begin();
+
+        try {
+            boolean successful = false;
+
+            try {
+                successful = this.complete(endpointStats, asyncResponse, task);
+            }
+            finally {
+                if (successful) {
+                    sink.sendEvents();
+                }
+                else {
+                    sink.rollback();
+                }
+            }
+        }
+        finally {
+            this.unitOfWork.end();
+            DatabaseRouter.getInstance().reset();
+            ResteasyContext.removeContextDataLevel();
+            MDC.clear();
+        }
+    }
+
+    /**
+     * Runs the task of a request on the current thread and resumes the request with its outcome.
+     *
+     * @return
+     *  true if the task completed with a successful response; false otherwise
+     */
+    private boolean complete(AsyncRequestStats endpointStats, AsyncResponse asyncResponse,
+        Callable<?> task) {
+
+        long start = System.currentTimeMillis();
+        boolean successful = false;
+
+        try {
+            Object result = task.call();
+
+            successful = !(result instanceof Response) ||
+                ((Response) result).getStatusInfo().getFamily() == Response.Status.Family.SUCCESSFUL;
+
+            endpointStats.recordFinished(System.currentTimeMillis() - start, successful);
+            asyncResponse.resume(result);
+        }
+        catch (Exception e) {
+            endpointStats.recordFinished(System.currentTimeMillis() - start, false);
+            asyncResponse.resume(e);
+        }
+
+        return successful;
+    }
+
+    /**
+     * Fetches the statistics of the requests to each endpoint.
+     *
+     * @return
+     *  a list of the request statistics of each endpoint
+     */
+    public List<AsyncRequestStats> getStats() {
+        return new ArrayList<>(this.stats.values());
+    }
+
+    /**
+     * Fetches the statistics of the requests to the given endpoint.
+     *
+     * @param endpoint
+     *  the endpoint for which to fetch statistics
+     *
+     * @return
+     *  the request statistics of the endpoint, or null if the endpoint is unknown
+     */
+    public AsyncRequestStats getStats(String endpoint) {
+        return this.stats.get(endpoint);
+    }
+
+    /**
+     * Stops all of the threads of this executor. Requests still waiting for a thread are discarded,
+     * and are left to be closed along with the connections of the servlet container.
+     */
+    public void shutdown() {
+        for (Map.Entry<String, ThreadPoolExecutor> entry : this.executors.entrySet()) {
+            List<Runnable> pending = entry.getValue().shutdownNow();
+
+            if (!pending.isEmpty()) {
+                log.warn("Discarding {} pending requests to endpoint \"{}\"", pending.size(),
+                    entry.getKey());
+            }
+        }
+    }
+}
@@ -0,0 +1,198 @@
+/**
+ * Copyright (c) 2009 - 2020 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.resteasy;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlRootElement;
+
+
+
+/**
+ * The AsyncRequestStats class tracks the requests to a single endpoint handled by the
+ * {@link AsyncRequestExecutor}: how many are waiting or running, how they ended, and how long they
+ * waited for a thread and took to execute. Times are in milliseconds.
+ */
+@XmlRootElement
+@XmlAccessorType(XmlAccessType.PROPERTY)
+public class AsyncRequestStats {
+
+    private final String endpoint;
+    private final int maxConcurrent;
+    private final int maxQueued;
+
+    private final AtomicInteger queued;
+    private final AtomicInteger active;
+
+    private final LongAdder completed;
+    private final LongAdder failed;
+    private final LongAdder rejected;
+
+    private final LongAdder queueTime;
+    private final LongAccumulator maxQueueTime;
+    private final LongAdder executionTime;
+    private final LongAccumulator maxExecutionTime;
+
+    public AsyncRequestStats(String endpoint, int maxConcurrent, int maxQueued) {
+        this.endpoint = endpoint;
+        this.maxConcurrent = maxConcurrent;
+        this.maxQueued = maxQueued;
+
+        this.queued = new AtomicInteger();
+        this.active = new AtomicInteger();
+
+        this.completed = new LongAdder();
+        this.failed = new LongAdder();
+        this.rejected = new LongAdder();
+
+        this.queueTime = new LongAdder();
+        this.maxQueueTime = new LongAccumulator(Math::max, 0);
+        this.executionTime = new LongAdder();
+        this.maxExecutionTime = new LongAccumulator(Math::max, 0);
+    }
+
+    void recordQueued() {
+        this.queued.incrementAndGet();
+    }
+
+    void recordRejected() {
+        this.queued.decrementAndGet();
+        this.rejected.increment();
+    }
+
+    void recordStarted(long queueTime) {
+        this.queued.decrementAndGet();
+        this.active.incrementAndGet();
+
+        this.queueTime.add(queueTime);
+        this.maxQueueTime.accumulate(queueTime);
+    }
+
+    void recordFinished(long executionTime, boolean successful) {
+        this.active.decrementAndGet();
+
+        if (successful) {
+            this.completed.increment();
+        }
+        else {
+            this.failed.increment();
+        }
+
+        this.executionTime.add(executionTime);
+        this.maxExecutionTime.accumulate(executionTime);
+    }
+
+    public String getEndpoint() {
+        return this.endpoint;
+    }
+
+    /**
+     * Fetches the maximum number of requests to this endpoint executed concurrently. A limit of
+     * zero indicates requests are executed on the thread which received them.
+     *
+     * @return
+     *  the concurrency limit of this endpoint
+     */
+    public int getMaxConcurrent() {
+        return this.maxConcurrent;
+    }
+
+    /**
+     * Fetches the maximum number of requests to this endpoint waiting for a thread, beyond which
+     * further requests are rejected.
+     *
+     * @return
+     *  the queue limit of this endpoint
+     */
+    public int getMaxQueued() {
+        return this.maxQueued;
+    }
+
+    /**
+     * @return
+     *  the number of requests currently waiting for a thread
+     */
+    public int getQueued() {
+        return this.queued.get();
+    }
+
+    /**
+     * @return
+     *  the number of requests currently executing
+     */
+    public int getActive() {
+        return this.active.get();
+    }
+
+    /**
+     * @return
+     *  the number of requests which completed successfully
+     */
+    public long getCompleted() {
+        return this.completed.sum();
+    }
+
+    /**
+     * @return
+     *  the number of requests which completed with an error response
+     */
+    public long getFailed() {
+        return this.failed.sum();
+    }
+
+    /**
+     * @return
+     *  the number of requests rejected because the queue of this endpoint was full
+     */
+    public long getRejected() {
+        return this.rejected.sum();
+    }
+
+    /**
+     * @return
+     *  the total time executed requests spent waiting for a thread
+     */
+    public long getQueueTime() {
+        return this.queueTime.sum();
+    }
+
+    /**
+     * @return
+     *  the longest time a request spent waiting for a thread
+     */
+    public long getMaxQueueTime() {
+        return this.maxQueueTime.get();
+    }
+
+    /**
+     * @return
+     *  the total time spent executing requests
+     */
+    public long getExecutionTime() {
+        return this.executionTime.sum();
+    }
+
+    /**
+     * @return
+     *  the longest time spent executing a single request
+     */
+    public long getMaxExecutionTime() {
+        return this.maxExecutionTime.get();
+    }
+}
@@ -0,0 +1,59 @@
+/**
+ * Copyright (c) 2009 - 2020 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.resteasy;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+
+
+/**
+ * Annotation to classify the cost of the requests to a resource method, or to every method of a
+ * resource class, for the purposes of admission control. Methods which are not annotated are
+ * considered to be of normal cost.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.METHOD, ElementType.TYPE})
+public @interface RequestCost {
+
+    /**
+     * The cost classes of requests. Under overload, requests of the most expensive class are
+     * rejected first, and cheap requests last.
+     */
+    enum Level {
+        /** Requests which are always admitted, such as those used to monitor the server */
+        EXEMPT,
+
+        /** Cheap, frequent requests, such as certificate serial polls */
+        LOW,
+
+        /** Requests of typical cost */
+        NORMAL,
+
+        /** Expensive requests, such as dry-run binds, hypervisor check-ins and certificate regeneration */
+        HIGH,
+
+        /**
+         * Requests completed by the AsyncRequestExecutor, such as binds, imports and exports. Their
+         * limit follows the time they wait in the executor's queue rather than their latency, as
+         * their execution time varies widely between endpoints.
+         */
+        QUEUED
+    }
+
+    Level value();
+}
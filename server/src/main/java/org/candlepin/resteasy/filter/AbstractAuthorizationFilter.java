@@ -32,6 +32,8 @@ import java.lang.reflect.Method;
 
 import javax.annotation.Priority;
 import javax.inject.Provider;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletRequestWrapper;
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.Priorities;
 import javax.ws.rs.container.ContainerRequestContext;
@@ -72,14 +74,18 @@ public abstract class AbstractAuthorizationFilter implements ContainerRequestFil
                 Marker m =
                     (LoggerFactory.getLogger(LoggingFilter.class).isDebugEnabled()) ?
                     duplicate : null;
-                try {
-                    TeeHttpServletRequest teeRequest = new TeeHttpServletRequest(
-                        ResteasyContext.getContextData(HttpServletRequest.class));
-                    log.debug(m, "{}", ServletLogger.logBasicRequestInfo(teeRequest));
+                HttpServletRequest request = ResteasyContext.getContextData(HttpServletRequest.class);
+                log.debug(m, "{}", ServletLogger.logBasicRequestInfo(request));
+
+                /* The request body can only be consumed once, so we can only log it if the
+                 * LoggingFilter has already captured it for us.
+                 */
+                TeeHttpServletRequest teeRequest = this.findTeeRequest(request);
+                if (teeRequest != null) {
                     log.debug(m, "{}", ServletLogger.logRequest(teeRequest));
                 }
-                catch (IOException e) {
-                    log.info("Couldn't log request information", e);
+                else {
+                    log.debug(m, "{}", ServletLogger.logHeaders(request));
                 }
             }
         }
@@ -87,6 +93,20 @@ public abstract class AbstractAuthorizationFilter implements ContainerRequestFil
 
     abstract void runFilter(ContainerRequestContext requestContext);
 
+    private TeeHttpServletRequest findTeeRequest(ServletRequest request) {
+        while (request != null) {
+            if (request instanceof TeeHttpServletRequest) {
+                return (TeeHttpServletRequest) request;
+            }
+
+            request = request instanceof ServletRequestWrapper ?
+                ((ServletRequestWrapper) request).getRequest() :
+                null;
+        }
+
+        return null;
+    }
+
     protected void denyAccess(Principal principal, Method method) {
         log.warn("Refusing principal: {} access to: {} ", principal, method.getName());
 
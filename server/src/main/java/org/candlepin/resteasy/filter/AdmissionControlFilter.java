@@ -0,0 +1,144 @@
+/**
+ * Copyright (c) 2009 - 2020 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.resteasy.filter;
+
+import org.candlepin.common.exceptions.TooManyRequestsException;
+import org.candlepin.resteasy.AdmissionController;
+import org.candlepin.resteasy.AnnotationLocator;
+import org.candlepin.resteasy.AsyncRequestExecutor;
+import org.candlepin.resteasy.RequestCost;
+
+import com.google.inject.Inject;
+
+import org.jboss.resteasy.core.ResteasyContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xnap.commons.i18n.I18n;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+
+import javax.annotation.Priority;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.container.ResourceInfo;
+import javax.ws.rs.ext.Provider;
+
+
+
+/**
+ * AdmissionControlFilter subjects each request to the {@link AdmissionController}, according to
+ * the {@link RequestCost} of the resource method invoked. Requests which are not admitted are
+ * rejected before authentication with a 429 response, asking the client to retry later. Admitted
+ * requests are released once their response is ready, including requests completed
+ * asynchronously. Requests of the {@link RequestCost.Level#QUEUED} class are released with the
+ * time they waited in the queue of the {@link AsyncRequestExecutor} as their latency. This filter
+ * is only bound when admission control is enabled.
+ */
+@Provider
+@Priority(Priorities.AUTHENTICATION - 10)
+public class AdmissionControlFilter implements ContainerRequestFilter, ContainerResponseFilter {
+    private static Logger log = LoggerFactory.getLogger(AdmissionControlFilter.class);
+
+    // The request property holding the admission of an admitted request
+    private static final String ADMISSION_PROPERTY = AdmissionControlFilter.class.getName() + ".admission";
+
+    /**
+     * The cost class of an admitted request, and the time at which it was admitted
+     */
+    private static class Admission {
+        private final RequestCost.Level level;
+        private final long start;
+
+        public Admission(RequestCost.Level level, long start) {
+            this.level = level;
+            this.start = start;
+        }
+    }
+
+    private final AdmissionController controller;
+    private final AnnotationLocator annotationLocator;
+    private final I18n i18n;
+
+    @Inject
+    public AdmissionControlFilter(AdmissionController controller, AnnotationLocator annotationLocator,
+        I18n i18n) {
+
+        this.controller = controller;
+        this.annotationLocator = annotationLocator;
+        this.i18n = i18n;
+    }
+
+    /**
+     * Determines the cost class of the requests to the given resource method, from its own
+     * annotation or else from that of its resource class.
+     */
+    private RequestCost.Level getLevel(Method method) {
+        if (method == null) {
+            return RequestCost.Level.NORMAL;
+        }
+
+        RequestCost cost = this.annotationLocator.getAnnotation(method, RequestCost.class);
+        if (cost == null) {
+            cost = method.getDeclaringClass().getAnnotation(RequestCost.class);
+        }
+
+        return cost != null ? cost.value() : RequestCost.Level.NORMAL;
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext) throws IOException {
+        ResourceInfo resourceInfo = ResteasyContext.getContextData(ResourceInfo.class);
+        Method method = resourceInfo != null ? resourceInfo.getResourceMethod() : null;
+        RequestCost.Level level = this.getLevel(method);
+
+        if (!this.controller.tryAcquire(level)) {
+            log.debug("Rejecting {} cost request: {} {}", level, requestContext.getMethod(),
+                requestContext.getUriInfo().getPath());
+
+            throw new TooManyRequestsException(this.i18n.tr("The server is too busy to handle this " +
+                "request; please try again later."), this.controller.getRetryAfter(level));
+        }
+
+        requestContext.setProperty(ADMISSION_PROPERTY, new Admission(level, System.currentTimeMillis()));
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext)
+        throws IOException {
+
+        Object admission = requestContext.getProperty(ADMISSION_PROPERTY);
+
+        if (admission instanceof Admission) {
+            // Response filters may run more than once for a request, but it is only released once
+            requestContext.removeProperty(ADMISSION_PROPERTY);
+
+            RequestCost.Level level = ((Admission) admission).level;
+            long now = System.currentTimeMillis();
+
+            if (level == RequestCost.Level.QUEUED) {
+                // Requests completed without waiting in a queue carry no queue wait
+                Object wait = requestContext.getProperty(AsyncRequestExecutor.QUEUE_WAIT_ATTRIBUTE);
+                this.controller.releaseWithLatency(level, wait instanceof Long ? (Long) wait : 0, now);
+            }
+            else {
+                this.controller.release(level, ((Admission) admission).start, now);
+            }
+        }
+    }
+}
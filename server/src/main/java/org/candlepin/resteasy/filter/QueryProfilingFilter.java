@@ -0,0 +1,104 @@
+/**
+ * Copyright (c) 2009 - 2020 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.resteasy.filter;
+
+import org.candlepin.hibernate.QueryProfileSummary;
+import org.candlepin.hibernate.QueryProfiler;
+
+import com.google.inject.Inject;
+
+import org.jboss.resteasy.core.ResteasyContext;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+
+import javax.annotation.Priority;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.container.ResourceInfo;
+import javax.ws.rs.ext.Provider;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
+
+
+
+/**
+ * QueryProfilingFilter profiles the database work performed by each request on behalf of the
+ * {@link QueryProfiler}, attributing it to the resource method invoked. Profiling continues
+ * through serialization of the response entity, where lazily loaded associations are commonly
+ * fetched.
+ * <p></p>
+ * Clients may opt in to a summary of the work performed by their request by sending the
+ * {@value #PROFILE_HEADER} header; the summary is then returned in a response header of the same
+ * name. This filter is only bound when database profiling is enabled.
+ */
+@Provider
+@Priority(Priorities.AUTHENTICATION - 1)
+public class QueryProfilingFilter implements ContainerRequestFilter, ContainerResponseFilter,
+    WriterInterceptor {
+
+    public static final String PROFILE_HEADER = "X-Candlepin-Query-Profile";
+
+    /** The endpoint name used for requests which were not matched to a resource method */
+    public static final String UNMATCHED_ENDPOINT = "(unmatched)";
+
+    private final QueryProfiler profiler;
+
+    @Inject
+    public QueryProfilingFilter(QueryProfiler profiler) {
+        this.profiler = profiler;
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext) throws IOException {
+        ResourceInfo resourceInfo = ResteasyContext.getContextData(ResourceInfo.class);
+        Method method = resourceInfo != null ? resourceInfo.getResourceMethod() : null;
+
+        // Request paths carry IDs, so they cannot be used to identify the endpoint
+        String endpoint = method != null ?
+            method.getDeclaringClass().getSimpleName() + "." + method.getName() :
+            UNMATCHED_ENDPOINT;
+
+        this.profiler.beginRequest(endpoint);
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext)
+        throws IOException {
+
+        QueryProfileSummary summary = responseContext.hasEntity() ?
+            this.profiler.getSummary() :
+            this.profiler.endRequest();
+
+        // The header must be written before the entity, so any work done during serialization is
+        // only reflected in the collected statistics
+        if (summary != null && requestContext.getHeaderString(PROFILE_HEADER) != null) {
+            responseContext.getHeaders().add(PROFILE_HEADER, summary.toHeaderValue());
+        }
+    }
+
+    @Override
+    public void aroundWriteTo(WriterInterceptorContext context) throws IOException {
+        try {
+            context.proceed();
+        }
+        finally {
+            this.profiler.endRequest();
+        }
+    }
+}
@@ -14,6 +14,8 @@
  */
 package org.candlepin.servlet.filter;
 
+import org.candlepin.hibernate.DatabaseRouter;
+
 import com.google.inject.Inject;
 import com.google.inject.persist.UnitOfWork;
 
@@ -29,7 +31,8 @@ import javax.servlet.ServletResponse;
 
 /**
  * CandlepinPersistFilter Custom servlet filter for guice-persist that doesn't
- * initialize the persistence service
+ * initialize the persistence service. Each request starts out routed to the primary
+ * database, regardless of any routing left behind on the thread by earlier work.
  */
 @Singleton
 public class CandlepinPersistFilter implements Filter {
@@ -43,12 +46,14 @@ public class CandlepinPersistFilter implements Filter {
     @Override
     public void doFilter(ServletRequest request, ServletResponse response,
         FilterChain chain) throws IOException, ServletException {
+        DatabaseRouter.getInstance().reset();
         unitOfWork.begin();
         try {
             chain.doFilter(request, response);
         }
         finally {
             unitOfWork.end();
+            DatabaseRouter.getInstance().reset();
         }
     }
 
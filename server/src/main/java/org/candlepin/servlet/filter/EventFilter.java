@@ -16,6 +16,7 @@ package org.candlepin.servlet.filter;
 
 import org.candlepin.audit.EventSink;
 import org.candlepin.common.filter.TeeHttpServletResponse;
+import org.candlepin.resteasy.AsyncRequestExecutor;
 
 import com.google.inject.Inject;
 import com.google.inject.Injector;
@@ -61,8 +62,17 @@ public class EventFilter implements Filter {
         // because on creation of the filter we will be out of the
         // CandlepinRequestScope as the filter must be a singleton.
         EventSink eventSink = injector.getInstance(EventSink.class);
-        TeeHttpServletResponse resp = new TeeHttpServletResponse((HttpServletResponse) response);
+        // Only the status is needed here, so the response body is not teed
+        TeeHttpServletResponse resp = new TeeHttpServletResponse((HttpServletResponse) response, 0);
         chain.doFilter(request, resp);
+
+        // Requests completed by the async request executor are still executing at this point; their
+        // events are sent or rolled back by the executor once they complete
+        if (request.getAttribute(AsyncRequestExecutor.EVENTS_DEFERRED_ATTRIBUTE) != null) {
+            log.debug("Request suspended, deferring events to its completion");
+            return;
+        }
+
         Status status = Status.fromStatusCode(resp.getStatus());
         if (status.getFamily() == Status.Family.SUCCESSFUL) {
             eventSink.sendEvents();
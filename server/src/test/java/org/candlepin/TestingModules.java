@@ -24,7 +24,9 @@ import org.candlepin.auth.Principal;
 import org.candlepin.bind.BindChainFactory;
 import org.candlepin.bind.BindContextFactory;
 import org.candlepin.bind.PreEntitlementRulesCheckOpFactory;
+import org.candlepin.cache.CacheInvalidationTransport;
 import org.candlepin.cache.CandlepinCache;
+import org.candlepin.cache.MessagingCacheInvalidationTransport;
 import org.candlepin.cache.StatusCache;
 import org.candlepin.common.config.Configuration;
 import org.candlepin.common.guice.HttpMethodMatcher;
@@ -350,6 +352,7 @@ public class TestingModules {
             // Messaging
             bind(CPMSessionFactory.class).to(NoopSessionFactory.class).in(Singleton.class);
             bind(CPMContextListener.class).to(NoopContextListener.class).in(Singleton.class);
+            bind(CacheInvalidationTransport.class).to(MessagingCacheInvalidationTransport.class);
         }
 
         @Provides @Singleton @Named("EventFactoryObjectMapper")
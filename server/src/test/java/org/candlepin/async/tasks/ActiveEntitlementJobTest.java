@@ -20,9 +20,12 @@ import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 
 import org.candlepin.async.JobExecutionContext;
 import org.candlepin.async.JobExecutionException;
+import org.candlepin.model.AsyncJobStatus;
+import org.candlepin.model.AsyncJobStatus.JobState;
 import org.candlepin.model.Consumer;
 import org.candlepin.model.ConsumerInstalledProduct;
 import org.candlepin.model.ConsumerType;
@@ -36,6 +39,8 @@ import org.candlepin.util.Util;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.Date;
+
 import javax.inject.Inject;
 
 /**
@@ -65,6 +70,39 @@ public class ActiveEntitlementJobTest extends DatabaseTestFixture {
         consumerCurator.create(consumer);
     }
 
+    private void recordSuccessfulRun(Date started) {
+        AsyncJobStatus status = new AsyncJobStatus()
+            .setName(ActiveEntitlementJob.JOB_NAME)
+            .setJobKey(ActiveEntitlementJob.JOB_KEY)
+            .setState(JobState.FINISHED)
+            .setStartTime(started)
+            .setEndTime(new Date());
+
+        this.asyncJobCurator.create(status);
+        this.asyncJobCurator.flush();
+    }
+
+    @Test
+    public void testTransitionsOfUnsuccessfulRunsArePickedUpAgain() throws JobExecutionException {
+        Date ended = new Date(System.currentTimeMillis() - 60000);
+        Pool p = createPool(owner, prod, 5L, Util.yesterday(), ended);
+        Entitlement ent = this
+            .createEntitlement(owner, consumer, p, createEntitlementCertificate("entkey", "ecert"));
+        ent.setUpdatedOnStart(true);
+        entitlementCurator.create(ent);
+
+        // A successful run before the transition, and a run since which didn't finish
+        this.recordSuccessfulRun(new Date(ended.getTime() - 60000));
+
+        JobExecutionContext context = mock(JobExecutionContext.class);
+        job.execute(context);
+        verify(context).setJobResult("Entitlement status updated for 1 consumers");
+
+        JobExecutionContext next = mock(JobExecutionContext.class);
+        job.execute(next);
+        verify(next).setJobResult("Entitlement status updated for 1 consumers");
+    }
+
     @Test
     public void testActiveEntitlementJob() throws JobExecutionException {
         Pool p = createPool(owner, prod, 5L, Util.yesterday(), Util.tomorrow());
@@ -125,5 +163,36 @@ public class ActiveEntitlementJobTest extends DatabaseTestFixture {
         // Should not have changed
         assertFalse(entitlementCurator.get(ent.getId()).isUpdatedOnStart());
     }
-}
 
+    @Test
+    public void testActiveEntitlementJobExpiredEntitlement() throws JobExecutionException {
+        // Pool which ended a minute ago
+        Date ended = new Date(System.currentTimeMillis() - 60000);
+        Pool p = createPool(owner, prod, 5L, Util.yesterday(), ended);
+        Entitlement ent = this
+            .createEntitlement(owner, consumer, p, createEntitlementCertificate("entkey", "ecert"));
+        ent.setUpdatedOnStart(true);
+        entitlementCurator.create(ent);
+
+        consumer.setEntitlementStatus("valid");
+        consumerCurator.merge(consumer);
+        consumerCurator.flush();
+        consumerCurator.refresh(consumer);
+
+        Date started = new Date();
+        JobExecutionContext context = mock(JobExecutionContext.class);
+        job.execute(context);
+        consumerCurator.flush();
+        consumerCurator.refresh(consumer);
+
+        assertEquals("invalid", consumer.getEntitlementStatus());
+        verify(context).setJobResult("Entitlement status updated for 1 consumers");
+
+        // The transition has been processed by a successful run, and isn't picked up again
+        this.recordSuccessfulRun(started);
+
+        JobExecutionContext next = mock(JobExecutionContext.class);
+        job.execute(next);
+        verify(next).setJobResult("No consumers with entitlement status transitions found");
+    }
+}
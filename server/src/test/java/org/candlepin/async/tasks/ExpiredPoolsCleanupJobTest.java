@@ -14,38 +14,176 @@
  */
 package org.candlepin.async.tasks;
 
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 import org.candlepin.async.JobExecutionContext;
+import org.candlepin.async.JobExecutionException;
+import org.candlepin.audit.EventSink;
+import org.candlepin.common.config.MapConfiguration;
+import org.candlepin.config.ConfigProperties;
+import org.candlepin.controller.ExpiredPoolsCleanupResult;
 import org.candlepin.controller.PoolManager;
+import org.candlepin.guice.CandlepinRequestScope;
+import org.candlepin.guice.PrincipalProvider;
+import org.candlepin.model.PoolCurator;
+
+import com.google.inject.Injector;
+import com.google.inject.persist.UnitOfWork;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
 /**
  * Test suite for the ExpiredPoolsCleanupJob class
  */
 public class ExpiredPoolsCleanupJobTest {
 
     private PoolManager poolManager;
+    private PoolCurator poolCurator;
+    private MapConfiguration config;
+    private Injector injector;
+    private CandlepinRequestScope requestScope;
+    private UnitOfWork unitOfWork;
+    private PrincipalProvider principalProvider;
+    private EventSink eventSink;
 
     @BeforeEach
     public void init() {
         this.poolManager = mock(PoolManager.class);
+        this.poolCurator = mock(PoolCurator.class);
+        this.config = new MapConfiguration();
+        this.injector = mock(Injector.class);
+        this.requestScope = mock(CandlepinRequestScope.class);
+        this.unitOfWork = mock(UnitOfWork.class);
+        this.principalProvider = mock(PrincipalProvider.class);
+        this.eventSink = mock(EventSink.class);
+
+        when(this.injector.getInstance(PoolManager.class)).thenReturn(this.poolManager);
+        when(this.injector.getInstance(EventSink.class)).thenReturn(this.eventSink);
     }
 
     private ExpiredPoolsCleanupJob createJobInstance() {
-        return new ExpiredPoolsCleanupJob(this.poolManager);
+        return new ExpiredPoolsCleanupJob(this.poolManager, this.poolCurator, this.config, this.injector,
+            this.requestScope, this.unitOfWork, this.principalProvider);
+    }
+
+    private void setThreads(int threads) {
+        this.config.setProperty(ConfigProperties.jobConfig(ExpiredPoolsCleanupJob.JOB_KEY,
+            ExpiredPoolsCleanupJob.CFG_THREADS), String.valueOf(threads));
+    }
+
+    @Test
+    public void testRequiresDependencies() {
+        assertThrows(IllegalArgumentException.class, () -> new ExpiredPoolsCleanupJob(null,
+            this.poolCurator, this.config, this.injector, this.requestScope, this.unitOfWork,
+            this.principalProvider));
+        assertThrows(IllegalArgumentException.class, () -> new ExpiredPoolsCleanupJob(this.poolManager,
+            null, this.config, this.injector, this.requestScope, this.unitOfWork, this.principalProvider));
+        assertThrows(IllegalArgumentException.class, () -> new ExpiredPoolsCleanupJob(this.poolManager,
+            this.poolCurator, null, this.injector, this.requestScope, this.unitOfWork,
+            this.principalProvider));
+        assertThrows(IllegalArgumentException.class, () -> new ExpiredPoolsCleanupJob(this.poolManager,
+            this.poolCurator, this.config, null, this.requestScope, this.unitOfWork,
+            this.principalProvider));
+        assertThrows(IllegalArgumentException.class, () -> new ExpiredPoolsCleanupJob(this.poolManager,
+            this.poolCurator, this.config, this.injector, null, this.unitOfWork, this.principalProvider));
+        assertThrows(IllegalArgumentException.class, () -> new ExpiredPoolsCleanupJob(this.poolManager,
+            this.poolCurator, this.config, this.injector, this.requestScope, null, this.principalProvider));
+        assertThrows(IllegalArgumentException.class, () -> new ExpiredPoolsCleanupJob(this.poolManager,
+            this.poolCurator, this.config, this.injector, this.requestScope, this.unitOfWork, null));
     }
 
     @Test
     public void execute() throws Exception {
+        this.config.setProperty(ConfigProperties.jobConfig(ExpiredPoolsCleanupJob.JOB_KEY,
+            ExpiredPoolsCleanupJob.CFG_THREADS), "1");
+        when(this.poolCurator.getExpiredPoolOwnerIds()).thenReturn(Arrays.asList("owner1", "owner2"));
+
         JobExecutionContext context = mock(JobExecutionContext.class);
         ExpiredPoolsCleanupJob job = this.createJobInstance();
         job.execute(context);
 
-        verify(this.poolManager).cleanupExpiredPools();
+        verify(this.poolManager).cleanupExpiredPools(eq("owner1"), any(ExpiredPoolsCleanupResult.class));
+        verify(this.poolManager).cleanupExpiredPools(eq("owner2"), any(ExpiredPoolsCleanupResult.class));
+    }
+
+    @Test
+    public void executeSeriallyContinuesAfterOwnerFailure() {
+        this.setThreads(1);
+        when(this.poolCurator.getExpiredPoolOwnerIds()).thenReturn(Arrays.asList("owner1", "owner2"));
+        doAnswer(iom -> { throw new IllegalStateException("owner1 failed"); })
+            .when(this.poolManager).cleanupExpiredPools(eq("owner1"), any(ExpiredPoolsCleanupResult.class));
+
+        JobExecutionContext context = mock(JobExecutionContext.class);
+        ExpiredPoolsCleanupJob job = this.createJobInstance();
+
+        assertThrows(JobExecutionException.class, () -> job.execute(context));
+
+        verify(this.poolManager).cleanupExpiredPools(eq("owner2"), any(ExpiredPoolsCleanupResult.class));
+        verify(this.eventSink, times(1)).sendEvents();
+        verify(this.eventSink, times(1)).rollback();
+    }
+
+    @Test
+    public void executeConcurrentlyContinuesAfterOwnerFailure() {
+        this.setThreads(2);
+        when(this.poolCurator.getExpiredPoolOwnerIds()).thenReturn(Arrays.asList("owner1", "owner2"));
+
+        // Neither owner completes until both are being cleaned up at the same time
+        CountDownLatch latch = new CountDownLatch(2);
+
+        doAnswer(iom -> {
+            latch.countDown();
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+            throw new IllegalStateException("owner1 failed");
+        }).when(this.poolManager).cleanupExpiredPools(eq("owner1"), any(ExpiredPoolsCleanupResult.class));
+
+        doAnswer(iom -> {
+            latch.countDown();
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+            return null;
+        }).when(this.poolManager).cleanupExpiredPools(eq("owner2"), any(ExpiredPoolsCleanupResult.class));
+
+        JobExecutionContext context = mock(JobExecutionContext.class);
+        ExpiredPoolsCleanupJob job = this.createJobInstance();
+
+        assertThrows(JobExecutionException.class, () -> job.execute(context));
+
+        // Only owner1 failed; owner2 ran alongside it and its events were still sent
+        verify(this.eventSink, times(1)).sendEvents();
+        verify(this.eventSink, times(1)).rollback();
+
+        // Each owner was cleaned up in its own unit of work and scope
+        verify(this.requestScope, times(2)).enter();
+        verify(this.requestScope, times(2)).exit();
+        verify(this.unitOfWork, times(2)).begin();
+        verify(this.unitOfWork, times(2)).end();
+    }
+
+    @Test
+    public void executeRejectsInvalidThreadCount() {
+        this.config.setProperty(ConfigProperties.jobConfig(ExpiredPoolsCleanupJob.JOB_KEY,
+            ExpiredPoolsCleanupJob.CFG_THREADS), "0");
+
+        JobExecutionContext context = mock(JobExecutionContext.class);
+        ExpiredPoolsCleanupJob job = this.createJobInstance();
+
+        assertThrows(JobExecutionException.class, () -> job.execute(context));
+        verify(this.poolManager, never()).cleanupExpiredPools(any(String.class),
+            any(ExpiredPoolsCleanupResult.class));
     }
 
 }
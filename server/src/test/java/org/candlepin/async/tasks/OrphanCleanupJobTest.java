@@ -30,7 +30,9 @@ import org.candlepin.test.TestUtil;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
 
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -131,4 +133,78 @@ public class OrphanCleanupJobTest extends DatabaseTestFixture {
             assertNull(product);
         }
     }
+
+    private long countRows(String table, String column, String uuid) {
+        String sql = "SELECT COUNT(*) FROM " + table + " WHERE " + column + " = :uuid";
+
+        return ((Number) this.getEntityManager()
+            .createNativeQuery(sql)
+            .setParameter("uuid", uuid)
+            .getSingleResult()).longValue();
+    }
+
+    @Test
+    public void testDependentRowsDeletedWithOrphans() throws Exception {
+        Content content = this.createOrphanedContent();
+        content.setModifiedProductIds(Collections.singleton("modified-product"));
+        this.contentCurator.merge(content);
+
+        Product product = TestUtil.createProduct("test-product-" + TestUtil.randomInt(), "orphan");
+        product.setAttribute("attrib", "value");
+        product.addDependentProductId("dependent-product");
+        product.addContent(content, true);
+        product = this.productCurator.create(product);
+
+        this.ownerCurator.flush();
+
+        assertEquals(1, this.countRows("cp2_product_attributes", "product_uuid", product.getUuid()));
+        assertEquals(1, this.countRows("cp2_product_content", "product_uuid", product.getUuid()));
+
+        OrphanCleanupJob job = this.createJobInstance();
+        JobExecutionContext context = spy(new JobExecutionContext(mock(AsyncJobStatus.class)));
+
+        job.execute(context);
+
+        this.ownerCurator.flush();
+        this.ownerCurator.clear();
+
+        assertNull(this.productCurator.get(product.getUuid()));
+        assertNull(this.contentCurator.get(content.getUuid()));
+
+        assertEquals(0, this.countRows("cp2_product_attributes", "product_uuid", product.getUuid()));
+        assertEquals(0, this.countRows("cp2_product_dependent_products", "product_uuid",
+            product.getUuid()));
+        assertEquals(0, this.countRows("cp2_product_content", "product_uuid", product.getUuid()));
+        assertEquals(0, this.countRows("cp2_content_modified_products", "content_uuid",
+            content.getUuid()));
+    }
+
+    @Test
+    public void testOrphansMappedBeforeDeletionAreKept() {
+        Owner owner = this.createOwner();
+        Product product = this.createOrphanedProduct();
+        Content content = this.createOrphanedContent();
+
+        List<String> productUuids = this.ownerProductCurator.getOrphanedProductUuids();
+        List<String> contentUuids = this.ownerContentCurator.getOrphanedContentUuids();
+
+        assertTrue(productUuids.contains(product.getUuid()));
+        assertTrue(contentUuids.contains(content.getUuid()));
+
+        // Map the entities to an owner after they were found, but before they're deleted
+        this.ownerProductCurator.mapProductToOwner(product, owner);
+        this.ownerContentCurator.mapContentToOwner(content, owner);
+        this.ownerCurator.flush();
+
+        assertEquals(productUuids.size() - 1, this.productCurator.deleteOrphanedProducts(productUuids));
+        assertEquals(contentUuids.size() - 1, this.contentCurator.deleteOrphanedContent(contentUuids));
+
+        this.ownerCurator.flush();
+        this.ownerCurator.clear();
+
+        assertNotNull(this.productCurator.get(product.getUuid()));
+        assertNotNull(this.contentCurator.get(content.getUuid()));
+        assertTrue(this.ownerProductCurator.getOrphanedProductUuids().isEmpty());
+        assertTrue(this.ownerContentCurator.getOrphanedContentUuids().isEmpty());
+    }
 }
@@ -23,6 +23,7 @@ import org.candlepin.async.JobConfigValidationException;
 import org.candlepin.async.JobExecutionContext;
 import org.candlepin.async.JobExecutionException;
 import org.candlepin.controller.PoolManager;
+import org.candlepin.controller.RefreshResult;
 import org.candlepin.controller.Refresher;
 import org.candlepin.model.AsyncJobStatus;
 import org.candlepin.model.Owner;
@@ -128,6 +129,12 @@ public class RefreshPoolsJobTest {
         doReturn(refresher).when(poolManager).getRefresher(eq(subAdapter), eq(true));
         doReturn(refresher).when(refresher).add(eq(owner));
 
+        RefreshResult refreshResult = new RefreshResult()
+            .incrementOwnersRefreshed()
+            .incrementSubscriptionsProcessed()
+            .addPhaseTime(RefreshResult.Phase.FETCH, 15);
+        doReturn(refreshResult).when(refresher).run();
+
         ArgumentCaptor<Object> captor = ArgumentCaptor.forClass(Object.class);
 
         job.execute(context);
@@ -135,7 +142,7 @@ public class RefreshPoolsJobTest {
         verify(context, times(1)).setJobResult(captor.capture());
         Object result = captor.getValue();
 
-        assertEquals("Pools refreshed for owner: my-test-owner-displayname", result);
+        assertEquals("Pools refreshed for owner: my-test-owner-displayname; " + refreshResult, result);
     }
 
     @Test
@@ -16,10 +16,12 @@ package org.candlepin.audit;
 
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.anyString;
+import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
@@ -169,6 +171,31 @@ public class DefaultEventMessageReceiverTest {
         verify(clientSession, never()).commit();
     }
 
+    @Test
+    public void batchedEventsShouldEachBeDeliveredToListener() throws Exception {
+        String json = this.eventJson();
+        this.primeBuffer(ClientMessage.TEXT_TYPE, "[" + json + "," + json + "," + json + "]");
+        doReturn(true).when(this.clientMessage).containsProperty(EventSinkImpl.EVENT_BATCH_SIZE_KEY);
+
+        receiver.onMessage(clientMessage);
+        verify(eventListener, times(3)).onEvent(any(Event.class));
+        verify(clientSession).commit();
+        verify(clientSession, never()).rollback();
+    }
+
+    @Test
+    public void batchIsRolledBackWhenListenerFailsOnAnyEvent() throws Exception {
+        String json = this.eventJson();
+        this.primeBuffer(ClientMessage.TEXT_TYPE, "[" + json + "," + json + "]");
+        doReturn(true).when(this.clientMessage).containsProperty(EventSinkImpl.EVENT_BATCH_SIZE_KEY);
+
+        doNothing().doThrow(new RuntimeException("Forced")).when(eventListener).onEvent(any(Event.class));
+        receiver.onMessage(clientMessage);
+        verify(eventListener, times(2)).onEvent(any(Event.class));
+        verify(clientSession).rollback();
+        verify(clientSession, never()).commit();
+    }
+
     @Test
     public void sessionCloseIgnoredIfSessionIsNull() throws Exception {
         DefaultEventMessageReceiver receiver = new DefaultEventMessageReceiver(eventListener,
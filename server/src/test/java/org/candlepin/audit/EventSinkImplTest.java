@@ -19,19 +19,23 @@ import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.anyBoolean;
 import static org.mockito.Mockito.anyByte;
+import static org.mockito.Mockito.anyInt;
 import static org.mockito.Mockito.anyObject;
 import static org.mockito.Mockito.anyString;
+import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import org.candlepin.async.impl.ActiveMQSessionFactory;
 import org.candlepin.auth.Principal;
 import org.candlepin.config.CandlepinCommonTestConfig;
+import org.candlepin.config.ConfigProperties;
 import org.candlepin.controller.mode.CandlepinModeManager;
 import org.candlepin.controller.mode.CandlepinModeManager.Mode;
 import org.candlepin.guice.PrincipalProvider;
@@ -113,11 +117,24 @@ public class EventSinkImplTest {
      * @throws Exception
      */
     private EventSinkImpl createEventSink(final ClientSessionFactory sessionFactory) throws Exception {
+        return this.createEventSink(new CandlepinCommonTestConfig());
+    }
+
+    private EventSinkImpl createEventSink(CandlepinCommonTestConfig config) throws Exception {
         EventSinkImpl sink = new EventSinkImpl(eventFilter, factory, mapper,
-            new CandlepinCommonTestConfig(), this.amqSessionFactory, mockModeManager);
+            config, this.amqSessionFactory, mockModeManager);
         return sink;
     }
 
+    private Event createEvent(String id) {
+        Event event = new Event();
+        event.setId(id);
+        event.setType(Event.Type.CREATED);
+        event.setTarget(Event.Target.CONSUMER);
+
+        return event;
+    }
+
     @Test
     public void sendEventShouldSendMessageOnProperEventInput() throws Exception {
         String content = "Simple String";
@@ -224,4 +241,65 @@ public class EventSinkImplTest {
         verify(mockClientProducer).send(any(ClientMessage.class));
     }
 
+    @Test
+    public void queuedEventsShouldBeSentInOneMessage() throws Exception {
+        eventSinkImpl.queueEvent(this.createEvent("1"));
+        eventSinkImpl.queueEvent(this.createEvent("2"));
+        eventSinkImpl.queueEvent(this.createEvent("3"));
+        verify(mockClientProducer, never()).send(any(ClientMessage.class));
+
+        eventSinkImpl.sendEvents();
+        verify(mockClientProducer, times(1)).send(any(ClientMessage.class));
+        verify(mockClientMessage).putIntProperty(EventSinkImpl.EVENT_BATCH_SIZE_KEY, 3);
+        verify(mockClientMessage).putStringProperty(EventSinkImpl.EVENT_TYPE_KEY, "CREATED");
+        verify(mockClientSession).commit();
+
+        String body = mockClientMessage.getBodyBuffer().readNullableSimpleString().toString();
+        Event[] events = new ObjectMapper().readValue(body, Event[].class);
+        assertEquals(3, events.length);
+        assertEquals("1", events[0].getId());
+        assertEquals("3", events[2].getId());
+    }
+
+    @Test
+    public void batchesShouldBeLimitedByEventCount() throws Exception {
+        CandlepinCommonTestConfig config = new CandlepinCommonTestConfig();
+        config.setProperty(ConfigProperties.AUDIT_BATCH_MAX_EVENTS, "2");
+        EventSinkImpl sink = this.createEventSink(config);
+
+        sink.queueEvent(this.createEvent("1"));
+        sink.queueEvent(this.createEvent("2"));
+        sink.queueEvent(this.createEvent("3"));
+        sink.sendEvents();
+
+        verify(mockClientProducer, times(2)).send(any(ClientMessage.class));
+        verify(mockClientMessage, times(1)).putIntProperty(EventSinkImpl.EVENT_BATCH_SIZE_KEY, 2);
+        verify(mockClientSession, times(1)).commit();
+    }
+
+    @Test
+    public void batchesShouldBeLimitedBySize() throws Exception {
+        CandlepinCommonTestConfig config = new CandlepinCommonTestConfig();
+        config.setProperty(ConfigProperties.AUDIT_BATCH_MAX_BYTES, "1");
+        EventSinkImpl sink = this.createEventSink(config);
+
+        sink.queueEvent(this.createEvent("1"));
+        sink.queueEvent(this.createEvent("2"));
+        sink.sendEvents();
+
+        // Events larger than the limit are each sent in a plain message of their own
+        verify(mockClientProducer, times(2)).send(any(ClientMessage.class));
+        verify(mockClientMessage, never()).putIntProperty(eq(EventSinkImpl.EVENT_BATCH_SIZE_KEY), anyInt());
+    }
+
+    @Test
+    public void rollbackShouldDiscardPendingBatch() throws Exception {
+        eventSinkImpl.queueEvent(this.createEvent("1"));
+        eventSinkImpl.queueEvent(this.createEvent("2"));
+        eventSinkImpl.rollback();
+
+        verify(mockClientProducer, never()).send(any(ClientMessage.class));
+        verify(mockClientSession).rollback();
+        verify(mockClientSession, never()).commit();
+    }
 }
@@ -0,0 +1,146 @@
+/**
+ * Copyright (c) 2009 - 2020 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.cache;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.candlepin.config.CandlepinCommonTestConfig;
+import org.candlepin.config.ConfigProperties;
+import org.candlepin.model.CertificateSerial;
+import org.candlepin.model.ContentAccessCertificate;
+import org.candlepin.model.EntitlementCertificate;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Date;
+
+
+
+/**
+ * Test suite for the CertificateBundleCache class
+ */
+public class CertificateBundleCacheTest {
+
+    private CandlepinCommonTestConfig config;
+
+    @BeforeEach
+    public void init() {
+        this.config = new CandlepinCommonTestConfig();
+        this.config.setProperty(ConfigProperties.CERT_BUNDLE_CACHE_MAX_CONSUMERS, "2");
+        this.config.setProperty(ConfigProperties.CERT_BUNDLE_CACHE_MAX_BYTES, "100");
+    }
+
+    private EntitlementCertificate createCertificate(long serial) {
+        EntitlementCertificate cert = new EntitlementCertificate();
+        cert.setSerial(new CertificateSerial(serial, new Date()));
+        cert.setCert("cert" + serial);
+        cert.setKey("key" + serial);
+
+        return cert;
+    }
+
+    @Test
+    public void testETagDoesNotDependOnSerialOrder() {
+        assertEquals(CertificateBundleCache.computeETag(Arrays.asList(1L, 2L, 3L), null),
+            CertificateBundleCache.computeETag(Arrays.asList(3L, 1L, 2L), null));
+
+        assertNotEquals(CertificateBundleCache.computeETag(Arrays.asList(1L, 2L), null),
+            CertificateBundleCache.computeETag(Arrays.asList(1L, 2L, 3L), null));
+    }
+
+    @Test
+    public void testETagReflectsContentAccessCertificateContent() {
+        ContentAccessCertificate cac = new ContentAccessCertificate();
+        cac.setSerial(new CertificateSerial(5L, new Date()));
+        cac.setCert("content-v1");
+
+        String etag = CertificateBundleCache.computeETag(Arrays.asList(1L), cac);
+        assertNotEquals(CertificateBundleCache.computeETag(Arrays.asList(1L), null), etag);
+
+        cac.setCert("content-v2");
+        assertNotEquals(etag, CertificateBundleCache.computeETag(Arrays.asList(1L), cac));
+    }
+
+    @Test
+    public void testRebuiltBundlesAreIdentical() throws Exception {
+        CertificateBundleCache.Bundle first = CertificateBundleCache.createBundle("tag",
+            Arrays.asList(this.createCertificate(1L), this.createCertificate(2L)));
+        CertificateBundleCache.Bundle second = CertificateBundleCache.createBundle("tag",
+            Arrays.asList(this.createCertificate(2L), this.createCertificate(1L)));
+
+        assertEquals(2, first.getCertificateCount());
+        assertArrayEquals(first.getData(), second.getData());
+    }
+
+    @Test
+    public void testGetRequiresMatchingETag() {
+        CertificateBundleCache cache = new CertificateBundleCache(this.config);
+        CertificateBundleCache.Bundle bundle = new CertificateBundleCache.Bundle("tag1", new byte[10], 1);
+
+        cache.put("consumer", bundle);
+
+        assertSame(bundle, cache.get("consumer", "tag1"));
+        assertNull(cache.get("consumer", "tag2"));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsedConsumers() {
+        CertificateBundleCache cache = new CertificateBundleCache(this.config);
+
+        cache.put("consumer1", new CertificateBundleCache.Bundle("tag1", new byte[10], 1));
+        cache.put("consumer2", new CertificateBundleCache.Bundle("tag2", new byte[10], 1));
+        cache.get("consumer1", "tag1");
+        cache.put("consumer3", new CertificateBundleCache.Bundle("tag3", new byte[10], 1));
+
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get("consumer1", "tag1"));
+        assertNull(cache.get("consumer2", "tag2"));
+        assertNotNull(cache.get("consumer3", "tag3"));
+    }
+
+    @Test
+    public void testEvictsBundlesExceedingFootprint() {
+        CertificateBundleCache cache = new CertificateBundleCache(this.config);
+
+        cache.put("consumer1", new CertificateBundleCache.Bundle("tag1", new byte[60], 1));
+        cache.put("consumer2", new CertificateBundleCache.Bundle("tag2", new byte[60], 1));
+
+        assertEquals(1, cache.size());
+        assertEquals(60, cache.getFootprint());
+        assertNotNull(cache.get("consumer2", "tag2"));
+
+        cache.put("consumer3", new CertificateBundleCache.Bundle("tag3", new byte[200], 1));
+        assertNull(cache.get("consumer3", "tag3"));
+
+        cache.evict("consumer2");
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getFootprint());
+    }
+
+    @Test
+    public void testDisabledCacheStoresNothing() {
+        this.config.setProperty(ConfigProperties.CERT_BUNDLE_CACHE_MAX_CONSUMERS, "0");
+        CertificateBundleCache cache = new CertificateBundleCache(this.config);
+
+        cache.put("consumer", new CertificateBundleCache.Bundle("tag", new byte[10], 1));
+
+        assertFalse(cache.isEnabled());
+        assertNull(cache.get("consumer", "tag"));
+    }
+}
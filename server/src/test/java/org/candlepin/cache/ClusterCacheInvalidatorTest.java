@@ -0,0 +1,295 @@
+/**
+ * Copyright (c) 2009 - 2020 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.cache;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import org.candlepin.config.CandlepinCommonTestConfig;
+import org.candlepin.config.ConfigProperties;
+import org.candlepin.messaging.CPMException;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.hibernate.Cache;
+import org.hibernate.Transaction;
+import org.hibernate.event.service.spi.EventListenerGroup;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.resource.transaction.spi.TransactionStatus;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+
+
+
+/**
+ * Test suite for the ClusterCacheInvalidator class, running several nodes in this JVM which
+ * exchange invalidations through an in-memory transport
+ */
+public class ClusterCacheInvalidatorTest {
+
+    private static final String ENTITY_NAME = "org.candlepin.model.Product";
+
+    /**
+     * In-memory transport delivering each invalidation, serialized as it would be on the wire, to
+     * every subscriber of a shared bus
+     */
+    private static class LocalTransport implements CacheInvalidationTransport {
+        private final List<Consumer<CacheInvalidation>> bus;
+        private final ObjectMapper mapper = new ObjectMapper();
+
+        public LocalTransport(List<Consumer<CacheInvalidation>> bus) {
+            this.bus = bus;
+        }
+
+        @Override
+        public void publish(CacheInvalidation invalidation) throws CPMException {
+            try {
+                String body = this.mapper.writeValueAsString(invalidation);
+
+                for (Consumer<CacheInvalidation> receiver : this.bus) {
+                    receiver.accept(this.mapper.readValue(body, CacheInvalidation.class));
+                }
+            }
+            catch (Exception e) {
+                throw new CPMException(e);
+            }
+        }
+
+        @Override
+        public void subscribe(Consumer<CacheInvalidation> receiver) {
+            this.bus.add(receiver);
+        }
+
+        @Override
+        public void close() {
+            // Intentionally left empty
+        }
+    }
+
+    /**
+     * A single node of the cluster, with its own invalidator and second-level cache
+     */
+    private class Node {
+        private final ClusterCacheInvalidator invalidator;
+        private final Cache cache;
+        private final Object listener;
+
+        public Node() {
+            EventListenerGroup group = mock(EventListenerGroup.class);
+            EventListenerRegistry registry = mock(EventListenerRegistry.class);
+            doReturn(group).when(registry).getEventListenerGroup(any());
+
+            this.cache = mock(Cache.class);
+            this.invalidator = new ClusterCacheInvalidator(config, new LocalTransport(bus));
+            this.invalidator.registerListeners(registry, this.cache);
+            this.invalidator.start();
+
+            ArgumentCaptor<Object> captor = ArgumentCaptor.forClass(Object.class);
+            verify(group, atMost(6)).appendListener(captor.capture());
+            this.listener = captor.getAllValues().isEmpty() ? null : captor.getValue();
+        }
+
+        public void insert(boolean cached, Serializable id) {
+            EntityPersister persister = mock(EntityPersister.class);
+            doReturn(cached).when(persister).hasCache();
+            doReturn(ENTITY_NAME).when(persister).getEntityName();
+
+            ((PostInsertEventListener) this.listener).onPostInsert(
+                new PostInsertEvent(new Object(), id, new Object[0], persister, session));
+        }
+    }
+
+    private CandlepinCommonTestConfig config;
+    private List<Consumer<CacheInvalidation>> bus;
+    private EventSource session;
+    private Transaction transaction;
+
+    @BeforeEach
+    public void init() {
+        this.config = new CandlepinCommonTestConfig();
+        this.config.setProperty(ConfigProperties.CACHE_CLUSTER_INVALIDATION_ENABLED, "true");
+        this.bus = new ArrayList<>();
+
+        this.transaction = mock(Transaction.class);
+        doReturn(TransactionStatus.ACTIVE).when(this.transaction).getStatus();
+
+        this.session = mock(EventSource.class);
+        doReturn(this.transaction).when(this.session).getTransaction();
+    }
+
+    private Synchronization captureSynchronization() {
+        ArgumentCaptor<Synchronization> captor = ArgumentCaptor.forClass(Synchronization.class);
+        verify(this.transaction, atLeastOnce()).registerSynchronization(captor.capture());
+
+        return captor.getValue();
+    }
+
+    @Test
+    public void testCommittedChangesEvictedOnOtherNodes() {
+        Node node1 = new Node();
+        Node node2 = new Node();
+        Node node3 = new Node();
+
+        node1.insert(true, "prod1_uuid");
+        node1.insert(true, "prod2_uuid");
+        Synchronization sync = this.captureSynchronization();
+
+        // Nothing is sent until the transaction commits
+        verifyZeroInteractions(node2.cache, node3.cache);
+
+        sync.afterCompletion(Status.STATUS_COMMITTED);
+
+        for (Node node : new Node[] { node2, node3 }) {
+            verify(node.cache).evictEntityData(ENTITY_NAME, "prod1_uuid");
+            verify(node.cache).evictEntityData(ENTITY_NAME, "prod2_uuid");
+            verify(node.cache).evictQueryRegions();
+        }
+
+        // The changing node's cache is already up to date
+        verifyZeroInteractions(node1.cache);
+    }
+
+    @Test
+    public void testRolledBackChangesNotPublished() {
+        Node node1 = new Node();
+        Node node2 = new Node();
+
+        node1.insert(true, "prod1_uuid");
+        this.captureSynchronization().afterCompletion(Status.STATUS_ROLLEDBACK);
+
+        verifyZeroInteractions(node2.cache);
+    }
+
+    @Test
+    public void testChangesOutsideTransactionPublishedImmediately() {
+        doReturn(TransactionStatus.NOT_ACTIVE).when(this.transaction).getStatus();
+        Node node1 = new Node();
+        Node node2 = new Node();
+
+        node1.insert(true, "prod1_uuid");
+
+        verify(this.transaction, never()).registerSynchronization(any());
+        verify(node2.cache).evictEntityData(ENTITY_NAME, "prod1_uuid");
+    }
+
+    @Test
+    public void testUncachedEntitiesIgnored() {
+        Node node1 = new Node();
+        Node node2 = new Node();
+
+        node1.insert(false, "prod1_uuid");
+
+        verify(this.transaction, never()).registerSynchronization(any());
+        verifyZeroInteractions(node2.cache);
+    }
+
+    @Test
+    public void testNonStringIdentifiersEvictEntireEntity() {
+        Node node1 = new Node();
+        Node node2 = new Node();
+
+        node1.insert(true, "prod1_uuid");
+        node1.insert(true, 5L);
+        this.captureSynchronization().afterCompletion(Status.STATUS_COMMITTED);
+
+        verify(node2.cache).evictEntityData(ENTITY_NAME);
+        verify(node2.cache, never()).evictEntityData(eq(ENTITY_NAME), any());
+    }
+
+    @Test
+    public void testRegionInvalidatedOnEveryNode() {
+        Node node1 = new Node();
+        Node node2 = new Node();
+
+        node1.invalidator.invalidateRegion(CandlepinCacheRegions.FIVE_SECONDS_QUERY_CACHE);
+
+        verify(node1.cache).evictRegion(CandlepinCacheRegions.FIVE_SECONDS_QUERY_CACHE);
+        verify(node2.cache).evictRegion(CandlepinCacheRegions.FIVE_SECONDS_QUERY_CACHE);
+        verify(node2.cache, never()).evictQueryRegions();
+    }
+
+    @Test
+    public void testNodeCacheEntriesEvictedOnOtherNodes() {
+        Node node1 = new Node();
+        Node node2 = new Node();
+
+        List<String> evicted1 = new ArrayList<>();
+        List<String> evicted2 = new ArrayList<>();
+        node1.invalidator.registerNodeCache("test_cache", evicted1::add);
+        node2.invalidator.registerNodeCache("test_cache", evicted2::add);
+
+        node1.invalidator.invalidateNodeCache("test_cache", "owner1");
+        node1.invalidator.invalidateNodeCache("test_cache", null);
+        node1.invalidator.invalidateNodeCache("unknown_cache", "owner1");
+
+        // A null key evicts every entry of the cache
+        assertEquals(Arrays.asList("owner1", null), evicted2);
+        assertTrue(evicted1.isEmpty());
+        verifyZeroInteractions(node2.cache);
+    }
+
+    @Test
+    public void testNothingSharedWhenDisabled() {
+        this.config.setProperty(ConfigProperties.CACHE_CLUSTER_INVALIDATION_ENABLED, "false");
+        Node node1 = new Node();
+        Node node2 = new Node();
+
+        assertNull(node1.listener);
+        assertFalse(node1.invalidator.isStarted());
+        assertTrue(this.bus.isEmpty());
+
+        node1.invalidator.invalidateRegion(CandlepinCacheRegions.FIVE_SECONDS_QUERY_CACHE);
+
+        verify(node1.cache).evictRegion(CandlepinCacheRegions.FIVE_SECONDS_QUERY_CACHE);
+        verifyZeroInteractions(node2.cache);
+    }
+
+    @Test
+    public void testInvalidationSerialization() throws Exception {
+        CacheInvalidation invalidation = new CacheInvalidation("node")
+            .addEntity(ENTITY_NAME, "prod1_uuid")
+            .addCollection(ENTITY_NAME + ".attributes", null)
+            .addCollection(ENTITY_NAME + ".attributes", "prod1_uuid")
+            .addRegion(CandlepinCacheRegions.FIVE_SECONDS_QUERY_CACHE)
+            .addCacheEntry("test_cache", "owner1");
+
+        ObjectMapper mapper = new ObjectMapper();
+        CacheInvalidation output = mapper.readValue(mapper.writeValueAsString(invalidation),
+            CacheInvalidation.class);
+
+        assertEquals("node", output.getOrigin());
+        assertEquals(invalidation.getEntities(), output.getEntities());
+        assertEquals(invalidation.getRegions(), output.getRegions());
+        assertEquals(invalidation.getCaches(), output.getCaches());
+
+        // Evicting a collection for every owner supersedes evicting it for one owner
+        assertTrue(output.getCollections().get(ENTITY_NAME + ".attributes").isEmpty());
+        assertFalse(output.isEmpty());
+    }
+}
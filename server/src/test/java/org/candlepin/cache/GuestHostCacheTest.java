@@ -0,0 +1,311 @@
+/**
+ * Copyright (c) 2009 - 2020 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.cache;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import org.candlepin.config.CandlepinCommonTestConfig;
+import org.candlepin.config.ConfigProperties;
+import org.candlepin.model.Consumer;
+import org.candlepin.model.GuestId;
+import org.candlepin.model.Owner;
+import org.candlepin.test.TestUtil;
+
+import org.hibernate.Transaction;
+import org.hibernate.event.service.spi.EventListenerGroup;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.resource.transaction.spi.TransactionStatus;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Function;
+
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+
+
+
+/**
+ * Test suite for the GuestHostCache class
+ */
+public class GuestHostCacheTest {
+
+    private CandlepinCommonTestConfig config;
+    private ClusterCacheInvalidator clusterInvalidator;
+    private Owner owner;
+    private Consumer host1;
+    private Consumer host2;
+    private List<Object[]> rows;
+    private Function<String, List<Object[]>> loader;
+
+    private Object listener;
+    private EventSource session;
+    private Transaction transaction;
+
+    @BeforeEach
+    public void init() {
+        this.config = new CandlepinCommonTestConfig();
+        this.config.setProperty(ConfigProperties.GUEST_HOST_CACHE_MAX_OWNERS, "100");
+        this.clusterInvalidator = mock(ClusterCacheInvalidator.class);
+        this.owner = TestUtil.createOwner("owner1");
+        this.host1 = this.createHost("host1");
+        this.host2 = this.createHost("host2");
+
+        this.rows = new ArrayList<>();
+        this.loader = mock(Function.class);
+        doAnswer(iom -> new ArrayList<>(this.rows)).when(this.loader).apply(anyString());
+
+        this.transaction = mock(Transaction.class);
+        doReturn(TransactionStatus.ACTIVE).when(this.transaction).getStatus();
+
+        this.session = mock(EventSource.class);
+        doReturn(this.transaction).when(this.session).getTransaction();
+    }
+
+    private Consumer createHost(String id) {
+        Consumer host = TestUtil.createConsumer(this.owner);
+        host.setId(id);
+
+        return host;
+    }
+
+    private GuestHostCache buildCache() {
+        EventListenerGroup group = mock(EventListenerGroup.class);
+        EventListenerRegistry registry = mock(EventListenerRegistry.class);
+        doReturn(group).when(registry).getEventListenerGroup(any());
+
+        GuestHostCache cache = new GuestHostCache(this.config, this.clusterInvalidator);
+        cache.registerListeners(registry);
+
+        ArgumentCaptor<Object> captor = ArgumentCaptor.forClass(Object.class);
+        verify(group, times(3)).appendListener(captor.capture());
+        this.listener = captor.getValue();
+
+        return cache;
+    }
+
+    private String lookup(GuestHostCache cache, String... guestIds) {
+        return cache.getHostId(this.owner.getId(), Arrays.asList(guestIds), this.loader);
+    }
+
+    private Synchronization insertGuest(Consumer host, String guestId, long updated) {
+        GuestId entity = new GuestId(guestId, host);
+        entity.setUpdated(new Date(updated));
+
+        ((PostInsertEventListener) this.listener).onPostInsert(
+            new PostInsertEvent(entity, "id", new Object[0], null, this.session));
+
+        return this.captureSynchronization();
+    }
+
+    private Synchronization deleteGuest(Consumer host, String guestId) {
+        GuestId entity = new GuestId(guestId, host);
+
+        ((PostDeleteEventListener) this.listener).onPostDelete(
+            new PostDeleteEvent(entity, "id", new Object[0], null, this.session));
+
+        return this.captureSynchronization();
+    }
+
+    private Synchronization captureSynchronization() {
+        ArgumentCaptor<Synchronization> captor = ArgumentCaptor.forClass(Synchronization.class);
+        verify(this.transaction, atLeastOnce()).registerSynchronization(captor.capture());
+
+        return captor.getValue();
+    }
+
+    @Test
+    public void testUnavailableUntilListenersRegistered() {
+        GuestHostCache cache = new GuestHostCache(this.config, this.clusterInvalidator);
+        assertFalse(cache.isAvailable(this.owner.getId()));
+
+        assertTrue(this.buildCache().isAvailable(this.owner.getId()));
+    }
+
+    @Test
+    public void testUnavailableWhenDisabled() {
+        this.config.setProperty(ConfigProperties.GUEST_HOST_CACHE_MAX_OWNERS, "0");
+        assertFalse(this.buildCache().isAvailable(this.owner.getId()));
+    }
+
+    @Test
+    public void testLookupReturnsMostRecentHost() {
+        this.rows.add(new Object[] { "guest1", "host1", new Date(1000) });
+        this.rows.add(new Object[] { "guest1", "host2", new Date(2000) });
+        this.rows.add(new Object[] { "guest2", "host1", new Date(1000) });
+
+        GuestHostCache cache = this.buildCache();
+
+        assertEquals("host2", this.lookup(cache, "GUEST1"));
+        assertEquals("host1", this.lookup(cache, "guest2"));
+        assertEquals("host1", this.lookup(cache, "unknown", "guest2"));
+        assertNull(this.lookup(cache, "unknown"));
+
+        assertEquals(1, cache.getMisses());
+        assertEquals(3, cache.getHits());
+        verify(this.loader, times(1)).apply(eq(this.owner.getId()));
+    }
+
+    @Test
+    public void testCommittedChangesAreAppliedIncrementally() {
+        this.rows.add(new Object[] { "guest1", "host1", new Date(1000) });
+
+        GuestHostCache cache = this.buildCache();
+        assertEquals("host1", this.lookup(cache, "guest1"));
+
+        Synchronization sync = this.insertGuest(this.host2, "guest1", 2000);
+
+        // The changing thread must not use the index until the changes are committed
+        assertFalse(cache.isAvailable(this.owner.getId()));
+        assertEquals("host1", this.lookup(cache, "guest1"));
+
+        sync.afterCompletion(Status.STATUS_COMMITTED);
+
+        assertTrue(cache.isAvailable(this.owner.getId()));
+        assertEquals("host2", this.lookup(cache, "guest1"));
+        verify(this.loader, times(1)).apply(eq(this.owner.getId()));
+    }
+
+    @Test
+    public void testRemovedGuestFallsBackToPreviousHost() {
+        this.rows.add(new Object[] { "guest1", "host1", new Date(1000) });
+        this.rows.add(new Object[] { "guest1", "host2", new Date(2000) });
+
+        GuestHostCache cache = this.buildCache();
+        assertEquals("host2", this.lookup(cache, "guest1"));
+
+        this.deleteGuest(this.host2, "guest1").afterCompletion(Status.STATUS_COMMITTED);
+        assertEquals("host1", this.lookup(cache, "guest1"));
+
+        this.deleteGuest(this.host1, "guest1").afterCompletion(Status.STATUS_COMMITTED);
+        assertNull(this.lookup(cache, "guest1"));
+    }
+
+    @Test
+    public void testRollbackDiscardsIndex() {
+        this.rows.add(new Object[] { "guest1", "host1", new Date(1000) });
+
+        GuestHostCache cache = this.buildCache();
+        assertEquals("host1", this.lookup(cache, "guest1"));
+        assertEquals(1, cache.size());
+
+        this.insertGuest(this.host2, "guest1", 2000).afterCompletion(Status.STATUS_ROLLEDBACK);
+
+        assertEquals(0, cache.size());
+        assertTrue(cache.isAvailable(this.owner.getId()));
+        assertEquals("host1", this.lookup(cache, "guest1"));
+        verify(this.loader, times(2)).apply(eq(this.owner.getId()));
+    }
+
+    @Test
+    public void testIndexNotPublishedIfChangedWhileLoading() {
+        GuestHostCache cache = this.buildCache();
+
+        doAnswer(iom -> {
+            this.insertGuest(this.host1, "guest1", 1000).afterCompletion(Status.STATUS_COMMITTED);
+            return Collections.emptyList();
+        }).when(this.loader).apply(anyString());
+
+        assertNull(this.lookup(cache, "guest1"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedOwnersAreEvicted() {
+        this.config.setProperty(ConfigProperties.GUEST_HOST_CACHE_MAX_OWNERS, "1");
+        GuestHostCache cache = this.buildCache();
+
+        cache.getHostId("owner1", Arrays.asList("guest1"), this.loader);
+        cache.getHostId("owner2", Arrays.asList("guest1"), this.loader);
+        assertEquals(1, cache.size());
+
+        cache.getHostId("owner2", Arrays.asList("guest1"), this.loader);
+        verify(this.loader, times(1)).apply(eq("owner2"));
+
+        cache.getHostId("owner1", Arrays.asList("guest1"), this.loader);
+        verify(this.loader, times(2)).apply(eq("owner1"));
+    }
+
+    @Test
+    public void testCommittedChangesArePublishedToCluster() {
+        this.buildCache();
+
+        Synchronization sync = this.insertGuest(this.host1, "guest1", 1000);
+        verify(this.clusterInvalidator, never()).invalidateNodeCache(anyString(), any());
+
+        sync.afterCompletion(Status.STATUS_COMMITTED);
+        verify(this.clusterInvalidator).invalidateNodeCache(GuestHostCache.CACHE_NAME, this.owner.getId());
+    }
+
+    @Test
+    public void testRolledBackChangesAreNotPublishedToCluster() {
+        this.buildCache();
+
+        this.insertGuest(this.host1, "guest1", 1000).afterCompletion(Status.STATUS_ROLLEDBACK);
+        verify(this.clusterInvalidator, never()).invalidateNodeCache(anyString(), any());
+    }
+
+    @Test
+    public void testClusterInvalidationDiscardsIndex() {
+        this.rows.add(new Object[] { "guest1", "host1", new Date(1000) });
+
+        ArgumentCaptor<java.util.function.Consumer<String>> captor =
+            ArgumentCaptor.forClass(java.util.function.Consumer.class);
+
+        GuestHostCache cache = this.buildCache();
+        verify(this.clusterInvalidator).registerNodeCache(eq(GuestHostCache.CACHE_NAME), captor.capture());
+
+        assertEquals("host1", this.lookup(cache, "guest1"));
+        this.rows.set(0, new Object[] { "guest1", "host2", new Date(2000) });
+
+        captor.getValue().accept(this.owner.getId());
+        assertEquals(0, cache.size());
+        assertEquals("host2", this.lookup(cache, "guest1"));
+
+        this.rows.set(0, new Object[] { "guest1", "host1", new Date(3000) });
+
+        captor.getValue().accept(null);
+        assertEquals(0, cache.size());
+        assertEquals("host1", this.lookup(cache, "guest1"));
+        verify(this.loader, times(3)).apply(eq(this.owner.getId()));
+    }
+
+    @Test
+    public void testExpiredIndexIsReloaded() {
+        this.config.setProperty(ConfigProperties.GUEST_HOST_CACHE_MAX_AGE, "0");
+        this.rows.add(new Object[] { "guest1", "host1", new Date(1000) });
+
+        GuestHostCache cache = this.buildCache();
+        assertEquals("host1", this.lookup(cache, "guest1"));
+
+        this.rows.set(0, new Object[] { "guest1", "host2", new Date(2000) });
+        assertEquals("host2", this.lookup(cache, "guest1"));
+
+        assertEquals(2, cache.getMisses());
+        verify(this.loader, times(2)).apply(eq(this.owner.getId()));
+    }
+}
@@ -0,0 +1,345 @@
+/**
+ * Copyright (c) 2009 - 2020 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.cache;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import org.candlepin.config.CandlepinCommonTestConfig;
+import org.candlepin.config.ConfigProperties;
+import org.candlepin.model.Consumer;
+import org.candlepin.model.Entitlement;
+import org.candlepin.model.Owner;
+import org.candlepin.model.OwnerInfo;
+import org.candlepin.test.TestUtil;
+
+import org.hibernate.Transaction;
+import org.hibernate.event.service.spi.EventListenerGroup;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.resource.transaction.spi.TransactionStatus;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.function.Supplier;
+
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+
+
+
+/**
+ * Test suite for the OwnerInfoCache class
+ */
+public class OwnerInfoCacheTest {
+
+    private CandlepinCommonTestConfig config;
+    private ClusterCacheInvalidator clusterInvalidator;
+    private Owner owner;
+    private Supplier<OwnerInfo> loader;
+
+    private Object listener;
+    private EventSource session;
+    private Transaction transaction;
+
+    @BeforeEach
+    public void init() {
+        this.config = new CandlepinCommonTestConfig();
+        this.config.setProperty(ConfigProperties.OWNER_INFO_CACHE_MAX_OWNERS, "10");
+        this.config.setProperty(ConfigProperties.OWNER_INFO_CACHE_MAX_AGE, "3600");
+        this.config.setProperty(ConfigProperties.OWNER_INFO_CACHE_MAX_STALENESS, "0");
+
+        this.clusterInvalidator = mock(ClusterCacheInvalidator.class);
+        this.owner = TestUtil.createOwner("owner1");
+
+        this.loader = mock(Supplier.class);
+        doAnswer(iom -> new OwnerInfo()).when(this.loader).get();
+
+        this.transaction = mock(Transaction.class);
+        doReturn(TransactionStatus.ACTIVE).when(this.transaction).getStatus();
+
+        this.session = mock(EventSource.class);
+        doReturn(this.transaction).when(this.session).getTransaction();
+    }
+
+    private OwnerInfoCache buildCache() {
+        EventListenerGroup group = mock(EventListenerGroup.class);
+        EventListenerRegistry registry = mock(EventListenerRegistry.class);
+        doReturn(group).when(registry).getEventListenerGroup(any());
+
+        OwnerInfoCache cache = new OwnerInfoCache(this.config, this.clusterInvalidator);
+        cache.registerListeners(registry);
+
+        ArgumentCaptor<Object> captor = ArgumentCaptor.forClass(Object.class);
+        verify(group, times(3)).appendListener(captor.capture());
+        this.listener = captor.getValue();
+
+        return cache;
+    }
+
+    private OwnerInfo fetch(OwnerInfoCache cache) {
+        return cache.get(this.owner.getId(), this.loader);
+    }
+
+    private Synchronization insert(Object entity) {
+        ((PostInsertEventListener) this.listener).onPostInsert(
+            new PostInsertEvent(entity, "id", new Object[0], null, this.session));
+
+        return this.captureSynchronization();
+    }
+
+    private void update(Object entity, String... dirtyProperties) {
+        String[] properties = { "entitlementStatus", "lastCheckin", "name", "updated" };
+        EntityPersister persister = mock(EntityPersister.class);
+        doReturn(properties).when(persister).getPropertyNames();
+
+        int[] dirty = Arrays.stream(dirtyProperties)
+            .mapToInt(property -> Arrays.asList(properties).indexOf(property))
+            .toArray();
+
+        ((PostUpdateEventListener) this.listener).onPostUpdate(new PostUpdateEvent(entity, "id",
+            new Object[0], new Object[0], dirty, persister, this.session));
+    }
+
+    private Synchronization captureSynchronization() {
+        ArgumentCaptor<Synchronization> captor = ArgumentCaptor.forClass(Synchronization.class);
+        verify(this.transaction, atLeastOnce()).registerSynchronization(captor.capture());
+
+        return captor.getValue();
+    }
+
+    @Test
+    public void testNotCachedUntilListenersRegistered() {
+        OwnerInfoCache cache = new OwnerInfoCache(this.config, this.clusterInvalidator);
+        assertFalse(cache.isEnabled());
+
+        this.fetch(cache);
+        this.fetch(cache);
+
+        verify(this.loader, times(2)).get();
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testNotCachedWhenDisabled() {
+        this.config.setProperty(ConfigProperties.OWNER_INFO_CACHE_MAX_OWNERS, "0");
+        OwnerInfoCache cache = this.buildCache();
+
+        assertFalse(cache.isEnabled());
+        this.fetch(cache);
+        this.fetch(cache);
+
+        verify(this.loader, times(2)).get();
+    }
+
+    @Test
+    public void testSummaryServedFromCache() {
+        OwnerInfoCache cache = this.buildCache();
+
+        OwnerInfo info = this.fetch(cache);
+        assertNotNull(info.getLastUpdated());
+        assertSame(info, this.fetch(cache));
+
+        verify(this.loader, times(1)).get();
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void testCommittedChangeRecomputesSummary() {
+        OwnerInfoCache cache = this.buildCache();
+        OwnerInfo info = this.fetch(cache);
+
+        Synchronization sync = this.insert(TestUtil.createConsumer(this.owner));
+        sync.afterCompletion(Status.STATUS_COMMITTED);
+
+        assertNotSame(info, this.fetch(cache));
+        verify(this.loader, times(2)).get();
+    }
+
+    @Test
+    public void testRolledBackChangeKeepsSummary() {
+        OwnerInfoCache cache = this.buildCache();
+        OwnerInfo info = this.fetch(cache);
+
+        Entitlement entitlement = new Entitlement();
+        entitlement.setOwner(this.owner);
+
+        this.insert(entitlement).afterCompletion(Status.STATUS_ROLLEDBACK);
+
+        assertSame(info, this.fetch(cache));
+    }
+
+    @Test
+    public void testUncommittedChangesSeenByChangingThread() {
+        OwnerInfoCache cache = this.buildCache();
+        OwnerInfo info = this.fetch(cache);
+
+        Synchronization sync = this.insert(TestUtil.createConsumer(this.owner));
+
+        // The changing thread computes its own summary, which isn't cached
+        OwnerInfo uncommitted = this.fetch(cache);
+        assertNotSame(info, uncommitted);
+
+        sync.afterCompletion(Status.STATUS_COMMITTED);
+
+        OwnerInfo committed = this.fetch(cache);
+        assertNotSame(uncommitted, committed);
+        assertSame(committed, this.fetch(cache));
+        verify(this.loader, times(3)).get();
+    }
+
+    @Test
+    public void testStaleSummaryServedWithinStalenessWindow() {
+        this.config.setProperty(ConfigProperties.OWNER_INFO_CACHE_MAX_STALENESS, "3600");
+        OwnerInfoCache cache = this.buildCache();
+        OwnerInfo info = this.fetch(cache);
+        assertTrue(cache.getRefreshCandidates().isEmpty());
+
+        this.insert(TestUtil.createConsumer(this.owner)).afterCompletion(Status.STATUS_COMMITTED);
+
+        assertSame(info, this.fetch(cache));
+        assertEquals(Collections.singletonList(this.owner.getId()), cache.getRefreshCandidates());
+
+        cache.refresh(this.owner.getId(), this.loader);
+
+        assertNotSame(info, this.fetch(cache));
+        assertTrue(cache.getRefreshCandidates().isEmpty());
+    }
+
+    @Test
+    public void testCheckInDoesNotStaleSummary() {
+        OwnerInfoCache cache = this.buildCache();
+        Consumer consumer = TestUtil.createConsumer(this.owner);
+        OwnerInfo info = this.fetch(cache);
+
+        this.update(consumer, "lastCheckin", "updated");
+        verify(this.transaction, never()).registerSynchronization(any());
+
+        this.update(consumer, "entitlementStatus", "updated");
+        this.captureSynchronization().afterCompletion(Status.STATUS_COMMITTED);
+
+        assertNotSame(info, this.fetch(cache));
+    }
+
+    @Test
+    public void testChangesOutsideTransactionApplyImmediately() {
+        doReturn(TransactionStatus.NOT_ACTIVE).when(this.transaction).getStatus();
+        OwnerInfoCache cache = this.buildCache();
+        OwnerInfo info = this.fetch(cache);
+
+        this.update(TestUtil.createConsumer(this.owner), "name");
+
+        verify(this.transaction, never()).registerSynchronization(any());
+        assertNotSame(info, this.fetch(cache));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedOwnersEvicted() {
+        this.config.setProperty(ConfigProperties.OWNER_INFO_CACHE_MAX_OWNERS, "2");
+        OwnerInfoCache cache = this.buildCache();
+
+        for (int i = 0; i < 5; ++i) {
+            cache.get("owner-" + i, this.loader);
+        }
+
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testCommittedChangesArePublishedToCluster() {
+        OwnerInfoCache cache = this.buildCache();
+        this.fetch(cache);
+
+        Synchronization sync = this.insert(TestUtil.createConsumer(this.owner));
+        verify(this.clusterInvalidator, never()).invalidateNodeCache(anyString(), any());
+
+        sync.afterCompletion(Status.STATUS_COMMITTED);
+        verify(this.clusterInvalidator).invalidateNodeCache(OwnerInfoCache.CACHE_NAME, this.owner.getId());
+    }
+
+    @Test
+    public void testRolledBackChangesAreNotPublishedToCluster() {
+        OwnerInfoCache cache = this.buildCache();
+        this.fetch(cache);
+
+        this.insert(TestUtil.createConsumer(this.owner)).afterCompletion(Status.STATUS_ROLLEDBACK);
+        verify(this.clusterInvalidator, never()).invalidateNodeCache(anyString(), any());
+    }
+
+    @Test
+    public void testClusterInvalidationStalesSummary() {
+        this.config.setProperty(ConfigProperties.OWNER_INFO_CACHE_MAX_STALENESS, "3600");
+
+        ArgumentCaptor<java.util.function.Consumer<String>> captor =
+            ArgumentCaptor.forClass(java.util.function.Consumer.class);
+
+        OwnerInfoCache cache = this.buildCache();
+        verify(this.clusterInvalidator).registerNodeCache(eq(OwnerInfoCache.CACHE_NAME), captor.capture());
+
+        cache.get("owner1", this.loader);
+        cache.get("owner2", this.loader);
+        assertTrue(cache.getRefreshCandidates().isEmpty());
+
+        captor.getValue().accept("owner1");
+        assertEquals(Collections.singletonList("owner1"), cache.getRefreshCandidates());
+
+        captor.getValue().accept(null);
+        assertEquals(2, cache.getRefreshCandidates().size());
+    }
+
+    @Test
+    public void testVersionsOfUncachedOwnersAreDiscarded() {
+        this.config.setProperty(ConfigProperties.OWNER_INFO_CACHE_MAX_OWNERS, "2");
+        doReturn(TransactionStatus.NOT_ACTIVE).when(this.transaction).getStatus();
+        OwnerInfoCache cache = this.buildCache();
+
+        for (int i = 0; i < 50; ++i) {
+            this.update(TestUtil.createConsumer(TestUtil.createOwner("owner-" + i)), "name");
+        }
+
+        assertTrue(cache.getVersionCount() <= 4);
+    }
+
+    @Test
+    public void testSummaryComputedDuringPruningIsStale() {
+        this.config.setProperty(ConfigProperties.OWNER_INFO_CACHE_MAX_OWNERS, "1");
+        this.config.setProperty(ConfigProperties.OWNER_INFO_CACHE_MAX_STALENESS, "3600");
+        doReturn(TransactionStatus.NOT_ACTIVE).when(this.transaction).getStatus();
+        OwnerInfoCache cache = this.buildCache();
+
+        Supplier<OwnerInfo> loader = () -> {
+            // Changes to the owner and enough other owners to prune its version mid-computation
+            this.update(TestUtil.createConsumer(this.owner), "name");
+
+            for (int i = 0; i < 5; ++i) {
+                this.update(TestUtil.createConsumer(TestUtil.createOwner("owner-" + i)), "name");
+            }
+
+            return new OwnerInfo();
+        };
+
+        cache.get(this.owner.getId(), loader);
+        assertEquals(Collections.singletonList(this.owner.getId()), cache.getRefreshCandidates());
+    }
+}
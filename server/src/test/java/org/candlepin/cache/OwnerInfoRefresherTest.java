@@ -0,0 +1,151 @@
+/**
+ * Copyright (c) 2009 - 2020 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.*;
+
+import org.candlepin.config.CandlepinCommonTestConfig;
+import org.candlepin.config.ConfigProperties;
+import org.candlepin.guice.CandlepinRequestScope;
+import org.candlepin.model.Owner;
+import org.candlepin.model.OwnerCurator;
+import org.candlepin.model.OwnerInfoCurator;
+import org.candlepin.test.TestUtil;
+
+import com.google.inject.persist.UnitOfWork;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+
+
+/**
+ * Test suite for the OwnerInfoRefresher class
+ */
+public class OwnerInfoRefresherTest {
+
+    private CandlepinCommonTestConfig config;
+    private OwnerInfoCache ownerInfoCache;
+    private OwnerCurator ownerCurator;
+    private OwnerInfoCurator ownerInfoCurator;
+    private UnitOfWork unitOfWork;
+    private CandlepinRequestScope requestScope;
+
+    @BeforeEach
+    public void init() {
+        this.config = new CandlepinCommonTestConfig();
+        this.ownerInfoCache = mock(OwnerInfoCache.class);
+        this.ownerCurator = mock(OwnerCurator.class);
+        this.ownerInfoCurator = mock(OwnerInfoCurator.class);
+        this.unitOfWork = mock(UnitOfWork.class);
+        this.requestScope = mock(CandlepinRequestScope.class);
+
+        doReturn(true).when(this.ownerInfoCache).isEnabled();
+    }
+
+    private OwnerInfoRefresher createRefresher() {
+        return new OwnerInfoRefresher(this.config, this.ownerInfoCache, this.ownerCurator,
+            this.ownerInfoCurator, this.unitOfWork, this.requestScope);
+    }
+
+    @Test
+    public void testRequiresDependencies() {
+        assertThrows(IllegalArgumentException.class, () -> new OwnerInfoRefresher(null,
+            this.ownerInfoCache, this.ownerCurator, this.ownerInfoCurator, this.unitOfWork,
+            this.requestScope));
+        assertThrows(IllegalArgumentException.class, () -> new OwnerInfoRefresher(this.config,
+            null, this.ownerCurator, this.ownerInfoCurator, this.unitOfWork, this.requestScope));
+        assertThrows(IllegalArgumentException.class, () -> new OwnerInfoRefresher(this.config,
+            this.ownerInfoCache, null, this.ownerInfoCurator, this.unitOfWork, this.requestScope));
+        assertThrows(IllegalArgumentException.class, () -> new OwnerInfoRefresher(this.config,
+            this.ownerInfoCache, this.ownerCurator, null, this.unitOfWork, this.requestScope));
+        assertThrows(IllegalArgumentException.class, () -> new OwnerInfoRefresher(this.config,
+            this.ownerInfoCache, this.ownerCurator, this.ownerInfoCurator, null, this.requestScope));
+        assertThrows(IllegalArgumentException.class, () -> new OwnerInfoRefresher(this.config,
+            this.ownerInfoCache, this.ownerCurator, this.ownerInfoCurator, this.unitOfWork, null));
+    }
+
+    @Test
+    public void testDisabledCacheRefreshesNothing() {
+        doReturn(false).when(this.ownerInfoCache).isEnabled();
+
+        assertEquals(0, this.createRefresher().refresh());
+
+        verify(this.ownerInfoCache, never()).getRefreshCandidates();
+        verifyZeroInteractions(this.ownerInfoCurator);
+    }
+
+    @Test
+    public void testRefreshesCandidates() {
+        Owner owner1 = TestUtil.createOwner("owner1");
+        Owner owner2 = TestUtil.createOwner("owner2");
+
+        doReturn(Arrays.asList(owner1.getId(), owner2.getId()))
+            .when(this.ownerInfoCache).getRefreshCandidates();
+        doReturn(owner1).when(this.ownerCurator).get(owner1.getId());
+        doReturn(owner2).when(this.ownerCurator).get(owner2.getId());
+
+        assertEquals(2, this.createRefresher().refresh());
+
+        verify(this.ownerInfoCurator, times(1)).refresh(owner1);
+        verify(this.ownerInfoCurator, times(1)).refresh(owner2);
+    }
+
+    @Test
+    public void testEvictsDeletedOwners() {
+        doReturn(Arrays.asList("deleted-owner")).when(this.ownerInfoCache).getRefreshCandidates();
+
+        assertEquals(0, this.createRefresher().refresh());
+
+        verify(this.ownerInfoCache, times(1)).evict("deleted-owner");
+        verifyZeroInteractions(this.ownerInfoCurator);
+    }
+
+    @Test
+    public void testFailedRefreshDoesNotAbortRefresh() {
+        Owner owner1 = TestUtil.createOwner("owner1");
+        Owner owner2 = TestUtil.createOwner("owner2");
+
+        doReturn(Arrays.asList(owner1.getId(), owner2.getId()))
+            .when(this.ownerInfoCache).getRefreshCandidates();
+        doReturn(owner1).when(this.ownerCurator).get(owner1.getId());
+        doReturn(owner2).when(this.ownerCurator).get(owner2.getId());
+        doThrow(new IllegalStateException()).when(this.ownerInfoCurator).refresh(owner1);
+
+        assertEquals(1, this.createRefresher().refresh());
+        verify(this.ownerInfoCurator, times(1)).refresh(owner2);
+    }
+
+    @Test
+    public void testRefreshRunsOnLocalTimer() throws Exception {
+        this.config.setProperty(ConfigProperties.OWNER_INFO_CACHE_REFRESH_INTERVAL, "1");
+        OwnerInfoRefresher refresher = this.createRefresher();
+
+        try {
+            refresher.start();
+            verify(this.ownerInfoCache, timeout(5000).atLeastOnce()).getRefreshCandidates();
+        }
+        finally {
+            refresher.shutdown();
+        }
+
+        verify(this.requestScope, atLeastOnce()).enter();
+        verify(this.unitOfWork, atLeastOnce()).begin();
+    }
+}
@@ -0,0 +1,313 @@
+/**
+ * Copyright (c) 2009 - 2020 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.cache;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import org.candlepin.config.CandlepinCommonTestConfig;
+import org.candlepin.config.ConfigProperties;
+import org.candlepin.model.CandlepinQuery;
+import org.candlepin.model.Content;
+import org.candlepin.model.Owner;
+import org.candlepin.model.OwnerProductCurator;
+import org.candlepin.model.Product;
+import org.candlepin.test.TestUtil;
+
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+import org.hibernate.resource.transaction.spi.TransactionStatus;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+
+
+
+/**
+ * Test suite for the OwnerProductGraphCache class
+ */
+public class OwnerProductGraphCacheTest {
+
+    private CandlepinCommonTestConfig config;
+    private OwnerProductCurator ownerProductCurator;
+    private ClusterCacheInvalidator clusterInvalidator;
+    private Transaction transaction;
+
+    @BeforeEach
+    public void init() {
+        this.config = new CandlepinCommonTestConfig();
+        this.config.setProperty(ConfigProperties.PRODUCT_GRAPH_CACHE_MAX_OWNERS, "500");
+        this.ownerProductCurator = mock(OwnerProductCurator.class);
+        this.clusterInvalidator = mock(ClusterCacheInvalidator.class);
+    }
+
+    private OwnerProductGraphCache buildCache() {
+        return new OwnerProductGraphCache(this.config, this.ownerProductCurator, this.clusterInvalidator);
+    }
+
+    private void beginTransaction() {
+        this.transaction = mock(Transaction.class);
+        doReturn(TransactionStatus.ACTIVE).when(this.transaction).getStatus();
+
+        Session session = mock(Session.class);
+        doReturn(this.transaction).when(session).getTransaction();
+        doReturn(session).when(this.ownerProductCurator).currentSession();
+    }
+
+    private void completeTransaction(int status) {
+        ArgumentCaptor<Synchronization> captor = ArgumentCaptor.forClass(Synchronization.class);
+        verify(this.transaction, atLeastOnce()).registerSynchronization(captor.capture());
+
+        doReturn(TransactionStatus.NOT_ACTIVE).when(this.transaction).getStatus();
+        for (Synchronization sync : captor.getAllValues()) {
+            sync.afterCompletion(status);
+        }
+    }
+
+    private void mockProducts(Owner owner, Product... products) {
+        List<Product> productList = Arrays.asList(products);
+
+        CandlepinQuery cqmock = mock(CandlepinQuery.class);
+        doReturn(productList).when(cqmock).list();
+        doAnswer(iom -> productList.iterator()).when(cqmock).iterator();
+        doReturn(cqmock).when(this.ownerProductCurator).getProductsByOwner(eq(owner));
+    }
+
+    @Test
+    public void testSnapshotIsBuiltOnceAndShared() {
+        Owner owner = TestUtil.createOwner("owner1");
+        Product product = TestUtil.createProduct("p1", "product 1");
+        product.setAttribute(Product.Attributes.ARCHITECTURE, "x86_64");
+        product.addContent(TestUtil.createContent("c1", "content 1"), true);
+        this.mockProducts(owner, product);
+
+        OwnerProductGraphCache cache = this.buildCache();
+        OwnerProductGraph graph = cache.getSnapshot(owner);
+
+        assertNotNull(graph);
+        assertEquals(owner.getId(), graph.getOwnerId());
+        assertEquals("x86_64", graph.getProduct("p1").getAttributeValue(Product.Attributes.ARCHITECTURE));
+        assertTrue(graph.getProduct("p1").getContent().get("c1"));
+        assertNotNull(graph.getContent("c1"));
+        assertTrue(graph.getFootprint() > 0);
+
+        assertSame(graph, cache.getSnapshot(owner));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(graph.getFootprint(), cache.getFootprint());
+        verify(this.ownerProductCurator, times(1)).getProductsByOwner(eq(owner));
+    }
+
+    @Test
+    public void testSnapshotIsDetachedFromEntities() {
+        Owner owner = TestUtil.createOwner("owner1");
+        Content content = TestUtil.createContent("c1", "content 1");
+        Product product = TestUtil.createProduct("p1", "product 1");
+        product.addContent(content, false);
+        this.mockProducts(owner, product);
+
+        OwnerProductGraph graph = this.buildCache().getSnapshot(owner);
+
+        product.setName("changed name");
+        product.setAttribute("new_attrib", "value");
+        content.setName("changed content name");
+
+        assertEquals("product 1", graph.getProduct("p1").getName());
+        assertNull(graph.getProduct("p1").getAttributeValue("new_attrib"));
+        assertEquals("content 1", graph.getContent("c1").getName());
+        assertThrows(UnsupportedOperationException.class,
+            () -> graph.getProduct("p1").getAttributes().put("key", "value"));
+    }
+
+    @Test
+    public void testInvalidateDiscardsSnapshot() {
+        Owner owner = TestUtil.createOwner("owner1");
+        this.mockProducts(owner, TestUtil.createProduct("p1", "product 1"));
+
+        OwnerProductGraphCache cache = this.buildCache();
+        OwnerProductGraph graph = cache.getSnapshot(owner);
+
+        cache.invalidate(owner);
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getFootprint());
+
+        OwnerProductGraph rebuilt = cache.getSnapshot(owner);
+        assertNotSame(graph, rebuilt);
+        assertTrue(rebuilt.getVersion() > graph.getVersion());
+        verify(this.ownerProductCurator, times(2)).getProductsByOwner(eq(owner));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedOwnersAreEvicted() {
+        this.config.setProperty(ConfigProperties.PRODUCT_GRAPH_CACHE_MAX_OWNERS, "2");
+
+        Owner owner1 = TestUtil.createOwner("owner1");
+        Owner owner2 = TestUtil.createOwner("owner2");
+        Owner owner3 = TestUtil.createOwner("owner3");
+        this.mockProducts(owner1, TestUtil.createProduct("p1", "product 1"));
+        this.mockProducts(owner2, TestUtil.createProduct("p2", "product 2"));
+        this.mockProducts(owner3, TestUtil.createProduct("p3", "product 3"));
+
+        OwnerProductGraphCache cache = this.buildCache();
+        OwnerProductGraph graph1 = cache.getSnapshot(owner1);
+        cache.getSnapshot(owner2);
+
+        // Touch owner1 so owner2 becomes the least recently used entry
+        assertSame(graph1, cache.getSnapshot(owner1));
+        cache.getSnapshot(owner3);
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictions());
+        assertSame(graph1, cache.getSnapshot(owner1));
+
+        cache.getSnapshot(owner2);
+        verify(this.ownerProductCurator, times(2)).getProductsByOwner(eq(owner2));
+    }
+
+    @Test
+    public void testFootprintLimitEvictsSnapshots() {
+        this.config.setProperty(ConfigProperties.PRODUCT_GRAPH_CACHE_MAX_BYTES, "1");
+
+        Owner owner = TestUtil.createOwner("owner1");
+        this.mockProducts(owner, TestUtil.createProduct("p1", "product 1"));
+
+        OwnerProductGraphCache cache = this.buildCache();
+        assertNotNull(cache.getSnapshot(owner));
+
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getFootprint());
+    }
+
+    @Test
+    public void testSnapshotSharedOnlyOnceTransactionCommits() {
+        Owner owner = TestUtil.createOwner("owner1");
+        this.mockProducts(owner, TestUtil.createProduct("p1", "product 1"));
+        this.beginTransaction();
+
+        OwnerProductGraphCache cache = this.buildCache();
+        OwnerProductGraph graph = cache.getSnapshot(owner);
+
+        // Reused within the transaction, but not yet visible to other threads
+        assertSame(graph, cache.getSnapshot(owner));
+        assertEquals(0, cache.size());
+
+        this.completeTransaction(Status.STATUS_COMMITTED);
+
+        assertEquals(1, cache.size());
+        assertSame(graph, cache.getSnapshot(owner));
+        verify(this.ownerProductCurator, times(1)).getProductsByOwner(eq(owner));
+    }
+
+    @Test
+    public void testSnapshotDiscardedWhenTransactionRollsBack() {
+        Owner owner = TestUtil.createOwner("owner1");
+        this.mockProducts(owner, TestUtil.createProduct("p1", "product 1"));
+        this.beginTransaction();
+
+        OwnerProductGraphCache cache = this.buildCache();
+        cache.getSnapshot(owner);
+        this.completeTransaction(Status.STATUS_ROLLEDBACK);
+
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testSnapshotOfChangedOwnerNotSharedOnCommit() {
+        Owner owner = TestUtil.createOwner("owner1");
+        this.mockProducts(owner, TestUtil.createProduct("p1", "product 1"));
+        this.beginTransaction();
+
+        OwnerProductGraphCache cache = this.buildCache();
+        cache.invalidate(owner);
+        cache.getSnapshot(owner);
+
+        verify(this.clusterInvalidator, never()).invalidateNodeCache(anyString(), anyString());
+        this.completeTransaction(Status.STATUS_COMMITTED);
+
+        assertEquals(0, cache.size());
+        verify(this.clusterInvalidator).invalidateNodeCache(OwnerProductGraphCache.CACHE_NAME, owner.getId());
+    }
+
+    @Test
+    public void testClusterInvalidationDiscardsSnapshot() {
+        Owner owner = TestUtil.createOwner("owner1");
+        this.mockProducts(owner, TestUtil.createProduct("p1", "product 1"));
+
+        OwnerProductGraphCache cache = this.buildCache();
+
+        ArgumentCaptor<Consumer<String>> captor = ArgumentCaptor.forClass(Consumer.class);
+        verify(this.clusterInvalidator).registerNodeCache(eq(OwnerProductGraphCache.CACHE_NAME),
+            captor.capture());
+
+        OwnerProductGraph graph = cache.getSnapshot(owner);
+        captor.getValue().accept(owner.getId());
+
+        assertEquals(0, cache.size());
+        assertNotSame(graph, cache.getSnapshot(owner));
+
+        captor.getValue().accept(null);
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testVersionsOfUncachedOwnersAreDiscarded() {
+        this.config.setProperty(ConfigProperties.PRODUCT_GRAPH_CACHE_MAX_OWNERS, "2");
+
+        Owner owner = TestUtil.createOwner("owner1");
+        this.mockProducts(owner, TestUtil.createProduct("p1", "product 1"));
+
+        OwnerProductGraphCache cache = this.buildCache();
+        OwnerProductGraph graph = cache.getSnapshot(owner);
+
+        for (int i = 0; i < 100; ++i) {
+            cache.invalidate(TestUtil.createOwner("owner_" + i));
+        }
+
+        assertTrue(cache.getVersionCount() <= 4);
+        assertSame(graph, cache.getSnapshot(owner));
+    }
+
+    @Test
+    public void testEffectiveContentPrefersEnabled() {
+        Owner owner = TestUtil.createOwner("owner1");
+        Content content1 = TestUtil.createContent("c1", "content 1");
+        Content content2 = TestUtil.createContent("c2", "content 2");
+
+        Product product1 = TestUtil.createProduct("p1", "product 1");
+        product1.addContent(content1, false);
+        product1.addContent(content2, false);
+
+        Product product2 = TestUtil.createProduct("p2", "product 2");
+        product2.addContent(content1, true);
+
+        this.mockProducts(owner, product1, product2);
+
+        OwnerProductGraph graph = this.buildCache().getSnapshot(owner);
+        Map<Content, Boolean> effective = graph.getEffectiveContent();
+
+        assertEquals(2, effective.size());
+        assertTrue(effective.get(graph.getContent("c1")));
+        assertFalse(effective.get(graph.getContent("c2")));
+        assertEquals(2, graph.getProductsProvidingContent("c1").size());
+    }
+}
@@ -0,0 +1,314 @@
+/**
+ * Copyright (c) 2009 - 2020 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.cache;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import org.candlepin.config.CandlepinCommonTestConfig;
+import org.candlepin.config.ConfigProperties;
+import org.candlepin.model.Owner;
+import org.candlepin.model.Pool;
+import org.candlepin.test.TestUtil;
+
+import org.hibernate.Transaction;
+import org.hibernate.event.service.spi.EventListenerGroup;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.resource.transaction.spi.TransactionStatus;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+
+
+
+/**
+ * Test suite for the PoolSearchIndex class
+ */
+public class PoolSearchIndexTest {
+
+    private static final String[] POOL_PROPERTIES = { "owner", "contractNumber", "consumed" };
+
+    private CandlepinCommonTestConfig config;
+    private ClusterCacheInvalidator clusterInvalidator;
+    private Owner owner;
+    private AtomicInteger loads;
+    private BiConsumer<String, PoolSearchIndex.Builder> loader;
+
+    private Object listener;
+    private EventSource session;
+    private Transaction transaction;
+
+    @BeforeEach
+    public void init() {
+        this.config = new CandlepinCommonTestConfig();
+        this.config.setProperty(ConfigProperties.POOL_SEARCH_INDEX_MAX_OWNERS, "50");
+        this.clusterInvalidator = mock(ClusterCacheInvalidator.class);
+        this.owner = TestUtil.createOwner("owner1");
+        this.loads = new AtomicInteger();
+
+        this.loader = (ownerId, builder) -> {
+            this.loads.incrementAndGet();
+
+            builder.addPool("pool1", "CONTRACT-123", "order_1", "prod1_uuid")
+                .addProduct("prod1_uuid", "MKT-rhel", "Red Hat Enterprise Linux")
+                .addSupportLevel("prod1_uuid", "Premium");
+
+            builder.addPool("pool2", "555", "orderx1", "prod2_uuid")
+                .addProduct("prod2_uuid", "MKT-other", "Other Product")
+                .addSupportLevel("prod2_uuid", "Standard")
+                .addSupportLevelOverride("pool2")
+                .addProvidedProduct("pool2", "prod3_uuid")
+                .addProduct("prod3_uuid", "37060", "Server Eng Product")
+                .addContent("prod3_uuid", "content_uuid", "Base Content", "rhel-base-label");
+
+            // References to unknown pools are ignored
+            builder.addProvidedProduct("unknown", "prod1_uuid");
+        };
+
+        this.transaction = mock(Transaction.class);
+        doReturn(TransactionStatus.ACTIVE).when(this.transaction).getStatus();
+
+        this.session = mock(EventSource.class);
+        doReturn(this.transaction).when(this.session).getTransaction();
+    }
+
+    private PoolSearchIndex buildIndex() {
+        EventListenerGroup group = mock(EventListenerGroup.class);
+        EventListenerRegistry registry = mock(EventListenerRegistry.class);
+        doReturn(group).when(registry).getEventListenerGroup(any());
+
+        PoolSearchIndex index = new PoolSearchIndex(this.config, this.clusterInvalidator);
+        index.registerListeners(registry);
+
+        ArgumentCaptor<Object> captor = ArgumentCaptor.forClass(Object.class);
+        verify(group, times(6)).appendListener(captor.capture());
+        this.listener = captor.getValue();
+
+        return index;
+    }
+
+    private Set<String> search(PoolSearchIndex index, String... patterns) {
+        return index.search(this.owner.getId(), Arrays.asList(patterns), this.loader);
+    }
+
+    private Set<String> poolIds(String... poolIds) {
+        return new HashSet<>(Arrays.asList(poolIds));
+    }
+
+    private Pool createPool() {
+        Pool pool = new Pool();
+        pool.setId("pool1");
+        pool.setOwner(this.owner);
+
+        return pool;
+    }
+
+    private Synchronization captureSynchronization() {
+        ArgumentCaptor<Synchronization> captor = ArgumentCaptor.forClass(Synchronization.class);
+        verify(this.transaction, atLeastOnce()).registerSynchronization(captor.capture());
+
+        return captor.getValue();
+    }
+
+    private void updatePool(int... dirty) {
+        EntityPersister persister = mock(EntityPersister.class);
+        doReturn(POOL_PROPERTIES).when(persister).getPropertyNames();
+
+        ((PostUpdateEventListener) this.listener).onPostUpdate(new PostUpdateEvent(this.createPool(),
+            "pool1", new Object[0], new Object[0], dirty, persister, this.session));
+    }
+
+    @Test
+    public void testUnavailableUntilListenersRegistered() {
+        PoolSearchIndex index = new PoolSearchIndex(this.config, this.clusterInvalidator);
+        assertFalse(index.isAvailable(this.owner.getId()));
+
+        assertTrue(this.buildIndex().isAvailable(this.owner.getId()));
+    }
+
+    @Test
+    public void testUnavailableWhenDisabled() {
+        this.config.setProperty(ConfigProperties.POOL_SEARCH_INDEX_MAX_OWNERS, "0");
+        assertFalse(this.buildIndex().isAvailable(this.owner.getId()));
+    }
+
+    @Test
+    public void testSearchMatchesSearchedValues() {
+        PoolSearchIndex index = this.buildIndex();
+
+        assertEquals(this.poolIds("pool1"), this.search(index, "%contract%"));
+        assertEquals(this.poolIds("pool1"), this.search(index, "%enterprise%"));
+        assertEquals(this.poolIds("pool2"), this.search(index, "37060"));
+        assertEquals(this.poolIds("pool2"), this.search(index, "%BASE-LABEL"));
+        assertEquals(this.poolIds("pool2"), this.search(index, "base content"));
+        assertEquals(this.poolIds("pool1", "pool2"), this.search(index, "mkt-%"));
+        assertEquals(this.poolIds("pool2"), this.search(index, "5_5"));
+        assertEquals(this.poolIds(), this.search(index, "%nothing%"));
+        assertEquals(this.poolIds(), this.search(index, "contract"));
+
+        assertEquals(1, this.loads.get());
+        assertEquals(1, index.getMisses());
+        assertEquals(8, index.getHits());
+    }
+
+    @Test
+    public void testSearchHonorsEscapedWildcards() {
+        PoolSearchIndex index = this.buildIndex();
+
+        assertEquals(this.poolIds("pool1"), this.search(index, "order!_1"));
+        assertEquals(this.poolIds("pool1", "pool2"), this.search(index, "order_1"));
+    }
+
+    @Test
+    public void testSupportLevelOnlyMatchedWithoutPoolOverride() {
+        PoolSearchIndex index = this.buildIndex();
+
+        assertEquals(this.poolIds("pool1"), this.search(index, "premium"));
+        assertEquals(this.poolIds(), this.search(index, "standard"));
+    }
+
+    @Test
+    public void testMultiplePatternsMustAllMatch() {
+        PoolSearchIndex index = this.buildIndex();
+
+        assertEquals(this.poolIds("pool1"), this.search(index, "mkt-%", "%linux"));
+        assertEquals(this.poolIds(), this.search(index, "%linux", "%base%"));
+    }
+
+    @Test
+    public void testCommittedPoolChangesDiscardOwnerIndex() {
+        PoolSearchIndex index = this.buildIndex();
+        this.search(index, "%contract%");
+        assertEquals(1, index.size());
+
+        ((PostInsertEventListener) this.listener).onPostInsert(
+            new PostInsertEvent(this.createPool(), "pool1", new Object[0], null, this.session));
+        Synchronization sync = this.captureSynchronization();
+
+        // The changing thread must not use the index until the changes are committed
+        assertFalse(index.isAvailable(this.owner.getId()));
+        assertTrue(index.isAvailable("owner2"));
+
+        sync.afterCompletion(Status.STATUS_COMMITTED);
+
+        assertTrue(index.isAvailable(this.owner.getId()));
+        assertEquals(0, index.size());
+        verify(this.clusterInvalidator).invalidateNodeCache(PoolSearchIndex.CACHE_NAME, this.owner.getId());
+
+        this.search(index, "%contract%");
+        assertEquals(2, this.loads.get());
+    }
+
+    @Test
+    public void testPoolUpdatesToUnsearchedPropertiesAreIgnored() {
+        PoolSearchIndex index = this.buildIndex();
+        this.search(index, "%contract%");
+
+        this.updatePool(2);
+        verify(this.transaction, never()).registerSynchronization(any());
+        assertTrue(index.isAvailable(this.owner.getId()));
+
+        this.updatePool(1, 2);
+        this.captureSynchronization().afterCompletion(Status.STATUS_COMMITTED);
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    public void testProductChangesDiscardAllIndexes() {
+        PoolSearchIndex index = this.buildIndex();
+        index.search("owner1", Collections.singleton("%contract%"), this.loader);
+        index.search("owner2", Collections.singleton("%contract%"), this.loader);
+        assertEquals(2, index.size());
+
+        ((PostInsertEventListener) this.listener).onPostInsert(new PostInsertEvent(
+            TestUtil.createProduct("prod"), "prod_uuid", new Object[0], null, this.session));
+        Synchronization sync = this.captureSynchronization();
+
+        assertFalse(index.isAvailable("owner1"));
+        assertFalse(index.isAvailable("owner2"));
+
+        sync.afterCompletion(Status.STATUS_ROLLEDBACK);
+        assertEquals(0, index.size());
+        verify(this.clusterInvalidator, never()).invalidateNodeCache(anyString(), any());
+    }
+
+    @Test
+    public void testClusterInvalidationDiscardsIndexes() {
+        ArgumentCaptor<java.util.function.Consumer<String>> captor =
+            ArgumentCaptor.forClass(java.util.function.Consumer.class);
+
+        PoolSearchIndex index = this.buildIndex();
+        verify(this.clusterInvalidator).registerNodeCache(eq(PoolSearchIndex.CACHE_NAME), captor.capture());
+
+        index.search("owner1", Collections.singleton("%contract%"), this.loader);
+        index.search("owner2", Collections.singleton("%contract%"), this.loader);
+        assertEquals(2, index.size());
+
+        captor.getValue().accept("owner1");
+        assertEquals(1, index.size());
+
+        captor.getValue().accept(null);
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    public void testIndexNotPublishedIfChangedWhileLoading() {
+        PoolSearchIndex index = this.buildIndex();
+
+        doReturn(TransactionStatus.NOT_ACTIVE).when(this.transaction).getStatus();
+        BiConsumer<String, PoolSearchIndex.Builder> loader = (ownerId, builder) -> {
+            ((PostInsertEventListener) this.listener).onPostInsert(
+                new PostInsertEvent(this.createPool(), "pool1", new Object[0], null, this.session));
+
+            this.loader.accept(ownerId, builder);
+        };
+
+        assertEquals(this.poolIds("pool1"), index.search(this.owner.getId(),
+            Collections.singleton("%contract%"), loader));
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedOwnersAreEvicted() {
+        this.config.setProperty(ConfigProperties.POOL_SEARCH_INDEX_MAX_OWNERS, "1");
+        PoolSearchIndex index = this.buildIndex();
+
+        index.search("owner1", Collections.singleton("%contract%"), this.loader);
+        index.search("owner2", Collections.singleton("%contract%"), this.loader);
+        assertEquals(1, index.size());
+
+        index.search("owner2", Collections.singleton("%contract%"), this.loader);
+        assertEquals(2, this.loads.get());
+
+        index.search("owner1", Collections.singleton("%contract%"), this.loader);
+        assertEquals(3, this.loads.get());
+    }
+}
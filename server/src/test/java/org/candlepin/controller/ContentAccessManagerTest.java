@@ -19,6 +19,8 @@ import static org.mockito.AdditionalAnswers.returnsFirstArg;
 import static org.mockito.Mockito.*;
 
 import org.candlepin.audit.EventSink;
+import org.candlepin.cache.ClusterCacheInvalidator;
+import org.candlepin.cache.OwnerProductGraphCache;
 import org.candlepin.common.config.Configuration;
 import org.candlepin.config.CandlepinCommonTestConfig;
 import org.candlepin.config.ConfigProperties;
@@ -164,7 +166,8 @@ public class ContentAccessManagerTest {
             this.mockKeyPairCurator, this.mockCertSerialCurator, this.mockOwnerCurator,
             this.mockOwnerEnvContentAccessCurator, this.mockConsumerCurator,
             this.mockConsumerTypeCurator, this.mockEnvironmentCurator, this.mockContentAccessCertCurator,
-            this.mockOwnerProductCurator, this.mockEventSink);
+            new OwnerProductGraphCache(this.config, this.mockOwnerProductCurator,
+            mock(ClusterCacheInvalidator.class)), this.mockEventSink);
     }
 
     private Owner mockOwner() {
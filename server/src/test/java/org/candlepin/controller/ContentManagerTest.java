@@ -29,6 +29,8 @@ import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
 
+import org.candlepin.cache.ClusterCacheInvalidator;
+import org.candlepin.cache.OwnerProductGraphCache;
 import org.candlepin.dto.api.v1.ContentDTO;
 import org.candlepin.model.Content;
 import org.candlepin.model.Owner;
@@ -57,13 +59,16 @@ public class ContentManagerTest extends DatabaseTestFixture {
     public void setup() throws Exception {
         this.mockEntCertGenerator = mock(EntitlementCertificateGenerator.class);
 
+        OwnerProductGraphCache productGraphCache = new OwnerProductGraphCache(this.config,
+            this.ownerProductCurator, mock(ClusterCacheInvalidator.class));
+
         this.productManager = new ProductManager(
             this.mockEntCertGenerator, this.ownerContentCurator, this.ownerProductCurator,
-            this.productCurator);
+            this.productCurator, productGraphCache);
 
         this.contentManager = new ContentManager(
             this.contentCurator, this.mockEntCertGenerator, this.ownerContentCurator,
-            this.productCurator, this.productManager, this.modelTranslator);
+            this.productCurator, this.productManager, this.modelTranslator, productGraphCache);
     }
 
     @Test
@@ -106,6 +106,7 @@ import org.candlepin.policy.activationkey.ActivationKeyRules;
 import org.candlepin.policy.js.autobind.AutobindRules;
 import org.candlepin.policy.js.compliance.ComplianceRules;
 import org.candlepin.policy.js.compliance.ComplianceStatus;
+import org.candlepin.policy.js.entitlement.ConsumerRulesContext;
 import org.candlepin.policy.js.entitlement.Enforcer;
 import org.candlepin.policy.js.entitlement.Enforcer.CallerType;
 import org.candlepin.policy.js.entitlement.PreUnbindHelper;
@@ -187,6 +188,7 @@ public class PoolManagerTest {
     @Mock private OwnerManager mockOwnerManager;
     @Mock private CdnCurator mockCdnCurator;
     @Mock private BindChainFactory mockBindChainFactory;
+    @Mock private PoolQuantityEscrow mockPoolQuantityEscrow;
     @Mock private BindContextFactory mockBindContextFactory;
     @Mock private PreEntitlementRulesCheckOpFactory mockPreEntitlementRulesCheckFactory;
 
@@ -223,7 +225,7 @@ public class PoolManagerTest {
             mockECGenerator, complianceRules, systemPurposeComplianceRules, autobindRules,
             activationKeyRules, mockProductCurator, mockProductManager, mockContentManager,
             mockOwnerContentCurator, mockOwnerCurator, mockOwnerProductCurator, mockOwnerManager,
-            mockCdnCurator, i18n, mockBindChainFactory
+            mockCdnCurator, i18n, mockBindChainFactory, mockPoolQuantityEscrow
         ));
 
         setupBindChain();
@@ -276,6 +278,22 @@ public class PoolManagerTest {
         return ctype;
     }
 
+    /**
+     * Stubs the batch pre-entitlement check to return the given result for every pool it is given
+     */
+    @SuppressWarnings("unchecked")
+    private void mockBatchPreEntitlement(ValidationResult result) {
+        when(enforcerMock.preEntitlement(any(Consumer.class), anyCollectionOf(PoolQuantity.class),
+            any(CallerType.class))).thenAnswer(iom -> {
+                Map<String, ValidationResult> results = new HashMap<>();
+                for (PoolQuantity quantity : (Collection<PoolQuantity>) iom.getArgument(1)) {
+                    results.put(quantity.getPool().getId(), result);
+                }
+
+                return results;
+            });
+    }
+
     private void setupBindChain() {
         final HandleEntitlementsOp entitlementsOp =
             new HandleEntitlementsOp(mockPoolCurator, entitlementCurator);
@@ -310,6 +328,7 @@ public class PoolManagerTest {
                         consumerCuratorMock,
                         consumerTypeCuratorMock,
                         mockOwnerCurator,
+                        mockPoolQuantityEscrow,
                         i18n,
                         consumer,
                         pQ);
@@ -1077,6 +1096,7 @@ public class PoolManagerTest {
     @Test
     public void testRevokeCleansUpPoolsWithSourceEnt() throws Exception {
         Entitlement e = new Entitlement(pool, TestUtil.createConsumer(owner), owner, 1);
+        e.setId("ent1");
         List<Pool> poolsWithSource = createPoolsWithSourceEntitlement(e, product);
 
         CandlepinQuery<Pool> cqmock = mock(CandlepinQuery.class);
@@ -1091,8 +1111,8 @@ public class PoolManagerTest {
         when(mockPoolCurator.lockAndLoad(any(Pool.class))).thenReturn(pool);
 
         manager.revokeEntitlement(e);
-        List<Entitlement> entsToDelete = Arrays.asList(e);
-        verify(entitlementCurator).batchDelete(eq(entsToDelete));
+        verify(entitlementCurator).batchDeleteByIds(eq(Collections.singleton(e.getId())));
+        verify(certCuratorMock).deleteByEntitlementIds(eq(Collections.singleton(e.getId())));
     }
 
     @Test
@@ -1103,6 +1123,9 @@ public class PoolManagerTest {
         Entitlement e = new Entitlement(pool, c, owner, 1);
         Entitlement e2 = new Entitlement(pool2, c, owner, 1);
         Entitlement e3 = new Entitlement(pool2, c, owner, 1);
+        e.setId("ent1");
+        e2.setId("ent2");
+        e3.setId("ent3");
 
         List<Entitlement> entsToDelete = new ArrayList<>();
         entsToDelete.add(e);
@@ -1123,8 +1146,8 @@ public class PoolManagerTest {
         when(mockPoolCurator.lockAndLoad(eq(pool2))).thenReturn(pool2);
 
         manager.revokeEntitlements(entsToDelete);
-        entsToDelete.add(e3);
-        verify(entitlementCurator).batchDelete(eq(entsToDelete));
+        Set<String> entIdsToDelete = new HashSet<>(Arrays.asList(e.getId(), e2.getId(), e3.getId()));
+        verify(entitlementCurator).batchDeleteByIds(eq(entIdsToDelete));
         verify(mockPoolCurator).batchDelete(eq(poolsWithSourceAsSet), any());
     }
 
@@ -1152,8 +1175,7 @@ public class PoolManagerTest {
         CandlepinQuery mockQuery = mock(CandlepinQuery.class);
         when(mockPoolCurator.listAllByIds(nullable(Set.class))).thenReturn(mockQuery);
         when(mockQuery.iterator()).thenReturn(Arrays.asList(pool1).listIterator());
-        when(enforcerMock.preEntitlement(any(Consumer.class), any(Pool.class), anyInt(),
-            any(CallerType.class))).thenReturn(result);
+        this.mockBatchPreEntitlement(result);
 
         when(enforcerMock.postEntitlement(eq(manager), any(Consumer.class), nullable(Owner.class), anyMap(),
             anyList(), eq(false), anyMap())).thenReturn(new PoolOperationCallback());
@@ -1353,7 +1375,8 @@ public class PoolManagerTest {
         pools.add(p);
 
         when(mockPoolCurator.lockAndLoad(any(Pool.class))).thenReturn(p);
-        when(mockPoolCurator.listExpiredPools(anyInt())).thenReturn(pools);
+        when(mockPoolCurator.getExpiredPoolOwnerIds()).thenReturn(Arrays.asList("test_owner_id"));
+        when(mockPoolCurator.listExpiredPools(eq("test_owner_id"), anyInt())).thenReturn(pools);
         when(mockPoolCurator.entitlementsIn(p)).thenReturn(new ArrayList<>(p.getEntitlements()));
         Subscription sub = new Subscription();
         sub.setId(p.getSubscriptionId());
@@ -1376,7 +1399,8 @@ public class PoolManagerTest {
         List<Pool> pools = Arrays.asList(p);
 
         when(mockPoolCurator.lockAndLoad(anyCollection())).thenReturn(pools);
-        when(mockPoolCurator.listExpiredPools(anyInt())).thenReturn(pools);
+        when(mockPoolCurator.getExpiredPoolOwnerIds()).thenReturn(Arrays.asList("test_owner_id"));
+        when(mockPoolCurator.listExpiredPools(eq("test_owner_id"), anyInt())).thenReturn(pools);
         when(mockPoolCurator.entitlementsIn(p)).thenReturn(new ArrayList<>(p.getEntitlements()));
         Subscription sub = new Subscription();
         sub.setId(p.getSubscriptionId());
@@ -1386,10 +1410,12 @@ public class PoolManagerTest {
         ValidationResult result = new ValidationResult();
         when(preHelper.getResult()).thenReturn(result);
 
-        manager.cleanupExpiredPools();
+        ExpiredPoolsCleanupResult cleanupResult = manager.cleanupExpiredPools();
 
         // And the pool should be deleted:
         verify(mockPoolCurator).batchDelete(eq(pools), anySetOf(String.class));
+        assertEquals(1, cleanupResult.getOwnersProcessed());
+        assertEquals(1, cleanupResult.getPoolsDeleted());
         verify(mockSubAdapter, never()).getSubscription(any(String.class));
         // verify(mockSubAdapter, never()).deleteSubscription(any(String.class));
     }
@@ -1437,8 +1463,7 @@ public class PoolManagerTest {
         when(mockPoolCurator.listAllByIds(any(List.class))).thenReturn(mockQuery);
         when(mockQuery.iterator()).thenReturn(Arrays.asList(pool1).listIterator());
 
-        when(enforcerMock.preEntitlement(any(Consumer.class), any(Pool.class), anyInt(),
-            any(CallerType.class))).thenReturn(result);
+        this.mockBatchPreEntitlement(result);
         when(enforcerMock.postEntitlement(eq(manager), any(Consumer.class), any(Owner.class), anyMap(),
             anyList(), eq(false), anyMap())).thenReturn(new PoolOperationCallback());
         when(result.isSuccessful()).thenReturn(true);
@@ -1514,10 +1539,8 @@ public class PoolManagerTest {
 
         // The pool left over from the pre-migrated subscription should be deleted
         // and granted entitlements should be revoked
-        List<Entitlement> entsToDelete = Arrays.asList(ent);
-
         verify(mockPoolCurator).delete(eq(p));
-        verify(entitlementCurator).batchDelete(eq(entsToDelete));
+        verify(entitlementCurator).batchDeleteByIds(eq(Collections.singleton(ent.getId())));
         // Make sure pools that don't match the owner were removed from the list
         // They shouldn't cause us to attempt to update existing pools when we
         // haven't created them in the first place
@@ -1928,12 +1951,12 @@ public class PoolManagerTest {
             eq(true), anyMap())).thenReturn(mock(PoolOperationCallback.class));
         manager.adjustEntitlementQuantity(consumer, masterEnt, 3);
 
-        Class<List<Entitlement>> listClass = (Class<List<Entitlement>>) (Class) ArrayList.class;
-        ArgumentCaptor<List<Entitlement>> arg = ArgumentCaptor.forClass(listClass);
-        verify(entitlementCurator).batchDelete(arg.capture());
+        Class<Collection<String>> collectionClass = (Class<Collection<String>>) (Class) Collection.class;
+        ArgumentCaptor<Collection<String>> arg = ArgumentCaptor.forClass(collectionClass);
+        verify(entitlementCurator).batchDeleteByIds(arg.capture());
 
-        List<Entitlement> entsDeleted = arg.getValue();
-        assertThat(entsDeleted, IsCollectionContaining.hasItem(derivedEnt));
+        Collection<String> entIdsDeleted = arg.getValue();
+        assertThat(entIdsDeleted, IsCollectionContaining.hasItem(derivedEnt.getId()));
         assertEquals(2, derivedPool.getConsumed().intValue());
     }
 
@@ -2005,12 +2028,13 @@ public class PoolManagerTest {
             eq(true), anyMap())).thenReturn(mock(PoolOperationCallback.class));
         manager.adjustEntitlementQuantity(consumer, masterEnt, 3);
 
-        Class<List<Entitlement>> listClass = (Class<List<Entitlement>>) (Class) ArrayList.class;
-        ArgumentCaptor<List<Entitlement>> arg = ArgumentCaptor.forClass(listClass);
-        verify(entitlementCurator).batchDelete(arg.capture());
+        Class<Collection<String>> collectionClass = (Class<Collection<String>>) (Class) Collection.class;
+        ArgumentCaptor<Collection<String>> arg = ArgumentCaptor.forClass(collectionClass);
+        verify(entitlementCurator).batchDeleteByIds(arg.capture());
 
-        List<Entitlement> entsDeleted = arg.getValue();
-        assertThat(entsDeleted, IsCollectionContaining.hasItems(derivedEnt, derivedEnt2, derivedEnt3));
+        Collection<String> entIdsDeleted = arg.getValue();
+        assertThat(entIdsDeleted, IsCollectionContaining.hasItems(derivedEnt.getId(), derivedEnt2.getId(),
+            derivedEnt3.getId()));
 
         assertEquals(1, derivedPool.getConsumed().intValue());
         assertEquals(1, derivedPool2.getConsumed().intValue());
@@ -2159,6 +2183,81 @@ public class PoolManagerTest {
         );
     }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testListAvailablePoolsPageOnlyValidatesCandidateWindow() {
+        Product product = TestUtil.createProduct();
+        Consumer consumer = TestUtil.createConsumer(owner);
+
+        Map<String, Pool> pools = new HashMap<>();
+        List<String> poolIds = new ArrayList<>();
+        for (int i = 0; i < 300; ++i) {
+            Pool pool = TestUtil.createPool(owner, product);
+            pool.setId("pool-" + i);
+
+            pools.put(pool.getId(), pool);
+            poolIds.add(pool.getId());
+        }
+
+        when(mockPoolCurator.listAvailableEntitlementPoolIds(eq(consumer), nullable(String.class),
+            nullable(Collection.class), nullable(String.class), nullable(Date.class),
+            any(PoolFilterBuilder.class), any(PageRequest.class), anyBoolean(), anyBoolean(),
+            nullable(Date.class))).thenReturn(poolIds);
+
+        // Return the pools out of order to verify the manager restores the ID order
+        when(mockPoolCurator.listAllByIds(anyCollection())).thenAnswer(iom -> {
+            List<Pool> found = new LinkedList<>();
+            for (String id : (Collection<String>) iom.getArgument(0)) {
+                found.add(0, pools.get(id));
+            }
+
+            CandlepinQuery query = mock(CandlepinQuery.class);
+            when(query.iterator()).thenReturn(found.iterator());
+            return query;
+        });
+
+        when(mockPoolCurator.takeSubList(any(PageRequest.class), anyList())).thenCallRealMethod();
+
+        ConsumerRulesContext context = mock(ConsumerRulesContext.class);
+        when(enforcerMock.buildConsumerContext(eq(consumer))).thenReturn(context);
+
+        // Reject every other pool
+        when(enforcerMock.filterPools(eq(context), anyList(), anyBoolean())).thenAnswer(iom -> {
+            List<Pool> accepted = new ArrayList<>();
+            for (Pool pool : (List<Pool>) iom.getArgument(1)) {
+                if (Integer.parseInt(pool.getId().substring(5)) % 2 == 0) {
+                    accepted.add(pool);
+                }
+            }
+
+            return accepted;
+        });
+
+        PageRequest pageRequest = new PageRequest();
+        pageRequest.setPage(2);
+        pageRequest.setPerPage(10);
+
+        Page<List<Pool>> page = manager.listAvailableEntitlementPools(consumer, null, owner.getId(),
+            null, null, null, false, new PoolFilterBuilder(), pageRequest, false, false, null);
+
+        List<Pool> pageData = page.getPageData();
+        assertEquals(10, pageData.size());
+        for (int i = 0; i < 10; ++i) {
+            assertEquals("pool-" + (20 + i * 2), pageData.get(i).getId());
+        }
+
+        // Only the first window should have been loaded and validated; the remaining pools are
+        // counted as candidates
+        verify(enforcerMock, times(1)).buildConsumerContext(eq(consumer));
+        verify(enforcerMock, times(1)).filterPools(eq(context), anyList(), anyBoolean());
+        verify(mockPoolCurator, never()).listAvailableEntitlementPools(any(Consumer.class),
+            nullable(String.class), nullable(String.class), nullable(String.class), nullable(Date.class),
+            any(PoolFilterBuilder.class), any(PageRequest.class), anyBoolean(), anyBoolean(),
+            anyBoolean(), nullable(Date.class));
+        assertEquals(Integer.valueOf(250), page.getMaxRecords());
+        assertEquals(pageRequest, page.getPageRequest());
+    }
+
     @Test
     public void testIsManagedWithNullPool() {
         assertFalse(manager.isManaged(null));
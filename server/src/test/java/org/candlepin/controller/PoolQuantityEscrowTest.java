@@ -0,0 +1,292 @@
+/**
+ * Copyright (c) 2009 - 2020 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.spy;
+
+import org.candlepin.config.ConfigProperties;
+import org.candlepin.model.ConsumerType;
+import org.candlepin.model.ConsumerType.ConsumerTypeEnum;
+import org.candlepin.model.Owner;
+import org.candlepin.model.Pool;
+import org.candlepin.model.PoolQuantitySlice;
+import org.candlepin.model.PoolQuantitySliceCurator;
+import org.candlepin.model.Product;
+import org.candlepin.test.DatabaseTestFixture;
+import org.candlepin.test.TestUtil;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import javax.inject.Inject;
+
+
+
+/**
+ * Test suite for the PoolQuantityEscrow class
+ */
+public class PoolQuantityEscrowTest extends DatabaseTestFixture {
+    @Inject private PoolQuantitySliceCurator sliceCurator;
+
+    private Owner owner;
+    private Product product;
+
+    @BeforeEach
+    @Override
+    public void init() throws Exception {
+        super.init();
+
+        this.config.setProperty(ConfigProperties.POOL_ESCROW_STRIPES, "2");
+        this.config.setProperty(ConfigProperties.POOL_ESCROW_SLICE_SIZE, "10");
+        this.config.setProperty(ConfigProperties.DB_DIALECT, "org.hibernate.dialect.PostgreSQL92Dialect");
+
+        this.owner = this.createOwner();
+        this.product = this.createProduct(this.owner);
+    }
+
+    private PoolQuantityEscrow buildEscrow() {
+        return new PoolQuantityEscrow(this.sliceCurator, this.poolCurator, this.config);
+    }
+
+    private Pool createPool(long quantity) {
+        return this.createPool(this.owner, this.product, quantity, TestUtil.createDate(2000, 1, 1),
+            TestUtil.createDate(2100, 1, 1));
+    }
+
+    @Test
+    public void testRequiresDependencies() {
+        assertThrows(IllegalArgumentException.class,
+            () -> new PoolQuantityEscrow(null, this.poolCurator, this.config));
+        assertThrows(IllegalArgumentException.class,
+            () -> new PoolQuantityEscrow(this.sliceCurator, null, this.config));
+        assertThrows(IllegalArgumentException.class,
+            () -> new PoolQuantityEscrow(this.sliceCurator, this.poolCurator, null));
+    }
+
+    @Test
+    public void testDisabledByDefault() {
+        this.config.setProperty(ConfigProperties.POOL_ESCROW_STRIPES, "0");
+        PoolQuantityEscrow escrow = this.buildEscrow();
+
+        assertFalse(escrow.isEnabled());
+        assertFalse(escrow.isEligible(this.createPool(1000L), null));
+    }
+
+    @Test
+    public void testDisabledOnUnsupportedDatabase() {
+        this.config.setProperty(ConfigProperties.DB_DIALECT, "org.hibernate.dialect.MySQL5InnoDBDialect");
+        PoolQuantityEscrow escrow = this.buildEscrow();
+
+        assertFalse(escrow.isEnabled());
+        assertFalse(escrow.isEligible(this.createPool(1000L), null));
+    }
+
+    @Test
+    public void testIneligiblePools() {
+        PoolQuantityEscrow escrow = this.buildEscrow();
+        Pool pool = this.createPool(1000L);
+
+        assertTrue(escrow.isEligible(pool, new ConsumerType(ConsumerTypeEnum.SYSTEM)));
+        assertFalse(escrow.isEligible(pool, new ConsumerType(ConsumerTypeEnum.CANDLEPIN)));
+
+        pool.setAttribute(Pool.Attributes.DERIVED_POOL, "true");
+        assertFalse(escrow.isEligible(pool, null));
+
+        pool.removeAttribute(Pool.Attributes.DERIVED_POOL);
+        pool.getProduct().setAttribute(Product.Attributes.VIRT_LIMIT, "4");
+        assertFalse(escrow.isEligible(pool, null));
+    }
+
+    @Test
+    public void testCarveCountsSlicesAsConsumed() {
+        PoolQuantityEscrow escrow = this.buildEscrow();
+        Pool pool = this.createPool(1000L);
+
+        assertTrue(escrow.carve(pool));
+
+        assertEquals(20L, pool.getConsumed());
+        assertEquals(20L, pool.getEscrowed());
+        assertEquals(Collections.singletonList(pool.getId()), escrow.getEscrowedPoolIds());
+    }
+
+    @Test
+    public void testCarveRequiresHeadroom() {
+        PoolQuantityEscrow escrow = this.buildEscrow();
+        Pool pool = this.createPool(79L);
+
+        assertFalse(escrow.carve(pool));
+        assertEquals(0L, pool.getConsumed());
+        assertTrue(escrow.getEscrowedPoolIds().isEmpty());
+    }
+
+    @Test
+    public void testUnlimitedPoolsAlwaysCarve() {
+        PoolQuantityEscrow escrow = this.buildEscrow();
+        Pool pool = this.createPool(-1L);
+
+        assertTrue(escrow.carve(pool));
+    }
+
+    @Test
+    public void testReserveNeverExceedsSlices() {
+        PoolQuantityEscrow escrow = this.buildEscrow();
+        Pool pool = this.createPool(1000L);
+
+        assertFalse(escrow.reserve(pool, 1));
+
+        escrow.carve(pool);
+
+        assertFalse(escrow.reserve(pool, 11));
+        assertTrue(escrow.reserve(pool, 7));
+        assertTrue(escrow.reserve(pool, 7));
+        assertTrue(escrow.reserve(pool, 3));
+        assertTrue(escrow.reserve(pool, 3));
+        assertFalse(escrow.reserve(pool, 1));
+    }
+
+    @Test
+    public void testReleaseReturnsUnusedQuantity() {
+        PoolQuantityEscrow escrow = this.buildEscrow();
+        Pool pool = this.createPool(1000L);
+
+        escrow.carve(pool);
+        escrow.reserve(pool, 4);
+        escrow.reserve(pool, 5);
+
+        escrow.release(Collections.singleton(pool));
+
+        assertEquals(9L, pool.getConsumed());
+        assertEquals(0L, pool.getEscrowed());
+        assertTrue(escrow.getEscrowedPoolIds().isEmpty());
+
+        // Slices may be carved again once released
+        assertTrue(escrow.carve(pool));
+        assertEquals(29L, pool.getConsumed());
+    }
+
+    @Test
+    public void testReconcileReleasesPersistedSlices() {
+        PoolQuantityEscrow escrow = this.buildEscrow();
+        Pool pool = this.createPool(1000L);
+
+        escrow.carve(pool);
+        escrow.reserve(pool, 6);
+        this.poolCurator.merge(pool);
+        this.poolCurator.flush();
+
+        assertTrue(escrow.reconcile(pool.getId()));
+        assertFalse(escrow.reconcile("missing-pool"));
+
+        this.poolCurator.flush();
+        this.poolCurator.refresh(pool);
+
+        assertEquals(6L, pool.getConsumed());
+        assertTrue(escrow.getEscrowedPoolIds().isEmpty());
+    }
+
+    @Test
+    public void testAnnotatedPoolsReportCommittedConsumption() {
+        PoolQuantityEscrow escrow = this.buildEscrow();
+        Pool pool = this.createPool(1000L);
+
+        escrow.carve(pool);
+        escrow.reserve(pool, 6);
+        this.poolCurator.merge(pool);
+        this.poolCurator.flush();
+        this.poolCurator.clear();
+
+        // Loaded pools count the quantity held in escrow as consumed until annotated
+        Pool loaded = this.poolCurator.get(pool.getId());
+
+        assertEquals(20L, loaded.getConsumed());
+        assertEquals(0L, loaded.getEscrowed());
+        assertEquals(20L, loaded.getCommittedConsumed());
+
+        escrow.annotate(Collections.singleton(loaded));
+
+        assertEquals(20L, loaded.getConsumed());
+        assertEquals(14L, loaded.getEscrowed());
+        assertEquals(6L, loaded.getCommittedConsumed());
+    }
+
+    @Test
+    public void testAnnotateDoesNothingWhenDisabled() {
+        Pool pool = this.createPool(1000L);
+        this.buildEscrow().carve(pool);
+        this.poolCurator.merge(pool);
+        this.poolCurator.flush();
+        this.poolCurator.clear();
+
+        this.config.setProperty(ConfigProperties.POOL_ESCROW_STRIPES, "0");
+        PoolQuantityEscrow escrow = this.buildEscrow();
+
+        Pool loaded = this.poolCurator.get(pool.getId());
+        escrow.annotate(Collections.singleton(loaded));
+
+        assertEquals(0L, loaded.getEscrowed());
+        assertEquals(20L, loaded.getCommittedConsumed());
+    }
+
+    @Test
+    public void testSlicesHeldByInflightBindsStayConsumedOnRelease() {
+        Pool pool = this.createPool(100L);
+        this.buildEscrow().carve(pool);
+
+        // An in-flight bind has consumed from, and still holds the lock on, the first slice; the
+        // release must skip it as SKIP LOCKED would
+        assertTrue(this.sliceCurator.consume(pool.getId(), 0, 4));
+
+        PoolQuantitySliceCurator lockingCurator = spy(this.sliceCurator);
+        doAnswer(iom -> {
+            List<PoolQuantitySlice> slices = (List<PoolQuantitySlice>) iom.callRealMethod();
+            return slices.stream()
+                .filter(slice -> slice.getStripe() != 0)
+                .collect(Collectors.toList());
+        }).when(lockingCurator).lockByPools(anyCollection());
+
+        PoolQuantityEscrow escrow = new PoolQuantityEscrow(lockingCurator, this.poolCurator, this.config);
+
+        // A manifest bind can't be served from escrow, and takes the locked path
+        assertFalse(escrow.isEligible(pool, new ConsumerType(ConsumerTypeEnum.CANDLEPIN)));
+        escrow.release(Collections.singleton(pool));
+
+        // Only the released slice is returned; the held slice stays counted as consumed in full
+        assertEquals(10L, pool.getConsumed());
+        assertEquals(0L, pool.getEscrowed());
+        assertTrue(pool.entitlementsAvailable(90));
+        assertFalse(pool.entitlementsAvailable(91));
+
+        // The locked bind takes everything left, while the in-flight bind consumes the rest of its
+        // slice; the pool must not be oversubscribed
+        pool.setConsumed(pool.getConsumed() + 90);
+        assertTrue(this.sliceCurator.consume(pool.getId(), 0, 6));
+        assertFalse(pool.isOverflowing());
+
+        // The held slice can't be carved over until it has been released
+        assertFalse(escrow.carve(pool));
+        assertEquals(Collections.singletonList(pool.getId()), escrow.getEscrowedPoolIds());
+    }
+}
@@ -29,6 +29,9 @@ import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
 
+import org.candlepin.cache.ClusterCacheInvalidator;
+import org.candlepin.cache.OwnerProductGraph;
+import org.candlepin.cache.OwnerProductGraphCache;
 import org.candlepin.dto.api.v1.BrandingDTO;
 import org.candlepin.dto.api.v1.ContentDTO;
 import org.candlepin.dto.api.v1.ProductDTO;
@@ -58,14 +61,17 @@ import java.util.Map;
 public class ProductManagerTest extends DatabaseTestFixture {
 
     private EntitlementCertificateGenerator mockEntCertGenerator;
+    private OwnerProductGraphCache productGraphCache;
     private ProductManager productManager;
 
     @BeforeEach
     public void setup() throws Exception {
         this.mockEntCertGenerator = mock(EntitlementCertificateGenerator.class);
 
+        this.productGraphCache = new OwnerProductGraphCache(this.config, this.ownerProductCurator,
+            mock(ClusterCacheInvalidator.class));
         this.productManager = new ProductManager(this.mockEntCertGenerator, this.ownerContentCurator,
-            this.ownerProductCurator, this.productCurator);
+            this.ownerProductCurator, this.productCurator, this.productGraphCache);
     }
 
     @Test
@@ -80,6 +86,21 @@ public class ProductManagerTest extends DatabaseTestFixture {
         assertEquals(output, this.ownerProductCurator.getProductById(owner, "p1"));
     }
 
+    @Test
+    public void testCreateProductInvalidatesProductGraph() {
+        Owner owner = this.createOwner("test-owner", "Test Owner");
+        ProductDTO dto = TestUtil.createProductDTO("p1", "prod1");
+
+        OwnerProductGraph before = this.productGraphCache.getSnapshot(owner);
+        assertNull(before.getProduct("p1"));
+
+        this.productManager.createProduct(dto, owner);
+
+        OwnerProductGraph after = this.productGraphCache.getSnapshot(owner);
+        assertNotNull(after.getProduct("p1"));
+        assertTrue(after.getVersion() > before.getVersion());
+    }
+
     @Test
     public void testCreateProductThatAlreadyExists() {
         Owner owner = this.createOwner("test-owner", "Test Owner");
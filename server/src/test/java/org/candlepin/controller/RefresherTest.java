@@ -29,14 +29,18 @@ import org.candlepin.test.TestUtil;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.mockito.junit.jupiter.MockitoSettings;
 import org.mockito.quality.Strictness;
 
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 
 
@@ -70,7 +74,8 @@ public class RefresherTest {
         refresher.add(owner);
         refresher.run();
 
-        verify(poolManager, times(1)).refreshPoolsWithRegeneration(eq(subAdapter), eq(owner), eq(false));
+        verify(poolManager, times(1)).refreshPoolsWithRegeneration(eq(owner),
+            any(ImportedEntityCompiler.class), eq(false), any(RefreshResult.class));
     }
 
     @Test
@@ -120,7 +125,8 @@ public class RefresherTest {
         refresher.add(product);
         refresher.run();
 
-        verify(poolManager, times(1)).refreshPoolsWithRegeneration(eq(subAdapter), eq(owner), eq(false));
+        verify(poolManager, times(1)).refreshPoolsWithRegeneration(eq(owner),
+            any(ImportedEntityCompiler.class), eq(false), any(RefreshResult.class));
         verify(poolManager, times(0)).updatePoolsForMasterPool(any(List.class),
             any(Pool.class), eq(pool.getQuantity()), eq(false), any(Map.class));
     }
@@ -157,6 +163,94 @@ public class RefresherTest {
             any(Map.class));
     }
 
+    @Test
+    public void testSubscriptionsFetchedConcurrentlyForMultipleOwners() {
+        refresher = new Refresher(poolManager, subAdapter, ownerManager, false, 2);
+
+        Owner owner1 = TestUtil.createOwner();
+        Owner owner2 = TestUtil.createOwner();
+        Owner owner3 = TestUtil.createOwner();
+
+        Subscription sub1 = new Subscription();
+        sub1.setId("sub1");
+        sub1.setOwner(owner1);
+
+        Subscription sub2 = new Subscription();
+        sub2.setId("sub2");
+        sub2.setOwner(owner2);
+
+        this.mockAdapterSubs(owner1.getKey(), Arrays.asList(sub1));
+        this.mockAdapterSubs(owner2.getKey(), Arrays.asList(sub2));
+        this.mockAdapterSubs(owner3.getKey(), Collections.emptyList());
+
+        ArgumentCaptor<ImportedEntityCompiler> captor = ArgumentCaptor.forClass(ImportedEntityCompiler.class);
+
+        RefreshResult result = refresher.add(owner1)
+            .add(owner2)
+            .add(owner3)
+            .run();
+
+        assertNotNull(result);
+        assertEquals(3, result.getOwnersRefreshed());
+
+        verify(poolManager, times(1)).refreshPoolsWithRegeneration(eq(owner1), captor.capture(),
+            eq(false), eq(result));
+        assertEquals(Collections.singleton("sub1"), captor.getValue().getSubscriptions().keySet());
+
+        verify(poolManager, times(1)).refreshPoolsWithRegeneration(eq(owner2), captor.capture(),
+            eq(false), eq(result));
+        assertEquals(Collections.singleton("sub2"), captor.getValue().getSubscriptions().keySet());
+
+        verify(poolManager, times(1)).refreshPoolsWithRegeneration(eq(owner3), captor.capture(),
+            eq(false), eq(result));
+        assertTrue(captor.getValue().getSubscriptions().isEmpty());
+
+        verify(ownerManager).updateRefreshDate(owner1);
+        verify(ownerManager).updateRefreshDate(owner2);
+        verify(ownerManager).updateRefreshDate(owner3);
+    }
+
+    @Test
+    public void testFetchFailurePreventsRefresh() {
+        refresher = new Refresher(poolManager, subAdapter, ownerManager, false, 2);
+
+        Owner owner1 = TestUtil.createOwner();
+        Owner owner2 = TestUtil.createOwner();
+
+        this.mockAdapterSubs(owner1.getKey(), Collections.emptyList());
+        doThrow(new IllegalStateException("upstream unavailable"))
+            .when(this.subAdapter).getSubscriptions(eq(owner2.getKey()));
+
+        refresher.add(owner1).add(owner2);
+
+        assertThrows(IllegalStateException.class, () -> refresher.run());
+        verify(poolManager, never()).refreshPoolsWithRegeneration(any(Owner.class),
+            any(ImportedEntityCompiler.class), anyBoolean(), any(RefreshResult.class));
+    }
+
+    @Test
+    public void testSubscriptionsFetchedOnNamedRefreshThreads() {
+        refresher = new Refresher(poolManager, subAdapter, ownerManager, false, 2);
+
+        Set<String> threadNames = Collections.synchronizedSet(new HashSet<>());
+        doAnswer(iom -> {
+            threadNames.add(Thread.currentThread().getName());
+            return Collections.emptyList();
+        }).when(this.subAdapter).getSubscriptions(anyString());
+
+        for (int i = 0; i < 5; ++i) {
+            refresher.add(TestUtil.createOwner());
+        }
+
+        RefreshResult result = refresher.run();
+        assertEquals(5, result.getOwnersRefreshed());
+
+        assertFalse(threadNames.isEmpty());
+        for (String name : threadNames) {
+            assertTrue(name.equals("refresh-fetch-0") || name.equals("refresh-fetch-1"), name);
+        }
+    }
+
     protected void mockAdapterSubs(String input, Collection<? extends SubscriptionInfo> output) {
         doAnswer(iom -> output).when(this.subAdapter).getSubscriptions(eq(input));
     }
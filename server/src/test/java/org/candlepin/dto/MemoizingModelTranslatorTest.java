@@ -0,0 +1,137 @@
+/**
+ * Copyright (c) 2009 - 2020 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.dto;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import org.candlepin.dto.api.v1.OwnerDTO;
+import org.candlepin.dto.api.v1.PoolDTO;
+import org.candlepin.model.Owner;
+import org.candlepin.model.Pool;
+import org.candlepin.test.TestUtil;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+
+
+/**
+ * Test suite for the MemoizingModelTranslator class
+ */
+public class MemoizingModelTranslatorTest {
+
+    private ModelTranslator modelTranslator;
+    private ObjectTranslator<Owner, OwnerDTO> ownerTranslator;
+    private ObjectTranslator<Pool, PoolDTO> poolTranslator;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void init() {
+        this.ownerTranslator = mock(ObjectTranslator.class);
+        doAnswer(iom -> new OwnerDTO().setId(((Owner) iom.getArgument(1)).getId()))
+            .when(this.ownerTranslator).translate(any(ModelTranslator.class), any(Owner.class));
+
+        this.poolTranslator = mock(ObjectTranslator.class);
+        doAnswer(iom -> {
+            ModelTranslator translator = iom.getArgument(0);
+            Pool pool = iom.getArgument(1);
+
+            PoolDTO dto = new PoolDTO();
+            dto.setId(pool.getId());
+            dto.setOwner(translator.translate(pool.getOwner(), OwnerDTO.class));
+
+            return dto;
+        }).when(this.poolTranslator).translate(any(ModelTranslator.class), any(Pool.class));
+
+        this.modelTranslator = new SimpleModelTranslator();
+        this.modelTranslator.registerTranslator(this.ownerTranslator, Owner.class, OwnerDTO.class);
+        this.modelTranslator.registerTranslator(this.poolTranslator, Pool.class, PoolDTO.class);
+    }
+
+    private Pool createPool(String id, Owner owner) {
+        Pool pool = new Pool();
+        pool.setId(id);
+        pool.setOwner(owner);
+
+        return pool;
+    }
+
+    private List<PoolDTO> translatePools(ModelTranslator translator, Pool... pools) {
+        return Arrays.stream(pools)
+            .map(translator.getStreamMapper(Pool.class, PoolDTO.class))
+            .collect(Collectors.toList());
+    }
+
+    @Test
+    public void testSharedNestedObjectsAreTranslatedOnce() {
+        Owner owner = TestUtil.createOwner("owner1");
+        MemoizingModelTranslator translator = new MemoizingModelTranslator(this.modelTranslator);
+
+        List<PoolDTO> output = this.translatePools(translator, this.createPool("pool1", owner),
+            this.createPool("pool2", owner));
+
+        assertEquals(2, output.size());
+        assertEquals("pool1", output.get(0).getId());
+        assertEquals("pool2", output.get(1).getId());
+        assertEquals(owner.getId(), output.get(0).getOwner().getId());
+        assertSame(output.get(0).getOwner(), output.get(1).getOwner());
+
+        verify(this.ownerTranslator, times(1)).translate(eq(translator), eq(owner));
+
+        // Top-level elements are not remembered
+        assertEquals(1, translator.size());
+    }
+
+    @Test
+    public void testNestedObjectsAreMatchedByIdentity() {
+        MemoizingModelTranslator translator = new MemoizingModelTranslator(this.modelTranslator);
+
+        List<PoolDTO> output = this.translatePools(translator,
+            this.createPool("pool1", TestUtil.createOwner("owner1")),
+            this.createPool("pool2", TestUtil.createOwner("owner1")));
+
+        assertNotSame(output.get(0).getOwner(), output.get(1).getOwner());
+        assertEquals(2, translator.size());
+    }
+
+    @Test
+    public void testTranslationsNotRememberedBeyondLimit() {
+        Owner owner = TestUtil.createOwner("owner1");
+        MemoizingModelTranslator translator = new MemoizingModelTranslator(this.modelTranslator, 0);
+
+        List<PoolDTO> output = this.translatePools(translator, this.createPool("pool1", owner),
+            this.createPool("pool2", owner));
+
+        assertNotSame(output.get(0).getOwner(), output.get(1).getOwner());
+        assertEquals(0, translator.size());
+        verify(this.ownerTranslator, times(2)).translate(eq(translator), eq(owner));
+    }
+
+    @Test
+    public void testTranslateSharedObjectDirectly() {
+        Owner owner = TestUtil.createOwner("owner1");
+        MemoizingModelTranslator translator = new MemoizingModelTranslator(this.modelTranslator);
+
+        OwnerDTO dto = translator.translate(owner, OwnerDTO.class);
+        assertSame(dto, translator.translate(owner, OwnerDTO.class));
+        assertNull(translator.translate(null, OwnerDTO.class));
+        assertThrows(IllegalArgumentException.class, () -> translator.translate(owner, null));
+    }
+}
@@ -320,4 +320,58 @@ public class SimpleModelTranslatorTest {
         assertSame(entity, dto.getSourceObject());
     }
 
+    @Test
+    public void testResolvedTranslatorIsReused() {
+        ModelTranslator modelTranslator = new SimpleModelTranslator();
+        ObjectTranslator translator = new TestTranslator();
+
+        modelTranslator.registerTranslator(translator, ModelEntity.class, TestDTO.class);
+
+        ModelEntity entity = new TestModelEntity() {};
+        ObjectTranslator output = modelTranslator.findTranslatorByClass(entity.getClass(), TestDTO.class);
+        assertSame(translator, output);
+
+        output = modelTranslator.findTranslatorByInstance(entity, TestDTO.class);
+        assertSame(translator, output);
+    }
+
+    @Test
+    public void testResolvedTranslatorUpdatedOnRegistration() {
+        ModelTranslator modelTranslator = new SimpleModelTranslator();
+        ObjectTranslator translator1 = new TestTranslator();
+        ObjectTranslator translator2 = new TestTranslator();
+
+        modelTranslator.registerTranslator(translator1, ModelEntity.class, TestDTO.class);
+
+        ModelEntity entity = new TestModelEntity() {};
+        TestDTO dto = modelTranslator.translate(entity, TestDTO.class);
+        assertSame(translator1, dto.getObjectTranslator());
+
+        // A nearer translator registered after the first translation must be used from then on
+        modelTranslator.registerTranslator(translator2, TestModelEntity.class, TestDTO.class);
+
+        dto = modelTranslator.translate(entity, TestDTO.class);
+        assertSame(translator2, dto.getObjectTranslator());
+
+        modelTranslator.unregisterTranslator(translator2);
+
+        dto = modelTranslator.translate(entity, TestDTO.class);
+        assertSame(translator1, dto.getObjectTranslator());
+    }
+
+    @Test(expected = TranslationException.class)
+    public void testResolvedTranslatorDiscardedOnUnregistration() {
+        ModelTranslator modelTranslator = new SimpleModelTranslator();
+        ObjectTranslator translator = new TestTranslator();
+
+        modelTranslator.registerTranslator(translator, ModelEntity.class, TestDTO.class);
+
+        ModelEntity entity = new TestModelEntity() {};
+        TestDTO dto = modelTranslator.translate(entity, TestDTO.class);
+        assertSame(translator, dto.getObjectTranslator());
+
+        modelTranslator.unregisterTranslator(ModelEntity.class, TestDTO.class);
+        modelTranslator.translate(entity, TestDTO.class);
+    }
+
 }
@@ -118,6 +118,7 @@ public class PoolTranslatorTest extends AbstractTranslatorTest<Pool, PoolDTO, Po
         source.setAccountNumber("444");
         source.setOrderNumber("555");
         source.setConsumed(6L);
+        source.setEscrowed(2L);
         source.setExported(7L);
 
         Map<String, String> calculatedAttributes = new HashMap<>();
@@ -176,7 +177,7 @@ public class PoolTranslatorTest extends AbstractTranslatorTest<Pool, PoolDTO, Po
             assertEquals(source.getContractNumber(), dest.getContractNumber());
             assertEquals(source.getAccountNumber(), dest.getAccountNumber());
             assertEquals(source.getOrderNumber(), dest.getOrderNumber());
-            assertEquals(source.getConsumed(), dest.getConsumed());
+            assertEquals(source.getCommittedConsumed(), dest.getConsumed());
             assertEquals(source.getExported(), dest.getExported());
             assertEquals(source.getCalculatedAttributes(), dest.getCalculatedAttributes());
             assertEquals(source.getUpstreamPoolId(), dest.getUpstreamPoolId());
@@ -0,0 +1,134 @@
+/**
+ * Copyright (c) 2009 - 2020 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.hibernate;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import org.aopalliance.intercept.MethodInvocation;
+import org.hibernate.Session;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityTransaction;
+
+
+
+/**
+ * Test suite for the DatabaseRoutingInterceptor class
+ */
+public class DatabaseRoutingInterceptorTest {
+
+    private DatabaseRouter router;
+    private EntityManager entityManager;
+    private EntityTransaction transaction;
+    private Session session;
+    private DatabaseRoutingInterceptor interceptor;
+
+    @BeforeEach
+    public void init() {
+        this.router = DatabaseRouter.getInstance();
+        this.router.reset();
+
+        this.transaction = mock(EntityTransaction.class);
+        this.session = mock(Session.class);
+
+        this.entityManager = mock(EntityManager.class);
+        doReturn(true).when(this.entityManager).isOpen();
+        doReturn(this.transaction).when(this.entityManager).getTransaction();
+        doReturn(this.session).when(this.entityManager).unwrap(Session.class);
+
+        this.interceptor = new DatabaseRoutingInterceptor(this.router, () -> this.entityManager);
+    }
+
+    @AfterEach
+    public void cleanup() {
+        this.router.reset();
+        this.router.resetStats();
+    }
+
+    private MethodInvocation mockInvocation(Object result) throws Throwable {
+        MethodInvocation invocation = mock(MethodInvocation.class);
+        doReturn(new OwnerInfoCuratorStub()).when(invocation).getThis();
+        doReturn(OwnerInfoCuratorStub.class.getMethod("getByOwner")).when(invocation).getMethod();
+        doAnswer(iom -> {
+            assertEquals(DatabaseRouter.Route.REPLICA, this.router.getRoute());
+            return result;
+        }).when(invocation).proceed();
+
+        return invocation;
+    }
+
+    /**
+     * Stand-in for a curator with a read-only method
+     */
+    public static class OwnerInfoCuratorStub {
+        @ReadOnly
+        public Object getByOwner() {
+            return null;
+        }
+    }
+
+    @Test
+    public void testInvocationRoutedToReplica() throws Throwable {
+        Object result = new Object();
+        MethodInvocation invocation = this.mockInvocation(result);
+
+        assertSame(result, this.interceptor.invoke(invocation));
+        assertEquals(DatabaseRouter.Route.PRIMARY, this.router.getRoute());
+
+        // The held connection is released on the way in, and again on the way out
+        verify(this.session, times(2)).disconnect();
+    }
+
+    @Test
+    public void testNestedInvocationKeepsConnection() throws Throwable {
+        this.router.enter(DatabaseRouter.Route.REPLICA, "OwnerResource.getOwnerInfo");
+
+        this.interceptor.invoke(this.mockInvocation(null));
+
+        assertEquals(DatabaseRouter.Route.REPLICA, this.router.getRoute());
+        verify(this.session, never()).disconnect();
+    }
+
+    @Test
+    public void testActiveTransactionKeepsConnection() throws Throwable {
+        doReturn(true).when(this.transaction).isActive();
+
+        this.interceptor.invoke(this.mockInvocation(null));
+
+        verify(this.session, never()).disconnect();
+    }
+
+    @Test
+    public void testRouteRestoredOnException() throws Throwable {
+        MethodInvocation invocation = this.mockInvocation(null);
+        doThrow(new IllegalStateException()).when(invocation).proceed();
+
+        assertThrows(IllegalStateException.class, () -> this.interceptor.invoke(invocation));
+        assertEquals(DatabaseRouter.Route.PRIMARY, this.router.getRoute());
+    }
+
+    @Test
+    public void testConnectionsAttributedToInvokedMethod() throws Throwable {
+        MethodInvocation invocation = this.mockInvocation(null);
+        doAnswer(iom -> this.router.getCurrentStats().getMethod()).when(invocation).proceed();
+
+        assertEquals("OwnerInfoCuratorStub.getByOwner", this.interceptor.invoke(invocation));
+        assertNull(this.router.getCurrentStats());
+    }
+}
@@ -0,0 +1,209 @@
+/**
+ * Copyright (c) 2009 - 2020 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.hibernate;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import org.aopalliance.intercept.MethodInvocation;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+
+
+/**
+ * Test suite for the QueryProfiler class and its Hibernate and curator hooks
+ */
+public class QueryProfilerTest {
+
+    private QueryProfiler profiler;
+
+    @BeforeEach
+    public void init() {
+        this.profiler = QueryProfiler.getInstance();
+        this.profiler.endRequest();
+        this.profiler.reset();
+    }
+
+    @AfterEach
+    public void cleanup() {
+        this.profiler.endRequest();
+        this.profiler.reset();
+    }
+
+    private QueryProfileStats getStats(String endpoint, String method) {
+        for (QueryProfileStats stats : this.profiler.getStats()) {
+            if (stats.getEndpoint().equals(endpoint) && stats.getMethod().equals(method)) {
+                return stats;
+            }
+        }
+
+        return null;
+    }
+
+    @Test
+    public void testEventsIgnoredWhenNotProfiling() {
+        this.profiler.recordStatement();
+        this.profiler.recordEntityLoad();
+        this.profiler.recordCollectionFetch();
+
+        assertFalse(this.profiler.isActive());
+        assertNull(this.profiler.endRequest());
+        assertEquals(0, this.profiler.size());
+    }
+
+    @Test
+    public void testEventsAttributedToInnermostCuratorMethod() {
+        this.profiler.beginRequest("PoolResource.listPools");
+
+        this.profiler.enterCurator("PoolCurator.listByFilter");
+        this.profiler.recordStatement();
+        this.profiler.enterCurator("ProductCurator.getProductsByUuidCached");
+        this.profiler.recordStatement();
+        this.profiler.recordStatement();
+        this.profiler.recordEntityLoad();
+        this.profiler.exitCurator(2);
+        this.profiler.exitCurator(10);
+
+        // Lazy loads after the curator returned
+        this.profiler.recordStatement();
+        this.profiler.recordCollectionFetch();
+
+        QueryProfileSummary summary = this.profiler.endRequest();
+        assertNotNull(summary);
+        assertEquals(4, summary.getStatements());
+        assertEquals(1, summary.getEntityLoads());
+        assertEquals(1, summary.getCollectionFetches());
+        assertEquals(2, summary.getCuratorCalls());
+        assertFalse(this.profiler.isActive());
+
+        QueryProfileStats outer = this.getStats("PoolResource.listPools", "PoolCurator.listByFilter");
+        assertNotNull(outer);
+        assertEquals(1, outer.getInvocations());
+        assertEquals(1, outer.getStatements());
+        assertEquals(10, outer.getRows());
+
+        QueryProfileStats inner = this.getStats("PoolResource.listPools",
+            "ProductCurator.getProductsByUuidCached");
+        assertNotNull(inner);
+        assertEquals(2, inner.getStatements());
+        assertEquals(1, inner.getEntityLoads());
+        assertEquals(Long.valueOf(1), inner.getStatementHistogram().get("<=2"));
+
+        QueryProfileStats outside = this.getStats("PoolResource.listPools", QueryProfiler.NO_CURATOR);
+        assertNotNull(outside);
+        assertEquals(0, outside.getInvocations());
+        assertEquals(1, outside.getStatements());
+        assertEquals(1, outside.getCollectionFetches());
+
+        // Stats are sorted by statement count, descending
+        assertSame(inner, this.profiler.getStats().get(0));
+    }
+
+    @Test
+    public void testCuratorCallsOutsideRequestAreProfiledImplicitly() {
+        this.profiler.enterCurator("PoolCurator.get");
+        assertTrue(this.profiler.isActive());
+        this.profiler.recordStatement();
+        this.profiler.exitCurator(-1);
+
+        assertFalse(this.profiler.isActive());
+
+        QueryProfileStats stats = this.getStats(QueryProfiler.NO_ENDPOINT, "PoolCurator.get");
+        assertNotNull(stats);
+        assertEquals(1, stats.getStatements());
+        assertEquals(0, stats.getRows());
+    }
+
+    @Test
+    public void testHooksReportToProfiler() {
+        this.profiler.beginRequest("endpoint");
+        String sql = "SELECT 1";
+
+        assertSame(sql, new ProfilingStatementInspector().inspect(sql));
+        assertEquals(1, this.profiler.getSummary().getStatements());
+
+        ProfilingEventListener listener = new ProfilingEventListener();
+        listener.onPostLoad(null);
+        listener.onInitializeCollection(null);
+        assertEquals(1, this.profiler.getSummary().getEntityLoads());
+        assertEquals(1, this.profiler.getSummary().getCollectionFetches());
+    }
+
+    @Test
+    public void testEventListenerRegistersWithRegistry() {
+        EventListenerRegistry registry = mock(EventListenerRegistry.class);
+        ProfilingEventListener listener = new ProfilingEventListener();
+
+        listener.registerListeners(registry);
+
+        verify(registry).appendListeners(EventType.POST_LOAD, listener);
+        verify(registry).appendListeners(EventType.INIT_COLLECTION, listener);
+    }
+
+    @Test
+    public void testInterceptorReportsInvocations() throws Throwable {
+        List<String> result = Arrays.asList("a", "b", "c");
+
+        MethodInvocation invocation = mock(MethodInvocation.class);
+        doReturn(this).when(invocation).getThis();
+        doReturn(QueryProfilerTest.class.getMethod("cleanup")).when(invocation).getMethod();
+        doAnswer(iom -> {
+            this.profiler.recordStatement();
+            return result;
+        }).when(invocation).proceed();
+
+        this.profiler.beginRequest("endpoint");
+        assertSame(result, new CuratorProfilingInterceptor(this.profiler).invoke(invocation));
+        this.profiler.endRequest();
+
+        QueryProfileStats stats = this.getStats("endpoint", "QueryProfilerTest.cleanup");
+        assertNotNull(stats);
+        assertEquals(1, stats.getInvocations());
+        assertEquals(1, stats.getStatements());
+        assertEquals(3, stats.getRows());
+    }
+
+    @Test
+    public void testInterceptorExitsCuratorOnException() throws Throwable {
+        MethodInvocation invocation = mock(MethodInvocation.class);
+        doReturn(this).when(invocation).getThis();
+        doReturn(QueryProfilerTest.class.getMethod("cleanup")).when(invocation).getMethod();
+        doThrow(new IllegalStateException()).when(invocation).proceed();
+
+        CuratorProfilingInterceptor interceptor = new CuratorProfilingInterceptor(this.profiler);
+        assertThrows(IllegalStateException.class, () -> interceptor.invoke(invocation));
+
+        assertFalse(this.profiler.isActive());
+        assertEquals(1, this.getStats(QueryProfiler.NO_ENDPOINT, "QueryProfilerTest.cleanup")
+            .getInvocations());
+    }
+
+    @Test
+    public void testReset() {
+        this.profiler.enterCurator("PoolCurator.get");
+        this.profiler.exitCurator(-1);
+        assertEquals(1, this.profiler.size());
+
+        this.profiler.reset();
+        assertEquals(0, this.profiler.size());
+    }
+}
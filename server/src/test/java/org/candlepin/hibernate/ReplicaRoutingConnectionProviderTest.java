@@ -0,0 +1,217 @@
+/**
+ * Copyright (c) 2009 - 2020 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.hibernate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.candlepin.config.ConfigProperties;
+
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.service.spi.ServiceRegistryImplementor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+
+
+/**
+ * Test suite for the ReplicaRoutingConnectionProvider class, routing between two embedded
+ * databases standing in for the primary and its replica
+ */
+public class ReplicaRoutingConnectionProviderTest {
+
+    private static final String PRIMARY_DB = "routing-primary";
+    private static final String REPLICA_DB = "routing-replica";
+    private static final String METHOD = "PoolResource.list";
+
+    private DatabaseRouter router;
+    private StandardServiceRegistry registry;
+    private ReplicaRoutingConnectionProvider provider;
+    private Map<String, String> props;
+
+    @BeforeEach
+    public void init() {
+        this.router = DatabaseRouter.getInstance();
+        this.router.reset();
+        this.router.resetStats();
+
+        this.registry = new StandardServiceRegistryBuilder().build();
+
+        this.props = new HashMap<>();
+        this.props.put(AvailableSettings.DRIVER, "org.hsqldb.jdbcDriver");
+        this.props.put(AvailableSettings.URL, "jdbc:hsqldb:mem:" + PRIMARY_DB);
+        this.props.put(AvailableSettings.USER, "sa");
+        this.props.put(AvailableSettings.PASS, "");
+        this.props.put(AvailableSettings.C3P0_MIN_SIZE, "1");
+        this.props.put(AvailableSettings.C3P0_MAX_SIZE, "2");
+        this.props.put(ConfigProperties.DB_REPLICA_URL, "jdbc:hsqldb:mem:" + REPLICA_DB);
+    }
+
+    @AfterEach
+    public void cleanup() {
+        this.router.reset();
+        this.router.resetStats();
+
+        if (this.provider != null) {
+            this.provider.stop();
+        }
+
+        StandardServiceRegistryBuilder.destroy(this.registry);
+    }
+
+    private ReplicaRoutingConnectionProvider buildProvider() {
+        this.provider = new ReplicaRoutingConnectionProvider();
+        this.provider.injectServices((ServiceRegistryImplementor) this.registry);
+        this.provider.configure(this.props);
+
+        return this.provider;
+    }
+
+    /**
+     * Acquires and releases a connection, returning the database it was served by
+     */
+    private DatabaseRouter.Route fetchRoute() throws SQLException {
+        Connection connection = this.provider.getConnection();
+
+        try {
+            return connection.getMetaData().getURL().contains(REPLICA_DB) ?
+                DatabaseRouter.Route.REPLICA :
+                DatabaseRouter.Route.PRIMARY;
+        }
+        finally {
+            this.provider.closeConnection(connection);
+        }
+    }
+
+    private DatabaseRouteStats getStats(String method) {
+        for (DatabaseRouteStats stats : this.router.getStats()) {
+            if (stats.getMethod().equals(method)) {
+                return stats;
+            }
+        }
+
+        return null;
+    }
+
+    @Test
+    public void testUnroutedConnectionsServedByPrimary() throws Exception {
+        this.buildProvider();
+
+        assertTrue(this.provider.isReplicaConfigured());
+        assertEquals(DatabaseRouter.Route.PRIMARY, this.fetchRoute());
+        assertTrue(this.router.getStats().isEmpty());
+    }
+
+    @Test
+    public void testReadOnlyConnectionsServedByReplica() throws Exception {
+        this.buildProvider();
+
+        assertTrue(this.router.enter(DatabaseRouter.Route.REPLICA, METHOD));
+        assertEquals(DatabaseRouter.Route.REPLICA, this.fetchRoute());
+        assertEquals(DatabaseRouter.Route.REPLICA, this.fetchRoute());
+
+        // Leaving the read-only scope returns the thread to the primary
+        assertTrue(this.router.exit());
+        assertEquals(DatabaseRouter.Route.PRIMARY, this.fetchRoute());
+
+        DatabaseRouteStats stats = this.getStats(METHOD);
+        assertNotNull(stats);
+        assertEquals(2, stats.getReplicaConnections());
+        assertEquals(0, stats.getStaleFallbacks());
+        assertEquals(2, stats.getConnections());
+    }
+
+    @Test
+    public void testPrimaryScopeOverridesReadOnlyScope() throws Exception {
+        this.buildProvider();
+
+        this.router.enter(DatabaseRouter.Route.REPLICA, METHOD);
+        assertTrue(this.router.enter(DatabaseRouter.Route.PRIMARY, "PoolCurator.merge"));
+        assertEquals(DatabaseRouter.Route.PRIMARY, this.fetchRoute());
+
+        assertTrue(this.router.exit());
+        assertEquals(DatabaseRouter.Route.REPLICA, this.fetchRoute());
+    }
+
+    @Test
+    public void testNestedReadOnlyScopesDoNotChangeRoute() {
+        assertTrue(this.router.enter(DatabaseRouter.Route.REPLICA, METHOD));
+        assertFalse(this.router.enter(DatabaseRouter.Route.REPLICA, "OwnerInfoCurator.getByOwner"));
+        assertFalse(this.router.exit());
+        assertEquals(DatabaseRouter.Route.REPLICA, this.router.getRoute());
+        assertTrue(this.router.exit());
+        assertEquals(DatabaseRouter.Route.PRIMARY, this.router.getRoute());
+    }
+
+    @Test
+    public void testStaleReplicaFallsBackToPrimary() throws Exception {
+        this.props.put(ConfigProperties.DB_REPLICA_LAG_QUERY,
+            "SELECT 10000 FROM INFORMATION_SCHEMA.SYSTEM_USERS");
+        this.props.put(ConfigProperties.DB_REPLICA_MAX_LAG, "5000");
+        this.props.put(ConfigProperties.DB_REPLICA_LAG_CHECK_INTERVAL, "60000");
+        this.buildProvider();
+
+        this.router.enter(DatabaseRouter.Route.REPLICA, METHOD);
+        assertEquals(DatabaseRouter.Route.PRIMARY, this.fetchRoute());
+        assertEquals(DatabaseRouter.Route.PRIMARY, this.fetchRoute());
+
+        DatabaseRouteStats stats = this.getStats(METHOD);
+        assertEquals(0, stats.getReplicaConnections());
+        assertEquals(2, stats.getStaleFallbacks());
+    }
+
+    @Test
+    public void testReplicaWithinMaxLagServesReads() throws Exception {
+        this.props.put(ConfigProperties.DB_REPLICA_LAG_QUERY,
+            "SELECT 100 FROM INFORMATION_SCHEMA.SYSTEM_USERS");
+        this.props.put(ConfigProperties.DB_REPLICA_MAX_LAG, "5000");
+        this.props.put(ConfigProperties.DB_REPLICA_LAG_CHECK_INTERVAL, "0");
+        this.buildProvider();
+
+        this.router.enter(DatabaseRouter.Route.REPLICA, METHOD);
+        assertEquals(DatabaseRouter.Route.REPLICA, this.fetchRoute());
+        assertEquals(1, this.getStats(METHOD).getReplicaConnections());
+    }
+
+    @Test
+    public void testInvalidLagQueryTreatedAsStale() throws Exception {
+        this.props.put(ConfigProperties.DB_REPLICA_LAG_QUERY, "SELECT pg_last_wal_replay_lsn()");
+        this.props.put(ConfigProperties.DB_REPLICA_MAX_LAG, "5000");
+        this.buildProvider();
+
+        this.router.enter(DatabaseRouter.Route.REPLICA, METHOD);
+        assertEquals(DatabaseRouter.Route.PRIMARY, this.fetchRoute());
+        assertEquals(1, this.getStats(METHOD).getStaleFallbacks());
+    }
+
+    @Test
+    public void testWithoutReplicaEverythingServedByPrimary() throws Exception {
+        this.props.remove(ConfigProperties.DB_REPLICA_URL);
+        this.buildProvider();
+
+        assertFalse(this.provider.isReplicaConfigured());
+
+        this.router.enter(DatabaseRouter.Route.REPLICA, METHOD);
+        assertEquals(DatabaseRouter.Route.PRIMARY, this.fetchRoute());
+        assertTrue(this.router.getStats().isEmpty());
+    }
+}
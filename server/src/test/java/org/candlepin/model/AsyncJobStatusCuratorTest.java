@@ -217,6 +217,28 @@ public class AsyncJobStatusCuratorTest extends DatabaseTestFixture {
         }
     }
 
+    @Test
+    public void testGetLastSuccessfulRun() {
+        Date first = new Date(System.currentTimeMillis() - 30000);
+        Date second = new Date(System.currentTimeMillis() - 20000);
+        Date failed = new Date(System.currentTimeMillis() - 10000);
+
+        assertNull(this.asyncJobCurator.getLastSuccessfulRun("test_key"));
+
+        this.createJob("job-1", "test_key", JobState.FINISHED, null, null, null, null, null, first,
+            null, null);
+        this.createJob("job-2", "test_key", JobState.FINISHED, null, null, null, null, null, second,
+            null, null);
+        this.createJob("job-3", "test_key", JobState.FAILED, null, null, null, null, null, failed,
+            null, null);
+        this.createJob("job-4", "other_key", JobState.FINISHED, null, null, null, null, null,
+            new Date(), null, null);
+
+        assertEquals(second.getTime(), this.asyncJobCurator.getLastSuccessfulRun("test_key").getTime());
+        assertNull(this.asyncJobCurator.getLastSuccessfulRun("missing_key"));
+        assertNull(this.asyncJobCurator.getLastSuccessfulRun(null));
+    }
+
 
     /**
      * Creates a bunch of jobs for the given owners. Used primarily for the tests of the findJobs
@@ -1505,6 +1505,50 @@ public class ConsumerCuratorTest extends DatabaseTestFixture {
         assertTrue(results.isEmpty());
     }
 
+    @Test
+    public void testGetConsumerIdsWithStatusTransitions() {
+        Consumer started = new Consumer("startedConsumer", "testUser", owner, ct);
+        Consumer ended = new Consumer("endedConsumer", "testUser", owner, ct);
+        Consumer unchanged = new Consumer("unchangedConsumer", "testUser", owner, ct);
+        consumerCurator.create(started);
+        consumerCurator.create(ended);
+        consumerCurator.create(unchanged);
+        Product prod = this.createProduct("1", "2", owner);
+
+        Date now = new Date();
+        Date since = new Date(now.getTime() - 3600000);
+
+        Pool activePool = createPool(owner, prod, 5L, Util.yesterday(), Util.tomorrow());
+        Pool endedPool = createPool(owner, prod, 5L, Util.yesterday(), new Date(now.getTime() - 60000));
+
+        Entitlement startedEnt = this.createEntitlement(owner, started, activePool,
+            createEntitlementCertificate("entkey1", "ecert1"));
+        startedEnt.setUpdatedOnStart(false);
+        entitlementCurator.create(startedEnt);
+
+        Entitlement endedEnt = this.createEntitlement(owner, ended, endedPool,
+            createEntitlementCertificate("entkey2", "ecert2"));
+        endedEnt.setUpdatedOnStart(true);
+        entitlementCurator.create(endedEnt);
+
+        Entitlement unchangedEnt = this.createEntitlement(owner, unchanged, activePool,
+            createEntitlementCertificate("entkey3", "ecert3"));
+        unchangedEnt.setUpdatedOnStart(true);
+        entitlementCurator.create(unchangedEnt);
+
+        List<String> results = consumerCurator.getConsumerIdsWithStatusTransitions(since, now);
+        assertEquals(2, results.size());
+        assertTrue(results.contains(started.getId()));
+        assertTrue(results.contains(ended.getId()));
+
+        // Overridden end dates take precedence over the pool's
+        endedEnt.setEndDateOverride(Util.tomorrow());
+        entitlementCurator.merge(endedEnt);
+
+        results = consumerCurator.getConsumerIdsWithStatusTransitions(since, now);
+        assertEquals(Collections.singletonList(started.getId()), results);
+    }
+
     @Test
     public void testConsumerDeleteCascadesToContentTag() {
         Consumer c = new Consumer("testConsumer", "testUser", owner, ct);
@@ -16,8 +16,10 @@ package org.candlepin.model;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.mock;
@@ -31,11 +33,13 @@ import org.candlepin.test.DatabaseTestFixture;
 import org.candlepin.test.TestUtil;
 import org.candlepin.util.Util;
 
+import org.hibernate.Hibernate;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import javax.inject.Inject;
@@ -281,6 +285,68 @@ public class ConsumerTest extends DatabaseTestFixture {
         assertTrue(new Consumer().factsAreEqual(new Consumer().getFacts()));
     }
 
+    @Test
+    public void factsDigestIgnoresOrder() {
+        Map<String, String> first = new LinkedHashMap<>();
+        first.put("key1", "1");
+        first.put("key2", null);
+
+        Map<String, String> second = new LinkedHashMap<>();
+        second.put("key2", null);
+        second.put("key1", "1");
+
+        assertEquals(Consumer.computeFactsDigest(first), Consumer.computeFactsDigest(second));
+
+        second.put("key2", "");
+        assertNotEquals(Consumer.computeFactsDigest(first), Consumer.computeFactsDigest(second));
+        assertNull(Consumer.computeFactsDigest(null));
+    }
+
+    @Test
+    public void factsComparedByDigestWithoutLoading() {
+        consumerCurator.flush();
+        consumerCurator.clear();
+
+        Consumer lookedUp = consumerCurator.get(consumer.getId());
+        assertFalse(Hibernate.isInitialized(lookedUp.getFacts()));
+
+        Map<String, String> facts = new HashMap<>();
+        facts.put("foo", "bar");
+        facts.put("foo1", "bar1");
+        assertTrue(lookedUp.factsAreEqual(facts));
+
+        facts.put("foo1", "bar2");
+        assertFalse(lookedUp.factsAreEqual(facts));
+
+        assertFalse(Hibernate.isInitialized(lookedUp.getFacts()));
+    }
+
+    @Test
+    public void setFactsUpdatesPersistentFactsInPlace() {
+        consumerCurator.flush();
+        consumerCurator.clear();
+
+        Consumer lookedUp = consumerCurator.get(consumer.getId());
+        Map<String, String> stored = lookedUp.getFacts();
+
+        Map<String, String> facts = new HashMap<>();
+        facts.put("foo", "baz");
+        facts.put("foo2", "bar2");
+        lookedUp.setFacts(facts);
+
+        assertSame(stored, lookedUp.getFacts());
+        assertEquals(facts, lookedUp.getFacts());
+        assertEquals(Consumer.computeFactsDigest(facts), lookedUp.getFactsDigest());
+
+        consumerCurator.merge(lookedUp);
+        consumerCurator.flush();
+        consumerCurator.clear();
+
+        lookedUp = consumerCurator.get(consumer.getId());
+        assertEquals(Consumer.computeFactsDigest(facts), lookedUp.getFactsDigest());
+        assertEquals(facts, new HashMap<>(lookedUp.getFacts()));
+    }
+
     @Test
     public void factsDifferentValues() {
         Consumer first = new Consumer();
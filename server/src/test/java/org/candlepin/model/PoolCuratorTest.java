@@ -161,6 +161,71 @@ public class PoolCuratorTest extends DatabaseTestFixture {
         assertEquals(1, results.size());
     }
 
+    @Test
+    public void testAvailablePoolsExcludePoolsRequiringOtherConsumerTypes() {
+        Owner owner = this.createOwner();
+        Consumer consumer = this.createMockConsumer(owner, false);
+        String label = this.consumerTypeCurator.getConsumerType(consumer).getLabel();
+
+        Product unrestricted = this.createProduct(owner);
+
+        Product matching = TestUtil.createProduct();
+        matching.setAttribute(Pool.Attributes.REQUIRES_CONSUMER_TYPE, label);
+        matching = this.createProduct(matching, owner);
+
+        Product other = TestUtil.createProduct();
+        other.setAttribute(Pool.Attributes.REQUIRES_CONSUMER_TYPE, "person");
+        other = this.createProduct(other, owner);
+
+        Pool unrestrictedPool = poolCurator.create(createPool(owner, unrestricted, 100L,
+            TestUtil.createDate(2000, 3, 2), TestUtil.createDate(2050, 3, 2)));
+        Pool matchingPool = poolCurator.create(createPool(owner, matching, 100L,
+            TestUtil.createDate(2000, 3, 2), TestUtil.createDate(2050, 3, 2)));
+        Pool otherPool = poolCurator.create(createPool(owner, other, 100L,
+            TestUtil.createDate(2000, 3, 2), TestUtil.createDate(2050, 3, 2)));
+
+        // Pool attributes take precedence over those of the product
+        Pool overriddenPool = createPool(owner, other, 100L,
+            TestUtil.createDate(2000, 3, 2), TestUtil.createDate(2050, 3, 2));
+        overriddenPool.setAttribute(Pool.Attributes.REQUIRES_CONSUMER_TYPE, label);
+        overriddenPool = poolCurator.create(overriddenPool);
+
+        Set<String> poolIds = new HashSet<>();
+        for (Pool pool : poolCurator.listAvailableEntitlementPools(consumer, owner.getId(), null, null)) {
+            poolIds.add(pool.getId());
+        }
+
+        assertEquals(3, poolIds.size());
+        assertTrue(poolIds.contains(unrestrictedPool.getId()));
+        assertTrue(poolIds.contains(matchingPool.getId()));
+        assertTrue(poolIds.contains(overriddenPool.getId()));
+        assertFalse(poolIds.contains(otherPool.getId()));
+    }
+
+    @Test
+    public void testListAvailableEntitlementPoolIdsAppliesOrderingWithoutPaging() {
+        Owner owner = this.createOwner();
+        Product product = this.createProduct(owner);
+
+        Pool pool1 = poolCurator.create(createPool(owner, product, 30L,
+            TestUtil.createDate(2000, 3, 2), TestUtil.createDate(2050, 3, 2)));
+        Pool pool2 = poolCurator.create(createPool(owner, product, 10L,
+            TestUtil.createDate(2000, 3, 2), TestUtil.createDate(2050, 3, 2)));
+        Pool pool3 = poolCurator.create(createPool(owner, product, 20L,
+            TestUtil.createDate(2000, 3, 2), TestUtil.createDate(2050, 3, 2)));
+
+        PageRequest req = new PageRequest();
+        req.setPage(1);
+        req.setPerPage(1);
+        req.setOrder(PageRequest.Order.ASCENDING);
+        req.setSortBy("quantity");
+
+        List<String> poolIds = poolCurator.listAvailableEntitlementPoolIds(null, owner.getId(), null, null,
+            null, new PoolFilterBuilder(), req, false, false, null);
+
+        assertEquals(Arrays.asList(pool2.getId(), pool3.getId(), pool1.getId()), poolIds);
+    }
+
     @Test
     public void testAvailablePoolsDoesNotIncludeUeberPool() throws Exception {
         Owner owner = this.createOwner();
@@ -2543,6 +2608,77 @@ public class PoolCuratorTest extends DatabaseTestFixture {
         assertEquals(0, output.size());
     }
 
+    @Test
+    public void testGetConsumerStackDerivedPoolIdMapExcludesOtherConsumers() {
+        Owner owner = this.createOwner("owner-1");
+
+        Consumer consumer1 = this.createConsumer(owner);
+        Consumer consumer2 = this.createConsumer(owner);
+        Consumer consumer3 = this.createConsumer(owner);
+
+        Date startDate = TestUtil.createDate(2010, 3, 2);
+        Date endDate = TestUtil.createDate(Calendar.getInstance().get(Calendar.YEAR) + 1, 3, 2);
+
+        String stackId1 = "123";
+        Product stackingProduct1 = TestUtil.createProduct();
+        stackingProduct1.setAttribute(Product.Attributes.STACKING_ID, stackId1);
+        stackingProduct1 = this.createProduct(stackingProduct1, owner);
+
+        String stackId2 = "456";
+        Product stackingProduct2 = TestUtil.createProduct();
+        stackingProduct2.setAttribute(Product.Attributes.STACKING_ID, stackId2);
+        stackingProduct2 = this.createProduct(stackingProduct2, owner);
+
+        // Every consumer has a pool derived from the same stack
+        List<Pool> pools = new ArrayList<>();
+        for (Consumer consumer : Arrays.asList(consumer1, consumer2, consumer3)) {
+            Pool pool = createPool(owner, stackingProduct1, 20L, startDate, endDate);
+            pool.setSourceStack(new SourceStack(consumer, stackId1));
+            pool.setAttribute(Pool.Attributes.REQUIRES_HOST, consumer.getUuid());
+            pools.add(poolCurator.create(pool));
+        }
+
+        Pool pool4 = createPool(owner, stackingProduct2, 20L, startDate, endDate);
+        pool4.setSourceStack(new SourceStack(consumer1, stackId2));
+        pool4.setAttribute(Pool.Attributes.REQUIRES_HOST, consumer1.getUuid());
+        poolCurator.create(pool4);
+
+        Map<String, Set<String>> output;
+
+        output = this.poolCurator.getConsumerStackDerivedPoolIdMap(
+            Arrays.asList(consumer1.getId(), consumer2.getId()), Arrays.asList(stackId1, stackId2));
+
+        assertNotNull(output);
+        assertEquals(2, output.size());
+        assertFalse(output.containsKey(consumer3.getId()));
+        assertEquals(Util.asSet(pools.get(0).getId(), pool4.getId()), output.get(consumer1.getId()));
+        assertEquals(Util.asSet(pools.get(1).getId()), output.get(consumer2.getId()));
+
+        output = this.poolCurator.getConsumerStackDerivedPoolIdMap(
+            Arrays.asList(consumer3.getId()), Arrays.asList(stackId1));
+
+        assertNotNull(output);
+        assertEquals(1, output.size());
+        assertEquals(Util.asSet(pools.get(2).getId()), output.get(consumer3.getId()));
+
+        output = this.poolCurator.getConsumerStackDerivedPoolIdMap(
+            Arrays.asList(consumer2.getId()), Arrays.asList(stackId2));
+
+        assertNotNull(output);
+        assertEquals(0, output.size());
+
+        output = this.poolCurator.getConsumerStackDerivedPoolIdMap(
+            Collections.<String>emptyList(), Arrays.asList(stackId1));
+
+        assertNotNull(output);
+        assertEquals(0, output.size());
+
+        output = this.poolCurator.getConsumerStackDerivedPoolIdMap(null, Arrays.asList(stackId1));
+
+        assertNotNull(output);
+        assertEquals(0, output.size());
+    }
+
     @Test
     @SuppressWarnings("checkstyle:methodlength")
     public void testGetUnentitledStackDerivedPoolIds() {
@@ -34,6 +34,7 @@ import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import org.hibernate.HibernateException;
+import org.hibernate.Session;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.slf4j.Logger;
@@ -525,6 +526,61 @@ public class ProductCuratorTest extends DatabaseTestFixture {
         assertEquals(2, products.size());
     }
 
+    @Test
+    public void testHydrateProductCollections() {
+        Content content = TestUtil.createContent("test-content-hydrated", "test-content-hydrated");
+        content.setModifiedProductIds(Arrays.asList("modified-pid"));
+        content = this.createContent(content, owner);
+
+        Product prod = TestUtil.createProduct("test-label-hydrated", "test-product-name-hydrated");
+        prod.setAttribute("testattr", "testVal");
+        prod.addDependentProductId("dependent-pid");
+        prod.addContent(content, true);
+        prod = this.createProduct(prod, owner);
+
+        this.getEntityManager().flush();
+        this.getEntityManager().clear();
+
+        List<Product> products = Arrays.asList(productCurator.get(prod.getUuid()),
+            productCurator.get(product.getUuid()));
+
+        productCurator.hydrateProductCollections(products);
+
+        // Once detached, any collection which was not initialized would fail to load
+        this.getEntityManager().clear();
+
+        Product hydrated = products.get(0);
+        assertEquals("testVal", hydrated.getAttributeValue("testattr"));
+        assertTrue(hydrated.getDependentProductIds().contains("dependent-pid"));
+        assertEquals(1, hydrated.getProductContent().size());
+
+        Content hydratedContent = hydrated.getProductContent().iterator().next().getContent();
+        assertTrue(hydratedContent.getModifiedProductIds().contains("modified-pid"));
+        assertEquals(0, hydrated.getBranding().size());
+    }
+
+    @Test
+    public void testSaveAllBatchedOnlyBatchesWithinCall() {
+        Session session = productCurator.currentSession();
+        Integer batchSize = session.getJdbcBatchSize();
+
+        List<Product> products = new LinkedList<>();
+        for (int i = 0; i < 5; ++i) {
+            products.add(TestUtil.createProduct("batched-" + i, "batched product " + i));
+        }
+
+        productCurator.saveAllBatched(products, true, false);
+        this.getEntityManager().clear();
+
+        for (Product product : products) {
+            assertNotNull(product.getUuid());
+            assertNotNull(productCurator.get(product.getUuid()));
+        }
+
+        // Batching is not left enabled on the session for unrelated work
+        assertEquals(batchSize, session.getJdbcBatchSize());
+    }
+
     @Test
     public void testPoolProvidedProducts() {
         Set<String> uuids = productCurator.getPoolProvidedProductUuids(pool.getId());
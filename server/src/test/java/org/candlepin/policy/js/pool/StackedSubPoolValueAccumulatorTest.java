@@ -0,0 +1,196 @@
+/**
+ * Copyright (c) 2009 - 2020 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.policy.js.pool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.candlepin.model.Consumer;
+import org.candlepin.model.Entitlement;
+import org.candlepin.model.Owner;
+import org.candlepin.model.Pool;
+import org.candlepin.model.Product;
+import org.candlepin.model.ProductCurator;
+import org.candlepin.test.TestUtil;
+import org.candlepin.util.Util;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+
+
+/**
+ * Test suite for the StackedSubPoolValueAccumulator class
+ */
+public class StackedSubPoolValueAccumulatorTest {
+
+    private ProductCurator productCurator;
+    private Owner owner;
+    private Consumer consumer;
+    private Pool stackedPool;
+    private List<Product> products;
+
+    @BeforeEach
+    public void init() {
+        this.productCurator = mock(ProductCurator.class);
+        when(this.productCurator.getPoolProvidedProductsCached(any(Pool.class)))
+            .thenAnswer(invocation -> ((Pool) invocation.getArgument(0)).getProvidedProducts());
+
+        this.owner = TestUtil.createOwner();
+        this.consumer = TestUtil.createConsumer(this.owner);
+        this.stackedPool = TestUtil.createPool(this.owner, TestUtil.createProduct());
+
+        this.products = new ArrayList<>();
+        for (int i = 0; i < 5; ++i) {
+            Product product = TestUtil.createProduct();
+            product.setUuid(Util.generateDbUUID());
+
+            this.products.add(product);
+        }
+    }
+
+    private Entitlement createEntitlement(long created, Date start, Date end, boolean virtLimited,
+        Product... provided) {
+
+        Product product = TestUtil.createProduct();
+        if (virtLimited) {
+            product.setAttribute(Product.Attributes.VIRT_LIMIT, "4");
+        }
+
+        Pool pool = TestUtil.createPool(this.owner, product, Arrays.asList(provided), 10);
+        pool.setStartDate(start);
+        pool.setEndDate(end);
+
+        Entitlement entitlement = TestUtil.createEntitlement(this.owner, this.consumer, pool, null);
+        entitlement.setCreated(new Date(created));
+
+        return entitlement;
+    }
+
+    @Test
+    public void testRequiresProductCurator() {
+        assertThrows(IllegalArgumentException.class, () -> new StackedSubPoolValueAccumulator(null));
+    }
+
+    @Test
+    public void testEmptyAccumulator() {
+        StackedSubPoolValueAccumulator acc = new StackedSubPoolValueAccumulator(this.productCurator);
+
+        assertTrue(acc.isEmpty());
+        assertNull(acc.getEldest());
+        assertNull(acc.getEldestWithVirtLimit());
+        assertNull(acc.getStartDate());
+        assertNull(acc.getEndDate());
+        assertTrue(acc.getExpectedProvidedProds().isEmpty());
+    }
+
+    @Test
+    public void testRemovalRestoresPreviousValues() {
+        Entitlement older = this.createEntitlement(1000L, new Date(5000L), new Date(9000L), false,
+            this.products.get(0));
+        Entitlement newer = this.createEntitlement(2000L, new Date(4000L), new Date(10000L), true,
+            this.products.get(0), this.products.get(1));
+
+        StackedSubPoolValueAccumulator acc = new StackedSubPoolValueAccumulator(this.stackedPool,
+            Arrays.asList(older, newer), this.productCurator);
+
+        assertSame(older, acc.getEldest());
+        assertSame(newer, acc.getEldestWithVirtLimit());
+        assertEquals(new Date(4000L), acc.getStartDate());
+        assertEquals(new Date(10000L), acc.getEndDate());
+        assertEquals(2, acc.getExpectedProvidedProds().size());
+
+        assertTrue(acc.remove(newer.getId()));
+        assertFalse(acc.remove(newer));
+
+        assertSame(older, acc.getEldest());
+        assertNull(acc.getEldestWithVirtLimit());
+        assertEquals(new Date(5000L), acc.getStartDate());
+        assertEquals(new Date(9000L), acc.getEndDate());
+        assertEquals(Collections.singleton(this.products.get(0)), acc.getExpectedProvidedProds());
+    }
+
+    @Test
+    public void testTransientEntitlementsAreMatchedByIdentity() {
+        Entitlement first = this.createEntitlement(1000L, new Date(5000L), new Date(9000L), false);
+        Entitlement second = this.createEntitlement(2000L, new Date(4000L), new Date(9000L), false);
+        first.setId(null);
+        second.setId(null);
+
+        StackedSubPoolValueAccumulator acc = new StackedSubPoolValueAccumulator(this.stackedPool,
+            Arrays.asList(first, second), this.productCurator);
+
+        assertEquals(2, acc.size());
+        assertTrue(acc.remove(second));
+        assertTrue(acc.contains(first));
+        assertFalse(acc.contains(second));
+        assertEquals(new Date(5000L), acc.getStartDate());
+    }
+
+    @Test
+    public void testIncrementalUpdatesMatchFullRebuild() {
+        Random random = new Random(4096);
+
+        List<Entitlement> stack = new ArrayList<>();
+        StackedSubPoolValueAccumulator acc = new StackedSubPoolValueAccumulator(this.productCurator);
+
+        for (int i = 0; i < 500; ++i) {
+            if (!stack.isEmpty() && random.nextInt(3) == 0) {
+                Entitlement removed = stack.remove(random.nextInt(stack.size()));
+                assertTrue(acc.remove(removed));
+            }
+            else {
+                long start = random.nextInt(1000);
+                Set<Product> provided = new HashSet<>();
+                for (Product product : this.products) {
+                    if (random.nextBoolean()) {
+                        provided.add(product);
+                    }
+                }
+
+                // Distinct creation dates keep the eldest entitlement well defined
+                Entitlement added = this.createEntitlement(i, new Date(start),
+                    new Date(start + random.nextInt(1000)), random.nextBoolean(),
+                    provided.toArray(new Product[0]));
+
+                stack.add(added);
+                acc.add(added);
+            }
+
+            StackedSubPoolValueAccumulator rebuilt = new StackedSubPoolValueAccumulator(this.stackedPool,
+                stack, this.productCurator);
+
+            assertTrue(acc.hasSameValues(rebuilt));
+            assertEquals(rebuilt.getExpectedProvidedProds(), acc.getExpectedProvidedProds());
+            assertEquals(stack.size(), acc.size());
+        }
+    }
+}
@@ -21,6 +21,8 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import org.candlepin.common.config.Configuration;
+import org.candlepin.hibernate.DatabaseRouter;
+import org.candlepin.hibernate.QueryProfiler;
 import org.candlepin.model.User;
 import org.candlepin.model.UserCurator;
 import org.candlepin.service.UserServiceAdapter;
@@ -45,7 +47,8 @@ public class AdminResourceTest {
     public void init() {
         usa = mock(DefaultUserServiceAdapter.class);
         uc = mock(UserCurator.class);
-        ar = new AdminResource(usa, uc, null, config, null);
+        ar = new AdminResource(usa, uc, null, config, null, QueryProfiler.getInstance(),
+            DatabaseRouter.getInstance(), null, null);
     }
 
     @Test
@@ -57,7 +60,8 @@ public class AdminResourceTest {
 
     @Test
     public void initWithNonDefaultUserService() {
-        ar = new AdminResource(mock(UserServiceAdapter.class), uc, null, config, null);
+        ar = new AdminResource(mock(UserServiceAdapter.class), uc, null, config, null,
+            QueryProfiler.getInstance(), DatabaseRouter.getInstance(), null, null);
         assertEquals("Already initialized.", ar.initialize());
     }
 
@@ -161,7 +161,7 @@ public class ConsumerResourceCreationTest {
             null, this.ownerCurator, this.activationKeyCurator, null, this.complianceRules,
             this.systemPurposeComplianceRules, this.deletedConsumerCurator, null, null, this.config, null,
             null, null, this.consumerBindUtil, null, null, new FactValidator(this.config, this.i18nProvider),
-            null, consumerEnricher, migrationProvider, modelTranslator, jobManager);
+            null, consumerEnricher, migrationProvider, modelTranslator, jobManager, null, null);
 
         this.system = this.initConsumerType();
         this.mockConsumerType(this.system);
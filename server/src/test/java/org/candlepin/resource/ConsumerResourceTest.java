@@ -28,6 +28,7 @@ import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.nullable;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -41,6 +42,7 @@ import org.candlepin.auth.Access;
 import org.candlepin.auth.NoAuthPrincipal;
 import org.candlepin.auth.SubResource;
 import org.candlepin.auth.UserPrincipal;
+import org.candlepin.cache.CertificateBundleCache;
 import org.candlepin.common.config.Configuration;
 import org.candlepin.common.exceptions.BadRequestException;
 import org.candlepin.common.exceptions.GoneException;
@@ -120,6 +122,7 @@ import org.mockito.stubbing.Answer;
 import org.xnap.commons.i18n.I18n;
 import org.xnap.commons.i18n.I18nFactory;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.Serializable;
 import java.math.BigInteger;
@@ -132,9 +135,12 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 
 import javax.inject.Provider;
 import javax.persistence.OptimisticLockException;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.Response;
 
 
@@ -183,6 +189,7 @@ public class ConsumerResourceTest {
     private ModelTranslator translator;
     private ConsumerResource consumerResource;
     private ConsumerResource mockedConsumerResource;
+    private CertificateBundleCache certBundleCache;
 
 
     @BeforeEach
@@ -199,6 +206,7 @@ public class ConsumerResourceTest {
 
         testMigration = new GuestMigration(mockConsumerCurator);
         migrationProvider = Providers.of(testMigration);
+        this.certBundleCache = new CertificateBundleCache(this.config);
 
         consumerResource = new ConsumerResource(
             mockConsumerCurator,
@@ -235,7 +243,8 @@ public class ConsumerResourceTest {
             consumerEnricher,
             migrationProvider,
             translator,
-            mockJobManager);
+            mockJobManager,
+            certBundleCache, null);
 
         mockedConsumerResource = Mockito.spy(consumerResource);
     }
@@ -389,7 +398,7 @@ public class ConsumerResourceTest {
         CandlepinPoolManager poolManager = new CandlepinPoolManager(
             null, null, null, this.config, null, null, mockEntitlementCurator,
             mockConsumerCurator, mockConsumerTypeCurator, null, null, null, null, null,
-            mockActivationKeyRules, null, null, null, null, null, null, null, null, null, null
+            mockActivationKeyRules, null, null, null, null, null, null, null, null, null, null, null
         );
 
         ConsumerResource consumerResource = new ConsumerResource(
@@ -398,7 +407,7 @@ public class ConsumerResourceTest {
             poolManager, null, null, null, null, null, null, null, null, null,
             this.config, null, null, null, consumerBindUtil,
             null, null, this.factValidator, null, consumerEnricher, migrationProvider, translator,
-            this.mockJobManager);
+            this.mockJobManager, null, null);
 
         assertThrows(RuntimeException.class, () ->
             consumerResource.regenerateEntitlementCertificates(consumer.getUuid(), "9999", false)
@@ -610,6 +619,163 @@ public class ConsumerResourceTest {
         return toReturn;
     }
 
+    private Consumer mockCertificateBundle(long... serials) {
+        Consumer consumer = createConsumer(createOwner());
+
+        List<EntitlementCertificate> certs = new ArrayList<>();
+        List<Long> serialIds = new ArrayList<>();
+        for (long serial : serials) {
+            EntitlementCertificate cert = createEntitlementCertificate("key" + serial, "cert" + serial);
+            cert.setSerial(new CertificateSerial(serial, new Date()));
+
+            certs.add(cert);
+            serialIds.add(serial);
+        }
+
+        when(mockEntitlementCertServiceAdapter.listForConsumer(consumer)).thenReturn(certs);
+        when(mockEntitlementCertServiceAdapter.listEntitlementSerialIds(consumer)).thenReturn(serialIds);
+
+        return consumer;
+    }
+
+    @Test
+    public void testCertificateBundleContainsCertificates() throws IOException {
+        Consumer consumer = this.mockCertificateBundle(1L, 2L, 3L);
+
+        Response response = consumerResource.getEntitlementCertificateBundle(consumer.getUuid(), null,
+            null, null);
+
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        assertNotNull(response.getMetadata().getFirst("ETag"));
+
+        Set<String> entries = new HashSet<>();
+        byte[] data = (byte[]) response.getEntity();
+
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(data))) {
+            for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+                entries.add(entry.getName());
+            }
+        }
+
+        assertEquals(3, entries.size());
+        assertTrue(entries.contains(CertificateBundleCache.ENTITLEMENT_CERT_DIR + "2.pem"));
+        verify(mockPoolManager).regenerateDirtyEntitlements(consumer);
+    }
+
+    @Test
+    public void testCertificateBundleIsCachedUntilSerialsChange() {
+        Consumer consumer = this.mockCertificateBundle(1L, 2L);
+
+        Response first = consumerResource.getEntitlementCertificateBundle(consumer.getUuid(), null,
+            null, null);
+        Response second = consumerResource.getEntitlementCertificateBundle(consumer.getUuid(), null,
+            null, null);
+
+        assertEquals(first.getMetadata().getFirst("ETag"), second.getMetadata().getFirst("ETag"));
+        assertTrue(Arrays.equals((byte[]) first.getEntity(), (byte[]) second.getEntity()));
+        verify(mockEntitlementCertServiceAdapter, times(1)).listForConsumer(consumer);
+
+        when(mockEntitlementCertServiceAdapter.listEntitlementSerialIds(consumer))
+            .thenReturn(Arrays.asList(1L, 4L));
+
+        Response third = consumerResource.getEntitlementCertificateBundle(consumer.getUuid(), null,
+            null, null);
+
+        assertFalse(first.getMetadata().getFirst("ETag").equals(third.getMetadata().getFirst("ETag")));
+        verify(mockEntitlementCertServiceAdapter, times(2)).listForConsumer(consumer);
+    }
+
+    @Test
+    public void testCertificateBundleNotModified() {
+        Consumer consumer = this.mockCertificateBundle(1L, 2L);
+
+        Response response = consumerResource.getEntitlementCertificateBundle(consumer.getUuid(), null,
+            null, null);
+        EntityTag etag = (EntityTag) response.getMetadata().getFirst("ETag");
+
+        response = consumerResource.getEntitlementCertificateBundle(consumer.getUuid(),
+            "\"other\", \"" + etag.getValue() + "\"", null, null);
+
+        assertEquals(Response.Status.NOT_MODIFIED.getStatusCode(), response.getStatus());
+        assertEquals(etag, response.getMetadata().getFirst("ETag"));
+    }
+
+    @Test
+    public void testCertificateBundleRange() {
+        Consumer consumer = this.mockCertificateBundle(1L, 2L);
+
+        Response full = consumerResource.getEntitlementCertificateBundle(consumer.getUuid(), null,
+            null, null);
+        byte[] data = (byte[]) full.getEntity();
+        EntityTag etag = (EntityTag) full.getMetadata().getFirst("ETag");
+
+        Response partial = consumerResource.getEntitlementCertificateBundle(consumer.getUuid(), null,
+            "bytes=10-19", "\"" + etag.getValue() + "\"");
+
+        assertEquals(Response.Status.PARTIAL_CONTENT.getStatusCode(), partial.getStatus());
+        assertTrue(Arrays.equals(Arrays.copyOfRange(data, 10, 20), (byte[]) partial.getEntity()));
+        assertEquals("bytes 10-19/" + data.length, partial.getMetadata().getFirst("Content-Range"));
+
+        Response suffix = consumerResource.getEntitlementCertificateBundle(consumer.getUuid(), null,
+            "bytes=-5", null);
+
+        assertEquals(Response.Status.PARTIAL_CONTENT.getStatusCode(), suffix.getStatus());
+        assertTrue(Arrays.equals(Arrays.copyOfRange(data, data.length - 5, data.length),
+            (byte[]) suffix.getEntity()));
+    }
+
+    @Test
+    public void testCertificateBundleRangeIgnoredForOtherBundle() {
+        Consumer consumer = this.mockCertificateBundle(1L, 2L);
+
+        Response response = consumerResource.getEntitlementCertificateBundle(consumer.getUuid(), null,
+            "bytes=10-19", "\"other\"");
+
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+    }
+
+    @Test
+    public void testCertificateBundleRangeRequiresStrongIfRangeMatch() {
+        Consumer consumer = this.mockCertificateBundle(1L, 2L);
+
+        Response full = consumerResource.getEntitlementCertificateBundle(consumer.getUuid(), null,
+            null, null);
+        EntityTag etag = (EntityTag) full.getMetadata().getFirst("ETag");
+
+        Response weak = consumerResource.getEntitlementCertificateBundle(consumer.getUuid(), null,
+            "bytes=10-19", "W/\"" + etag.getValue() + "\"");
+        assertEquals(Response.Status.OK.getStatusCode(), weak.getStatus());
+
+        Response wildcard = consumerResource.getEntitlementCertificateBundle(consumer.getUuid(), null,
+            "bytes=10-19", "*");
+        assertEquals(Response.Status.OK.getStatusCode(), wildcard.getStatus());
+    }
+
+    @Test
+    public void testCertificateBundleNotModifiedForWeakTag() {
+        Consumer consumer = this.mockCertificateBundle(1L, 2L);
+
+        Response response = consumerResource.getEntitlementCertificateBundle(consumer.getUuid(), null,
+            null, null);
+        EntityTag etag = (EntityTag) response.getMetadata().getFirst("ETag");
+
+        response = consumerResource.getEntitlementCertificateBundle(consumer.getUuid(),
+            "W/\"" + etag.getValue() + "\"", null, null);
+
+        assertEquals(Response.Status.NOT_MODIFIED.getStatusCode(), response.getStatus());
+    }
+
+    @Test
+    public void testCertificateBundleUnsatisfiableRange() {
+        Consumer consumer = this.mockCertificateBundle(1L, 2L);
+
+        Response response = consumerResource.getEntitlementCertificateBundle(consumer.getUuid(), null,
+            "bytes=100000-", null);
+
+        assertEquals(416, response.getStatus());
+        assertTrue(((String) response.getMetadata().getFirst("Content-Range")).startsWith("bytes */"));
+    }
+
     @Test
     public void testNullPerson() {
         Owner owner = this.createOwner();
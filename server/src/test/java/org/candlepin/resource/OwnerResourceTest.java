@@ -250,7 +250,7 @@ public class OwnerResourceTest extends DatabaseTestFixture {
             this.mockUeberCertificateGenerator, this.mockEnvironmentCurator, this.calculatedAttributesUtil,
             this.contentOverrideValidator, this.serviceLevelValidator, this.ownerServiceAdapter, this.config,
             this.resolverUtil, this.consumerTypeValidator, this.mockOwnerProductCurator, this.modelTranslator,
-            this.mockJobManager);
+            this.mockJobManager, null);
     }
 
     // TODO: This test does not belong here; it does not hit the resource at all
@@ -1335,7 +1335,7 @@ public class OwnerResourceTest extends DatabaseTestFixture {
             ownerCurator, null, null, i18n, this.mockEventSink, eventFactory, null, null,
             this.mockManifestManager, null, null, null, null, importRecordCurator, null, null, null, null,
             null, contentOverrideValidator, serviceLevelValidator, null, null, null, null, null,
-            this.modelTranslator, this.mockJobManager);
+            this.modelTranslator, this.mockJobManager, null);
 
         MultipartInput input = mock(MultipartInput.class);
         InputPart part = mock(InputPart.class);
@@ -1368,7 +1368,7 @@ public class OwnerResourceTest extends DatabaseTestFixture {
             this.mockOwnerCurator, null, null, i18n, this.mockEventSink, eventFactory, null, null,
             this.mockManifestManager, null, null, null, null, importRecordCurator, null, null, null, null,
             null, contentOverrideValidator, serviceLevelValidator, null, null, null, null, null,
-            this.modelTranslator, this.mockJobManager);
+            this.modelTranslator, this.mockJobManager, null);
 
         MultipartInput input = mock(MultipartInput.class);
         InputPart part = mock(InputPart.class);
@@ -1412,7 +1412,7 @@ public class OwnerResourceTest extends DatabaseTestFixture {
             ownerCurator, null, null, i18n, this.mockEventSink, eventFactory, null, contentAccessManager,
             this.mockManifestManager, null, null, null, null, importRecordCurator, null, null, null, null,
             null, contentOverrideValidator, serviceLevelValidator, null, null, null, null, null,
-            this.modelTranslator, this.mockJobManager);
+            this.modelTranslator, this.mockJobManager, null);
 
         MultipartInput input = mock(MultipartInput.class);
         InputPart part = mock(InputPart.class);
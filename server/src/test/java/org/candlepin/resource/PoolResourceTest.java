@@ -29,6 +29,7 @@ import org.candlepin.common.exceptions.BadRequestException;
 import org.candlepin.common.exceptions.ForbiddenException;
 import org.candlepin.common.exceptions.NotFoundException;
 import org.candlepin.controller.CandlepinPoolManager;
+import org.candlepin.controller.PoolQuantityEscrow;
 import org.candlepin.dto.api.v1.EntitlementDTO;
 import org.candlepin.dto.api.v1.PoolDTO;
 import org.candlepin.model.Consumer;
@@ -57,6 +58,7 @@ import javax.inject.Inject;
  */
 public class PoolResourceTest extends DatabaseTestFixture {
     @Inject private CandlepinPoolManager poolManager;
+    @Inject private PoolQuantityEscrow poolQuantityEscrow;
 
     private Owner owner1;
     private Owner owner2;
@@ -98,7 +100,7 @@ public class PoolResourceTest extends DatabaseTestFixture {
              TestUtil.createDate(START_YEAR, 1, 1), TestUtil.createDate(END_YEAR, 1, 1));
 
         poolResource = new PoolResource(consumerCurator, ownerCurator, i18n,
-            poolManager, attrUtil, this.modelTranslator);
+            poolManager, attrUtil, this.modelTranslator, this.poolQuantityEscrow);
 
         // Consumer system with too many cpu cores:
         failConsumer = this.createConsumer(createOwner());
@@ -0,0 +1,183 @@
+/**
+ * Copyright (c) 2009 - 2020 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.resteasy;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.candlepin.config.CandlepinCommonTestConfig;
+import org.candlepin.config.ConfigProperties;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+
+
+/**
+ * Test suite for the AdmissionController class
+ */
+public class AdmissionControllerTest {
+
+    private CandlepinCommonTestConfig config;
+
+    @BeforeEach
+    public void init() {
+        this.config = new CandlepinCommonTestConfig();
+
+        this.configure(RequestCost.Level.LOW, 2, 10, 100);
+        this.configure(RequestCost.Level.NORMAL, 2, 10, 1000);
+        this.configure(RequestCost.Level.HIGH, 1, 4, 5000);
+        this.configure(RequestCost.Level.QUEUED, 1, 10, 2000);
+    }
+
+    private void configure(RequestCost.Level level, int minLimit, int maxLimit, long latencyTarget) {
+        String name = AdmissionController.getConfigName(level);
+
+        this.config.setProperty(ConfigProperties.admissionConfig(name, AdmissionController.CFG_MIN_LIMIT),
+            String.valueOf(minLimit));
+        this.config.setProperty(ConfigProperties.admissionConfig(name, AdmissionController.CFG_MAX_LIMIT),
+            String.valueOf(maxLimit));
+        this.config.setProperty(
+            ConfigProperties.admissionConfig(name, AdmissionController.CFG_LATENCY_TARGET),
+            String.valueOf(latencyTarget));
+    }
+
+    private AdmissionStats getStats(AdmissionController controller, RequestCost.Level level) {
+        return controller.getStats().stream()
+            .filter(stats -> stats.getLevel() == level)
+            .findFirst()
+            .orElse(null);
+    }
+
+    @Test
+    public void testRejectsRequestsBeyondLimit() {
+        AdmissionController controller = new AdmissionController(this.config);
+
+        for (int i = 0; i < 4; ++i) {
+            assertTrue(controller.tryAcquire(RequestCost.Level.HIGH));
+        }
+
+        assertFalse(controller.tryAcquire(RequestCost.Level.HIGH));
+        assertTrue(controller.tryAcquire(RequestCost.Level.NORMAL));
+
+        controller.release(RequestCost.Level.HIGH, 0, 10);
+        assertTrue(controller.tryAcquire(RequestCost.Level.HIGH));
+
+        AdmissionStats stats = this.getStats(controller, RequestCost.Level.HIGH);
+        assertEquals(4, stats.getInflight());
+        assertEquals(5, stats.getAdmitted());
+        assertEquals(1, stats.getRejected());
+    }
+
+    @Test
+    public void testAlwaysAdmitsExemptRequests() {
+        AdmissionController controller = new AdmissionController(this.config);
+
+        for (int i = 0; i < 100; ++i) {
+            assertTrue(controller.tryAcquire(RequestCost.Level.EXEMPT));
+        }
+
+        assertEquals(4, controller.getStats().size());
+    }
+
+    @Test
+    public void testDecreasesLimitWhileLatencyExceedsTarget() {
+        AdmissionController controller = new AdmissionController(this.config);
+
+        controller.tryAcquire(RequestCost.Level.NORMAL);
+        controller.release(RequestCost.Level.NORMAL, 0, 2000);
+        assertEquals(9, this.getStats(controller, RequestCost.Level.NORMAL).getLimit());
+
+        // Limits are decreased at most once per backoff interval
+        controller.tryAcquire(RequestCost.Level.NORMAL);
+        controller.release(RequestCost.Level.NORMAL, 0, 2001);
+        assertEquals(9, this.getStats(controller, RequestCost.Level.NORMAL).getLimit());
+
+        long time = 2000;
+        for (int i = 0; i < 50; ++i) {
+            time += AdmissionController.BACKOFF_INTERVAL;
+            controller.tryAcquire(RequestCost.Level.NORMAL);
+            controller.release(RequestCost.Level.NORMAL, time - 2000, time);
+        }
+
+        assertEquals(2, this.getStats(controller, RequestCost.Level.NORMAL).getLimit());
+    }
+
+    @Test
+    public void testIncreasesLimitOnceLatencyRecovers() {
+        AdmissionController controller = new AdmissionController(this.config);
+
+        long time = 0;
+        for (int i = 0; i < 10; ++i) {
+            time += AdmissionController.BACKOFF_INTERVAL;
+            controller.tryAcquire(RequestCost.Level.NORMAL);
+            controller.release(RequestCost.Level.NORMAL, time - 2000, time);
+        }
+
+        int limit = this.getStats(controller, RequestCost.Level.NORMAL).getLimit();
+        assertTrue(limit < 10);
+
+        for (int i = 0; i < 200; ++i) {
+            controller.tryAcquire(RequestCost.Level.NORMAL);
+            controller.release(RequestCost.Level.NORMAL, time, time + 10);
+        }
+
+        AdmissionStats stats = this.getStats(controller, RequestCost.Level.NORMAL);
+        assertTrue(stats.getLimit() > limit);
+        assertTrue(stats.getLimit() <= 10);
+        assertTrue(stats.getLatency() < 1000);
+    }
+
+    @Test
+    public void testReleasesWithGivenLatency() {
+        AdmissionController controller = new AdmissionController(this.config);
+
+        // Long executions without waiting leave the limit alone...
+        controller.tryAcquire(RequestCost.Level.QUEUED);
+        controller.releaseWithLatency(RequestCost.Level.QUEUED, 0, 60000);
+        assertEquals(10, this.getStats(controller, RequestCost.Level.QUEUED).getLimit());
+
+        // ...while long waits decrease it
+        controller.tryAcquire(RequestCost.Level.QUEUED);
+        controller.releaseWithLatency(RequestCost.Level.QUEUED, 30000, 61000);
+        assertEquals(9, this.getStats(controller, RequestCost.Level.QUEUED).getLimit());
+        assertEquals(0, this.getStats(controller, RequestCost.Level.QUEUED).getInflight());
+
+        // Cheaper classes are not affected by the queue wait
+        assertEquals(4, this.getStats(controller, RequestCost.Level.HIGH).getLimit());
+    }
+
+    @Test
+    public void testShedsExpensiveRequestsFirst() {
+        AdmissionController controller = new AdmissionController(this.config);
+
+        // Slow cheap requests decrease the limits of every class
+        controller.tryAcquire(RequestCost.Level.LOW);
+        controller.release(RequestCost.Level.LOW, 0, 500);
+
+        assertEquals(9, this.getStats(controller, RequestCost.Level.LOW).getLimit());
+        assertEquals(9, this.getStats(controller, RequestCost.Level.NORMAL).getLimit());
+        assertEquals(3, this.getStats(controller, RequestCost.Level.HIGH).getLimit());
+
+        // ...while slow expensive requests only decrease their own
+        for (int i = 1; i <= 2; ++i) {
+            controller.tryAcquire(RequestCost.Level.HIGH);
+            controller.release(RequestCost.Level.HIGH, 0, 10000 + i * AdmissionController.BACKOFF_INTERVAL);
+        }
+
+        assertEquals(9, this.getStats(controller, RequestCost.Level.LOW).getLimit());
+        assertEquals(9, this.getStats(controller, RequestCost.Level.NORMAL).getLimit());
+        assertEquals(2, this.getStats(controller, RequestCost.Level.HIGH).getLimit());
+    }
+}
@@ -0,0 +1,245 @@
+/**
+ * Copyright (c) 2009 - 2020 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.resteasy;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.longThat;
+import static org.mockito.Mockito.*;
+
+import org.candlepin.audit.EventSink;
+import org.candlepin.common.exceptions.ServiceUnavailableException;
+import org.candlepin.config.CandlepinCommonTestConfig;
+import org.candlepin.config.ConfigProperties;
+
+import com.google.inject.Injector;
+import com.google.inject.persist.UnitOfWork;
+
+import org.jboss.resteasy.core.ResteasyContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.xnap.commons.i18n.I18n;
+import org.xnap.commons.i18n.I18nFactory;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.core.Response;
+
+
+
+/**
+ * Test suite for the AsyncRequestExecutor class
+ */
+public class AsyncRequestExecutorTest {
+
+    private CandlepinCommonTestConfig config;
+    private Injector injector;
+    private UnitOfWork unitOfWork;
+    private EventSink sink;
+    private I18n i18n;
+    private AsyncRequestExecutor executor;
+
+    @BeforeEach
+    public void init() {
+        this.config = new CandlepinCommonTestConfig();
+        this.injector = mock(Injector.class);
+        this.unitOfWork = mock(UnitOfWork.class);
+        this.sink = mock(EventSink.class);
+        this.i18n = I18nFactory.getI18n(this.getClass(), Locale.US, I18nFactory.FALLBACK);
+
+        doReturn(this.sink).when(this.injector).getInstance(EventSink.class);
+    }
+
+    @AfterEach
+    public void shutdown() {
+        if (this.executor != null) {
+            this.executor.shutdown();
+        }
+    }
+
+    private AsyncRequestExecutor createExecutor(int maxConcurrent, int maxQueued) {
+        this.config.setProperty(ConfigProperties.asyncRequestConfig(AsyncRequestExecutor.ENDPOINT_BIND,
+            AsyncRequestExecutor.CFG_MAX_CONCURRENT), String.valueOf(maxConcurrent));
+        this.config.setProperty(ConfigProperties.asyncRequestConfig(AsyncRequestExecutor.ENDPOINT_BIND,
+            AsyncRequestExecutor.CFG_MAX_QUEUED), String.valueOf(maxQueued));
+
+        this.executor = new AsyncRequestExecutor(this.config, this.injector, this.unitOfWork,
+            () -> this.i18n);
+
+        return this.executor;
+    }
+
+    @Test
+    public void testExecutesRequestOnDedicatedThread() {
+        AsyncRequestExecutor executor = this.createExecutor(2, 10);
+        AsyncResponse response = mock(AsyncResponse.class);
+        Thread caller = Thread.currentThread();
+
+        executor.execute(AsyncRequestExecutor.ENDPOINT_BIND, response,
+            () -> Thread.currentThread() != caller ? "worker" : "caller");
+
+        verify(response, timeout(5000)).resume("worker");
+        verify(this.sink, timeout(5000)).sendEvents();
+        verify(this.sink, never()).rollback();
+        verify(this.unitOfWork, timeout(5000)).end();
+        verify(this.unitOfWork).begin();
+
+        AsyncRequestStats stats = executor.getStats(AsyncRequestExecutor.ENDPOINT_BIND);
+        assertEquals(1, stats.getCompleted());
+        assertEquals(0, stats.getFailed());
+        assertEquals(0, stats.getQueued());
+    }
+
+    @Test
+    public void testRollsBackEventsOfFailedRequests() {
+        AsyncRequestExecutor executor = this.createExecutor(2, 10);
+        AsyncResponse response = mock(AsyncResponse.class);
+        RuntimeException exception = new RuntimeException("bind failed");
+
+        executor.execute(AsyncRequestExecutor.ENDPOINT_BIND, response, () -> {
+            throw exception;
+        });
+
+        verify(response, timeout(5000)).resume(exception);
+        verify(this.sink, timeout(5000)).rollback();
+        verify(this.sink, never()).sendEvents();
+
+        assertEquals(1, executor.getStats(AsyncRequestExecutor.ENDPOINT_BIND).getFailed());
+    }
+
+    @Test
+    public void testRollsBackEventsOfErrorResponses() {
+        AsyncRequestExecutor executor = this.createExecutor(2, 10);
+        AsyncResponse response = mock(AsyncResponse.class);
+        Response result = Response.serverError().build();
+
+        executor.execute(AsyncRequestExecutor.ENDPOINT_BIND, response, () -> result);
+
+        verify(response, timeout(5000)).resume(result);
+        verify(this.sink, timeout(5000)).rollback();
+        verify(this.sink, never()).sendEvents();
+    }
+
+    @Test
+    public void testRejectsRequestsBeyondQueueLimit() throws Exception {
+        AsyncRequestExecutor executor = this.createExecutor(1, 1);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        AsyncResponse running = mock(AsyncResponse.class);
+        AsyncResponse queued = mock(AsyncResponse.class);
+        AsyncResponse rejected = mock(AsyncResponse.class);
+
+        executor.execute(AsyncRequestExecutor.ENDPOINT_BIND, running, () -> {
+            started.countDown();
+            return release.await(5, TimeUnit.SECONDS);
+        });
+
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        executor.execute(AsyncRequestExecutor.ENDPOINT_BIND, queued, () -> "queued");
+        executor.execute(AsyncRequestExecutor.ENDPOINT_BIND, rejected, () -> "rejected");
+
+        verify(rejected).resume(any(ServiceUnavailableException.class));
+
+        AsyncRequestStats stats = executor.getStats(AsyncRequestExecutor.ENDPOINT_BIND);
+        assertEquals(1, stats.getActive());
+        assertEquals(1, stats.getQueued());
+        assertEquals(1, stats.getRejected());
+
+        release.countDown();
+
+        verify(running, timeout(5000)).resume(true);
+        verify(queued, timeout(5000)).resume("queued");
+        verify(rejected, never()).resume("rejected");
+    }
+
+    @Test
+    public void testRecordsQueueWaitOnRequests() throws Exception {
+        AsyncRequestExecutor executor = this.createExecutor(1, 1);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        HttpServletRequest running = mock(HttpServletRequest.class);
+        HttpServletRequest queued = mock(HttpServletRequest.class);
+        HttpServletRequest rejected = mock(HttpServletRequest.class);
+
+        ResteasyContext.pushContextDataMap(new HashMap<>());
+
+        try {
+            ResteasyContext.pushContext(HttpServletRequest.class, running);
+            executor.execute(AsyncRequestExecutor.ENDPOINT_BIND, mock(AsyncResponse.class), () -> {
+                started.countDown();
+                return release.await(5, TimeUnit.SECONDS);
+            });
+
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+
+            ResteasyContext.pushContext(HttpServletRequest.class, queued);
+            executor.execute(AsyncRequestExecutor.ENDPOINT_BIND, mock(AsyncResponse.class), () -> "queued");
+
+            Thread.sleep(50);
+
+            // Rejected requests carry the wait of the oldest request still in the queue
+            ResteasyContext.pushContext(HttpServletRequest.class, rejected);
+            executor.execute(AsyncRequestExecutor.ENDPOINT_BIND, mock(AsyncResponse.class),
+                () -> "rejected");
+
+            verify(rejected).setAttribute(eq(AsyncRequestExecutor.QUEUE_WAIT_ATTRIBUTE),
+                longThat(wait -> wait >= 50));
+        }
+        finally {
+            ResteasyContext.removeContextDataLevel();
+            release.countDown();
+        }
+
+        verify(running, timeout(5000)).setAttribute(eq(AsyncRequestExecutor.QUEUE_WAIT_ATTRIBUTE),
+            anyLong());
+        verify(queued, timeout(5000)).setAttribute(eq(AsyncRequestExecutor.QUEUE_WAIT_ATTRIBUTE),
+            longThat(wait -> wait >= 50));
+    }
+
+    @Test
+    public void testExecutesOnCallingThreadWithoutThreads() {
+        AsyncRequestExecutor executor = this.createExecutor(0, 10);
+        AsyncResponse response = mock(AsyncResponse.class);
+        Thread caller = Thread.currentThread();
+
+        executor.execute(AsyncRequestExecutor.ENDPOINT_BIND, response,
+            () -> Thread.currentThread() == caller ? "caller" : "worker");
+
+        verify(response).resume("caller");
+
+        // Events of requests completed on the calling thread are left to the event filter
+        verifyZeroInteractions(this.sink, this.unitOfWork);
+        assertEquals(1, executor.getStats(AsyncRequestExecutor.ENDPOINT_BIND).getCompleted());
+    }
+
+    @Test
+    public void testRejectsUnknownEndpoints() {
+        AsyncRequestExecutor executor = this.createExecutor(1, 1);
+
+        assertThrows(IllegalArgumentException.class,
+            () -> executor.execute("unknown", mock(AsyncResponse.class), () -> null));
+    }
+}
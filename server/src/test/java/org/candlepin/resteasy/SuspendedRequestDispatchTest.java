@@ -0,0 +1,145 @@
+/**
+ * Copyright (c) 2009 - 2020 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.resteasy;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import org.jboss.resteasy.core.ResteasyDeploymentImpl;
+import org.jboss.resteasy.plugins.server.servlet.HttpServlet30Dispatcher;
+import org.jboss.resteasy.spi.Dispatcher;
+import org.jboss.resteasy.spi.Registry;
+import org.jboss.resteasy.spi.ResteasyDeployment;
+import org.jboss.resteasy.spi.ResteasyProviderFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.MediaType;
+
+
+
+/**
+ * Tests that requests suspended with an AsyncResponse are dispatched by the servlet Candlepin
+ * serves requests with (see web.xml) without holding the container's request thread until they
+ * are resumed.
+ */
+public class SuspendedRequestDispatchTest {
+
+    /**
+     * Resource which suspends every request, handing its AsyncResponse to the test
+     */
+    @Path("/suspend")
+    public static class SuspendingResource {
+        private final CompletableFuture<AsyncResponse> suspended = new CompletableFuture<>();
+
+        @GET
+        @Produces(MediaType.TEXT_PLAIN)
+        public void suspend(@Suspended AsyncResponse response) {
+            this.suspended.complete(response);
+        }
+    }
+
+    private ResteasyDeployment deployment;
+    private HttpServlet30Dispatcher dispatcher;
+    private SuspendingResource resource;
+
+    @BeforeEach
+    public void init() throws Exception {
+        this.deployment = new ResteasyDeploymentImpl();
+        this.deployment.start();
+
+        this.resource = new SuspendingResource();
+        this.deployment.getRegistry().addSingletonResource(this.resource);
+
+        // Mirror the servlet context set up by the RESTEasy Guice bootstrap listener
+        ServletContext context = mock(ServletContext.class);
+        doReturn(this.deployment.getProviderFactory()).when(context)
+            .getAttribute(ResteasyProviderFactory.class.getName());
+        doReturn(this.deployment.getDispatcher()).when(context).getAttribute(Dispatcher.class.getName());
+        doReturn(this.deployment.getRegistry()).when(context).getAttribute(Registry.class.getName());
+
+        ServletConfig config = mock(ServletConfig.class);
+        doReturn(context).when(config).getServletContext();
+        doReturn(Collections.emptyEnumeration()).when(config).getInitParameterNames();
+        doReturn(Collections.emptyEnumeration()).when(context).getInitParameterNames();
+
+        this.dispatcher = new HttpServlet30Dispatcher();
+        this.dispatcher.init(config);
+    }
+
+    @AfterEach
+    public void shutdown() {
+        this.dispatcher.destroy();
+        this.deployment.stop();
+    }
+
+    @Test
+    public void testRequestThreadReturnsBeforeResume() throws Exception {
+        AsyncContext asyncContext = mock(AsyncContext.class);
+
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        doReturn("GET").when(request).getMethod();
+        doReturn("").when(request).getContextPath();
+        doReturn("/suspend").when(request).getRequestURI();
+        doReturn(new StringBuffer("http://localhost/suspend")).when(request).getRequestURL();
+        doReturn(Collections.emptyEnumeration()).when(request).getHeaderNames();
+        doReturn(asyncContext).when(request).startAsync();
+        doReturn(asyncContext).when(request).getAsyncContext();
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        doReturn(new ServletOutputStream() {
+            @Override
+            public void write(int b) {
+                output.write(b);
+            }
+        }).when(response).getOutputStream();
+
+        // The request thread must come back while the request is still suspended
+        this.dispatcher.service("GET", request, response);
+
+        AsyncResponse suspended = this.resource.suspended.get(5, TimeUnit.SECONDS);
+        assertTrue(suspended.isSuspended());
+        verify(request, times(1)).startAsync();
+        verify(asyncContext, never()).complete();
+        assertEquals(0, output.size());
+
+        // Resuming on another thread writes the response and completes the request
+        Thread worker = new Thread(() -> suspended.resume("resumed"));
+        worker.start();
+        worker.join(5000);
+
+        verify(asyncContext, timeout(5000).times(1)).complete();
+        assertEquals("resumed", new String(output.toByteArray(), StandardCharsets.UTF_8));
+    }
+}
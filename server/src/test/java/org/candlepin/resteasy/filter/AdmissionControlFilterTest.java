@@ -0,0 +1,238 @@
+/**
+ * Copyright (c) 2009 - 2020 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.resteasy.filter;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+import org.candlepin.config.CandlepinCommonTestConfig;
+import org.candlepin.resteasy.AdmissionController;
+import org.candlepin.resteasy.AdmissionStats;
+import org.candlepin.resteasy.AnnotationLocator;
+import org.candlepin.resteasy.AsyncRequestExecutor;
+import org.candlepin.resteasy.RequestCost;
+
+import org.jboss.resteasy.core.ResteasyDeploymentImpl;
+import org.jboss.resteasy.mock.MockHttpRequest;
+import org.jboss.resteasy.mock.MockHttpResponse;
+import org.jboss.resteasy.spi.HttpRequest;
+import org.jboss.resteasy.spi.ResteasyDeployment;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.xnap.commons.i18n.I18n;
+import org.xnap.commons.i18n.I18nFactory;
+
+import java.lang.reflect.Method;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.ExceptionMapper;
+
+
+
+/**
+ * Test suite for the AdmissionControlFilter class, dispatching requests through RESTEasy so that
+ * the filter sees the same responses it would in a deployment.
+ */
+public class AdmissionControlFilterTest {
+
+    /**
+     * Resource whose methods fail, suspend, wait in a queue or are exempt from admission control
+     */
+    @Path("/admission")
+    public static class AdmissionResource {
+        private final CompletableFuture<AsyncResponse> suspended = new CompletableFuture<>();
+
+        @GET
+        @Path("/fail")
+        @Produces(MediaType.TEXT_PLAIN)
+        @RequestCost(RequestCost.Level.HIGH)
+        public String fail() {
+            throw new IllegalStateException("failed");
+        }
+
+        @GET
+        @Path("/suspend")
+        @Produces(MediaType.TEXT_PLAIN)
+        @RequestCost(RequestCost.Level.HIGH)
+        public void suspend(@Suspended AsyncResponse response) {
+            this.suspended.complete(response);
+        }
+
+        @GET
+        @Path("/queued")
+        @Produces(MediaType.TEXT_PLAIN)
+        @RequestCost(RequestCost.Level.QUEUED)
+        public String queued(@Context HttpRequest request, @QueryParam("wait") Long wait) {
+            if (wait != null) {
+                request.setAttribute(AsyncRequestExecutor.QUEUE_WAIT_ATTRIBUTE, wait);
+            }
+
+            return "queued";
+        }
+
+        @GET
+        @Path("/exempt")
+        @Produces(MediaType.TEXT_PLAIN)
+        @RequestCost(RequestCost.Level.EXEMPT)
+        public String exempt() {
+            return "exempt";
+        }
+    }
+
+    /**
+     * Maps the failures of the resource to a conflict response
+     */
+    public static class IllegalStateMapper implements ExceptionMapper<IllegalStateException> {
+        @Override
+        public Response toResponse(IllegalStateException exception) {
+            return Response.status(Response.Status.CONFLICT).build();
+        }
+    }
+
+    private AdmissionController controller;
+    private AdmissionResource resource;
+    private ResteasyDeployment deployment;
+    private ExecutorService executor;
+
+    @BeforeEach
+    public void init() {
+        this.controller = new AdmissionController(new CandlepinCommonTestConfig());
+
+        AnnotationLocator annotationLocator = mock(AnnotationLocator.class);
+        doAnswer(iom -> ((Method) iom.getArgument(0)).getAnnotation(RequestCost.class))
+            .when(annotationLocator).getAnnotation(any(Method.class), eq(RequestCost.class));
+
+        I18n i18n = I18nFactory.getI18n(this.getClass(), Locale.US, I18nFactory.FALLBACK);
+
+        this.deployment = new ResteasyDeploymentImpl();
+        this.deployment.start();
+
+        this.deployment.getProviderFactory()
+            .registerProviderInstance(new AdmissionControlFilter(this.controller, annotationLocator, i18n));
+        this.deployment.getProviderFactory().registerProviderInstance(new IllegalStateMapper());
+
+        this.resource = new AdmissionResource();
+        this.deployment.getRegistry().addSingletonResource(this.resource);
+
+        this.executor = Executors.newSingleThreadExecutor();
+    }
+
+    @AfterEach
+    public void shutdown() {
+        this.executor.shutdownNow();
+        this.deployment.stop();
+    }
+
+    private AdmissionStats getStats(RequestCost.Level level) {
+        return this.controller.getStats().stream()
+            .filter(stats -> stats.getLevel() == level)
+            .findFirst()
+            .orElse(null);
+    }
+
+    @Test
+    public void testSlotReleasedForExceptionMappedResponse() throws Exception {
+        MockHttpResponse response = new MockHttpResponse();
+        this.deployment.getDispatcher().invoke(MockHttpRequest.get("/admission/fail"), response);
+
+        assertEquals(Response.Status.CONFLICT.getStatusCode(), response.getStatus());
+        assertEquals(1, this.getStats(RequestCost.Level.HIGH).getAdmitted());
+        assertEquals(0, this.getStats(RequestCost.Level.HIGH).getInflight());
+    }
+
+    @Test
+    public void testSlotReleasedForResumedAsyncResponse() throws Exception {
+        MockHttpRequest request = MockHttpRequest.get("/admission/suspend");
+        MockHttpResponse response = new MockHttpResponse();
+
+        Future<?> dispatch = this.executor.submit(() ->
+            this.deployment.getDispatcher().invoke(request, response));
+
+        // The slot is held for as long as the request is suspended...
+        AsyncResponse suspended = this.resource.suspended.get(5, TimeUnit.SECONDS);
+        assertEquals(1, this.getStats(RequestCost.Level.HIGH).getInflight());
+
+        // ...and released once the response is resumed on another thread
+        suspended.resume("resumed");
+        dispatch.get(5, TimeUnit.SECONDS);
+
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        assertEquals("resumed", response.getContentAsString());
+        assertEquals(1, this.getStats(RequestCost.Level.HIGH).getAdmitted());
+        assertEquals(0, this.getStats(RequestCost.Level.HIGH).getInflight());
+    }
+
+    @Test
+    public void testQueuedRequestsReleasedWithQueueWait() throws Exception {
+        int maxLimit = this.getStats(RequestCost.Level.QUEUED).getLimit();
+
+        MockHttpResponse response = new MockHttpResponse();
+        this.deployment.getDispatcher().invoke(MockHttpRequest.get("/admission/queued?wait=60000"), response);
+
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+
+        AdmissionStats stats = this.getStats(RequestCost.Level.QUEUED);
+        assertEquals(1, stats.getAdmitted());
+        assertEquals(0, stats.getInflight());
+        assertEquals(60000, stats.getLatency());
+        assertTrue(stats.getLimit() < maxLimit);
+    }
+
+    @Test
+    public void testQueuedRequestsWithoutQueueWaitReleasedWithNoLatency() throws Exception {
+        int maxLimit = this.getStats(RequestCost.Level.QUEUED).getLimit();
+
+        MockHttpResponse response = new MockHttpResponse();
+        this.deployment.getDispatcher().invoke(MockHttpRequest.get("/admission/queued"), response);
+
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+
+        AdmissionStats stats = this.getStats(RequestCost.Level.QUEUED);
+        assertEquals(1, stats.getAdmitted());
+        assertEquals(0, stats.getInflight());
+        assertEquals(0, stats.getLatency());
+        assertEquals(maxLimit, stats.getLimit());
+    }
+
+    @Test
+    public void testExemptRequestsAreNotCounted() throws Exception {
+        MockHttpResponse response = new MockHttpResponse();
+        this.deployment.getDispatcher().invoke(MockHttpRequest.get("/admission/exempt"), response);
+
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+
+        for (AdmissionStats stats : this.controller.getStats()) {
+            assertEquals(0, stats.getAdmitted());
+            assertEquals(0, stats.getInflight());
+        }
+    }
+}
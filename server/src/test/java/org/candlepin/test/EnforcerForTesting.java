@@ -22,6 +22,7 @@ import org.candlepin.model.Owner;
 import org.candlepin.model.Pool;
 import org.candlepin.model.PoolQuantity;
 import org.candlepin.policy.ValidationResult;
+import org.candlepin.policy.js.entitlement.ConsumerRulesContext;
 import org.candlepin.policy.js.entitlement.Enforcer;
 import org.candlepin.policy.js.entitlement.PreUnbindHelper;
 
@@ -94,4 +95,20 @@ public class EnforcerForTesting implements Enforcer {
         Collection<PoolQuantity> entitlementPoolQuantities, CallerType caller) {
         return preEntitlement(consumer, entitlementPoolQuantities, caller);
     }
+
+    @Override
+    public Map<String, ValidationResult> preEntitlement(ConsumerRulesContext context,
+        Collection<PoolQuantity> entitlementPoolQuantities, CallerType caller) {
+        return preEntitlement((Consumer) null, entitlementPoolQuantities, caller);
+    }
+
+    @Override
+    public ConsumerRulesContext buildConsumerContext(Consumer consumer) {
+        return null;
+    }
+
+    @Override
+    public List<Pool> filterPools(ConsumerRulesContext context, List<Pool> pools, boolean showAll) {
+        return pools;
+    }
 }